@@ -0,0 +1,108 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Capture-to-viewer handoff, one producer and one consumer thread.
+ * <p>
+ * Neither side ever blocks (a full ring or queue just skips the write), so the group can always be stopped. Calls that
+ * moved nothing still count as operations, so the number to look at is the "samples" counter of the consumer, which
+ * is the sustained throughput in samples per second.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandoffBenchmark {
+
+    static final int BLOCK = 1024;
+    private static final int CAPACITY = 1 << 16;
+
+    private SampleRingBuffer ringBuffer;
+    private LinkedBlockingQueue<Long> queue;
+
+    @Setup
+    public void setup() {
+        ringBuffer = new SampleRingBuffer(CAPACITY);
+        queue = new LinkedBlockingQueue<>();
+    }
+
+    @State(Scope.Thread)
+    public static class Block {
+        final int[] samples = new int[BLOCK];
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Consumed {
+        public long samples;
+        final int[] block = new int[BLOCK];
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            samples = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public void ringBufferWrite(final Block block) throws InterruptedException {
+        if (ringBuffer.capacity() - ringBuffer.size() >= BLOCK) {
+            ringBuffer.write(block.samples, 0, BLOCK);
+        }
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public void ringBufferRead(final Consumed consumed) {
+        consumed.samples += ringBuffer.poll(consumed.block, 0, BLOCK);
+    }
+
+    /**
+     * The boxed, per-sample LinkedBlockingQueue the ring buffer replaced
+     */
+    @Benchmark
+    @Group("linkedBlockingQueue")
+    @GroupThreads(1)
+    public void queueOffer(final Block block) {
+        if (queue.size() < CAPACITY - BLOCK) {
+            for (int i = 0; i < BLOCK; i++) {
+                queue.offer((long) block.samples[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("linkedBlockingQueue")
+    @GroupThreads(1)
+    public void queuePoll(final Consumed consumed) {
+        for (int i = 0; i < BLOCK; i++) {
+            Long sample = queue.poll();
+            if (sample == null) {
+                break;
+            }
+            consumed.block[i] = sample.intValue();
+            consumed.samples++;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.didi.splviewer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of one capture block, reported in samples per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmDecoderBenchmark {
+
+    static final int BLOCK = 4096;
+
+    @Param({"SIGNED_8", "UNSIGNED_8",
+        "SIGNED_16_BIG_ENDIAN", "SIGNED_16_LITTLE_ENDIAN", "UNSIGNED_16_BIG_ENDIAN", "UNSIGNED_16_LITTLE_ENDIAN",
+        "SIGNED_24_BIG_ENDIAN", "SIGNED_24_LITTLE_ENDIAN", "UNSIGNED_24_BIG_ENDIAN", "UNSIGNED_24_LITTLE_ENDIAN",
+        "SIGNED_32_BIG_ENDIAN", "SIGNED_32_LITTLE_ENDIAN", "UNSIGNED_32_BIG_ENDIAN", "UNSIGNED_32_LITTLE_ENDIAN"})
+    public String format;
+
+    private PcmDecoder decoder;
+    private byte[] block;
+    private int[] samples;
+    private float[] normalized;
+
+    @Setup
+    public void setup() {
+        decoder = PcmDecoder.valueOf(format);
+        block = new byte[BLOCK * decoder.getBytesPerSample()];
+        new Random(42).nextBytes(block);
+        samples = new int[BLOCK];
+        normalized = new float[BLOCK];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int[] decode() {
+        decoder.decode(block, 0, samples, 0, BLOCK);
+        return samples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public float[] decodeNormalized() {
+        decoder.decode(block, 0, normalized, 0, BLOCK);
+        return normalized;
+    }
+
+    /**
+     * The per-sample branching decode AudioCapture.pushSamples used to do, kept as a baseline
+     */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int[] perSampleBranch() {
+        int frameSize = decoder.getBytesPerSample();
+        boolean bigEndian = decoder.isBigEndian();
+        byte[] buffer = block;
+        for (int i = 0, s = 0; i < buffer.length; i += frameSize, s++) {
+            int value = 0;
+            if (frameSize == 1) {
+                value = buffer[i];
+            } else if (frameSize == 2) {
+                value = bigEndian ?
+                    ~(((buffer[i] << 8) | buffer[i + 1]) - 1) :
+                    ~(((buffer[i + 1] << 8) | buffer[i]) - 1);
+            } else if (frameSize == 3) {
+                value = bigEndian ?
+                    ~(((buffer[i] << 16) | (buffer[i + 1] << 8) | buffer[i + 2]) - 1) :
+                    ~(((buffer[i + 2] << 16) | (buffer[i + 1] << 8) | buffer[i]) - 1);
+            } else if (frameSize == 4) {
+                value = bigEndian ?
+                    ~(((buffer[i] << 24) | (buffer[i + 1] << 16) | (buffer[i + 2] << 8) | buffer[i + 3]) - 1) :
+                    ~(((buffer[i + 3] << 24) | (buffer[i + 2] << 16) | (buffer[i + 1] << 8) | buffer[i]) - 1);
+            }
+            samples[s] = value;
+        }
+        return samples;
+    }
+}
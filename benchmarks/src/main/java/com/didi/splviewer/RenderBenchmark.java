@@ -0,0 +1,103 @@
+package com.didi.splviewer;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering one viewer update (1/50 s of samples) into an off-screen image, in samples per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    static final int BLOCK = 1920; //48kHz at 25 updates per second, or 96kHz at 50
+    private static final int WIDTH = 1200, HEIGHT = 600;
+    private static final int X_ZOOM_LEVEL = 40;
+
+    @Param({"44100", "96000"})
+    public int sampleRate;
+
+    private int[] samples;
+    private BufferedImage screen;
+    private Graphics screenGraphics;
+    private WaveformRenderer renderer;
+    private double cursorX;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        samples = new int[BLOCK];
+        for (int i = 0; i < BLOCK; i++) {
+            samples[i] = (int) (random.nextGaussian() * 4000);
+        }
+        screen = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        screenGraphics = screen.getGraphics();
+        renderer = new WaveformRenderer(WIDTH, HEIGHT);
+        renderer.setTimeBase(sampleRate, X_ZOOM_LEVEL, 16);
+    }
+
+    @TearDown
+    public void tearDown() {
+        screenGraphics.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public void columnRenderer() {
+        renderer.add(samples, 0, BLOCK);
+    }
+
+    /**
+     * Includes the one full-image drawImage per update, which dominates at these block sizes
+     */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public void columnRendererWithBlit() {
+        renderer.add(samples, 0, BLOCK);
+        renderer.blit(screenGraphics);
+    }
+
+    /**
+     * One drawLine per sample, the way SPLViewer.printSample used to draw
+     */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public void drawLinePerSample() {
+        Graphics g = screenGraphics;
+        double maxAmplitude = HEIGHT / 2;
+        for (int i = 0; i < BLOCK; i++) {
+            if (cursorX >= WIDTH) {
+                cursorX = 0;
+                g.clearRect(0, 0, WIDTH, HEIGHT);
+            }
+            double ratio = (double) samples[i] / (1 << 15);
+            int sign = ratio > 0 ? 1 : -1;
+            double decibelValue = 10 * ((Math.pow(10, Math.abs(ratio)) - 1) / 9);
+            int cursorY = (int) (maxAmplitude + sign * (decibelValue * (maxAmplitude / 10)));
+            g.setColor(cursorY == maxAmplitude ? Color.YELLOW : Color.LIGHT_GRAY);
+            g.drawLine((int) cursorX, cursorY, (int) cursorX, cursorY);
+            cursorX += (float) X_ZOOM_LEVEL / sampleRate;
+        }
+    }
+}
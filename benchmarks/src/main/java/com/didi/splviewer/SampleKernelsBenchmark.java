@@ -0,0 +1,72 @@
+package com.didi.splviewer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scalar against SIMD sample kernels on one capture block, in samples per second. Needs the main jar built on JDK 17.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SampleKernelsBenchmark {
+
+    static final int BLOCK = 4096;
+
+    @Param({"scalar", "best"})
+    public String kernels;
+
+    private SampleKernels sampleKernels;
+    private byte[] block;
+    private int[] samples;
+    private float[] normalized;
+    private final SampleKernels.Summary summary = new SampleKernels.Summary();
+
+    @Setup
+    public void setup() {
+        sampleKernels = "scalar".equals(kernels) ? SampleKernels.scalar() : SampleKernels.get();
+        block = new byte[BLOCK * 2];
+        new Random(42).nextBytes(block);
+        samples = new int[BLOCK];
+        normalized = new float[BLOCK];
+        SampleKernels.scalar().decode16(block, 0, true, samples, 0, BLOCK);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int[] decode16BigEndian() {
+        sampleKernels.decode16(block, 0, true, samples, 0, BLOCK);
+        return samples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public float[] decode16Normalized() {
+        sampleKernels.decode16(block, 0, false, normalized, 0, BLOCK);
+        return normalized;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public SampleKernels.Summary summarize() {
+        summary.reset();
+        sampleKernels.summarize(samples, 0, BLOCK, summary);
+        return summary;
+    }
+}
@@ -0,0 +1,79 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of feeding one value into each streaming estimator, in values per second, against the old {@link Average}.
+ * The values are pseudo-random so that the min/max deques and the P-square markers do some work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class StatisticsBenchmark {
+
+    @Param({"50", "48000"})
+    public int window; //one second of updates, one second of samples
+
+    private final Average average = new Average();
+    private final RunningMoments running = new RunningMoments();
+    private final StreamingQuantile quantile = new StreamingQuantile(0.99);
+    private ExponentialMoments exponential;
+    private SlidingWindow sliding;
+    private long seed = 1;
+
+    @Setup
+    public void setup() {
+        exponential = new ExponentialMoments(window);
+        sliding = new SlidingWindow(window);
+    }
+
+    private double next() {
+        seed = seed * 6364136223846793005L + 1442695040888963407L;
+        return (seed >>> 11) * 0x1.0p-53;
+    }
+
+    @Benchmark
+    public double average() {
+        return average.newAverage(next());
+    }
+
+    @Benchmark
+    public double runningMoments() {
+        running.add(next());
+        return running.getMean();
+    }
+
+    @Benchmark
+    public double exponentialMoments() {
+        exponential.add(next());
+        return exponential.getMean();
+    }
+
+    @Benchmark
+    public double slidingWindow() {
+        sliding.add(next());
+        return sliding.getMax();
+    }
+
+    @Benchmark
+    public double streamingQuantile() {
+        quantile.add(next());
+        return quantile.getQuantile();
+    }
+}
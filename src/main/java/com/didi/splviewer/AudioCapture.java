@@ -4,9 +4,16 @@ import java.awt.Button;
 import java.awt.Checkbox;
 import java.awt.Choice;
 import java.awt.Color;
+import java.awt.EventQueue;
 import java.awt.Label;
 import java.awt.Panel;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.awt.event.ItemListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
@@ -18,108 +25,264 @@ import javax.sound.sampled.TargetDataLine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public final class AudioCapture implements SPLModule {
+public final class AudioCapture implements AudioSource {
 
-    private static int SAMPLE_RATE = 44100;
+    public static final int NUMBER_OF_CHANNELS = Integer.getInteger("splviewer.channels", 1); //Fixed at startup, every channel gets its own viewer
 
-    static int getSampleRate() {
-        return SAMPLE_RATE;
+    /**
+     * 44.1kHz, 16 bit, signed, big-endian
+     */
+    public static final AudioFormat DEFAULT_FORMAT = new AudioFormat(44100, 16, NUMBER_OF_CHANNELS, true, true);
+
+    private static final int BLOCKS_PER_SECOND = 100; //blocks are handed on as they are read, the viewers pace themselves
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+    private static final long BLINK_MILLIS = 400;
+    private static final Color BLINK_COLOR = new Color(29, 76, 122);
+
+    static final String DEFAULT_MIXER_NAME = "Built-in Microphone";
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(AudioCapture.class);
+
+    //One thread blinks the Capture! buttons of all captures
+    private static final ScheduledExecutorService BLINKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "capture-blink");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SampleSink pushBuffer;
+    private final String mixerName;
+    private volatile AudioFormat format; //of the running session, per capture, several can run side by side with different formats
+    private final SourceWorker worker;
+    private volatile CaptureSession session; //the one that should be running, null when stopped
+    private long sessionCount;
+    private volatile PcmSink pcmSink;
+    private byte[] buffer = new byte[0]; //capture thread only, kept across sessions
+    private int[] samples = new int[0];
+    private volatile long framesCaptured = 0; //across capture sessions, the viewers count frames the same way
+    private volatile TargetDataLine activeLine;
+    private volatile long sessionStartFrame;
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private final LineSource lines; //null for the sound system
+    private final List<Runnable> failureListeners = new CopyOnWriteArrayList<>(); //run on the capture thread
+
+    /**
+     * Where capture lines come from, tests hand out their own
+     */
+    interface LineSource {
+        TargetDataLine getLine(DataLine.Info info) throws LineUnavailableException;
     }
 
-    private static int SAMPLE_SIZE_IN_BITS = 16;
+    public AudioCapture(SampleSink pushBuffer) {
+        this(pushBuffer, DEFAULT_MIXER_NAME);
+    }
 
-    public static int getSampleSizeInBits() {
-        return SAMPLE_SIZE_IN_BITS;
+    public AudioCapture(SampleSink pushBuffer, String mixerName) {
+        this(pushBuffer, mixerName, DEFAULT_FORMAT);
     }
 
-    public static final int NUMBER_OF_CHANNELS = 1;
+    /**
+     * @param mixerName name of the mixer to capture from, the system's default capture line is used when there is no such mixer
+     * @param format    initial format, the options panel can change sample rate, size and byte order between captures
+     */
+    public AudioCapture(SampleSink pushBuffer, String mixerName, AudioFormat format) {
+        this(pushBuffer, mixerName, format, null);
+    }
 
-    private static final boolean SIGNED = true;
+    AudioCapture(SampleSink pushBuffer, String mixerName, AudioFormat format, LineSource lines) {
+        this.pushBuffer = pushBuffer;
+        this.mixerName = mixerName;
+        this.format = format;
+        this.lines = lines;
+        this.worker = new SourceWorker("capture-" + mixerName);
+    }
 
-    public static boolean isSIGNED() {
-        return SIGNED;
+    public String getMixerName() {
+        return mixerName;
     }
 
-    public static boolean BIG_ENDIAN = true;
+    @Override
+    public boolean supportsPcm() {
+        return true;
+    }
 
-    public static boolean isBigEndian() {
-        return BIG_ENDIAN;
+    @Override
+    public AudioCapture setPcmSink(final PcmSink sink) {
+        pcmSink = sink;
+        return this;
     }
 
-    private static Logger logger = (Logger) LoggerFactory.getLogger(AudioCapture.class);
-    private final LinkedBlockingQueue<Long> pushBuffer;
-    private boolean STOP_CAPTURE_FLAG = false;
+    /**
+     * Format of the blocks being handed on, a new one from {@link #start(AudioFormat)} once its session is running
+     */
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
 
-    public AudioCapture(LinkedBlockingQueue<Long> pushBuffer) {
-        this.pushBuffer = pushBuffer;
+    /**
+     * The line's own frame position while capturing, so the clock also advances while a read is blocked
+     */
+    @Override
+    public long getFramePosition() {
+        TargetDataLine line = activeLine;
+        return line != null ? sessionStartFrame + line.getLongFramePosition() : framesCaptured;
     }
 
+    /**
+     * The session that is running or about to, null when stopped
+     */
+    public CaptureSession getSession() {
+        return session;
+    }
+
+    /**
+     * Starts capturing in {@code format}. A running session ends after its current block, hands on what the line still
+     * holds and closes the line, then the new one opens it again.
+     */
+    public CaptureSession start(final AudioFormat format) {
+        CaptureSession next = nextSession(format);
+        worker.submit(() -> capture(next));
+        return next;
+    }
+
+    private synchronized CaptureSession nextSession(final AudioFormat format) {
+        session = new CaptureSession(++sessionCount, format, Math.max(1, (int) format.getSampleRate() / BLOCKS_PER_SECOND));
+        return session;
+    }
+
+    /**
+     * Ends the running session after its current block, without waiting for it
+     */
+    public synchronized void stop() {
+        session = null;
+    }
+
+    @Override
+    public AudioCapture begin() {
+        start(format);
+        return this;
+    }
+
+    /**
+     * Captures on the calling thread until stopped, {@link #begin()} runs it on the capture thread
+     */
     @Override
     public void run() {
-        STOP_CAPTURE_FLAG = false;
+        capture(nextSession(format));
+    }
 
-        Mixer mixer = getMixer();
-        final AudioFormat format = new AudioFormat(getSampleRate(), getSampleSizeInBits(), NUMBER_OF_CHANNELS, SIGNED, isBigEndian());
-        final TargetDataLine line;
+    private void capture(final CaptureSession session) {
+        if (this.session != session) {
+            return; //replaced before it got to run
+        }
+        Mixer mixer = lines == null ? getMixer() : null;
+        final AudioFormat format = session.getFormat();
         try {
-            line = (TargetDataLine) mixer.getLine(
-                new DataLine.Info(TargetDataLine.class, format));
+            DataLine.Info lineInfo = new DataLine.Info(TargetDataLine.class, format);
+            final TargetDataLine line = lines != null ? lines.getLine(lineInfo)
+                : (TargetDataLine) (mixer != null ? mixer.getLine(lineInfo) : AudioSystem.getLine(lineInfo));
             line.open(format);
 
-            int bufferSize = (int) format.getSampleRate();
             int frameSize = format.getFrameSize();
-            byte buffer[] = new byte[bufferSize * frameSize];
+            if (buffer.length < session.getBlockBytes()) {
+                buffer = new byte[session.getBlockBytes()];
+            }
+            PcmDecoder decoder = PcmDecoder.forFormat(format); //Chosen once per capture session, no per-sample format checks
 
+            sessionStartFrame = framesCaptured;
+            this.format = format; //only now, the session before has handed on its last block in its own format
             line.start();
+            activeLine = line;
+            logger.info("{}: started {}", mixerName, session);
+            try {
+                while (this.session == session) {
+                    int bytesRead = 0;
+                    while (bytesRead < session.getBlockBytes() && this.session == session) {
+                        metrics.lineLevel(this, line.available(), line.getBufferSize());
+                        long readBeginTime = System.nanoTime();
+                        bytesRead += line.read(buffer, bytesRead, session.getBlockBytes() - bytesRead);
+                        metrics.getCaptureRead().record(System.nanoTime() - readBeginTime);
+                    }
+                    handOn(decoder, bytesRead - bytesRead % frameSize, format);
+                }
 
-            while (!STOP_CAPTURE_FLAG) {
-                for (int i = 0; i < frameSize; i++) {
-                    if (line.read(buffer, i * bufferSize, bufferSize) != bufferSize) {
-                        logger.error("Big/low-endian pair didn't have equal number of samples");
-                        throw new RuntimeException("Big/low-endian pair didn't have equal number of samples");
+                //Drain: what the line captured up to now still goes out, then the line is free for the next session
+                line.stop();
+                for (int available; (available = Math.min(line.available(), session.getBlockBytes())) >= frameSize; ) {
+                    int bytesRead = line.read(buffer, 0, available - available % frameSize);
+                    if (bytesRead <= 0) {
+                        break;
                     }
+                    handOn(decoder, bytesRead, format);
+                }
+            } finally {
+                activeLine = null;
+                line.close();
+                if (mixer != null) {
+                    mixer.close();
                 }
-                pushSamples(frameSize, buffer);
             }
-
-            line.close();
-            mixer.close();
-
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
+            logger.info("{}: ended session {}", mixerName, session.getId());
+
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            logger.error(mixerName + ": cannot capture " + format, e);
+            boolean stopped = false;
+            synchronized (this) {
+                if (this.session == session) {
+                    this.session = null;
+                    stopped = true;
+                }
+            }
+            if (stopped) {
+                for (Runnable listener : failureListeners) {
+                    listener.run();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("{}: capture interrupted", mixerName);
         }
     }
 
-    private void pushSamples(final int frameSize, final byte[] buffer) {
-        for (int i = 0; i < buffer.length; i += frameSize) {
-            long value = 0;
-            if (frameSize == 1) {
-                value = buffer[i];
-            } else if (frameSize == 2) {
-                value = isBigEndian() ?
-                    //TODO, do we subtract 1 before 1s complement or after???? Makes small difference to the actual value.    ~(((buffer[i] << 8) | buffer[i + 1]) - 1)  VERSUS ~((buffer[i] << 8) | buffer[i + 1]) - 1
-                    ~(((buffer[i] << 8) | buffer[i + 1]) - 1) :
-                    ~(((buffer[i + 1] << 8) | buffer[i]) - 1);
-            } else if (frameSize == 3) {
-                value = isBigEndian() ?
-                    ~(((buffer[i] << 16) | (buffer[i + 1] << 8) | buffer[i + 2]) - 1) :
-                    ~(((buffer[i + 2] << 16) | (buffer[i + 1] << 8) | buffer[i]) - 1);
-            } else if (frameSize == 4) {
-                value = isBigEndian() ?
-                    ~(((buffer[i] << 24) | (buffer[i + 1] << 16) | (buffer[i + 2] << 8) | buffer[i + 3]) - 1) :
-                    ~(((buffer[i + 3] << 24) | (buffer[i + 2] << 16) | (buffer[i + 1] << 8) | buffer[i]) - 1);
-            }
-            pushBuffer.offer(value);
+    private void handOn(final PcmDecoder decoder, final int length, final AudioFormat format) throws InterruptedException {
+        framesCaptured += length / format.getFrameSize();
+        metrics.blockCaptured(this, framesCaptured);
+        PcmSink rawSink = pcmSink;
+        if (rawSink != null) {
+            rawSink.write(buffer, 0, length, format);
         }
+        pushSamples(decoder, buffer, length);
+    }
 
+    private void pushSamples(final PcmDecoder decoder, final byte[] buffer, final int length) throws InterruptedException {
+        int numberOfSamples = length / decoder.getBytesPerSample();
+        if (samples.length < numberOfSamples) {
+            samples = new int[numberOfSamples];
+        }
+        long decodeBeginTime = System.nanoTime();
+        decoder.decode(buffer, 0, samples, 0, numberOfSamples);
+        metrics.getDecode().record(System.nanoTime() - decodeBeginTime);
+        pushBuffer.write(samples, 0, numberOfSamples);
     }
 
+    /**
+     * Stops and waits until the last block has been handed on
+     */
     @Override
     public AudioCapture shutdown() {
-        STOP_CAPTURE_FLAG = true;
+        stop();
+        worker.await(SHUTDOWN_TIMEOUT_MILLIS);
         return this;
     }
 
+    /**
+     * The mixer name, e.g. in the pipeline metrics
+     */
+    @Override
+    public String toString() {
+        return mixerName;
+    }
+
     @Override
     public Panel getOptionsPanel() {
         Panel menuPanel = new Panel();
@@ -129,25 +292,19 @@ public final class AudioCapture implements SPLModule {
         sampleRatesChoice.add("44100");
         sampleRatesChoice.add("48000");
         sampleRatesChoice.add("96000");
-        sampleRatesChoice.select(String.valueOf(getSampleRate()));
 
         Choice sampleSizeInBitsChoice = new Choice();
         sampleSizeInBitsChoice.add("8");
         sampleSizeInBitsChoice.add("16");
         sampleSizeInBitsChoice.add("24");
         //sampleSizeInBits.add("32");
-        sampleSizeInBitsChoice.select(String.valueOf(getSampleSizeInBits()));
-
-        Choice numberOfChannelsChoice = new Choice();
-        numberOfChannelsChoice.add(String.valueOf(NUMBER_OF_CHANNELS));
-        numberOfChannelsChoice.setEnabled(false);
 
         Checkbox signedCheckbox = new Checkbox("Signed");
-        signedCheckbox.setState(SIGNED);
+        signedCheckbox.setState(true);
         signedCheckbox.setEnabled(false);
 
         Checkbox bigEndianCheckbox = new Checkbox("Big-endian");
-        bigEndianCheckbox.setState(isBigEndian());
+        showFormat(format, sampleRatesChoice, sampleSizeInBitsChoice, bigEndianCheckbox);
 
 
         menuPanel.add(new Label("Sample rate:"));
@@ -156,8 +313,7 @@ public final class AudioCapture implements SPLModule {
         menuPanel.add(new Label("  Sample size:"));
         menuPanel.add(sampleSizeInBitsChoice);
 
-        menuPanel.add(new Label("  Channels:"));
-        menuPanel.add(numberOfChannelsChoice);
+        menuPanel.add(new Label("  Channels: " + format.getChannels())); //fixed at startup, see NUMBER_OF_CHANNELS
 
         menuPanel.add(signedCheckbox);
         menuPanel.add(bigEndianCheckbox);
@@ -166,43 +322,58 @@ public final class AudioCapture implements SPLModule {
         Button stopCaptureButton = new Button("Stop!");
         stopCaptureButton.setEnabled(false);
 
+        Color initialBackground = captureButton.getBackground();
+        ScheduledFuture<?>[] blink = new ScheduledFuture<?>[1]; //AWT thread only
+
+        Runnable stopped = () -> {
+            if (blink[0] != null) {
+                blink[0].cancel(false);
+                BLINKER.execute(() -> captureButton.setBackground(initialBackground)); //after the last blink
+            }
+            captureButton.setEnabled(true);
+            stopCaptureButton.setEnabled(false);
+        };
+        //A line that could not be opened ends the capture without the Stop! button
+        failureListeners.add(() -> EventQueue.invokeLater(() -> {
+            if (session == null) { //not started again in the meantime
+                stopped.run();
+            }
+        }));
+
         captureButton.addActionListener(e -> {
-            AudioCapture.SAMPLE_RATE = Integer.parseInt(sampleRatesChoice.getItem(sampleRatesChoice.getSelectedIndex()));
-            sampleRatesChoice.setEnabled(false);
-            AudioCapture.SAMPLE_SIZE_IN_BITS = Integer.parseInt(sampleSizeInBitsChoice.getItem(sampleSizeInBitsChoice.getSelectedIndex()));
-            sampleSizeInBitsChoice.setEnabled(false);
-            AudioCapture.BIG_ENDIAN = bigEndianCheckbox.getState();
-            bigEndianCheckbox.setEnabled(false);
+            AudioFormat selected = selectedFormat(sampleRatesChoice, sampleSizeInBitsChoice, bigEndianCheckbox);
+            if (selected == null) {
+                return;
+            }
             captureButton.setEnabled(false);
             stopCaptureButton.setEnabled(true);
-            new Thread(() -> {
-                try {
-                    Color initialBackground = captureButton.getBackground();
-                    while (!STOP_CAPTURE_FLAG) {
-                        captureButton.setBackground(new Color(29, 76, 122));
-                        Thread.sleep(400);
-                        captureButton.setBackground(initialBackground);
-                        Thread.sleep(400);
-                    }
-                    captureButton.setBackground(initialBackground);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-            }).start();
-
-            AudioCapture.this.begin();
+            boolean[] on = new boolean[1]; //blink thread only
+            blink[0] = BLINKER.scheduleAtFixedRate(() -> {
+                on[0] = !on[0] && session != null;
+                captureButton.setBackground(on[0] ? BLINK_COLOR : initialBackground);
+            }, 0, BLINK_MILLIS, TimeUnit.MILLISECONDS);
+            start(selected);
         });
         menuPanel.add(captureButton);
 
+        //A new format while capturing is a new session, the viewers follow at their next tick
+        ItemListener reformat = e -> {
+            if (session != null) {
+                AudioFormat selected = selectedFormat(sampleRatesChoice, sampleSizeInBitsChoice, bigEndianCheckbox);
+                if (selected != null) {
+                    start(selected);
+                } else { //keeps capturing as before
+                    showFormat(format, sampleRatesChoice, sampleSizeInBitsChoice, bigEndianCheckbox);
+                }
+            }
+        };
+        sampleRatesChoice.addItemListener(reformat);
+        sampleSizeInBitsChoice.addItemListener(reformat);
+        bigEndianCheckbox.addItemListener(reformat);
+
         stopCaptureButton.addActionListener(e -> {
-            AudioCapture.this.STOP_CAPTURE_FLAG = true;
-            sampleRatesChoice.setEnabled(true);
-            sampleSizeInBitsChoice.setEnabled(true);
-            //numberOfChannels.setEnabled(true);
-            //signed.setEnabled(true);
-            bigEndianCheckbox.setEnabled(true);
-            captureButton.setEnabled(true);
-            stopCaptureButton.setEnabled(false);
+            stop();
+            stopped.run();
         });
         menuPanel.add(stopCaptureButton);
 
@@ -210,19 +381,32 @@ public final class AudioCapture implements SPLModule {
         return menuPanel;
     }
 
-    private Mixer getMixer() {
-        Mixer mixer = null;
-        for (Mixer.Info info : AudioSystem.getMixerInfo()) {
-            logger.info(info.toString());
-            if (info.getName().equals("Built-in Microphone")) {
-                mixer = AudioSystem.getMixer(info);
-                break;
-            }
+    /**
+     * The format set in the panel, null when the mixer does not list it as a capture format
+     */
+    private AudioFormat selectedFormat(final Choice sampleRatesChoice, final Choice sampleSizeInBitsChoice, final Checkbox bigEndianCheckbox) {
+        AudioFormat selected = new AudioFormat(Integer.parseInt(sampleRatesChoice.getSelectedItem()),
+            Integer.parseInt(sampleSizeInBitsChoice.getSelectedItem()), format.getChannels(), true, bigEndianCheckbox.getState());
+        MixerRegistry.Entry entry = MixerRegistry.get().find(mixerName);
+        if (entry != null && !entry.supports(selected)) {
+            logger.warn("{} cannot capture {}", mixerName, selected);
+            return null;
         }
-        if (mixer == null) {
-            logger.error("No mixer by that name found");
-            System.exit(-1);
+        return selected;
+    }
+
+    private static void showFormat(final AudioFormat format, final Choice sampleRatesChoice, final Choice sampleSizeInBitsChoice, final Checkbox bigEndianCheckbox) {
+        sampleRatesChoice.select(String.valueOf((int) format.getSampleRate()));
+        sampleSizeInBitsChoice.select(String.valueOf(format.getSampleSizeInBits()));
+        bigEndianCheckbox.setState(format.isBigEndian());
+    }
+
+    private Mixer getMixer() {
+        MixerRegistry.Entry entry = MixerRegistry.get().find(mixerName);
+        if (entry == null) {
+            logger.warn("No capture mixer named \"{}\" found, using the default capture line", mixerName);
+            return null;
         }
-        return mixer;
+        return entry.getMixer();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package com.didi.splviewer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A module that produces decoded samples (see {@link PcmDecoder}) into a {@link SampleSink} while it runs.
+ * <p>
+ * Besides the microphone ({@link AudioCapture}) this can be a file being replayed or a signal generator, so the rest
+ * of the pipeline can run without audio hardware.
+ */
+public interface AudioSource extends SPLModule {
+
+    /**
+     * Format of the samples produced by the next (or current) run
+     */
+    AudioFormat getFormat();
+
+    /**
+     * The audio clock: frames produced so far, over all runs. Never goes back while a run lasts.
+     */
+    long getFramePosition();
+
+    /**
+     * Whether there are raw blocks for {@link #setPcmSink(PcmSink)}, a generator only has samples
+     */
+    default boolean supportsPcm() {
+        return false;
+    }
+
+    /**
+     * Also hands every raw block, before decoding, to {@code sink}, e.g. a {@link WavRecorder}. Check
+     * {@link #supportsPcm()} first.
+     */
+    default AudioSource setPcmSink(PcmSink sink) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no raw PCM to hand out");
+    }
+}
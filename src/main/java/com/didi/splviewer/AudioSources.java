@@ -0,0 +1,99 @@
+package com.didi.splviewer;
+
+import java.awt.Button;
+import java.awt.Color;
+import java.awt.Label;
+import java.awt.Panel;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Creates {@link AudioSource}s from a short textual spec, as given on the command line:
+ * <pre>
+ *   mic                                  the capture line ("Built-in Microphone" or the system default)
+ *   mic:&lt;mixer name&gt;                   a specific mixer (also takes rate=, bits=, channels= and le)
+ *   file:&lt;path&gt;[,fast][,loop]           replay a WAV file
+ *   raw:&lt;path&gt;,rate=48000,bits=24,le    replay headerless PCM (also takes channels=, fast and loop)
+ *   sine:&lt;Hz&gt;, sweep, white, pink, impulse:&lt;per second&gt;
+ *                                        generators, with optional rate=, bits=, channels=, amplitude= and fast
+ * </pre>
+ */
+public final class AudioSources {
+
+    private AudioSources() {
+    }
+
+    public static AudioSource fromSpec(final String spec, final SampleSink sink) throws IOException, UnsupportedAudioFileException {
+        String[] parts = spec.split(",");
+        String[] head = parts[0].split(":", 2);
+        String kind = head[0].trim().toLowerCase();
+        String argument = head.length > 1 ? head[1].trim() : null;
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            String[] option = parts[i].split("=", 2);
+            options.put(option[0].trim().toLowerCase(), option.length > 1 ? option[1].trim() : "true");
+        }
+        boolean realTime = !options.containsKey("fast");
+        boolean loop = options.containsKey("loop");
+        AudioFormat format = new AudioFormat(
+            Float.parseFloat(options.getOrDefault("rate", "44100")),
+            Integer.parseInt(options.getOrDefault("bits", "16")),
+            Integer.parseInt(options.getOrDefault("channels", String.valueOf(AudioCapture.NUMBER_OF_CHANNELS))), true, !options.containsKey("le"));
+        double amplitude = Double.parseDouble(options.getOrDefault("amplitude", "0.5"));
+
+        switch (kind) {
+            case "mic":
+                return argument != null ? new AudioCapture(sink, argument, format) : new AudioCapture(sink, AudioCapture.DEFAULT_MIXER_NAME, format);
+            case "file":
+                return new WavFileSource(sink, new File(argument), realTime, loop);
+            case "raw":
+                return new WavFileSource(sink, new File(argument), format, realTime, loop);
+            case "sine":
+                return new SignalGenerator(sink, SignalGenerator.Waveform.SINE, format, argument != null ? Double.parseDouble(argument) : 1000, amplitude, realTime);
+            case "sweep":
+                return new SignalGenerator(sink, SignalGenerator.Waveform.SWEEP, format, 0, amplitude, realTime);
+            case "white":
+                return new SignalGenerator(sink, SignalGenerator.Waveform.WHITE_NOISE, format, 0, amplitude, realTime);
+            case "pink":
+                return new SignalGenerator(sink, SignalGenerator.Waveform.PINK_NOISE, format, 0, amplitude, realTime);
+            case "impulse":
+                return new SignalGenerator(sink, SignalGenerator.Waveform.IMPULSE, format, argument != null ? Double.parseDouble(argument) : 1, amplitude, realTime);
+            default:
+                throw new IllegalArgumentException("Unknown audio source: " + spec);
+        }
+    }
+
+    /**
+     * Options panel for sources that have nothing to configure at runtime
+     */
+    static Panel startStopPanel(final String description, final AudioSource source) {
+        Panel menuPanel = new Panel();
+        menuPanel.add(new Label(description));
+
+        final Button startButton = new Button("Capture!");
+        final Button stopButton = new Button("Stop!");
+        stopButton.setEnabled(false);
+
+        startButton.addActionListener(e -> {
+            startButton.setEnabled(false);
+            stopButton.setEnabled(true);
+            source.begin();
+        });
+        stopButton.addActionListener(e -> {
+            source.shutdown();
+            startButton.setEnabled(true);
+            stopButton.setEnabled(false);
+        });
+        menuPanel.add(startButton);
+        menuPanel.add(stopButton);
+
+        menuPanel.setBackground(Color.YELLOW);
+        return menuPanel;
+    }
+}
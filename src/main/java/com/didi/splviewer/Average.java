@@ -3,6 +3,11 @@ package com.didi.splviewer;
 import org.junit.Assert;
 import org.junit.Test;
 
+/**
+ * @deprecated use {@link RunningMoments} for the mean of everything, or {@link ExponentialMoments} for a mean that
+ * forgets the past at a defined rate.
+ */
+@Deprecated
 public class Average {
     private long numberOfItems = 0;
     private double average = 0;
@@ -24,7 +29,8 @@ public class Average {
     //Forgetting how many items participate in this average means that the next number coming in will influence the average more.
     //In other words by forgetting we make the average mechanism favor more new statistics coming in and forget old ones.
     //Newer statistics matter more than old ones
-    //TODO Revisit, does this really do that?
+    //It does, but in steps: the next value weighs 4x more once and the weight then decays like 1/n again, with no defined
+    //time constant. ExponentialMoments forgets smoothly.
     public void forget() {
         numberOfItems /= 4;
     }
@@ -0,0 +1,461 @@
+package com.didi.splviewer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless analysis of recorded WAV files, started with {@code java -jar ... batch <file or directory>...}.
+ * <p>
+ * Every file is cut into segments of {@code segmentSeconds}, and files and segments are all tasks of one fork/join
+ * pool, so a directory of short files and one day-long recording both keep every core busy. A segment maps its part of
+ * the file a chunk at a time and runs it through the same {@link PcmDecoder} and {@link SPLMeter} as the live viewer.
+ * Each segment's meter starts one interval early, so its filters have settled when its own samples begin. Per file and
+ * channel the summary has the Leq, Lmax, Lmin and peak, the L10/L50/L90 of the 1 second Leqs, the largest sample,
+ * the number of clipped samples and the DC offset; one CSV line each.
+ */
+public final class BatchAnalyzer {
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(BatchAnalyzer.class);
+
+    static final String CSV_HEADER = "file,channel,sample_rate,bits,duration_s,leq_db,lmax_db,lmin_db,peak_db,l10_db,l50_db,l90_db,"
+        + "sample_peak_dbfs,clipped_samples,dc_offset,error";
+
+    private static final int CHUNK_BYTES = 16 << 20; //mapped at a time
+    private static final int BLOCK_FRAMES = 4096; //decoded at a time
+    private static final double INTERVAL_SECONDS = 1.0;
+
+    private final ForkJoinPool pool;
+    private final double segmentSeconds;
+    private final FrequencyWeighting frequencyWeighting;
+    private final TimeWeighting timeWeighting;
+    private final double calibrationOffset;
+
+    public BatchAnalyzer(final int threads, final double segmentSeconds, final FrequencyWeighting frequencyWeighting,
+                         final TimeWeighting timeWeighting, final double calibrationOffset) {
+        this.pool = new ForkJoinPool(threads);
+        this.segmentSeconds = segmentSeconds;
+        this.frequencyWeighting = frequencyWeighting;
+        this.timeWeighting = timeWeighting;
+        this.calibrationOffset = calibrationOffset;
+    }
+
+    /**
+     * {@code batch [-o summary.csv] <file or directory>...}, with -Dsplviewer.batch.threads, -Dsplviewer.batch.segmentSeconds,
+     * -Dsplviewer.batch.weighting (A, C or Z), -Dsplviewer.batch.timeWeighting and -Dsplviewer.calibration
+     */
+    public static void main(String[] args) throws IOException {
+        Path output = Paths.get("batch-summary.csv");
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else {
+                roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            logger.error("Usage: batch [-o summary.csv] <file or directory>...");
+            return;
+        }
+
+        BatchAnalyzer analyzer = new BatchAnalyzer(
+            Integer.getInteger("splviewer.batch.threads", Runtime.getRuntime().availableProcessors()),
+            Double.parseDouble(System.getProperty("splviewer.batch.segmentSeconds", "60")),
+            FrequencyWeighting.valueOf(System.getProperty("splviewer.batch.weighting", "A")),
+            TimeWeighting.valueOf(System.getProperty("splviewer.batch.timeWeighting", "FAST")),
+            Double.parseDouble(System.getProperty("splviewer.calibration", "0")));
+        long startTime = System.nanoTime();
+        List<Path> files = findWavFiles(roots);
+        logger.info("Analyzing {} files on {} threads", files.size(), analyzer.pool.getParallelism());
+        List<FileSummary> summaries = analyzer.analyze(files);
+        writeCsv(summaries, output);
+
+        double seconds = 0;
+        for (FileSummary summary : summaries) {
+            seconds += summary.durationSeconds;
+        }
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        logger.info("{} files, {} hours of audio in {} s ({}x real time), summary in {}", summaries.size(),
+            String.format("%.1f", seconds / 3600), String.format("%.1f", elapsed), String.format("%.0f", seconds / elapsed), output);
+        analyzer.pool.shutdown();
+    }
+
+    /**
+     * All *.wav files under the given files and directories, sorted
+     */
+    public static List<Path> findWavFiles(final List<Path> roots) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                files.addAll(walk.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().toLowerCase().endsWith(".wav"))
+                    .collect(Collectors.toList()));
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Summaries in the order of {@code files}. A file that cannot be read gets a summary with its error.
+     */
+    public List<FileSummary> analyze(final List<Path> files) {
+        List<FileTask> tasks = new ArrayList<>();
+        for (Path file : files) {
+            tasks.add(new FileTask(file));
+        }
+        @SuppressWarnings("serial") //tasks are never serialized
+        RecursiveTask<List<FileSummary>> all = new RecursiveTask<List<FileSummary>>() {
+            @Override
+            protected List<FileSummary> compute() {
+                invokeAll(tasks);
+                List<FileSummary> summaries = new ArrayList<>();
+                for (FileTask task : tasks) {
+                    summaries.add(task.join());
+                }
+                return summaries;
+            }
+        };
+        return pool.invoke(all);
+    }
+
+    public static void writeCsv(final List<FileSummary> summaries, final Path output) throws IOException {
+        try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(CSV_HEADER + "\n");
+            for (FileSummary summary : summaries) {
+                String file = "\"" + summary.file.toString().replace("\"", "\"\"") + "\"";
+                if (summary.error != null) {
+                    out.write(file + ",,,,,,,,,,,,,,,\"" + summary.error.replace("\"", "\"\"") + "\"\n");
+                    continue;
+                }
+                for (int c = 0; c < summary.channels.length; c++) {
+                    ChannelSummary channel = summary.channels[c];
+                    out.write(String.format(Locale.ROOT, "%s,%d,%.0f,%d,%.3f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%.6f,\n", file, c + 1,
+                        summary.sampleRate, summary.bits, summary.durationSeconds, channel.getLeq(), channel.lmax, channel.lmin,
+                        channel.peak, channel.getPercentile(10), channel.getPercentile(50), channel.getPercentile(90),
+                        channel.getSamplePeak(), channel.clipped, channel.getDcOffset()));
+                }
+            }
+        }
+    }
+
+    /**
+     * One file, all channels
+     */
+    public static final class FileSummary {
+        private final Path file;
+        private final double sampleRate;
+        private final int bits;
+        private final double durationSeconds;
+        private final ChannelSummary[] channels;
+        private final String error;
+
+        FileSummary(final Path file, final AudioFormat format, final double durationSeconds, final ChannelSummary[] channels) {
+            this.file = file;
+            this.sampleRate = format.getSampleRate();
+            this.bits = format.getSampleSizeInBits();
+            this.durationSeconds = durationSeconds;
+            this.channels = channels;
+            this.error = null;
+        }
+
+        FileSummary(final Path file, final String error) {
+            this.file = file;
+            this.sampleRate = 0;
+            this.bits = 0;
+            this.durationSeconds = 0;
+            this.channels = new ChannelSummary[0];
+            this.error = error;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public double getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        public ChannelSummary getChannel(final int channel) {
+            return channels[channel];
+        }
+
+        public int getChannels() {
+            return channels.length;
+        }
+
+        /**
+         * Why the file could not be analyzed, null if it was
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Statistics of one channel of a segment, merged segment by segment into those of the file. Levels in dB.
+     */
+    public static final class ChannelSummary {
+        private double[] intervalLeqs = new double[16];
+        private int intervals = 0;
+        private double lmax = Double.NEGATIVE_INFINITY;
+        private double lmin = Double.POSITIVE_INFINITY;
+        private double peak = Double.NEGATIVE_INFINITY;
+        private long samplePeak = 0;
+        private long clipped = 0;
+        private double sum = 0;
+        private long samples = 0;
+        private final long fullScale; //2^31 for 32 bit
+        private final SampleKernels.Summary blockSummary = new SampleKernels.Summary();
+        private final SampleKernels kernels = SampleKernels.get();
+
+        ChannelSummary(final int sampleSizeInBits) {
+            this.fullScale = 1L << (sampleSizeInBits - 1);
+        }
+
+        void interval(final SPLMeter meter) {
+            if (intervals == intervalLeqs.length) {
+                intervalLeqs = Arrays.copyOf(intervalLeqs, 2 * intervals);
+            }
+            intervalLeqs[intervals++] = meter.getLeq();
+            lmax = Math.max(lmax, meter.getLmax());
+            if (meter.getLmin() != Double.NEGATIVE_INFINITY) {
+                lmin = Math.min(lmin, meter.getLmin());
+            }
+            peak = Math.max(peak, meter.getPeak());
+        }
+
+        void samples(final int[] block, final int length) {
+            blockSummary.reset();
+            kernels.summarize(block, 0, length, blockSummary);
+            samplePeak = Math.max(samplePeak, blockSummary.getPeak());
+            sum += blockSummary.getSum();
+            if (blockSummary.getMax() >= fullScale - 1 || blockSummary.getMin() <= -fullScale) { //rare, count them one by one
+                for (int i = 0; i < length; i++) {
+                    if (block[i] >= fullScale - 1 || block[i] <= -fullScale) {
+                        clipped++;
+                    }
+                }
+            }
+            samples += length;
+        }
+
+        void merge(final ChannelSummary next) {
+            for (int i = 0; i < next.intervals; i++) {
+                if (intervals == intervalLeqs.length) {
+                    intervalLeqs = Arrays.copyOf(intervalLeqs, 2 * intervals);
+                }
+                intervalLeqs[intervals++] = next.intervalLeqs[i];
+            }
+            lmax = Math.max(lmax, next.lmax);
+            lmin = Math.min(lmin, next.lmin);
+            peak = Math.max(peak, next.peak);
+            samplePeak = Math.max(samplePeak, next.samplePeak);
+            clipped += next.clipped;
+            sum += next.sum;
+            samples += next.samples;
+        }
+
+        /**
+         * Energy average of the completed intervals, a last partial second is left out
+         */
+        public double getLeq() {
+            if (intervals == 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            double energy = 0;
+            for (int i = 0; i < intervals; i++) {
+                energy += Math.pow(10, intervalLeqs[i] / 10);
+            }
+            return 10 * Math.log10(energy / intervals);
+        }
+
+        public double getLmax() {
+            return lmax;
+        }
+
+        public double getLmin() {
+            return lmin;
+        }
+
+        public double getPeak() {
+            return peak;
+        }
+
+        /**
+         * Level exceeded by the 1 second Leqs {@code percent}% of the time, e.g. L90 for the background
+         */
+        public double getPercentile(final int percent) {
+            if (intervals == 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            double[] sorted = Arrays.copyOf(intervalLeqs, intervals);
+            Arrays.sort(sorted);
+            return sorted[Math.min(intervals - 1, (int) ((100 - percent) / 100.0 * intervals))];
+        }
+
+        /**
+         * Largest absolute sample in dB relative to full scale
+         */
+        public double getSamplePeak() {
+            return 20 * Math.log10(Math.max(samplePeak, 1) / (double) fullScale);
+        }
+
+        public long getClipped() {
+            return clipped;
+        }
+
+        /**
+         * Mean of the samples relative to full scale
+         */
+        public double getDcOffset() {
+            return samples == 0 ? 0 : sum / samples / fullScale;
+        }
+
+        public int getIntervals() {
+            return intervals;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class FileTask extends RecursiveTask<FileSummary> {
+        private final Path file;
+
+        FileTask(final Path file) {
+            this.file = file;
+        }
+
+        @Override
+        protected FileSummary compute() {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WavHeader header = WavHeader.read(channel);
+                AudioFormat format = header.getFormat();
+                PcmDecoder.forFormat(format); //fails on formats the live path cannot decode either
+
+                //Whole intervals per segment, so the 1 second Leqs are the same however the file is cut
+                long intervalFrames = Math.max(1, Math.round(INTERVAL_SECONDS * format.getSampleRate()));
+                long segmentFrames = Math.max(1, Math.round(segmentSeconds / INTERVAL_SECONDS)) * intervalFrames;
+                List<SegmentTask> segments = new ArrayList<>();
+                for (long frame = 0; frame < header.getFrames(); frame += segmentFrames) {
+                    segments.add(new SegmentTask(channel, header, frame, Math.min(segmentFrames, header.getFrames() - frame), intervalFrames));
+                }
+                invokeAll(segments);
+
+                ChannelSummary[] channels = new ChannelSummary[format.getChannels()];
+                for (int c = 0; c < channels.length; c++) {
+                    channels[c] = new ChannelSummary(format.getSampleSizeInBits());
+                }
+                for (SegmentTask segment : segments) {
+                    ChannelSummary[] result = segment.join();
+                    for (int c = 0; c < channels.length; c++) {
+                        channels[c].merge(result[c]);
+                    }
+                }
+                return new FileSummary(file, format, header.getFrames() / format.getSampleRate(), channels);
+            } catch (IOException | IllegalArgumentException | UncheckedIOException e) {
+                logger.warn("Cannot analyze {}: {}", file, e.getMessage());
+                return new FileSummary(file, e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class SegmentTask extends RecursiveTask<ChannelSummary[]> {
+        private final FileChannel channel;
+        private final WavHeader header;
+        private final long firstFrame;
+        private final long frames;
+        private final long prerollFrames;
+
+        SegmentTask(final FileChannel channel, final WavHeader header, final long firstFrame, final long frames, final long intervalFrames) {
+            this.channel = channel;
+            this.header = header;
+            this.firstFrame = firstFrame;
+            this.frames = frames;
+            this.prerollFrames = Math.min(firstFrame, intervalFrames);
+        }
+
+        @Override
+        protected ChannelSummary[] compute() {
+            AudioFormat format = header.getFormat();
+            int channels = format.getChannels();
+            int frameSize = format.getFrameSize();
+            PcmDecoder decoder = PcmDecoder.forFormat(format);
+            float scale = decoder.getScale();
+
+            ChannelSummary[] summaries = new ChannelSummary[channels];
+            SPLMeter[] meters = new SPLMeter[channels];
+            boolean[] counting = new boolean[channels];
+            for (int c = 0; c < channels; c++) {
+                final int ch = c;
+                summaries[c] = new ChannelSummary(format.getSampleSizeInBits());
+                meters[c] = new SPLMeter(format.getSampleRate(), frequencyWeighting, timeWeighting, INTERVAL_SECONDS, calibrationOffset)
+                    .setListener(meter -> {
+                        if (counting[ch]) {
+                            summaries[ch].interval(meter);
+                        }
+                        counting[ch] = true; //the preroll interval, if any, is over
+                    });
+                counting[c] = prerollFrames == 0;
+            }
+
+            byte[] bytes = new byte[BLOCK_FRAMES * frameSize];
+            int[] interleaved = new int[BLOCK_FRAMES * channels];
+            int[][] planar = new int[channels][BLOCK_FRAMES];
+            long chunkFrames = Math.max(1, CHUNK_BYTES / frameSize);
+            long start = firstFrame - prerollFrames;
+            long end = firstFrame + frames;
+            try {
+                for (long chunkStart = start; chunkStart < end; chunkStart += chunkFrames) {
+                    long chunkLength = Math.min(chunkFrames, end - chunkStart);
+                    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        header.getDataOffset() + chunkStart * frameSize, chunkLength * frameSize);
+                    for (long frame = chunkStart; frame < chunkStart + chunkLength; ) {
+                        int blockFrames = (int) Math.min(BLOCK_FRAMES, chunkStart + chunkLength - frame);
+                        if (frame < firstFrame) {
+                            blockFrames = (int) Math.min(blockFrames, firstFrame - frame); //the preroll ends on a block boundary
+                        }
+                        chunk.get(bytes, 0, blockFrames * frameSize);
+                        decoder.decode(bytes, 0, interleaved, 0, blockFrames * channels);
+                        for (int c = 0; c < channels; c++) {
+                            int[] samples = planar[c];
+                            for (int i = 0, s = c; i < blockFrames; i++, s += channels) {
+                                samples[i] = interleaved[s];
+                            }
+                            meters[c].process(samples, 0, blockFrames, scale);
+                            if (frame >= firstFrame) {
+                                summaries[c].samples(samples, blockFrames);
+                            }
+                        }
+                        frame += blockFrames;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return summaries;
+        }
+    }
+}
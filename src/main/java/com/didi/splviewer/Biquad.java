@@ -0,0 +1,79 @@
+package com.didi.splviewer;
+
+/**
+ * Second order IIR section, transposed direct form II, in double precision.
+ */
+final class Biquad {
+
+    private final double b0, b1, b2, a1, a2;
+    private double z1, z2;
+
+    Biquad(final double b0, final double b1, final double b2, final double a1, final double a2) {
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+    }
+
+    /**
+     * Bilinear transform of the analog section (sb0 s^2 + sb1 s + sb2) / (sa0 s^2 + sa1 s + sa2).
+     * Frequencies in the analog coefficients should already be prewarped where accuracy matters.
+     */
+    static Biquad bilinear(final double sb0, final double sb1, final double sb2,
+                           final double sa0, final double sa1, final double sa2, final double sampleRate) {
+        double k = 2 * sampleRate;
+        double kk = k * k;
+        double a0 = sa0 * kk + sa1 * k + sa2;
+        return new Biquad(
+            (sb0 * kk + sb1 * k + sb2) / a0,
+            (2 * sb2 - 2 * sb0 * kk) / a0,
+            (sb0 * kk - sb1 * k + sb2) / a0,
+            (2 * sa2 - 2 * sa0 * kk) / a0,
+            (sa0 * kk - sa1 * k + sa2) / a0);
+    }
+
+    /**
+     * Angular frequency that lands on {@code frequency} after the bilinear transform
+     */
+    static double prewarp(final double frequency, final double sampleRate) {
+        return 2 * sampleRate * Math.tan(Math.PI * frequency / sampleRate);
+    }
+
+    double process(final double x) {
+        double y = b0 * x + z1;
+        z1 = b1 * x - a1 * y + z2;
+        z2 = b2 * x - a2 * y;
+        return y;
+    }
+
+    void reset() {
+        z1 = z2 = 0;
+    }
+
+    /**
+     * Same section with the numerator scaled by {@code gain}, and fresh state
+     */
+    Biquad scaled(final double gain) {
+        return new Biquad(b0 * gain, b1 * gain, b2 * gain, a1, a2);
+    }
+
+    /**
+     * |H| at {@code frequency}
+     */
+    double magnitude(final double frequency, final double sampleRate) {
+        double w = 2 * Math.PI * frequency / sampleRate;
+        double cos1 = Math.cos(w), sin1 = Math.sin(w), cos2 = Math.cos(2 * w), sin2 = Math.sin(2 * w);
+        double numRe = b0 + b1 * cos1 + b2 * cos2, numIm = -(b1 * sin1 + b2 * sin2);
+        double denRe = 1 + a1 * cos1 + a2 * cos2, denIm = -(a1 * sin1 + a2 * sin2);
+        return Math.sqrt((numRe * numRe + numIm * numIm) / (denRe * denRe + denIm * denIm));
+    }
+
+    static double magnitude(final Biquad[] cascade, final double frequency, final double sampleRate) {
+        double magnitude = 1;
+        for (Biquad section : cascade) {
+            magnitude *= section.magnitude(frequency, sampleRate);
+        }
+        return magnitude;
+    }
+}
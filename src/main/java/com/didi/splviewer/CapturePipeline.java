@@ -0,0 +1,207 @@
+package com.didi.splviewer;
+
+import java.awt.BorderLayout;
+import java.awt.Container;
+import java.awt.GridLayout;
+import java.awt.Panel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Everything behind one {@link AudioSource}: a multicast ring per channel, a viewer per channel and a spectrum and
+ * octave bands of the first channel. Each pipeline has its own source thread and format, so several of them (e.g. two sound cards) run side
+ * by side and can be added and removed while the others keep running.
+ */
+public final class CapturePipeline {
+
+    private static final int RING_BUFFER_CAPACITY = 1 << 20; //~10 seconds at 96kHz
+    //"up/down", e.g. 1/4, to run everything behind the rings at a lower rate, see ResampledSource
+    private static final String RESAMPLE = System.getProperty("splviewer.resample", "");
+
+    private final String name;
+    private final AudioSource source; //as the consumers see it, resampled or not
+    private final MulticastRingBuffer[] channelRingBuffers;
+    private final List<MulticastRingBuffer.Reader> readers = new ArrayList<>();
+    private final List<LoudnessMonitor> monitors = new ArrayList<>();
+    private final List<StreamPublisher> publishers = new ArrayList<>();
+    private final SPLViewer[] splViewers;
+    private final SpectrumView spectrumView;
+    private final OctaveBandView bandView;
+    private volatile SampleSink firstStage;
+    private Panel view;
+
+    /**
+     * @param name          prefixed to the ring names in {@link PipelineMetrics} and to the viewer readouts, empty for
+     *                      the first pipeline
+     * @param sourceSpec    see {@link AudioSources}
+     * @param overrunPolicy BLOCK or DROP_OLDEST, for every consumer of the rings
+     */
+    public CapturePipeline(final String name, final String sourceSpec, final SampleRingBuffer.OverrunPolicy overrunPolicy)
+        throws IOException, UnsupportedAudioFileException {
+        this.name = name;
+
+        //The channel count comes from the source, which only starts writing in begin()
+        AudioSource capture = AudioSources.fromSpec(sourceSpec, (samples, offset, length) -> firstStage.write(samples, offset, length));
+        int channels = capture.getFormat().getChannels();
+
+        channelRingBuffers = new MulticastRingBuffer[channels];
+        for (int c = 0; c < channels; c++) {
+            channelRingBuffers[c] = new MulticastRingBuffer(RING_BUFFER_CAPACITY);
+        }
+        ChannelSplitter channelSplitter = new ChannelSplitter(channelRingBuffers);
+        if (RESAMPLE.isEmpty()) {
+            source = capture;
+            firstStage = channelSplitter;
+        } else {
+            ResampledSource resampled = new ResampledSource(capture, RESAMPLE, channelSplitter);
+            source = resampled;
+            firstStage = resampled;
+        }
+
+        splViewers = new SPLViewer[channels];
+        for (int c = 0; c < channels; c++) {
+            String label = channels > 1 ? "Ch " + (c + 1) : "";
+            splViewers[c] = new SPLViewer(newReader(c, "viewer-" + (c + 1), overrunPolicy), source,
+                name.isEmpty() ? label : (name + " " + label).trim());
+        }
+        spectrumView = new SpectrumView(newReader(0, "spectrum", overrunPolicy), source);
+        bandView = new OctaveBandView(newReader(0, "bands", overrunPolicy), source);
+    }
+
+    private MulticastRingBuffer.Reader newReader(final int channel, final String readerName,
+                                                 final SampleRingBuffer.OverrunPolicy overrunPolicy) {
+        String qualifiedName = name.isEmpty() ? readerName : name + "/" + readerName;
+        MulticastRingBuffer.Reader reader = channelRingBuffers[channel].newReader(qualifiedName, overrunPolicy);
+        PipelineMetrics.get().watchQueue(reader.getName(), reader);
+        readers.add(reader);
+        return reader;
+    }
+
+    /**
+     * Also detects loud events on every channel, see {@link LoudnessMonitor}. Call before {@link #begin()}.
+     */
+    public CapturePipeline detectEvents(final LoudnessEventLog log) {
+        for (int c = 0; c < channelRingBuffers.length; c++) {
+            //Never blocks the source, a lost block is accounted for on the sample clock
+            monitors.add(new LoudnessMonitor(newReader(c, "events-" + (c + 1), SampleRingBuffer.OverrunPolicy.DROP_OLDEST), source, name,
+                c + 1, log));
+        }
+        return this;
+    }
+
+    /**
+     * Also streams every channel to the clients of {@code server}, see {@link StreamPublisher}. Call before
+     * {@link #begin()}.
+     *
+     * @param firstStream stream id of the first channel, the others follow
+     */
+    public CapturePipeline stream(final StreamingServer server, final int firstStream) {
+        for (int c = 0; c < channelRingBuffers.length; c++) {
+            String label = (name.isEmpty() ? "Ch " : name + " ch ") + (c + 1);
+            publishers.add(new StreamPublisher(server, newReader(c, "stream-" + (c + 1), SampleRingBuffer.OverrunPolicy.DROP_OLDEST),
+                source, firstStream + c, label));
+        }
+        return this;
+    }
+
+    public int getChannels() {
+        return channelRingBuffers.length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AudioSource getSource() {
+        return source;
+    }
+
+    public SPLViewer[] getViewers() {
+        return splViewers.clone();
+    }
+
+    public SpectrumView getSpectrumView() {
+        return spectrumView;
+    }
+
+    public OctaveBandView getBandView() {
+        return bandView;
+    }
+
+    /**
+     * Viewers of all channels on the left, the spectrum above the bands on the right
+     */
+    public Container getView() {
+        if (view == null) {
+            Panel channelsPanel = new Panel(new GridLayout(splViewers.length, 1, 0, 2));
+            for (SPLViewer splViewer : splViewers) {
+                channelsPanel.add(splViewer.getView());
+            }
+            view = new Panel(new GridLayout(1, 2));
+            view.add(channelsPanel);
+            Panel analysisPanel = new Panel(new GridLayout(2, 1, 0, 2));
+            analysisPanel.add(spectrumView.getView());
+            analysisPanel.add(bandView.getView());
+            view.add(analysisPanel);
+        }
+        return view;
+    }
+
+    /**
+     * {@link #getView()} with the source's own options above it, for pipelines that have no control frame
+     */
+    public Container getViewWithOptions() {
+        Panel panel = new Panel(new BorderLayout());
+        panel.add(source.getOptionsPanel(), BorderLayout.NORTH);
+        panel.add(getView(), BorderLayout.CENTER);
+        return panel;
+    }
+
+    /**
+     * Starts the viewers, the source is started from its options panel. The view must be showing.
+     */
+    public CapturePipeline begin() {
+        for (SPLViewer splViewer : splViewers) {
+            splViewer.begin();
+        }
+        spectrumView.begin();
+        bandView.begin();
+        for (LoudnessMonitor monitor : monitors) {
+            monitor.begin();
+        }
+        for (StreamPublisher publisher : publishers) {
+            publisher.begin();
+        }
+        return this;
+    }
+
+    /**
+     * Stops the source and the viewers and drops the pipeline's rings from the metrics
+     */
+    public void shutdown() {
+        source.shutdown();
+        for (SPLViewer splViewer : splViewers) {
+            splViewer.shutdown();
+        }
+        spectrumView.shutdown();
+        bandView.shutdown();
+        for (LoudnessMonitor monitor : monitors) {
+            monitor.shutdown();
+        }
+        for (StreamPublisher publisher : publishers) {
+            publisher.shutdown();
+        }
+        PipelineMetrics metrics = PipelineMetrics.get();
+        for (MulticastRingBuffer.Reader reader : readers) {
+            reader.close();
+            metrics.unwatchQueue(reader.getName());
+        }
+        metrics.forget(source);
+        if (source instanceof ResampledSource) {
+            metrics.forget(((ResampledSource) source).getSource());
+        }
+    }
+}
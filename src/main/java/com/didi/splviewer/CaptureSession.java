@@ -0,0 +1,48 @@
+package com.didi.splviewer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * One run of a capture, from "Capture!" to "Stop!" or to the next format change: the format and block size it was
+ * started with. Immutable, so the capture thread, the viewers and the options panel can share it without locking; a
+ * change of format is a new session.
+ */
+public final class CaptureSession {
+
+    private final long id;
+    private final AudioFormat format;
+    private final int blockFrames;
+
+    CaptureSession(final long id, final AudioFormat format, final int blockFrames) {
+        this.id = id;
+        this.format = format;
+        this.blockFrames = blockFrames;
+    }
+
+    /**
+     * Counts the sessions of one source, starting at 1
+     */
+    public long getId() {
+        return id;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Frames read and handed on at a time, the longest a start, stop or format change waits for
+     */
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    public int getBlockBytes() {
+        return blockFrames * format.getFrameSize();
+    }
+
+    @Override
+    public String toString() {
+        return "session " + id + " (" + format + ", " + blockFrames + " frames per block)";
+    }
+}
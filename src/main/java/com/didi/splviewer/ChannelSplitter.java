@@ -0,0 +1,43 @@
+package com.didi.splviewer;
+
+/**
+ * Deinterleaves multi-channel blocks into one planar block per channel and writes each to that channel's sink, so
+ * every channel can be processed on its own thread.
+ */
+public final class ChannelSplitter implements SampleSink {
+
+    private final SampleSink[] channelSinks;
+    private int[][] planar;
+
+    public ChannelSplitter(final SampleSink... channelSinks) {
+        this.channelSinks = channelSinks.clone();
+        this.planar = new int[channelSinks.length][0];
+    }
+
+    public int getChannels() {
+        return channelSinks.length;
+    }
+
+    @Override
+    public void write(final int[] samples, final int offset, final int length) throws InterruptedException {
+        int channels = channelSinks.length;
+        if (channels == 1) {
+            channelSinks[0].write(samples, offset, length);
+            return;
+        }
+
+        int frames = length / channels;
+        if (planar[0].length < frames) {
+            planar = new int[channels][frames];
+        }
+        for (int c = 0; c < channels; c++) {
+            int[] channel = planar[c];
+            for (int f = 0, i = offset + c; f < frames; f++, i += channels) {
+                channel[f] = samples[i];
+            }
+        }
+        for (int c = 0; c < channels; c++) {
+            channelSinks[c].write(planar[c], 0, frames);
+        }
+    }
+}
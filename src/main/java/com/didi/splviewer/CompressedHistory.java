@@ -0,0 +1,230 @@
+package com.didi.splviewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The last samples of one channel, exactly, in a fraction of the memory: blocks of {@link #BLOCK_SAMPLES} are
+ * compressed with {@link LosslessBlockCodec} on a background thread as they fill up.
+ * <p>
+ * Blocks are fixed-size, so the block of a sample is found by division and any range reads back without decoding
+ * what is before it. Recently read blocks are kept decoded. A block that is still waiting for the compressor reads from
+ * its raw samples. When full, the oldest block is dropped.
+ * <p>
+ * At most {@code splviewer.history.maxPendingBlocks} (64) blocks per history wait for the compressor. When it falls
+ * further behind, new blocks are kept uncompressed instead, so the memory stays bounded by the raw size of the history
+ * (see {@link #getUncompressedBlocks()}).
+ * <p>
+ * One thread appends; reads may come from any thread.
+ */
+public final class CompressedHistory {
+
+    public static final int BLOCK_SAMPLES = 4096;
+    private static final int CACHED_BLOCKS = Integer.getInteger("splviewer.history.cachedBlocks", 64);
+    private static final int MAX_PENDING_BLOCKS = Integer.getInteger("splviewer.history.maxPendingBlocks", 64); //~5s at 48kHz
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(CompressedHistory.class);
+
+    //One low priority thread compresses for every channel, it only has to keep up on average
+    private static final ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "history-compressor");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final LosslessBlockCodec CODEC = new LosslessBlockCodec(); //compressor thread only
+
+    private static final class Block {
+        final long index;
+        int[] raw; //until compressed, guarded by the history
+        byte[] compressed;
+        boolean queued; //raw belongs to the compressor until it is done
+
+        Block(final long index, final int[] raw) {
+            this.index = index;
+            this.raw = raw;
+        }
+    }
+
+    private final Block[] blocks; //block b at b % length
+    private long blockCount = 0; //full blocks appended
+    private int[] current = new int[BLOCK_SAMPLES];
+    private int currentLength = 0;
+    private long compressedBytes = 0;
+    private long compressedBlocks = 0;
+    private final int maxPendingBlocks;
+    private final AtomicInteger pending = new AtomicInteger();
+    private long uncompressedBlocks = 0;
+    private final Queue<int[]> spare = new ConcurrentLinkedQueue<>(); //raw arrays back from the compressor
+    private final Map<Long, int[]> decoded = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, int[]> eldest) {
+            if (size() > CACHED_BLOCKS) {
+                spare.offer(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * @param maxSamples how much history to keep at least
+     */
+    public CompressedHistory(final long maxSamples) {
+        this(maxSamples, MAX_PENDING_BLOCKS);
+    }
+
+    CompressedHistory(final long maxSamples, final int maxPendingBlocks) {
+        blocks = new Block[(int) Math.max(1, (maxSamples + BLOCK_SAMPLES - 1) / BLOCK_SAMPLES)];
+        this.maxPendingBlocks = maxPendingBlocks;
+    }
+
+    public void add(final int[] samples, final int offset, final int length) {
+        for (int i = offset, end = offset + length; i < end; ) {
+            int count = Math.min(end - i, BLOCK_SAMPLES - currentLength);
+            synchronized (this) {
+                System.arraycopy(samples, i, current, currentLength, count);
+                currentLength += count;
+            }
+            i += count;
+            if (currentLength == BLOCK_SAMPLES) {
+                completeBlock();
+            }
+        }
+    }
+
+    private void completeBlock() {
+        int[] next = spare.poll();
+        boolean queue = pending.get() < maxPendingBlocks;
+        Block block;
+        synchronized (this) {
+            block = new Block(blockCount, current);
+            block.queued = queue;
+            int slot = (int) (blockCount % blocks.length);
+            Block evicted = blocks[slot];
+            if (evicted != null) {
+                if (evicted.compressed != null) {
+                    compressedBytes -= evicted.compressed.length;
+                    compressedBlocks--;
+                } else if (!evicted.queued) {
+                    uncompressedBlocks--;
+                    spare.offer(evicted.raw);
+                }
+                decoded.remove(evicted.index);
+            }
+            blocks[slot] = block;
+            blockCount++;
+            current = next != null ? next : new int[BLOCK_SAMPLES];
+            currentLength = 0;
+            if (!queue && uncompressedBlocks++ == 0) {
+                logger.warn("History compression is {} blocks behind, keeping new blocks uncompressed", maxPendingBlocks);
+            }
+        }
+        if (queue) {
+            pending.incrementAndGet();
+            COMPRESSOR.execute(() -> compress(block));
+        }
+    }
+
+    private void compress(final Block block) {
+        byte[] compressed = CODEC.encode(block.raw, 0, BLOCK_SAMPLES); //raw does not change until released below
+        synchronized (this) {
+            int[] raw = block.raw;
+            block.raw = null;
+            if (blocks[(int) (block.index % blocks.length)] == block) {
+                block.compressed = compressed;
+                compressedBytes += compressed.length;
+                compressedBlocks++;
+            }
+            spare.offer(raw);
+        }
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Copies samples {@code [from, from + length)}, clipped to what is kept
+     *
+     * @return the number of samples copied to {@code dst[offset]} on, from {@code max(from, getOldestSample())}
+     */
+    public synchronized int read(final long from, final int[] dst, final int offset, final int length) {
+        long start = Math.max(from, getOldestSample());
+        long end = Math.min(from + length, getSampleCount());
+        int copied = 0;
+        for (long sample = start; sample < end; ) {
+            long b = sample / BLOCK_SAMPLES;
+            int inBlock = (int) (sample - b * BLOCK_SAMPLES);
+            int count = (int) Math.min(end - sample, BLOCK_SAMPLES - inBlock);
+            System.arraycopy(samplesOf(b), inBlock, dst, offset + copied, count);
+            copied += count;
+            sample += count;
+        }
+        return copied;
+    }
+
+    private int[] samplesOf(final long b) {
+        if (b == blockCount) {
+            return current;
+        }
+        Block block = blocks[(int) (b % blocks.length)];
+        if (block.raw != null) {
+            return block.raw;
+        }
+        int[] samples = decoded.get(b);
+        if (samples == null) {
+            samples = spare.poll();
+            if (samples == null) {
+                samples = new int[BLOCK_SAMPLES];
+            }
+            LosslessBlockCodec.decode(block.compressed, samples, 0);
+            decoded.put(b, samples);
+        }
+        return samples;
+    }
+
+    /**
+     * Sample index just after the newest one
+     */
+    public synchronized long getSampleCount() {
+        return blockCount * BLOCK_SAMPLES + currentLength;
+    }
+
+    public synchronized long getOldestSample() {
+        return Math.max(0, blockCount - blocks.length) * BLOCK_SAMPLES;
+    }
+
+    /**
+     * Memory taken by the compressed blocks
+     */
+    public synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Average size of a compressed sample, 32 for raw ints
+     */
+    public synchronized double getBitsPerSample() {
+        return compressedBlocks == 0 ? 0 : compressedBytes * 8.0 / (compressedBlocks * BLOCK_SAMPLES);
+    }
+
+    /**
+     * Blocks waiting for the compressor
+     */
+    public int getPendingBlocks() {
+        return pending.get();
+    }
+
+    /**
+     * Blocks in the history that were kept uncompressed because too many were waiting for the compressor
+     */
+    public synchronized long getUncompressedBlocks() {
+        return uncompressedBlocks;
+    }
+}
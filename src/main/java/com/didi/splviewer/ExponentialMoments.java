@@ -0,0 +1,66 @@
+package com.didi.splviewer;
+
+/**
+ * Exponentially weighted mean and variance: every value weighs {@code 1 - exp(-1 / timeConstant)} and the older ones
+ * fade with the same factor, so a step in the input is 63% through after {@code timeConstant} values (like the time
+ * weightings of {@link TimeWeighting}).
+ * <p>
+ * The variance uses the incremental form of Finch, which stays non-negative and needs no sum of squares. The first value
+ * sets the mean, so there is no ramp up from 0. Allocation-free, not thread-safe.
+ */
+public final class ExponentialMoments {
+
+    private final double timeConstant;
+    private final double alpha;
+    private long count = 0;
+    private double mean = 0;
+    private double variance = 0;
+
+    /**
+     * @param timeConstant in values, e.g. seconds times values per second
+     */
+    public ExponentialMoments(final double timeConstant) {
+        if (!(timeConstant > 0)) {
+            throw new IllegalArgumentException("Time constant must be positive: " + timeConstant);
+        }
+        this.timeConstant = timeConstant;
+        this.alpha = 1 - Math.exp(-1 / timeConstant);
+    }
+
+    public void add(final double value) {
+        if (count++ == 0) {
+            mean = value;
+            return;
+        }
+        double difference = value - mean;
+        double increment = alpha * difference;
+        mean += increment;
+        variance = (1 - alpha) * (variance + difference * increment);
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getVariance() {
+        return variance;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTimeConstant() {
+        return timeConstant;
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        variance = 0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.didi.splviewer;
+
+/**
+ * IEC 61672 style frequency weightings, as cascades of biquads designed with the bilinear transform.
+ * <p>
+ * The analog pole frequencies are prewarped and the cascade is normalized to 0 dB at 1 kHz. That keeps the response
+ * close to the standard up to a few kHz below Nyquist, so 48 kHz and above is recommended for A/C weighting.
+ */
+public enum FrequencyWeighting {
+
+    A {
+        @Override
+        Biquad[] sections(final double sampleRate) {
+            double w1 = Biquad.prewarp(F1, sampleRate), w2 = Biquad.prewarp(F2, sampleRate);
+            double w3 = Biquad.prewarp(F3, sampleRate), w4 = Biquad.prewarp(F4, sampleRate);
+            return new Biquad[]{
+                Biquad.bilinear(1, 0, 0, 1, 2 * w1, w1 * w1, sampleRate),
+                Biquad.bilinear(1, 0, 0, 1, w2 + w3, w2 * w3, sampleRate),
+                Biquad.bilinear(0, 0, 1, 1, 2 * w4, w4 * w4, sampleRate)};
+        }
+    },
+    C {
+        @Override
+        Biquad[] sections(final double sampleRate) {
+            double w1 = Biquad.prewarp(F1, sampleRate), w4 = Biquad.prewarp(F4, sampleRate);
+            return new Biquad[]{
+                Biquad.bilinear(1, 0, 0, 1, 2 * w1, w1 * w1, sampleRate),
+                Biquad.bilinear(0, 0, 1, 1, 2 * w4, w4 * w4, sampleRate)};
+        }
+    },
+    /**
+     * No weighting
+     */
+    Z {
+        @Override
+        Biquad[] sections(final double sampleRate) {
+            return new Biquad[0];
+        }
+    };
+
+    //Pole frequencies from IEC 61672-1
+    private static final double F1 = 20.598997;
+    private static final double F2 = 107.65265;
+    private static final double F3 = 737.86223;
+    private static final double F4 = 12194.217;
+
+    abstract Biquad[] sections(double sampleRate);
+
+    /**
+     * Filter sections for this weighting at the given rate, normalized to unity gain at 1 kHz
+     */
+    Biquad[] create(final double sampleRate) {
+        Biquad[] sections = sections(sampleRate);
+        if (sections.length > 0) {
+            sections[0] = sections[0].scaled(1 / Biquad.magnitude(sections, 1000, sampleRate));
+        }
+        return sections;
+    }
+}
@@ -0,0 +1,187 @@
+package com.didi.splviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Min/max/RMS history of a sample stream at power-of-two decimation levels.
+ * <p>
+ * Level 0 summarizes every {@code 2^baseShift} samples into one entry (min, max and mean square), and every level
+ * above combines two entries of the level below, so a level-k entry covers {@code 2^(baseShift+k)} samples. Entries
+ * are appended as samples come in and live off-heap in fixed-size direct chunks that are reused round robin, so the
+ * history keeps the last {@code maxSamples} (rounded up to whole chunks) without growing the heap or copying.
+ * <p>
+ * A query picks the coarsest level whose entries still fit in one column, so each column combines at most a few
+ * entries and the cost is proportional to the number of columns, whatever the time span.
+ * <p>
+ * Not thread-safe, callers synchronize.
+ */
+final class HistoryPyramid {
+
+    private static final int ENTRY_BYTES = 12; //int min, int max, float mean square
+    private static final int MAX_CHUNK_SHIFT = 16; //64k entries, 768kB per chunk
+    private static final int TOP_LEVEL_ENTRIES = 1024;
+
+    private final int baseShift;
+    private final Level[] levels;
+    private long sampleCount = 0;
+
+    //Level 0 entry in progress
+    private int partialSamples = 0;
+    private final SampleKernels.Summary partial = new SampleKernels.Summary();
+    private final SampleKernels kernels = SampleKernels.get();
+
+    /**
+     * @param baseShift  level 0 entries cover {@code 2^baseShift} samples
+     * @param maxSamples how much history to keep at least
+     */
+    HistoryPyramid(final int baseShift, final long maxSamples) {
+        this.baseShift = baseShift;
+        int levelCount = 1;
+        while ((maxSamples >> (baseShift + levelCount)) > TOP_LEVEL_ENTRIES) {
+            levelCount++;
+        }
+        levels = new Level[levelCount];
+        for (int k = 0; k < levelCount; k++) {
+            levels[k] = new Level((maxSamples >> (baseShift + k)) + 1);
+        }
+    }
+
+    void add(final int[] samples, final int offset, final int length) {
+        int entrySize = 1 << baseShift;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int count = Math.min(end - i, entrySize - partialSamples);
+            kernels.summarize(samples, i, count, partial);
+            i += count;
+            partialSamples += count;
+            sampleCount += count;
+
+            if (partialSamples == entrySize) {
+                append(0, partial.getMin(), partial.getMax(), (float) (partial.getSumOfSquares() / entrySize));
+                partialSamples = 0;
+                partial.reset();
+            }
+        }
+    }
+
+    //Every second entry of a level completes one entry of the level above
+    private void append(final int level, final int min, final int max, final float meanSquare) {
+        Level current = levels[level];
+        long index = current.append(min, max, meanSquare);
+        if ((index & 1) == 1 && level + 1 < levels.length) { //the ring always keeps the previous entry
+            long previous = index - 1;
+            append(level + 1, Math.min(min, current.min(previous)), Math.max(max, current.max(previous)),
+                (meanSquare + current.meanSquare(previous)) / 2);
+        }
+    }
+
+    /**
+     * Reduces {@code columns} consecutive ranges of {@code samplesPerColumn} samples, starting at sample {@code start},
+     * to one min/max/mean square each. Columns outside the retained history get {@code min > max}. Ranges are rounded
+     * to whole entries of the chosen level.
+     */
+    void query(final double start, final double samplesPerColumn, final int columns,
+               final int[] min, final int[] max, final float[] meanSquare) {
+        int level = 0;
+        while (level + 1 < levels.length && (1L << (baseShift + level + 1)) <= samplesPerColumn) {
+            level++;
+        }
+        Level source = levels[level];
+        int shift = baseShift + level;
+        long oldest = source.getOldest(), count = source.getCount();
+
+        for (int c = 0; c < columns; c++) {
+            long first = Math.max(oldest, (long) Math.floor((start + c * samplesPerColumn) / (1L << shift)));
+            long last = Math.min(count, (long) Math.ceil((start + (c + 1) * samplesPerColumn) / (1L << shift)));
+            int columnMin = Integer.MAX_VALUE, columnMax = Integer.MIN_VALUE;
+            double sum = 0;
+            for (long e = first; e < last; e++) {
+                columnMin = Math.min(columnMin, source.min(e));
+                columnMax = Math.max(columnMax, source.max(e));
+                sum += source.meanSquare(e);
+            }
+            min[c] = columnMin;
+            max[c] = columnMax;
+            meanSquare[c] = last > first ? (float) (sum / (last - first)) : 0f;
+        }
+    }
+
+    /**
+     * Total number of samples added, i.e. the sample index just after the newest one
+     */
+    long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Index of the oldest sample still in the history
+     */
+    long getOldestSample() {
+        return levels[0].getOldest() << baseShift;
+    }
+
+    int getLevels() {
+        return levels.length;
+    }
+
+    /**
+     * One level, stored in a ring of direct chunks. Entry e lives in chunk (e / chunkEntries) modulo the ring size.
+     */
+    private static final class Level {
+        private final int chunkShift;
+        private final int chunkMask;
+        private final ByteBuffer[] chunks;
+        private long count = 0;
+
+        Level(final long maxEntries) {
+            int shift = 64 - Long.numberOfLeadingZeros(Math.max(1, maxEntries - 1)); //ceil(log2)
+            chunkShift = Math.min(MAX_CHUNK_SHIFT, shift);
+            chunkMask = (1 << chunkShift) - 1;
+            //One spare chunk, so maxEntries are still there right after the oldest chunk is recycled
+            chunks = new ByteBuffer[(int) ((maxEntries + chunkMask) >> chunkShift) + 1];
+        }
+
+        long append(final int min, final int max, final float meanSquare) {
+            long index = count;
+            int slot = (int) ((index >> chunkShift) % chunks.length);
+            if (chunks[slot] == null) {
+                chunks[slot] = ByteBuffer.allocateDirect((1 << chunkShift) * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+            }
+            int position = (int) (index & chunkMask) * ENTRY_BYTES;
+            chunks[slot].putInt(position, min).putInt(position + 4, max).putFloat(position + 8, meanSquare);
+            count++;
+            return index;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getOldest() {
+            long firstChunk = Math.max(0, ((count - 1) >> chunkShift) - chunks.length + 1);
+            return count == 0 ? 0 : firstChunk << chunkShift;
+        }
+
+        int min(final long index) {
+            return chunk(index).getInt(position(index));
+        }
+
+        int max(final long index) {
+            return chunk(index).getInt(position(index) + 4);
+        }
+
+        float meanSquare(final long index) {
+            return chunk(index).getFloat(position(index) + 8);
+        }
+
+        private ByteBuffer chunk(final long index) {
+            return chunks[(int) ((index >> chunkShift) % chunks.length)];
+        }
+
+        private int position(final long index) {
+            return (int) (index & chunkMask) * ENTRY_BYTES;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of durations in nanoseconds.
+ * <p>
+ * Buckets are logarithmic with four sub-buckets per power of two, so a percentile is off by at most 25% and recording
+ * is a couple of bit operations and one atomic increment, cheap enough for the capture thread. Values from 2^40 ns
+ * (18 minutes) up share the last bucket. Any thread may record and read.
+ */
+public final class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(final String name) {
+        this.name = name;
+    }
+
+    public void record(final long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long previousMax;
+        while (value > (previousMax = max.get()) && !max.compareAndSet(previousMax, value)) {
+            //lost the race, try again
+        }
+    }
+
+    //Values below SUB_BUCKETS get a bucket each, above that the top bits pick the power of two and the sub-bucket
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude >= MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    //Smallest value that falls into the bucket after this one
+    static long bucketUpperBound(final int bucket) {
+        int next = bucket + 1;
+        if (next < SUB_BUCKETS) {
+            return next;
+        }
+        int magnitude = next / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + next % SUB_BUCKETS) << (magnitude - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param quantile in [0, 1]
+     * @return upper bound of the bucket holding the quantile, in nanoseconds, never more than the maximum seen
+     */
+    public long getValueAtQuantile(final double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(b), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / (total * 1000.0);
+    }
+
+    @Override
+    public double getP50Micros() {
+        return getValueAtQuantile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return getValueAtQuantile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return getValueAtQuantile(0.999) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1000.0;
+    }
+
+    /**
+     * Not atomic with respect to concurrent recording, a few values may survive or get lost
+     */
+    @Override
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts.set(b, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s n=%d mean=%.0fus p50=%.0fus p99=%.0fus max=%.0fus",
+            name, getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+    }
+}
@@ -0,0 +1,23 @@
+package com.didi.splviewer;
+
+/**
+ * JMX view of a {@link LatencyHistogram}, registered by {@link PipelineMetrics}.
+ */
+public interface LatencyHistogramMXBean {
+
+    String getName();
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,219 @@
+package com.didi.splviewer;
+
+import java.util.Arrays;
+
+/**
+ * Lossless codec for one block of decoded samples, in the spirit of FLAC: each block is predicted with the fixed
+ * polynomial predictor (order 0 to 4) that leaves the smallest residuals, and the residuals are Rice coded with a
+ * parameter per partition. Every block decodes on its own.
+ * <p>
+ * Layout, MSB first: 16 bit length, 3 bit order, the first {@code order} samples in 32 bits, then per partition of
+ * {@link #PARTITION} samples (less the warm-up in the first) a 5 bit Rice parameter followed by the zigzagged
+ * residuals. A residual whose quotient would take 31 or more bits in unary is escaped as 31 ones and 32 raw bits.
+ * <p>
+ * Encoding is not thread-safe (it reuses its scratch), {@link #decode(byte[], int[], int)} is.
+ */
+final class LosslessBlockCodec {
+
+    static final int MAX_LENGTH = 0xFFFF;
+    static final int PARTITION = 256;
+    private static final int MAX_ORDER = 4;
+    private static final int ESCAPE = 31;
+
+    private final long[] residuals = new long[MAX_LENGTH];
+    private final BitWriter writer = new BitWriter();
+
+    /**
+     * @return the encoded block, sized to fit
+     */
+    byte[] encode(final int[] samples, final int offset, final int length) {
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Block of " + length + " samples, at most " + MAX_LENGTH);
+        }
+        int order = bestOrder(samples, offset, length);
+        writer.reset();
+        writer.write(length, 16);
+        writer.write(order, 3);
+        for (int i = 0; i < order; i++) {
+            writer.write(samples[offset + i] & 0xFFFFFFFFL, 32);
+        }
+        for (int i = order; i < length; i++) {
+            residuals[i] = zigzag(residual(samples, offset + i, order));
+        }
+        for (int p = 0; p * PARTITION < length; p++) {
+            int start = Math.max(order, p * PARTITION), end = Math.min(length, (p + 1) * PARTITION); //the first one has the warm-up
+            int k = riceParameter(residuals, start, end);
+            writer.write(k, 5);
+            for (int i = start; i < end; i++) {
+                writeRice(residuals[i], k);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return the number of samples decoded into {@code dst}
+     */
+    static int decode(final byte[] block, final int[] dst, final int offset) {
+        BitReader reader = new BitReader(block);
+        int length = (int) reader.read(16);
+        int order = (int) reader.read(3);
+        for (int i = 0; i < order; i++) {
+            dst[offset + i] = (int) reader.read(32);
+        }
+        for (int p = 0; p * PARTITION < length; p++) {
+            int start = Math.max(order, p * PARTITION), end = Math.min(length, (p + 1) * PARTITION);
+            int k = (int) reader.read(5);
+            for (int i = start; i < end; i++) {
+                long u = readRice(reader, k);
+                long e = (u >>> 1) ^ -(u & 1);
+                dst[offset + i] = (int) (e + prediction(dst, offset + i, order));
+            }
+        }
+        return length;
+    }
+
+    //Lowest sum of magnitudes among the orders whose residuals all fit in 32 bits
+    private static int bestOrder(final int[] samples, final int offset, final int length) {
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for (int order = 0; order <= Math.min(MAX_ORDER, length); order++) {
+            long cost = 0;
+            boolean fits = true;
+            for (int i = offset + order, end = offset + length; i < end; i++) {
+                long e = residual(samples, i, order);
+                if (e > Integer.MAX_VALUE || e < Integer.MIN_VALUE) {
+                    fits = false;
+                    break;
+                }
+                cost += Math.abs(e);
+            }
+            if (fits && cost < bestCost) {
+                best = order;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    private static long residual(final int[] x, final int i, final int order) {
+        return x[i] - prediction(x, i, order);
+    }
+
+    private static long prediction(final int[] x, final int i, final int order) {
+        switch (order) {
+            case 0:
+                return 0;
+            case 1:
+                return x[i - 1];
+            case 2:
+                return 2L * x[i - 1] - x[i - 2];
+            case 3:
+                return 3L * x[i - 1] - 3L * x[i - 2] + x[i - 3];
+            default:
+                return 4L * x[i - 1] - 6L * x[i - 2] + 4L * x[i - 3] - x[i - 4];
+        }
+    }
+
+    private static long zigzag(final long e) {
+        return (e << 1) ^ (e >> 63);
+    }
+
+    //2^k close to the mean, which is near optimal for a geometric distribution
+    private static int riceParameter(final long[] values, final int start, final int end) {
+        if (end <= start) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += values[i];
+        }
+        long mean = sum / (end - start);
+        return mean == 0 ? 0 : Math.min(30, 63 - Long.numberOfLeadingZeros(mean));
+    }
+
+    private void writeRice(final long u, final int k) {
+        long q = u >>> k;
+        if (q >= ESCAPE) {
+            writer.write((1L << ESCAPE) - 1, ESCAPE);
+            writer.write(u, 32);
+            return;
+        }
+        writer.write(((1L << q) - 1) << 1, (int) q + 1); //q ones and a zero
+        if (k > 0) {
+            writer.write(u & ((1L << k) - 1), k);
+        }
+    }
+
+    private static long readRice(final BitReader reader, final int k) {
+        int q = reader.countOnes(ESCAPE);
+        if (q == ESCAPE) {
+            return reader.read(32);
+        }
+        return k == 0 ? q : ((long) q << k) | reader.read(k);
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes = new byte[4096];
+        private int length;
+        private long buffer;
+        private int bits;
+
+        void reset() {
+            length = 0;
+            buffer = 0;
+            bits = 0;
+        }
+
+        //count <= 32
+        void write(final long value, final int count) {
+            buffer = (buffer << count) | (value & ((1L << count) - 1));
+            bits += count;
+            while (bits >= 8) {
+                bits -= 8;
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, 2 * length);
+                }
+                bytes[length++] = (byte) (buffer >>> bits);
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bits > 0) {
+                write(0, 8 - bits);
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private int position;
+        private long buffer;
+        private int bits;
+
+        BitReader(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        //count <= 32
+        long read(final int count) {
+            while (bits < count) {
+                buffer = (buffer << 8) | (position < bytes.length ? bytes[position] & 0xFF : 0);
+                position++;
+                bits += 8;
+            }
+            bits -= count;
+            return (buffer >>> bits) & ((1L << count) - 1);
+        }
+
+        //Ones up to the next zero, which is consumed, or up to max ones
+        int countOnes(final int max) {
+            int ones = 0;
+            while (ones < max && read(1) == 1) {
+                ones++;
+            }
+            return ones;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.didi.splviewer;
+
+/**
+ * Streaming detector of loud events: stretches of the signal whose smoothed level goes above a trigger threshold.
+ * <p>
+ * The squared signal is smoothed with separate attack and release time constants (like {@link TimeWeighting}, but
+ * short, so an event is detected a few milliseconds after it starts). An event starts when the level reaches the
+ * trigger level and ends when it falls below the trigger level minus the hysteresis, so a level hovering around the
+ * threshold is one event and not many. Events shorter than the minimum duration are dropped. Times are frames of the
+ * sample clock, counted from {@code startFrame}.
+ * <p>
+ * While nothing is going on a block is only scanned for its peak and mean square: when even the peak stays below the
+ * trigger level the smoothed level cannot reach it, and the level is advanced once per block instead of once per
+ * sample. Levels are relative to digital full scale plus the calibration offset, as in {@link SPLMeter}. Not
+ * thread-safe, meant to be driven by a single consumer thread.
+ */
+public final class LoudnessEventDetector {
+
+    public interface Listener {
+        /**
+         * The level has been above the threshold for the minimum duration, called on the processing thread
+         */
+        default void eventStarted(long startFrame) {
+        }
+
+        /**
+         * The level fell below the release level, called on the processing thread
+         */
+        void eventCompleted(Event event);
+    }
+
+    /**
+     * A completed event. Peak and energy cover the frames from the trigger to the release.
+     */
+    public static final class Event {
+        private final long startFrame;
+        private final long endFrame;
+        private final double sampleRate;
+        private final double peak;
+        private final double energy;
+        private final double calibrationOffset;
+
+        Event(final long startFrame, final long endFrame, final double sampleRate, final double peak, final double energy,
+              final double calibrationOffset) {
+            this.startFrame = startFrame;
+            this.endFrame = endFrame;
+            this.sampleRate = sampleRate;
+            this.peak = peak;
+            this.energy = energy;
+            this.calibrationOffset = calibrationOffset;
+        }
+
+        public long getStartFrame() {
+            return startFrame;
+        }
+
+        /**
+         * First frame after the event
+         */
+        public long getEndFrame() {
+            return endFrame;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public double getStartSeconds() {
+            return startFrame / sampleRate;
+        }
+
+        public double getDurationSeconds() {
+            return (endFrame - startFrame) / sampleRate;
+        }
+
+        /**
+         * Largest absolute sample, 1 is full scale
+         */
+        public double getPeak() {
+            return peak;
+        }
+
+        /**
+         * Sum of the squared samples over the event in full scale squared times seconds
+         */
+        public double getEnergy() {
+            return energy;
+        }
+
+        public double getPeakLevel() {
+            return 20 * Math.log10(Math.max(peak, MIN_AMPLITUDE)) + calibrationOffset;
+        }
+
+        /**
+         * Sound exposure level, the level of a 1 second signal with the same energy
+         */
+        public double getExposureLevel() {
+            return 10 * Math.log10(Math.max(energy, MIN_AMPLITUDE * MIN_AMPLITUDE)) + calibrationOffset;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3fs +%.3fs, peak %.1fdB, SEL %.1fdB", getStartSeconds(), getDurationSeconds(), getPeakLevel(),
+                getExposureLevel());
+        }
+    }
+
+    private static final double MIN_AMPLITUDE = 1e-10; //-200dB
+
+    private enum State {IDLE, PENDING, ACTIVE}
+
+    private final double sampleRate;
+    private final double triggerMeanSquare;
+    private final double releaseMeanSquare;
+    private final double attackCoefficient, releaseCoefficient;
+    private final double attackLogDecay, releaseLogDecay; //log(1 - coefficient), to advance the level over a whole block
+    private final long minimumLength;
+    private final double calibrationOffset;
+    private Listener listener;
+
+    //Running state
+    private double level = 0; //smoothed mean square
+    private final SampleKernels.Summary block = new SampleKernels.Summary();
+    private final SampleKernels kernels = SampleKernels.get();
+    private long frame;
+    private State state = State.IDLE;
+
+    //Event in progress
+    private long eventStart;
+    private double eventPeak;
+    private double eventSumOfSquares;
+
+    /**
+     * @param triggerLevel      dB, including the calibration offset
+     * @param hysteresis        dB below the trigger level at which an event ends
+     * @param attackSeconds     time constant of the smoothing while the level rises
+     * @param releaseSeconds    time constant while it falls
+     * @param minimumSeconds    shorter events are not reported
+     * @param calibrationOffset dB SPL at digital full scale, 0 for dB relative to full scale
+     * @param startFrame        sample clock at the first sample processed
+     */
+    public LoudnessEventDetector(final double sampleRate, final double triggerLevel, final double hysteresis, final double attackSeconds,
+                                 final double releaseSeconds, final double minimumSeconds, final double calibrationOffset,
+                                 final long startFrame) {
+        if (hysteresis < 0) {
+            throw new IllegalArgumentException("Negative hysteresis: " + hysteresis);
+        }
+        this.sampleRate = sampleRate;
+        this.triggerMeanSquare = Math.pow(10, (triggerLevel - calibrationOffset) / 10);
+        this.releaseMeanSquare = Math.pow(10, (triggerLevel - hysteresis - calibrationOffset) / 10);
+        this.attackCoefficient = 1 - Math.exp(-1 / (attackSeconds * sampleRate));
+        this.releaseCoefficient = 1 - Math.exp(-1 / (releaseSeconds * sampleRate));
+        this.attackLogDecay = -1 / (attackSeconds * sampleRate);
+        this.releaseLogDecay = -1 / (releaseSeconds * sampleRate);
+        this.minimumLength = Math.max(1, Math.round(minimumSeconds * sampleRate));
+        this.calibrationOffset = calibrationOffset;
+        this.frame = startFrame;
+    }
+
+    public LoudnessEventDetector setListener(final Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @param scale factor that maps the samples to [-1, 1), see {@link PcmDecoder#getScale()}
+     */
+    public void process(final int[] samples, final int offset, final int length, final float scale) {
+        if (state == State.IDLE && processQuietBlock(samples, offset, length, scale)) {
+            return;
+        }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            processSample(samples[i] * (double) scale);
+        }
+    }
+
+    //The whole block in one step if it cannot trigger, false if it has to go sample by sample
+    private boolean processQuietBlock(final int[] samples, final int offset, final int length, final float scale) {
+        if (length == 0) {
+            return true;
+        }
+        block.reset();
+        kernels.summarize(samples, offset, length, block);
+        double sumOfSquares = block.getSumOfSquares();
+        double scaledPeak = block.getPeak() * (double) scale;
+        if (scaledPeak * scaledPeak >= triggerMeanSquare) {
+            return false;
+        }
+        //The level ends up between where it was and the block's mean square, close enough to start the next block from
+        double meanSquare = sumOfSquares * scale * scale / length;
+        double logDecay = meanSquare > level ? attackLogDecay : releaseLogDecay;
+        level = meanSquare + (level - meanSquare) * Math.exp(logDecay * length);
+        frame += length;
+        return true;
+    }
+
+    private void processSample(final double x) {
+        double square = x * x;
+        double y = level;
+        y += (square > y ? attackCoefficient : releaseCoefficient) * (square - y);
+        level = y;
+
+        if (state == State.IDLE) {
+            if (y >= triggerMeanSquare) {
+                state = State.PENDING;
+                eventStart = frame;
+                eventPeak = 0;
+                eventSumOfSquares = 0;
+            }
+        } else if (y < releaseMeanSquare) {
+            if (state == State.ACTIVE && listener != null) {
+                listener.eventCompleted(new Event(eventStart, frame, sampleRate, Math.sqrt(eventPeak), eventSumOfSquares / sampleRate,
+                    calibrationOffset));
+            }
+            state = State.IDLE;
+        }
+
+        if (state != State.IDLE) {
+            eventSumOfSquares += square;
+            if (square > eventPeak) {
+                eventPeak = square;
+            }
+            if (state == State.PENDING && frame + 1 - eventStart >= minimumLength) {
+                state = State.ACTIVE;
+                if (listener != null) {
+                    listener.eventStarted(eventStart);
+                }
+            }
+        }
+        frame++;
+    }
+
+    /**
+     * Moves the sample clock over frames that were lost before they reached the detector. An event in progress ends
+     * there.
+     */
+    public void skip(final long frames) {
+        if (state == State.ACTIVE && listener != null) {
+            listener.eventCompleted(new Event(eventStart, frame, sampleRate, Math.sqrt(eventPeak), eventSumOfSquares / sampleRate,
+                calibrationOffset));
+        }
+        state = State.IDLE;
+        level = 0;
+        frame += frames;
+    }
+
+    /**
+     * Current smoothed level in dB
+     */
+    public double getLevel() {
+        return 10 * Math.log10(Math.max(level, MIN_AMPLITUDE * MIN_AMPLITUDE)) + calibrationOffset;
+    }
+
+    /**
+     * Sample clock of the next frame to be processed
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    public boolean isEventActive() {
+        return state == State.ACTIVE;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+}
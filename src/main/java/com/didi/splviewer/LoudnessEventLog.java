@@ -0,0 +1,93 @@
+package com.didi.splviewer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only file of {@link LoudnessEventDetector.Event}s, one record per event, written as soon as the event ends so
+ * a crash loses nothing that was reported.
+ * <p>
+ * A file ending in ".csv" gets a header line and one line per event. Any other file is binary: the magic "SPLEVT01"
+ * once, then per event {@code writeUTF(source) int channel, long startFrame, long endFrame, float sampleRate,
+ * long startMillis, double peak, double energy}, big-endian. An existing file is appended to. Thread-safe, several
+ * detectors can share one log.
+ */
+public final class LoudnessEventLog implements Closeable {
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(LoudnessEventLog.class);
+
+    static final String CSV_HEADER = "source,channel,start_frame,end_frame,sample_rate,start_time,duration_s,peak_db,sel_db,energy";
+    static final byte[] BINARY_MAGIC = "SPLEVT01".getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+    private final boolean csv;
+    private final FileChannel channel;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+
+    public LoudnessEventLog(final File file) throws IOException {
+        this.file = file;
+        this.csv = file.getName().toLowerCase().endsWith(".csv");
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            write(csv ? (CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8) : BINARY_MAGIC);
+        }
+        logger.info("Logging loud events to {}", file);
+    }
+
+    /**
+     * @param source      name of the source, empty for the first one
+     * @param startMillis wall clock at the start of the event, an estimate from the sample clock
+     */
+    public synchronized void append(final String source, final int channelNumber, final LoudnessEventDetector.Event event,
+                                    final long startMillis) throws IOException {
+        if (csv) {
+            SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+            String line = String.format(Locale.ROOT, "\"%s\",%d,%d,%d,%.0f,%s,%.4f,%.2f,%.2f,%.6g\n",
+                source.replace("\"", "\"\""), channelNumber, event.getStartFrame(), event.getEndFrame(), event.getSampleRate(),
+                time.format(new Date(startMillis)), event.getDurationSeconds(), event.getPeakLevel(), event.getExposureLevel(),
+                event.getEnergy());
+            write(line.getBytes(StandardCharsets.UTF_8));
+        } else {
+            record.reset();
+            recordOut.writeUTF(source);
+            recordOut.writeInt(channelNumber);
+            recordOut.writeLong(event.getStartFrame());
+            recordOut.writeLong(event.getEndFrame());
+            recordOut.writeFloat((float) event.getSampleRate());
+            recordOut.writeLong(startMillis);
+            recordOut.writeDouble(event.getPeak());
+            recordOut.writeDouble(event.getEnergy());
+            write(record.toByteArray());
+        }
+    }
+
+    private void write(final byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
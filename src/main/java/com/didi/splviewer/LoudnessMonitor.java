@@ -0,0 +1,100 @@
+package com.didi.splviewer;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a {@link LoudnessEventDetector} over one channel on its own thread and appends the events to a
+ * {@link LoudnessEventLog}. Has no view, it keeps running while nobody looks.
+ */
+public final class LoudnessMonitor implements SPLModule {
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(LoudnessMonitor.class);
+
+    private static final double CALIBRATION_OFFSET = Double.parseDouble(System.getProperty("splviewer.calibration", "0")); //dB SPL at digital full scale
+    private static final double TRIGGER_LEVEL = Double.parseDouble(System.getProperty("splviewer.events.thresholdDb",
+        String.valueOf(CALIBRATION_OFFSET - 20)));
+    private static final double HYSTERESIS = Double.parseDouble(System.getProperty("splviewer.events.hysteresisDb", "3"));
+    private static final double ATTACK_SECONDS = Long.getLong("splviewer.events.attackMillis", 5) / 1000.0;
+    private static final double RELEASE_SECONDS = Long.getLong("splviewer.events.releaseMillis", 50) / 1000.0;
+    private static final double MINIMUM_SECONDS = Long.getLong("splviewer.events.minMillis", 50) / 1000.0;
+
+    private final SampleReader pullBuffer;
+    private final AudioSource source;
+    private final String sourceName;
+    private final int channel;
+    private final LoudnessEventLog log;
+    private final int[] samples = new int[4096];
+    private final long startFrame;
+    private volatile boolean EXIT_FLAG = false;
+    private volatile Thread runner; //blocked in read() while its source is stopped
+
+    /**
+     * @param pullBuffer one channel of {@code source}, read from the source's first frame on
+     * @param channel    1 based, for the log
+     */
+    public LoudnessMonitor(final SampleReader pullBuffer, final AudioSource source, final String sourceName, final int channel,
+                           final LoudnessEventLog log) {
+        this.pullBuffer = pullBuffer;
+        this.source = source;
+        this.sourceName = sourceName;
+        this.channel = channel;
+        this.log = log;
+        this.startFrame = source.getFramePosition();
+    }
+
+    @Override
+    public void run() {
+        runner = Thread.currentThread();
+        LoudnessEventDetector detector = null;
+        long dropped = 0;
+
+        while (!EXIT_FLAG) {
+            try {
+                int read = pullBuffer.read(samples, 0, samples.length);
+                AudioFormat format = source.getFormat();
+                if (detector == null || detector.getSampleRate() != format.getSampleRate()) {
+                    detector = new LoudnessEventDetector(format.getSampleRate(), TRIGGER_LEVEL, HYSTERESIS, ATTACK_SECONDS,
+                        RELEASE_SECONDS, MINIMUM_SECONDS, CALIBRATION_OFFSET, detector == null ? startFrame : detector.getFrame())
+                        .setListener(this::eventCompleted);
+                }
+                //Samples the ring dropped still count on the sample clock
+                long droppedNow = pullBuffer.getOverrunStats().getDroppedSamples();
+                if (droppedNow != dropped) {
+                    detector.skip(droppedNow - dropped);
+                    dropped = droppedNow;
+                }
+                detector.process(samples, 0, read, 1f / (1L << (format.getSampleSizeInBits() - 1)));
+            } catch (InterruptedException e) {
+                if (!EXIT_FLAG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void eventCompleted(final LoudnessEventDetector.Event event) {
+        long startMillis = System.currentTimeMillis()
+            - Math.round((source.getFramePosition() - event.getStartFrame()) * 1000 / event.getSampleRate());
+        logger.info("{} ch {}: loud event at {}", sourceName.isEmpty() ? "Source" : sourceName, channel, event);
+        try {
+            log.append(sourceName, channel, event, startMillis);
+        } catch (IOException e) {
+            logger.error("Cannot write to " + log.getFile(), e);
+        }
+    }
+
+    @Override
+    public LoudnessMonitor shutdown() {
+        EXIT_FLAG = true;
+        Thread thread = runner;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return this;
+    }
+}
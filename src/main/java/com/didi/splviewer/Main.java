@@ -1,15 +1,27 @@
 package com.didi.splviewer;
 
 import java.awt.Button;
+import java.awt.Choice;
 import java.awt.Color;
+import java.awt.EventQueue;
 import java.awt.Frame;
+import java.awt.GridLayout;
+import java.awt.Label;
 import java.awt.Panel;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,23 +32,87 @@ public final class Main {
 
     private static Logger logger = (Logger) LoggerFactory.getLogger(Main.class);
 
-    private final AudioCapture audioCapture;
-    private final SPLViewer splViewer;
+    private final CapturePipeline pipeline;
+    private final List<CapturePipeline> addedPipelines = new ArrayList<>(); //AWT thread only
+    private final AudioSource audioCapture;
+    private final WavRecorder recorder;
+    private final LoudnessEventLog eventLog;
+    private final StreamingServer server;
+    private int nextStream = 0; //stream id of the next channel that is streamed
+    private final SPLViewer[] splViewers;
+    private final SpectrumView spectrumView;
+    private final OctaveBandView bandView;
     private final Frame mainFrame;
     private final Frame viewerControlFrame;
+    private final Frame spectrumControlFrame;
+    private final Frame bandControlFrame;
     private final Frame audioCaptureControlFrame;
     private final Frame applicationControlFrame;
 
-    public static void main(String[] args) throws IOException {
-        new Main();
+    /**
+     * @param args optional audio source spec, see {@link AudioSources}. Defaults to the microphone. {@code batch ...}
+     *             analyzes recordings without a GUI, see {@link BatchAnalyzer}, {@code harness ...} measures the
+     *             pipeline's latency and throughput without one, see {@link PipelineHarness}.
+     */
+    public static void main(String[] args) throws IOException, UnsupportedAudioFileException, InterruptedException {
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchAnalyzer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("harness")) {
+            PipelineHarness.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        new Main(args.length > 0 ? args[0] : "mic");
     }
 
-    private Main() throws IOException {
+    private Main(final String sourceSpec) throws IOException, UnsupportedAudioFileException {
+
+        //-Dsplviewer.metrics.logSeconds=<n> also logs the metrics that are always available over JMX
+        PipelineMetrics metrics = PipelineMetrics.get().register();
+        metrics.startLogging(Long.getLong("splviewer.metrics.logSeconds", 0));
+
+        pipeline = new CapturePipeline("", sourceSpec, overrunPolicy(sourceSpec));
+        audioCapture = pipeline.getSource();
+        splViewers = pipeline.getViewers();
+        spectrumView = pipeline.getSpectrumView();
+        bandView = pipeline.getBandView();
+        splViewers[0].linkOptions(Arrays.copyOfRange(splViewers, 1, splViewers.length));
+
+        //-Dsplviewer.events=<file.csv|file> logs when the level went over -Dsplviewer.events.thresholdDb
+        String eventFile = System.getProperty("splviewer.events");
+        if (eventFile != null) {
+            eventLog = new LoudnessEventLog(new File(eventFile));
+            pipeline.detectEvents(eventLog);
+        } else {
+            eventLog = null;
+        }
 
-        LinkedBlockingQueue<Long> queue = new LinkedBlockingQueue<Long>();
+        //-Dsplviewer.server.port=<port> streams levels and waveforms to TCP/WebSocket clients, see StreamingClient
+        Integer serverPort = Integer.getInteger("splviewer.server.port");
+        if (serverPort != null) {
+            server = new StreamingServer(new InetSocketAddress(System.getProperty("splviewer.server.bind", "127.0.0.1"), serverPort),
+                Integer.getInteger("splviewer.server.queue", 64));
+            pipeline.stream(server, nextStream);
+            nextStream += pipeline.getChannels();
+        } else {
+            server = null;
+        }
 
-        audioCapture = new AudioCapture(queue);
-        splViewer = new SPLViewer(queue);
+        //-Dsplviewer.record=<directory> keeps everything that is captured
+        String recordingDirectory = System.getProperty("splviewer.record");
+        if (recordingDirectory != null && !audioCapture.supportsPcm()) {
+            logger.warn("{} has no raw PCM to record, not recording to {}", audioCapture.getClass().getSimpleName(), recordingDirectory);
+            recorder = null;
+        } else if (recordingDirectory != null) {
+            recorder = new WavRecorder(new File(recordingDirectory), "capture",
+                Long.getLong("splviewer.record.segmentMB", 1024) << 20,
+                TimeUnit.MINUTES.toMillis(Long.getLong("splviewer.record.segmentMinutes", 60)),
+                Long.getLong("splviewer.record.flushMillis", 1000));
+            audioCapture.setPcmSink(recorder);
+        } else {
+            recorder = null;
+        }
 
         //Simple GUI
         mainFrame = new Frame();
@@ -57,14 +133,28 @@ public final class Main {
             }
         });*/
 
-        mainFrame.add(splViewer.getView());
+        //One row per source, sources added later bring their own options
+        mainFrame.setLayout(new GridLayout(0, 1, 0, 4));
+        mainFrame.add(pipeline.getView());
 
 
         //Viewer control frame
         viewerControlFrame = new Frame();
-        viewerControlFrame.setBounds(100, mainFrame.getHeight() + 30, 880, 40);
+        viewerControlFrame.setBounds(100, mainFrame.getHeight() + 30, 1100, 40);
         viewerControlFrame.setUndecorated(true);
-        viewerControlFrame.add(splViewer.getOptionsPanel());
+        viewerControlFrame.add(splViewers[0].getOptionsPanel());
+
+        //Spectrum control frame
+        spectrumControlFrame = new Frame();
+        spectrumControlFrame.setBounds(100, mainFrame.getHeight() + 120, 880, 40);
+        spectrumControlFrame.setUndecorated(true);
+        spectrumControlFrame.add(spectrumView.getOptionsPanel());
+
+        //Octave band control frame
+        bandControlFrame = new Frame();
+        bandControlFrame.setBounds(100, mainFrame.getHeight() + 210, 880, 40);
+        bandControlFrame.setUndecorated(true);
+        bandControlFrame.add(bandView.getOptionsPanel());
 
         //Audio capture control frame
         audioCaptureControlFrame = new Frame();
@@ -74,7 +164,7 @@ public final class Main {
 
         //Application options
         applicationControlFrame = new Frame();
-        applicationControlFrame.setBounds(100, mainFrame.getHeight() + 120, 880, 40);
+        applicationControlFrame.setBounds(100, mainFrame.getHeight() + 165, 1100, 40);
         applicationControlFrame.setUndecorated(true);
 
         Panel applicationOptionsPanel = new Panel();
@@ -82,32 +172,177 @@ public final class Main {
         Button exitButton = new Button("Quit");
         exitButton.addActionListener(e -> Main.this.shutdown());
         applicationOptionsPanel.add(exitButton);
+        addSourceSelection(applicationOptionsPanel);
         applicationControlFrame.add(applicationOptionsPanel);
 
         mainFrame.addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(final ComponentEvent e) {
-                viewerControlFrame.setBounds(100, mainFrame.getHeight() + 30, 880, 40);
+                viewerControlFrame.setBounds(100, mainFrame.getHeight() + 30, 1100, 40);
                 audioCaptureControlFrame.setBounds(100, mainFrame.getHeight() + 75, 880, 40);
-                applicationControlFrame.setBounds(100, mainFrame.getHeight() + 120, 880, 40);
+                spectrumControlFrame.setBounds(100, mainFrame.getHeight() + 120, 880, 40);
+                bandControlFrame.setBounds(100, mainFrame.getHeight() + 210, 880, 40);
+                applicationControlFrame.setBounds(100, mainFrame.getHeight() + 165, 1100, 40);
             }
         });
 
 
         mainFrame.setVisible(true);
         viewerControlFrame.setVisible(true);
+        spectrumControlFrame.setVisible(true);
+        bandControlFrame.setVisible(true);
         audioCaptureControlFrame.setVisible(true);
         applicationControlFrame.setVisible(true);
 
-        splViewer.begin();
+        pipeline.begin();
+    }
+
+    /**
+     * A live capture cannot wait for a slow viewer, replays and generators can. -Dsplviewer.overrun overrides
+     */
+    private static SampleRingBuffer.OverrunPolicy overrunPolicy(final String sourceSpec) {
+        SampleRingBuffer.OverrunPolicy overrunPolicy = SampleRingBuffer.OverrunPolicy.valueOf(System.getProperty("splviewer.overrun",
+            sourceSpec.startsWith("mic") ? "DROP_OLDEST" : "BLOCK"));
+        if (overrunPolicy != SampleRingBuffer.OverrunPolicy.BLOCK && overrunPolicy != SampleRingBuffer.OverrunPolicy.DROP_OLDEST) {
+            logger.warn("{} cannot apply to one consumer of a shared ring, using DROP_OLDEST", overrunPolicy);
+            overrunPolicy = SampleRingBuffer.OverrunPolicy.DROP_OLDEST;
+        }
+        return overrunPolicy;
+    }
+
+    /**
+     * Capture from more mixers while the first source keeps running: pick one of the {@link MixerRegistry} mixers and
+     * add it as a pipeline of its own, or remove one that was added
+     */
+    private void addSourceSelection(final Panel panel) {
+        final Choice mixersChoice = new Choice();
+        for (MixerRegistry.Entry entry : MixerRegistry.get().getCaptureMixers()) {
+            mixersChoice.add(entry.getName());
+        }
+        final Button refreshButton = new Button("Refresh!");
+        final Choice addedChoice = new Choice();
+        final Button addButton = new Button("Add!");
+        final Button removeButton = new Button("Remove!");
+        addButton.setEnabled(mixersChoice.getItemCount() > 0);
+        removeButton.setEnabled(false);
+
+        addButton.addActionListener(e -> {
+            String mixerName = mixersChoice.getSelectedItem();
+            String name = mixerName;
+            for (int i = 2; indexOf(addedChoice, name) >= 0; i++) {
+                name = mixerName + " #" + i;
+            }
+            try {
+                CapturePipeline added = new CapturePipeline(name, "mic:" + mixerName, overrunPolicy("mic"));
+                if (eventLog != null) {
+                    added.detectEvents(eventLog);
+                }
+                if (server != null) {
+                    added.stream(server, nextStream);
+                    nextStream += added.getChannels();
+                }
+                addedPipelines.add(added);
+                mainFrame.add(added.getViewWithOptions());
+                mainFrame.validate();
+                added.begin();
+                linkViewers();
+                addedChoice.add(name);
+                removeButton.setEnabled(true);
+                logger.info("Added source {}", name);
+            } catch (IOException | UnsupportedAudioFileException | RuntimeException ex) {
+                logger.error("Cannot add source " + mixerName, ex);
+            }
+        });
+        //Devices plugged in after startup, enumerating is slow so it runs off the AWT thread
+        refreshButton.addActionListener(e -> {
+            refreshButton.setEnabled(false);
+            new Thread(() -> {
+                List<MixerRegistry.Entry> mixers = MixerRegistry.get().refresh().getCaptureMixers();
+                EventQueue.invokeLater(() -> {
+                    String selected = mixersChoice.getSelectedItem();
+                    mixersChoice.removeAll();
+                    for (MixerRegistry.Entry entry : mixers) {
+                        mixersChoice.add(entry.getName());
+                    }
+                    if (selected != null && indexOf(mixersChoice, selected) >= 0) {
+                        mixersChoice.select(selected);
+                    }
+                    addButton.setEnabled(mixersChoice.getItemCount() > 0);
+                    refreshButton.setEnabled(true);
+                });
+            }, "mixer-refresh").start();
+        });
+        removeButton.addActionListener(e -> {
+            int index = addedChoice.getSelectedIndex();
+            if (index < 0) {
+                return;
+            }
+            CapturePipeline removed = addedPipelines.remove(index);
+            removed.shutdown();
+            mainFrame.remove(index + 1);
+            mainFrame.validate();
+            linkViewers();
+            addedChoice.remove(index);
+            removeButton.setEnabled(addedChoice.getItemCount() > 0);
+            logger.info("Removed source {}", removed.getName());
+        });
+
+        panel.add(new Label("Sources:"));
+        panel.add(mixersChoice);
+        panel.add(refreshButton);
+        panel.add(addButton);
+        panel.add(addedChoice);
+        panel.add(removeButton);
+    }
+
+    private static int indexOf(final Choice choice, final String item) {
+        for (int i = 0; i < choice.getItemCount(); i++) {
+            if (choice.getItem(i).equals(item)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //The viewer options panel applies to the viewers of every source
+    private void linkViewers() {
+        List<SPLViewer> others = new ArrayList<>(Arrays.asList(splViewers).subList(1, splViewers.length));
+        for (CapturePipeline added : addedPipelines) {
+            others.addAll(Arrays.asList(added.getViewers()));
+        }
+        splViewers[0].linkOptions(others.toArray(new SPLViewer[0]));
     }
 
 
     private void shutdown() {
         audioCapture.shutdown();
-        splViewer.shutdown();
+        for (CapturePipeline added : addedPipelines) {
+            added.getSource().shutdown();
+        }
+        for (Map.Entry<String, String> queue : PipelineMetrics.get().getQueueOverruns().entrySet()) {
+            logger.info("{} ring, {}", queue.getKey(), queue.getValue());
+        }
+        for (CapturePipeline added : addedPipelines) {
+            added.shutdown();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+        pipeline.shutdown();
+        if (server != null) {
+            server.close();
+        }
+        if (eventLog != null) {
+            try {
+                eventLog.close();
+            } catch (IOException e) {
+                logger.error("Cannot close " + eventLog.getFile(), e);
+            }
+        }
         mainFrame.dispose();
         viewerControlFrame.dispose();
+        spectrumControlFrame.dispose();
+        bandControlFrame.dispose();
         audioCaptureControlFrame.dispose();
         applicationControlFrame.dispose();
         System.exit(0);
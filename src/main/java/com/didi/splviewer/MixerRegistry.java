@@ -0,0 +1,143 @@
+package com.didi.splviewer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The mixers that can capture, with the {@link TargetDataLine} formats each of them supports.
+ * <p>
+ * {@code AudioSystem.getMixerInfo()} and the line queries are slow and go to the sound system every time, so they run
+ * once, on first use, and everything afterwards (source selection, format checks before a capture) is answered from
+ * this cache. {@link #refresh()} enumerates again, e.g. after plugging in a device (the Refresh! button next to the
+ * sources).
+ */
+public final class MixerRegistry {
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(MixerRegistry.class);
+
+    private static final MixerRegistry INSTANCE = new MixerRegistry(new MixerSource() {
+        @Override
+        public Mixer.Info[] getMixerInfo() {
+            return AudioSystem.getMixerInfo();
+        }
+
+        @Override
+        public Mixer getMixer(final Mixer.Info info) {
+            return AudioSystem.getMixer(info);
+        }
+    });
+
+    /**
+     * Where mixers come from, tests hand out their own
+     */
+    interface MixerSource {
+        Mixer.Info[] getMixerInfo();
+
+        Mixer getMixer(Mixer.Info info);
+    }
+
+    public static MixerRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * A mixer that has at least one capture line
+     */
+    public static final class Entry {
+        private final Mixer.Info info;
+        private final List<AudioFormat> formats;
+        private final MixerSource mixers;
+
+        Entry(final Mixer.Info info, final List<AudioFormat> formats, final MixerSource mixers) {
+            this.info = info;
+            this.formats = Collections.unmodifiableList(formats);
+            this.mixers = mixers;
+        }
+
+        public String getName() {
+            return info.getName();
+        }
+
+        public Mixer getMixer() {
+            return mixers.getMixer(info);
+        }
+
+        /**
+         * Formats as reported by the lines, sample rate and frame rate may be {@link AudioSystem#NOT_SPECIFIED}
+         */
+        public List<AudioFormat> getFormats() {
+            return formats;
+        }
+
+        public boolean supports(final AudioFormat format) {
+            for (AudioFormat supported : formats) {
+                if (format.matches(supported)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return info.getName();
+        }
+    }
+
+    private final MixerSource mixers;
+    private volatile List<Entry> entries;
+
+    MixerRegistry(final MixerSource mixers) {
+        this.mixers = mixers;
+    }
+
+    public synchronized MixerRegistry refresh() {
+        List<Entry> found = new ArrayList<>();
+        for (Mixer.Info info : mixers.getMixerInfo()) {
+            List<AudioFormat> formats = new ArrayList<>();
+            for (Line.Info lineInfo : mixers.getMixer(info).getTargetLineInfo()) {
+                if (lineInfo instanceof DataLine.Info && TargetDataLine.class.isAssignableFrom(lineInfo.getLineClass())) {
+                    Collections.addAll(formats, ((DataLine.Info) lineInfo).getFormats());
+                }
+            }
+            if (!formats.isEmpty()) {
+                found.add(new Entry(info, formats, mixers));
+                logger.info("Capture mixer \"{}\", {} formats", info.getName(), formats.size());
+            }
+        }
+        entries = Collections.unmodifiableList(found);
+        return this;
+    }
+
+    public List<Entry> getCaptureMixers() {
+        List<Entry> current = entries;
+        if (current == null) {
+            refresh();
+            current = entries;
+        }
+        return current;
+    }
+
+    /**
+     * @return the capture mixer called {@code name}, or null
+     */
+    public Entry find(final String name) {
+        for (Entry entry : getCaptureMixers()) {
+            if (entry.getName().equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,222 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer ring of samples that any number of readers consume independently.
+ * <p>
+ * The writer copies each block into the ring once, and every {@link Reader} has its own cursor, so the viewer, the
+ * spectrum and whatever else is registered each see the whole stream on their own thread. A reader with the
+ * {@link SampleRingBuffer.OverrunPolicy#DROP_OLDEST} policy never holds up the writer: when the writer needs its slots,
+ * it moves that reader's cursor forward with a CAS and the reader loses the oldest samples (counted in its
+ * {@link OverrunStats}). A reader copying those samples at the same time fails its own CAS and reads again, so it never
+ * returns overwritten data. A {@link SampleRingBuffer.OverrunPolicy#BLOCK} reader makes the writer wait instead, for
+ * consumers that must not lose anything.
+ * <p>
+ * Exactly one thread may write. Readers can be added and removed while the ring runs.
+ */
+public final class MulticastRingBuffer implements SampleSink {
+
+    private final int[] slots;
+    private final int mask;
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final CopyOnWriteArrayList<Reader> readers = new CopyOnWriteArrayList<>();
+    private volatile Thread waitingProducer;
+
+    public MulticastRingBuffer(final int minimumCapacity) {
+        if (minimumCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + minimumCapacity);
+        }
+        int capacity = Integer.highestOneBit(minimumCapacity);
+        if (capacity < minimumCapacity) {
+            capacity <<= 1;
+        }
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Adds a reader that starts with the next sample written
+     *
+     * @param policy BLOCK or DROP_OLDEST, the other policies would need to drop samples for one reader only
+     */
+    public Reader newReader(final String name, final SampleRingBuffer.OverrunPolicy policy) {
+        if (policy != SampleRingBuffer.OverrunPolicy.BLOCK && policy != SampleRingBuffer.OverrunPolicy.DROP_OLDEST) {
+            throw new IllegalArgumentException(policy + " is not supported by a multicast ring");
+        }
+        Reader reader = new Reader(name, policy);
+        readers.add(reader);
+        return reader;
+    }
+
+    public void removeReader(final Reader reader) {
+        readers.remove(reader);
+        signal(waitingProducer);
+    }
+
+    @Override
+    public void write(final int[] samples, final int offset, final int length) throws InterruptedException {
+        int skipped = Math.max(0, length - slots.length); //a block larger than the ring keeps its tail only
+        int count = length - skipped;
+        long write = writeSequence.get();
+        for (Reader reader : readers) {
+            reader.makeRoom(write, count, skipped);
+        }
+        copyIn(write, samples, offset + skipped, count);
+        writeSequence.set(write + count);
+        for (Reader reader : readers) {
+            signal(reader.waitingConsumer);
+        }
+    }
+
+    private void copyIn(final long sequence, final int[] source, final int offset, final int count) {
+        int index = (int) (sequence & mask);
+        int firstPart = Math.min(count, slots.length - index);
+        System.arraycopy(source, offset, slots, index, firstPart);
+        System.arraycopy(source, offset + firstPart, slots, 0, count - firstPart);
+    }
+
+    private void copyOut(final long sequence, final int[] destination, final int offset, final int count) {
+        int index = (int) (sequence & mask);
+        int firstPart = Math.min(count, slots.length - index);
+        System.arraycopy(slots, index, destination, offset, firstPart);
+        System.arraycopy(slots, 0, destination, offset + firstPart, count - firstPart);
+    }
+
+    private static void signal(final Thread waiter) {
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * One consumer's cursor. Used by one thread.
+     */
+    public final class Reader implements SampleReader {
+        private final String name;
+        private final SampleRingBuffer.OverrunPolicy policy;
+        private final AtomicLong readSequence;
+        private final OverrunStats overrunStats = new OverrunStats();
+        private volatile Thread waitingConsumer;
+
+        private Reader(final String name, final SampleRingBuffer.OverrunPolicy policy) {
+            this.name = name;
+            this.policy = policy;
+            this.readSequence = new AtomicLong(writeSequence.get());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public SampleRingBuffer.OverrunPolicy getPolicy() {
+            return policy;
+        }
+
+        @Override
+        public OverrunStats getOverrunStats() {
+            return overrunStats;
+        }
+
+        //Writer thread, before it writes count samples at sequence write
+        private void makeRoom(final long write, final int count, final int skipped) throws InterruptedException {
+            if (policy == SampleRingBuffer.OverrunPolicy.BLOCK) {
+                if (write + count - readSequence.get() > slots.length) {
+                    awaitSpace(write + count - slots.length);
+                }
+                return;
+            }
+            int dropped = skipped;
+            while (true) {
+                long read = readSequence.get();
+                long excess = write + count - slots.length - read;
+                if (excess <= 0) {
+                    break;
+                }
+                if (readSequence.compareAndSet(read, read + excess)) {
+                    dropped += excess;
+                    break;
+                }
+            }
+            if (dropped > 0) {
+                overrunStats.dropped(dropped);
+            }
+        }
+
+        private void awaitSpace(final long minimumRead) throws InterruptedException {
+            waitingProducer = Thread.currentThread();
+            try {
+                while (readSequence.get() < minimumRead && readers.contains(this)) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waitingProducer = null;
+            }
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(writeSequence.get() - readSequence.get(), slots.length);
+        }
+
+        @Override
+        public int read(final int[] destination, final int offset, final int length) throws InterruptedException {
+            int read;
+            while ((read = poll(destination, offset, length)) == 0 && length > 0) {
+                awaitSamples();
+            }
+            return read;
+        }
+
+        @Override
+        public int poll(final int[] destination, final int offset, final int length) {
+            while (true) {
+                long read = readSequence.get();
+                int available = (int) Math.min(writeSequence.get() - read, slots.length); //stale cursor after a drop
+                int count = Math.min(available, length);
+                if (count <= 0) {
+                    return 0;
+                }
+                copyOut(read, destination, offset, count);
+                if (policy == SampleRingBuffer.OverrunPolicy.BLOCK) {
+                    readSequence.set(read + count);
+                } else if (!readSequence.compareAndSet(read, read + count)) {
+                    continue; //the writer dropped (and maybe overwrote) these samples while we copied them
+                }
+                signal(waitingProducer);
+                return count;
+            }
+        }
+
+        private void awaitSamples() throws InterruptedException {
+            waitingConsumer = Thread.currentThread();
+            try {
+                while (writeSequence.get() == readSequence.get()) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waitingConsumer = null;
+            }
+        }
+
+        /**
+         * Stops receiving samples, the writer no longer waits for or accounts for this reader
+         */
+        public void close() {
+            removeReader(this);
+        }
+    }
+}
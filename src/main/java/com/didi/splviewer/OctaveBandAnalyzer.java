@@ -0,0 +1,387 @@
+package com.didi.splviewer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Streaming 1/1 or 1/3 octave filter bank in the style of IEC 61260: base-10 midband frequencies from 20 Hz (31.5 Hz
+ * for octaves) to 20 kHz or as far as the sample rate allows, each band a 6th order Butterworth band-pass (three
+ * biquads) designed with the bilinear transform and prewarped band edges.
+ * <p>
+ * The low bands run at lower rates. The input is halved again and again through an 8th order Butterworth low-pass, and
+ * every band is filtered at the lowest rate that is still 8 times its upper band edge, so only the top octaves cost a
+ * full rate biquad per sample. The bands are split by cost over {@code threads}: for every block the caller fills the
+ * rate stages, then it and the workers filter their own bands from the same read-only stages, meeting at a barrier
+ * before and after.
+ * <p>
+ * Every {@code intervalSeconds} each band closes an interval with its Leq and the max of its Fast time weighted level,
+ * in dB relative to full scale plus the calibration offset like {@link SPLMeter}. Processing allocates nothing.
+ * Not thread-safe, meant to be driven by a single consumer thread; {@link #close()} stops the workers.
+ */
+final class OctaveBandAnalyzer implements AutoCloseable {
+
+    interface IntervalListener {
+        /**
+         * Called on the processing thread when an interval closes, read the band values from the analyzer
+         */
+        void intervalCompleted(OctaveBandAnalyzer analyzer);
+    }
+
+    private static final double MIN_MEAN_SQUARE = 1e-20;
+    private static final double OCTAVE_RATIO = Math.pow(10, 0.3); //base-10 octave, IEC 61260-1
+    private static final double MIN_MIDBAND = 19.5, MAX_MIDBAND = 20500;
+    private static final int BLOCK = 4096;
+    private static final int OVERSAMPLING = 8; //rate of a band's stage over its upper edge
+    private static final int LOWPASS_ORDER = 8;
+    private static final int BANDPASS_ORDER = 3; //of the low-pass prototype, i.e. 6th order band-pass
+    private static final String[] THIRD_OCTAVE_NAMES = {"20", "25", "31.5", "40", "50", "63", "80", "100", "125", "160",
+        "200", "250", "315", "400", "500", "630", "800", "1k", "1.25k", "1.6k", "2k", "2.5k", "3.15k", "4k", "5k", "6.3k",
+        "8k", "10k", "12.5k", "16k", "20k"};
+
+    private static final class Band {
+        final String name;
+        final double midband;
+        final int stage;
+        final Biquad[] sections;
+        final double riseCoefficient, decayCoefficient;
+
+        double timeWeightedMeanSquare = 0;
+        double sumOfSquares = 0;
+        long samples = 0;
+        double max = 0;
+        double leq = Double.NEGATIVE_INFINITY, lmax = Double.NEGATIVE_INFINITY;
+
+        Band(final String name, final double midband, final int stage, final Biquad[] sections, final double rate) {
+            this.name = name;
+            this.midband = midband;
+            this.stage = stage;
+            this.sections = sections;
+            this.riseCoefficient = TimeWeighting.FAST.riseCoefficient(rate);
+            this.decayCoefficient = TimeWeighting.FAST.decayCoefficient(rate);
+        }
+    }
+
+    private final int fraction;
+    private final double sampleRate;
+    private final double calibrationOffset;
+    private final long intervalLength;
+    private final Band[] bands;
+    private final Biquad[][] lowpass; //into stage d + 1
+    private final boolean[] keep; //next sample of stage d goes to stage d + 1
+    private final double[][] stages; //stage d at sampleRate / 2^d
+    private final int[] stageLengths;
+    private final int[][] shares; //bands of the caller, then of each worker
+    private final Thread[] workers;
+    private final CyclicBarrier start, done;
+    private volatile boolean closed = false;
+    private IntervalListener listener;
+    private long intervalSamples = 0;
+
+    /**
+     * @param fraction 1 for octave, 3 for third-octave bands
+     * @param threads  filtering threads including the caller
+     */
+    OctaveBandAnalyzer(final int fraction, final double sampleRate, final double intervalSeconds, final double calibrationOffset,
+                       final int threads) {
+        if (fraction != 1 && fraction != 3) {
+            throw new IllegalArgumentException("Only 1/1 and 1/3 octave bands: 1/" + fraction);
+        }
+        this.fraction = fraction;
+        this.sampleRate = sampleRate;
+        this.calibrationOffset = calibrationOffset;
+        this.intervalLength = Math.max(1, Math.round(intervalSeconds * sampleRate));
+
+        List<Band> bandList = new ArrayList<>();
+        int stageCount = 1;
+        for (int x = (int) Math.ceil(fraction * Math.log10(MIN_MIDBAND / 1000) / 0.3); ; x++) {
+            double midband = 1000 * Math.pow(OCTAVE_RATIO, (double) x / fraction);
+            double upperEdge = midband * Math.pow(OCTAVE_RATIO, 1.0 / (2 * fraction));
+            if (midband > MAX_MIDBAND || upperEdge >= 0.475 * sampleRate) {
+                break;
+            }
+            int stage = 0;
+            while (sampleRate / (1L << (stage + 1)) >= OVERSAMPLING * upperEdge) {
+                stage++;
+            }
+            stageCount = Math.max(stageCount, stage + 1);
+            double rate = sampleRate / (1L << stage);
+            bandList.add(new Band(THIRD_OCTAVE_NAMES[x * (3 / fraction) + 17], midband, stage,
+                bandpass(midband, upperEdge, rate), rate));
+        }
+        bands = bandList.toArray(new Band[0]);
+
+        lowpass = new Biquad[stageCount - 1][];
+        for (int d = 0; d < lowpass.length; d++) {
+            lowpass[d] = lowpass(sampleRate / (1L << d) / 10, sampleRate / (1L << d));
+        }
+        keep = new boolean[stageCount];
+        Arrays.fill(keep, true);
+        stages = new double[stageCount][];
+        for (int d = 0; d < stageCount; d++) {
+            stages[d] = new double[(BLOCK >> d) + 1];
+        }
+        stageLengths = new int[stageCount];
+
+        shares = share(bands, Math.max(1, Math.min(threads, bands.length)));
+        workers = new Thread[shares.length - 1];
+        start = new CyclicBarrier(shares.length);
+        done = new CyclicBarrier(shares.length);
+        for (int w = 0; w < workers.length; w++) {
+            int[] share = shares[w + 1];
+            workers[w] = new Thread(() -> work(share), "bands-" + (w + 1));
+            workers[w].setDaemon(true);
+            workers[w].setPriority(Thread.MAX_PRIORITY);
+            workers[w].start();
+        }
+    }
+
+    //Poles of the Butterworth prototype moved to the band by s -> (s^2 + w0^2) / (s B), a conjugate pair per section
+    private static Biquad[] bandpass(final double midband, final double upperEdge, final double rate) {
+        double w1 = Biquad.prewarp(midband * midband / upperEdge, rate), w2 = Biquad.prewarp(upperEdge, rate);
+        double w0Squared = w1 * w2, bandwidth = w2 - w1;
+        Biquad[] sections = new Biquad[2 * BANDPASS_ORDER];
+        int count = 0;
+        for (int k = 0; k < (BANDPASS_ORDER + 1) / 2; k++) {
+            double angle = Math.PI * (2 * k + BANDPASS_ORDER + 1) / (2 * BANDPASS_ORDER);
+            double pRe = Math.cos(angle) * bandwidth / 2, pIm = Math.sin(angle) * bandwidth / 2;
+            //s = p B / 2 +- sqrt((p B / 2)^2 - w0^2)
+            double dRe = pRe * pRe - pIm * pIm - w0Squared, dIm = 2 * pRe * pIm;
+            double magnitude = Math.hypot(dRe, dIm);
+            double rootRe = Math.sqrt((magnitude + dRe) / 2), rootIm = Math.copySign(Math.sqrt((magnitude - dRe) / 2), dIm);
+            for (int sign = 1; sign >= -1; sign -= 2) {
+                double sRe = pRe + sign * rootRe, sIm = pIm + sign * rootIm;
+                if (Math.abs(Math.sin(angle)) < 1e-12 && sign < 0) {
+                    break; //the real prototype pole gives one conjugate pair, not two
+                }
+                sections[count++] = Biquad.bilinear(0, bandwidth, 0, 1, -2 * sRe, sRe * sRe + sIm * sIm, rate);
+            }
+        }
+        return Arrays.copyOf(sections, count);
+    }
+
+    private static Biquad[] lowpass(final double cutoff, final double rate) {
+        double wc = Biquad.prewarp(cutoff, rate);
+        Biquad[] sections = new Biquad[LOWPASS_ORDER / 2];
+        for (int k = 0; k < sections.length; k++) {
+            double damping = 2 * Math.sin(Math.PI * (2 * k + 1) / (2 * LOWPASS_ORDER));
+            sections[k] = Biquad.bilinear(0, 0, wc * wc, 1, damping * wc, wc * wc, rate);
+        }
+        return sections;
+    }
+
+    //Most expensive bands first, each to the least loaded share
+    private static int[][] share(final Band[] bands, final int count) {
+        Integer[] order = new Integer[bands.length];
+        for (int b = 0; b < order.length; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(bands[a].stage, bands[b].stage));
+        double[] load = new double[count];
+        List<List<Integer>> lists = new ArrayList<>();
+        for (int s = 0; s < count; s++) {
+            lists.add(new ArrayList<>());
+        }
+        for (int b : order) {
+            int least = 0;
+            for (int s = 1; s < count; s++) {
+                if (load[s] < load[least]) {
+                    least = s;
+                }
+            }
+            load[least] += 1.0 / (1L << bands[b].stage);
+            lists.get(least).add(b);
+        }
+        int[][] shares = new int[count][];
+        for (int s = 0; s < count; s++) {
+            shares[s] = lists.get(s).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return shares;
+    }
+
+    OctaveBandAnalyzer setListener(final IntervalListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @param scale factor that maps the samples to [-1, 1), see {@link PcmDecoder#getScale()}
+     */
+    void process(final int[] samples, final int offset, final int length, final float scale) throws InterruptedException {
+        for (int i = offset, end = offset + length; i < end; ) {
+            int count = (int) Math.min(Math.min(end - i, BLOCK), intervalLength - intervalSamples); //intervals end on a block
+            double[] input = stages[0];
+            for (int n = 0; n < count; n++) {
+                input[n] = samples[i + n] * (double) scale;
+            }
+            stageLengths[0] = count;
+            decimate();
+
+            if (workers.length > 0) {
+                await(start);
+                filter(shares[0]);
+                await(done);
+            } else {
+                filter(shares[0]);
+            }
+
+            i += count;
+            intervalSamples += count;
+            if (intervalSamples == intervalLength) {
+                completeInterval();
+            }
+        }
+    }
+
+    private void decimate() {
+        for (int d = 0; d < lowpass.length; d++) {
+            double[] in = stages[d], out = stages[d + 1];
+            Biquad[] sections = lowpass[d];
+            boolean keepNext = keep[d];
+            int produced = 0;
+            for (int n = 0, length = stageLengths[d]; n < length; n++) {
+                double x = in[n];
+                for (Biquad section : sections) {
+                    x = section.process(x);
+                }
+                if (keepNext) {
+                    out[produced++] = x;
+                }
+                keepNext = !keepNext;
+            }
+            keep[d] = keepNext;
+            stageLengths[d + 1] = produced;
+        }
+    }
+
+    private void filter(final int[] share) {
+        for (int b : share) {
+            Band band = bands[b];
+            double[] in = stages[band.stage];
+            Biquad[] sections = band.sections;
+            double y = band.timeWeightedMeanSquare, sum = 0, max = band.max;
+            for (int n = 0, length = stageLengths[band.stage]; n < length; n++) {
+                double x = in[n];
+                for (Biquad section : sections) {
+                    x = section.process(x);
+                }
+                double square = x * x;
+                y += (square > y ? band.riseCoefficient : band.decayCoefficient) * (square - y);
+                sum += square;
+                if (y > max) {
+                    max = y;
+                }
+            }
+            band.timeWeightedMeanSquare = y;
+            band.sumOfSquares += sum;
+            band.samples += stageLengths[band.stage];
+            band.max = max;
+        }
+    }
+
+    private void work(final int[] share) {
+        try {
+            while (true) {
+                start.await();
+                if (closed) {
+                    return;
+                }
+                filter(share);
+                done.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            //closed
+        }
+    }
+
+    private static void await(final CyclicBarrier barrier) throws InterruptedException {
+        try {
+            barrier.await();
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Band workers stopped", e);
+        }
+    }
+
+    private void completeInterval() {
+        for (Band band : bands) {
+            band.leq = toDecibels(band.samples == 0 ? 0 : band.sumOfSquares / band.samples);
+            band.lmax = toDecibels(band.max);
+            band.sumOfSquares = 0;
+            band.samples = 0;
+            band.max = 0;
+        }
+        intervalSamples = 0;
+        if (listener != null) {
+            listener.intervalCompleted(this);
+        }
+    }
+
+    private double toDecibels(final double meanSquare) {
+        return 10 * Math.log10(Math.max(meanSquare, MIN_MEAN_SQUARE)) + calibrationOffset;
+    }
+
+    int getBands() {
+        return bands.length;
+    }
+
+    /**
+     * Nominal midband frequency, e.g. "31.5" or "1.25k"
+     */
+    String getName(final int band) {
+        return bands[band].name;
+    }
+
+    double getMidband(final int band) {
+        return bands[band].midband;
+    }
+
+    /**
+     * Current Fast time weighted level
+     */
+    double getLevel(final int band) {
+        return toDecibels(bands[band].timeWeightedMeanSquare);
+    }
+
+    /**
+     * Leq of the last completed interval
+     */
+    double getLeq(final int band) {
+        return bands[band].leq;
+    }
+
+    /**
+     * Max of the Fast time weighted level in the last completed interval
+     */
+    double getLmax(final int band) {
+        return bands[band].lmax;
+    }
+
+    /**
+     * |H| of a band at {@code frequency}, not counting the decimation in front of it
+     */
+    double magnitude(final int band, final double frequency) {
+        return Biquad.magnitude(bands[band].sections, frequency, sampleRate / (1L << bands[band].stage));
+    }
+
+    int getFraction() {
+        return fraction;
+    }
+
+    double getSampleRate() {
+        return sampleRate;
+    }
+
+    int getThreads() {
+        return shares.length;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
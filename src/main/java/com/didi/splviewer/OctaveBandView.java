@@ -0,0 +1,216 @@
+package com.didi.splviewer;
+
+import java.awt.Button;
+import java.awt.Choice;
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Graphics;
+import java.awt.Label;
+import java.awt.Panel;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Band levels as a bar graph: the Fast level of every 1/1 or 1/3 octave band from an {@link OctaveBandAnalyzer}
+ * running on this module's thread, with the Lmax of the last interval as a tick and its Leq below the bars.
+ */
+public final class OctaveBandView implements SPLModule, OctaveBandAnalyzer.IntervalListener {
+
+    /**
+     * SETTINGS
+     */
+    private int FRACTION = 3; //1/FRACTION octave bands
+    private static final int UPDATES_PER_SECOND = 30;
+    private static final double INTERVAL_SECONDS = 1.0;
+    private static final double RANGE_DB = 100; //below full scale
+    private static final double CALIBRATION_OFFSET = Double.parseDouble(System.getProperty("splviewer.calibration", "0"));
+    private static final int THREADS = Integer.getInteger("splviewer.bands.threads", Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final int READ_BLOCK = 1024;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(OctaveBandView.class);
+
+    private final SampleReader pullBuffer;
+    private final AudioSource source;
+    private final int[] samples = new int[READ_BLOCK];
+    private volatile boolean EXIT_FLAG = false;
+    private volatile Thread runner; //blocked in read() while its source is stopped
+
+    private Container viewContainer;
+    private OctaveBandAnalyzer analyzer;
+
+    //Guarded by this
+    private BufferedImage image;
+    private int width = 1, height = 1;
+    private double[] leq = new double[0], lmax = new double[0];
+
+    public OctaveBandView(final SampleReader pullBuffer, final AudioSource source) {
+        this.pullBuffer = pullBuffer;
+        this.source = source;
+        resize(1, 1);
+    }
+
+    @Override
+    public void run() {
+        runner = Thread.currentThread();
+        Graphics g = viewContainer.getGraphics();
+        long updateInterval = 1000000000L / UPDATES_PER_SECOND;
+        long nextUpdate = System.nanoTime();
+
+        try {
+            while (!EXIT_FLAG) {
+                try {
+                    AudioFormat format = source.getFormat();
+                    synchronized (this) {
+                        if (analyzer == null || analyzer.getSampleRate() != format.getSampleRate() || analyzer.getFraction() != FRACTION) {
+                            if (analyzer != null) {
+                                analyzer.close();
+                            }
+                            analyzer = new OctaveBandAnalyzer(FRACTION, format.getSampleRate(), INTERVAL_SECONDS, CALIBRATION_OFFSET, THREADS)
+                                .setListener(this);
+                            leq = new double[analyzer.getBands()];
+                            lmax = new double[analyzer.getBands()];
+                            Arrays.fill(leq, Double.NEGATIVE_INFINITY);
+                            Arrays.fill(lmax, Double.NEGATIVE_INFINITY);
+                            logger.info("Bands: {} 1/{} octave bands on {} threads", analyzer.getBands(), FRACTION, analyzer.getThreads());
+                        }
+                    }
+
+                    int read = pullBuffer.read(samples, 0, samples.length);
+                    analyzer.process(samples, 0, read, 1f / (1L << (format.getSampleSizeInBits() - 1)));
+
+                    long now = System.nanoTime();
+                    if (now >= nextUpdate) {
+                        synchronized (this) {
+                            draw();
+                            g.drawImage(image, 0, 0, null);
+                        }
+                        nextUpdate = Math.max(nextUpdate + updateInterval, now);
+                    }
+                } catch (InterruptedException e) {
+                    if (!EXIT_FLAG) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } finally {
+            if (analyzer != null) {
+                analyzer.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void intervalCompleted(final OctaveBandAnalyzer analyzer) {
+        for (int b = 0; b < leq.length; b++) {
+            leq[b] = analyzer.getLeq(b);
+            lmax[b] = analyzer.getLmax(b);
+        }
+    }
+
+    //Bars from the bottom, the band names and Leq below them
+    private void draw() {
+        Graphics g = image.getGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, width, height);
+        int bands = analyzer.getBands();
+        int barWidth = Math.max(1, width / bands);
+        int bottom = height - 30;
+        for (int b = 0; b < bands; b++) {
+            int x = b * barWidth;
+            int top = toY(analyzer.getLevel(b), bottom);
+            g.setColor(Color.GREEN.darker());
+            g.fillRect(x + 1, top, Math.max(1, barWidth - 2), bottom - top);
+            g.setColor(Color.YELLOW);
+            int tick = toY(lmax[b], bottom);
+            g.drawLine(x + 1, tick, x + barWidth - 2, tick);
+            g.setColor(Color.LIGHT_GRAY);
+            if (barWidth >= 30 || analyzer.getFraction() == 1 || b % 3 == 2) { //else only at the octaves
+                g.drawString(analyzer.getName(b), x + 2, height - 16);
+            }
+            if (barWidth >= 30 && leq[b] > Double.NEGATIVE_INFINITY) {
+                g.drawString(String.format("%.0f", leq[b]), x + 2, height - 2);
+            }
+        }
+        g.dispose();
+    }
+
+    private int toY(final double level, final int bottom) {
+        double ratio = (Math.min(CALIBRATION_OFFSET, Math.max(CALIBRATION_OFFSET - RANGE_DB, level)) - CALIBRATION_OFFSET + RANGE_DB) / RANGE_DB;
+        return bottom - (int) (ratio * bottom);
+    }
+
+    private void resize(final int width, final int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    public OctaveBandView shutdown() {
+        EXIT_FLAG = true;
+        Thread thread = runner;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return this;
+    }
+
+    @Override
+    public Container getView() {
+        viewContainer = new Panel() {
+            @Override
+            public void update(final Graphics g) {
+                paint(g);
+            }
+
+            @Override
+            public void paint(final Graphics g) {
+                synchronized (OctaveBandView.this) {
+                    g.drawImage(image, 0, 0, null);
+                }
+            }
+        };
+        viewContainer.setBackground(Color.BLACK);
+        viewContainer.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(final ComponentEvent e) {
+                synchronized (OctaveBandView.this) {
+                    resize(viewContainer.getWidth(), viewContainer.getHeight());
+                }
+            }
+        });
+        return viewContainer;
+    }
+
+    @Override
+    public Panel getOptionsPanel() {
+        Panel menuPanel = new Panel();
+
+        Choice fractionChoice = new Choice();
+        fractionChoice.add("1/1");
+        fractionChoice.add("1/3");
+        fractionChoice.select("1/" + FRACTION);
+
+        menuPanel.add(new Label("Bands (octave):"));
+        menuPanel.add(fractionChoice);
+
+        Button button = new Button("Yes!");
+        button.addActionListener(e -> {
+            synchronized (OctaveBandView.this) {
+                FRACTION = Integer.parseInt(fractionChoice.getSelectedItem().substring(2)); //New analyzer on the next block
+            }
+        });
+        menuPanel.add(button);
+        menuPanel.setBackground(Color.YELLOW);
+
+        return menuPanel;
+    }
+}
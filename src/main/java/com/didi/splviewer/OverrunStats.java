@@ -0,0 +1,100 @@
+package com.didi.splviewer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a bounded buffer threw away because its reader fell behind: totals, and the time and size of the most recent
+ * overrun events, so a long unattended run still shows when and how much data was lost.
+ * <p>
+ * Written by the producer only, readable from any thread.
+ */
+public final class OverrunStats {
+
+    private static final int RECENT_EVENTS = 64;
+
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private final AtomicLong decimatedSamples = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private volatile long firstEventMillis = 0;
+    private volatile long lastEventMillis = 0;
+
+    //Recent events, slot = event number % RECENT_EVENTS
+    private final long[] eventMillis = new long[RECENT_EVENTS];
+    private final int[] eventSamples = new int[RECENT_EVENTS];
+
+    void dropped(final int samples) {
+        droppedSamples.addAndGet(samples);
+        event(samples);
+    }
+
+    void decimated(final int samples) {
+        decimatedSamples.addAndGet(samples);
+        event(samples);
+    }
+
+    private void event(final int samples) {
+        long now = System.currentTimeMillis();
+        long event = events.get();
+        int slot = (int) (event % RECENT_EVENTS);
+        eventMillis[slot] = now;
+        eventSamples[slot] = samples;
+        if (event == 0) {
+            firstEventMillis = now;
+        }
+        lastEventMillis = now;
+        events.set(event + 1);
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    /**
+     * Samples left out by decimation, they are lost as well but the stream keeps its shape
+     */
+    public long getDecimatedSamples() {
+        return decimatedSamples.get();
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    /**
+     * Wall time of the first overrun, 0 if there was none
+     */
+    public long getFirstEventMillis() {
+        return firstEventMillis;
+    }
+
+    public long getLastEventMillis() {
+        return lastEventMillis;
+    }
+
+    /**
+     * The most recent events, oldest first, as "HH:mm:ss.SSS samples" lines. May tear while the producer writes.
+     */
+    public String[] getRecentEvents() {
+        long total = events.get();
+        int count = (int) Math.min(total, RECENT_EVENTS);
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS");
+        String[] recent = new String[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((total - count + i) % RECENT_EVENTS);
+            recent[i] = time.format(new Date(eventMillis[slot])) + " " + eventSamples[slot];
+        }
+        return recent;
+    }
+
+    @Override
+    public String toString() {
+        if (events.get() == 0) {
+            return "no overruns";
+        }
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss");
+        return String.format("%d overruns between %s and %s, %d samples dropped, %d decimated", events.get(),
+            time.format(new Date(firstEventMillis)), time.format(new Date(lastEventMillis)), getDroppedSamples(), getDecimatedSamples());
+    }
+}
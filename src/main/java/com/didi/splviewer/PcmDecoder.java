@@ -0,0 +1,358 @@
+package com.didi.splviewer;
+
+import java.nio.ByteBuffer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Block decoders for integer PCM, one constant per sample size/signedness/endianness.
+ * <p>
+ * Pick one with {@link #forFormat(AudioFormat)} when a capture session starts and then feed it whole buffers: every
+ * constant has its own loop, so the hot path has no per-sample branching on the format.
+ * <p>
+ * Decoded values are always signed and centered on 0, i.e. in [-2^(bits-1), 2^(bits-1) - 1]. Unsigned formats are
+ * shifted down by 2^(bits-1). Normalized output is the same value divided by 2^(bits-1), so it lies in [-1, 1).
+ */
+public enum PcmDecoder {
+
+    SIGNED_8(8, true, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0; s < samples; s++) {
+                dst[dstOffset + s] = src[srcOffset + s];
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0; s < samples; s++) {
+                dst[dstOffset + s] = src[srcOffset + s] * SCALE_8;
+            }
+        }
+    },
+    UNSIGNED_8(8, false, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0; s < samples; s++) {
+                dst[dstOffset + s] = (byte) (src[srcOffset + s] ^ 0x80);
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0; s < samples; s++) {
+                dst[dstOffset + s] = (byte) (src[srcOffset + s] ^ 0x80) * SCALE_8;
+            }
+        }
+    },
+    SIGNED_16_BIG_ENDIAN(16, true, true) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            KERNELS.decode16(src, srcOffset, true, dst, dstOffset, samples);
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            KERNELS.decode16(src, srcOffset, true, dst, dstOffset, samples);
+        }
+    },
+    SIGNED_16_LITTLE_ENDIAN(16, true, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            KERNELS.decode16(src, srcOffset, false, dst, dstOffset, samples);
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            KERNELS.decode16(src, srcOffset, false, dst, dstOffset, samples);
+        }
+    },
+    UNSIGNED_16_BIG_ENDIAN(16, false, true) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = int16BigEndian(src, i) ^ SIGN_16;
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = (int16BigEndian(src, i) ^ SIGN_16) * SCALE_16;
+            }
+        }
+    },
+    UNSIGNED_16_LITTLE_ENDIAN(16, false, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = int16LittleEndian(src, i) ^ SIGN_16;
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = (int16LittleEndian(src, i) ^ SIGN_16) * SCALE_16;
+            }
+        }
+    },
+    SIGNED_24_BIG_ENDIAN(24, true, true) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = int24BigEndian(src, i);
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = int24BigEndian(src, i) * SCALE_24;
+            }
+        }
+    },
+    SIGNED_24_LITTLE_ENDIAN(24, true, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = int24LittleEndian(src, i);
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = int24LittleEndian(src, i) * SCALE_24;
+            }
+        }
+    },
+    UNSIGNED_24_BIG_ENDIAN(24, false, true) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = int24BigEndian(src, i) ^ SIGN_24;
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = (int24BigEndian(src, i) ^ SIGN_24) * SCALE_24;
+            }
+        }
+    },
+    UNSIGNED_24_LITTLE_ENDIAN(24, false, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = int24LittleEndian(src, i) ^ SIGN_24;
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 3) {
+                dst[dstOffset + s] = (int24LittleEndian(src, i) ^ SIGN_24) * SCALE_24;
+            }
+        }
+    },
+    SIGNED_32_BIG_ENDIAN(32, true, true) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = int32BigEndian(src, i);
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = int32BigEndian(src, i) * SCALE_32;
+            }
+        }
+    },
+    SIGNED_32_LITTLE_ENDIAN(32, true, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = int32LittleEndian(src, i);
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = int32LittleEndian(src, i) * SCALE_32;
+            }
+        }
+    },
+    UNSIGNED_32_BIG_ENDIAN(32, false, true) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = int32BigEndian(src, i) ^ SIGN_32;
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = (int32BigEndian(src, i) ^ SIGN_32) * SCALE_32;
+            }
+        }
+    },
+    UNSIGNED_32_LITTLE_ENDIAN(32, false, false) {
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final int[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = int32LittleEndian(src, i) ^ SIGN_32;
+            }
+        }
+
+        @Override
+        public void decode(final byte[] src, final int srcOffset, final float[] dst, final int dstOffset, final int samples) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 4) {
+                dst[dstOffset + s] = (int32LittleEndian(src, i) ^ SIGN_32) * SCALE_32;
+            }
+        }
+    };
+
+    private static final int SIGN_16 = 0xFFFF8000; //XOR with this flips bit 15 and keeps the sign extension consistent
+    private static final int SIGN_24 = 0xFF800000;
+    private static final int SIGN_32 = 0x80000000;
+
+    private static final SampleKernels KERNELS = SampleKernels.get(); //the signed 16 bit loops, usually SIMD
+
+    private static final float SCALE_8 = 1f / (1 << 7);
+    private static final float SCALE_16 = 1f / (1 << 15);
+    private static final float SCALE_24 = 1f / (1 << 23);
+    private static final float SCALE_32 = 1f / (1L << 31);
+
+    private final int sampleSizeInBits;
+    private final boolean signed;
+    private final boolean bigEndian;
+
+    PcmDecoder(final int sampleSizeInBits, final boolean signed, final boolean bigEndian) {
+        this.sampleSizeInBits = sampleSizeInBits;
+        this.signed = signed;
+        this.bigEndian = bigEndian;
+    }
+
+    /**
+     * Decodes {@code samples} consecutive samples starting at {@code src[srcOffset]}.
+     */
+    public abstract void decode(byte[] src, int srcOffset, int[] dst, int dstOffset, int samples);
+
+    /**
+     * Same as {@link #decode(byte[], int, int[], int, int)} but normalized to [-1, 1).
+     */
+    public abstract void decode(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples);
+
+    /**
+     * Decodes {@code samples} samples from the buffer's position and advances the position past them.
+     */
+    public void decode(final ByteBuffer src, final int[] dst, final int dstOffset, final int samples) {
+        int position = src.position();
+        if (src.hasArray()) {
+            decode(src.array(), src.arrayOffset() + position, dst, dstOffset, samples);
+        } else {
+            for (int s = 0, i = position; s < samples; s++, i += getBytesPerSample()) {
+                dst[dstOffset + s] = sampleAt(src, i);
+            }
+        }
+        src.position(position + samples * getBytesPerSample());
+    }
+
+    /**
+     * Same as {@link #decode(ByteBuffer, int[], int, int)} but normalized to [-1, 1).
+     */
+    public void decode(final ByteBuffer src, final float[] dst, final int dstOffset, final int samples) {
+        int position = src.position();
+        if (src.hasArray()) {
+            decode(src.array(), src.arrayOffset() + position, dst, dstOffset, samples);
+        } else {
+            float scale = getScale();
+            for (int s = 0, i = position; s < samples; s++, i += getBytesPerSample()) {
+                dst[dstOffset + s] = sampleAt(src, i) * scale;
+            }
+        }
+        src.position(position + samples * getBytesPerSample());
+    }
+
+    //Direct buffers only, so the byte order of the buffer itself is irrelevant
+    private int sampleAt(final ByteBuffer src, final int index) {
+        int bytes = getBytesPerSample();
+        int value = 0;
+        for (int b = 0; b < bytes; b++) {
+            value = (value << 8) | (src.get(bigEndian ? index + b : index + bytes - 1 - b) & 0xFF);
+        }
+        int shift = 32 - sampleSizeInBits;
+        value = (value << shift) >> shift;
+        return signed ? value : value ^ (-1 << (sampleSizeInBits - 1));
+    }
+
+    public int getSampleSizeInBits() {
+        return sampleSizeInBits;
+    }
+
+    public int getBytesPerSample() {
+        return sampleSizeInBits / 8;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    public boolean isBigEndian() {
+        return bigEndian;
+    }
+
+    /**
+     * Factor that maps a decoded int sample to [-1, 1)
+     */
+    public float getScale() {
+        return 1f / (1L << (sampleSizeInBits - 1));
+    }
+
+    public static PcmDecoder forFormat(final AudioFormat format) {
+        if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED && format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED) {
+            throw new IllegalArgumentException("Not an integer PCM format: " + format);
+        }
+        return forFormat(format.getSampleSizeInBits(), format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED, format.isBigEndian());
+    }
+
+    public static PcmDecoder forFormat(final int sampleSizeInBits, final boolean signed, final boolean bigEndian) {
+        for (PcmDecoder decoder : values()) {
+            //Endianness means nothing for single byte samples
+            if (decoder.sampleSizeInBits == sampleSizeInBits && decoder.signed == signed && (sampleSizeInBits == 8 || decoder.bigEndian == bigEndian)) {
+                return decoder;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported PCM format: " + sampleSizeInBits + " bits, signed=" + signed + ", big-endian=" + bigEndian);
+    }
+
+    private static int int16BigEndian(final byte[] b, final int i) {
+        return (b[i] << 8) | (b[i + 1] & 0xFF);
+    }
+
+    private static int int16LittleEndian(final byte[] b, final int i) {
+        return (b[i + 1] << 8) | (b[i] & 0xFF);
+    }
+
+    private static int int24BigEndian(final byte[] b, final int i) {
+        return (b[i] << 16) | ((b[i + 1] & 0xFF) << 8) | (b[i + 2] & 0xFF);
+    }
+
+    private static int int24LittleEndian(final byte[] b, final int i) {
+        return (b[i + 2] << 16) | ((b[i + 1] & 0xFF) << 8) | (b[i] & 0xFF);
+    }
+
+    private static int int32BigEndian(final byte[] b, final int i) {
+        return (b[i] << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+
+    private static int int32LittleEndian(final byte[] b, final int i) {
+        return (b[i + 3] << 24) | ((b[i + 2] & 0xFF) << 16) | ((b[i + 1] & 0xFF) << 8) | (b[i] & 0xFF);
+    }
+}
@@ -0,0 +1,12 @@
+package com.didi.splviewer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Receives raw PCM blocks, exactly as they were read from the line or file and before they are decoded.
+ * Called on the source's thread, so implementations must not block.
+ */
+public interface PcmSink {
+
+    void write(byte[] pcm, int offset, int length, AudioFormat format);
+}
@@ -0,0 +1,493 @@
+package com.didi.splviewer;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.TargetDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless run of the capture-to-viewer path with a synthetic line: a real {@link AudioCapture} reads a
+ * {@link MarkerLine} instead of a sound card, decodes the blocks and hands them through a {@link ChannelSplitter} into a
+ * {@link MulticastRingBuffer}, and a real {@link SPLViewer} reads them and draws to an off-screen image, at any sample
+ * rate, paced to real time or as fast as the viewer takes them.
+ * <p>
+ * The capture timestamps every block as it does with a sound card, and every sample carries its own frame index (as a
+ * 16 bit ramp), so the reader in front of the viewer sees how long blocks waited in the ring and whether anything was
+ * lost or reordered. A {@link Report} has per stage latencies and throughput, and {@link Budget#check(Report)} what is
+ * over budget.
+ * <p>
+ * The viewer records into the process-wide {@link PipelineMetrics}, which are reset at the start of a measurement, so
+ * run one harness at a time.
+ */
+public final class PipelineHarness {
+
+    private static final int RING_CAPACITY = 1 << 20;
+    private static final int VIEWER_WIDTH = 1200, VIEWER_HEIGHT = 300;
+    private static final long STOP_TIMEOUT_MILLIS = 2000;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(PipelineHarness.class);
+
+    private final int sampleRate;
+    private final int blockFrames;
+    private final boolean realTime;
+    private final SampleRingBuffer.OverrunPolicy overrunPolicy;
+
+    /**
+     * @param blockFrames   frames the line returns per read at most, like a driver period
+     * @param realTime      pace the line to the sample rate, otherwise the capture only waits for the ring
+     * @param overrunPolicy BLOCK or DROP_OLDEST, of the viewer's ring reader
+     */
+    public PipelineHarness(final int sampleRate, final int blockFrames, final boolean realTime,
+                           final SampleRingBuffer.OverrunPolicy overrunPolicy) {
+        this.sampleRate = sampleRate;
+        this.blockFrames = blockFrames;
+        this.realTime = realTime;
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    /**
+     * {@code harness [rate] [seconds]}: a real time run at the rate (96000), one as fast as possible, and the highest
+     * real time rate within budget, see {@link Budget#fromProperties()}
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 96000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+        Budget budget = Budget.fromProperties();
+
+        Report paced = new PipelineHarness(rate, rate / 100, true, SampleRingBuffer.OverrunPolicy.DROP_OLDEST).run(1, seconds);
+        logger.info("{}", paced);
+        logger.info("Over budget: {}", budget.check(paced));
+        Report unpaced = new PipelineHarness(rate, rate / 100, false, SampleRingBuffer.OverrunPolicy.BLOCK).run(1, seconds);
+        logger.info("{}", unpaced);
+        logger.info("Highest real time rate within budget: {} Hz", maxSustainedRate(48000, 48000 << 7, seconds, budget));
+    }
+
+    /**
+     * Real time runs at {@code from} Hz, doubled until {@code to} or until a run is over budget
+     *
+     * @return the highest rate within budget, 0 if even the first one is not
+     */
+    public static int maxSustainedRate(final int from, final int to, final double seconds, final Budget budget)
+        throws InterruptedException {
+        int sustained = 0;
+        for (long rate = from; rate <= to; rate *= 2) {
+            Report report = new PipelineHarness((int) rate, (int) rate / 100, true, SampleRingBuffer.OverrunPolicy.DROP_OLDEST)
+                .run(0.5, seconds);
+            List<String> overBudget = budget.check(report);
+            logger.info("{} Hz: {}", rate, overBudget.isEmpty() ? "within budget" : overBudget);
+            if (!overBudget.isEmpty()) {
+                break;
+            }
+            sustained = (int) rate;
+        }
+        return sustained;
+    }
+
+    /**
+     * Runs the capture and the viewer for {@code warmupSeconds}, then measures for {@code seconds}
+     */
+    public Report run(final double warmupSeconds, final double seconds) throws InterruptedException {
+        PipelineMetrics metrics = PipelineMetrics.get();
+        MulticastRingBuffer ring = new MulticastRingBuffer(RING_CAPACITY);
+        MarkerLine line = new MarkerLine(sampleRate, blockFrames, realTime);
+        AudioCapture capture = new AudioCapture(new ChannelSplitter(ring), "harness", line.format, info -> line.newLine());
+        LatencyHistogram ringWait = new LatencyHistogram("ring");
+        MarkerReader reader = new MarkerReader(ring.newReader("harness", overrunPolicy), metrics.newProbe(capture, ringWait));
+        SPLViewer viewer = new SPLViewer(reader, capture);
+        viewer.resize(VIEWER_WIDTH, VIEWER_HEIGHT);
+        BufferedImage screen = new BufferedImage(VIEWER_WIDTH, VIEWER_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics g = screen.createGraphics();
+
+        Thread viewerThread = new Thread(() -> viewer.run(g), "harness-viewer");
+        viewerThread.setPriority(Thread.MAX_PRIORITY);
+        viewerThread.start();
+        capture.begin();
+
+        try {
+            Thread.sleep((long) (warmupSeconds * 1000));
+            metrics.reset();
+            ringWait.reset();
+            long startTime = System.nanoTime();
+            long startFrames = line.framesRead;
+            long startPolled = reader.polled, startErrors = reader.markerErrors;
+            long startLost = reader.getOverrunStats().getDroppedSamples() + line.framesDropped;
+
+            Thread.sleep((long) (seconds * 1000));
+
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+            LatencyHistogram decode = metrics.getDecode(), render = metrics.getRender(), endToEnd = metrics.getEndToEnd();
+            long captured = line.framesRead - startFrames, polled = reader.polled - startPolled;
+            Stage[] stages = {
+                new Stage("captureRead", captured / elapsed, Double.NaN, metrics.getCaptureRead()),
+                new Stage("decode", captured / elapsed, decode.getMeanMicros() * decode.getCount() / 1e6 / elapsed, decode),
+                new Stage("ring", polled / elapsed, Double.NaN, ringWait),
+                new Stage("viewer", polled / elapsed, render.getMeanMicros() * render.getCount() / 1e6 / elapsed, render),
+                new Stage("endToEnd", polled / elapsed, Double.NaN, endToEnd)};
+            return new Report(sampleRate, realTime, elapsed, captured, polled,
+                reader.getOverrunStats().getDroppedSamples() + line.framesDropped - startLost, reader.markerErrors - startErrors,
+                metrics.getSkippedRenders(), stages);
+        } finally {
+            capture.shutdown();
+            viewer.shutdown();
+            viewerThread.join(STOP_TIMEOUT_MILLIS);
+            reader.ring.close();
+            metrics.forget(capture);
+            g.dispose();
+        }
+    }
+
+    /**
+     * A capture line without a sound card: mono 16 bit little-endian frames whose samples are their own frame index, at
+     * most {@code blockFrames} per read. Paced to real time, a read returns when the line's clock has reached its last
+     * frame, as if it had just been captured, and a capture that falls behind by more than the line's buffer loses the
+     * oldest frames. Nothing is left to drain once stopped.
+     */
+    static final class MarkerLine implements InvocationHandler {
+        final AudioFormat format;
+        private final int blockFrames;
+        private final boolean realTime;
+        private final int bufferFrames;
+        private final double nanosPerFrame;
+        private long startTime; //capture thread only
+        private volatile boolean running = false;
+        volatile long framesRead = 0; //line position, including what was dropped
+        volatile long framesDropped = 0;
+
+        MarkerLine(final int sampleRate, final int blockFrames, final boolean realTime) {
+            this.format = new AudioFormat(sampleRate, 16, 1, true, false);
+            this.blockFrames = blockFrames;
+            this.realTime = realTime;
+            this.bufferFrames = Math.max(blockFrames, sampleRate / 2);
+            this.nanosPerFrame = 1e9 / sampleRate;
+        }
+
+        TargetDataLine newLine() {
+            return (TargetDataLine) Proxy.newProxyInstance(TargetDataLine.class.getClassLoader(), new Class<?>[]{TargetDataLine.class}, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "start":
+                    startTime = System.nanoTime() - (long) (framesRead * nanosPerFrame);
+                    running = true;
+                    return null;
+                case "stop":
+                    running = false;
+                    return null;
+                case "read":
+                    return read((byte[]) args[0], (int) args[1], (int) args[2]);
+                case "available":
+                    return available();
+                case "getBufferSize":
+                    return bufferFrames * 2;
+                case "getLongFramePosition":
+                    return framesRead - framesDropped;
+                case "getFormat":
+                    return format;
+                default: //open, close
+                    return null;
+            }
+        }
+
+        private long captured() {
+            return (long) ((System.nanoTime() - startTime) / nanosPerFrame);
+        }
+
+        private int available() {
+            if (!running || !realTime) {
+                return 0;
+            }
+            return (int) Math.max(0, Math.min(bufferFrames, captured() - framesRead)) * 2;
+        }
+
+        private int read(final byte[] bytes, final int offset, final int length) {
+            if (realTime) { //what no longer fits the buffer is gone
+                long overrun = captured() - framesRead - bufferFrames;
+                if (overrun > 0) {
+                    framesDropped += overrun;
+                    framesRead += overrun;
+                }
+            }
+            int frames = Math.min(length / 2, blockFrames);
+            long end = framesRead + frames;
+            if (realTime) {
+                for (long wait; (wait = startTime + (long) (end * nanosPerFrame) - System.nanoTime()) > 0; ) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            for (int i = 0; i < frames; i++) {
+                short sample = (short) (framesRead + i);
+                bytes[offset + 2 * i] = (byte) sample;
+                bytes[offset + 2 * i + 1] = (byte) (sample >> 8);
+            }
+            framesRead = end;
+            return frames * 2;
+        }
+    }
+
+    /**
+     * The viewer's ring reader, checking the ramp and timing what the viewer takes out
+     */
+    private static final class MarkerReader implements SampleReader {
+        private final MulticastRingBuffer.Reader ring;
+        private final PipelineMetrics.EndToEndProbe probe;
+        private volatile long polled = 0;
+        private volatile long markerErrors = 0;
+        private short expected = 0;
+
+        MarkerReader(final MulticastRingBuffer.Reader ring, final PipelineMetrics.EndToEndProbe probe) {
+            this.ring = ring;
+            this.probe = probe;
+        }
+
+        private int taken(final int[] samples, final int offset, final int count) {
+            long frames = polled + ring.getOverrunStats().getDroppedSamples(); //frame index of what comes next
+            for (int i = offset, end = offset + count; i < end; i++) {
+                if ((short) samples[i] != expected) {
+                    markerErrors++;
+                }
+                expected = (short) (samples[i] + 1);
+            }
+            polled += count;
+            probe.displayed(frames + count);
+            return count;
+        }
+
+        @Override
+        public int read(final int[] destination, final int offset, final int length) throws InterruptedException {
+            return taken(destination, offset, ring.read(destination, offset, length));
+        }
+
+        @Override
+        public int poll(final int[] destination, final int offset, final int length) {
+            return taken(destination, offset, ring.poll(destination, offset, length));
+        }
+
+        @Override
+        public int size() {
+            return ring.size();
+        }
+
+        @Override
+        public SampleRingBuffer.OverrunPolicy getPolicy() {
+            return ring.getPolicy();
+        }
+
+        @Override
+        public OverrunStats getOverrunStats() {
+            return ring.getOverrunStats();
+        }
+    }
+
+    /**
+     * One stage of a run: frames per second through it, the fraction of the time it was busy (NaN for waits) and its
+     * latency per block, as of the end of the run
+     */
+    public static final class Stage {
+        private final String name;
+        private final double framesPerSecond;
+        private final double busy;
+        private final long count;
+        private final double p50Micros, p99Micros, maxMicros;
+
+        Stage(final String name, final double framesPerSecond, final double busy, final LatencyHistogram latency) {
+            this.name = name;
+            this.framesPerSecond = framesPerSecond;
+            this.busy = busy;
+            this.count = latency.getCount();
+            this.p50Micros = latency.getP50Micros();
+            this.p99Micros = latency.getP99Micros();
+            this.maxMicros = latency.getMaxMicros();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getFramesPerSecond() {
+            return framesPerSecond;
+        }
+
+        /**
+         * Frames per second the stage would take if it were busy all the time, NaN for waits
+         */
+        public double getCapacity() {
+            return framesPerSecond / busy;
+        }
+
+        /**
+         * Blocks (or screen updates) timed
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            String load = Double.isNaN(busy) ? "" : String.format("busy %5.1f%%  capacity %11.0f frames/s", 100 * busy, getCapacity());
+            return String.format("%-8s %10.0f frames/s  %-43s  n=%d p50=%.0fus p99=%.0fus max=%.0fus",
+                name, framesPerSecond, load, count, p50Micros, p99Micros, maxMicros);
+        }
+    }
+
+    public static final class Report {
+        private final int sampleRate;
+        private final boolean realTime;
+        private final double seconds;
+        private final long framesCaptured;
+        private final long framesDisplayed;
+        private final long lostFrames;
+        private final long markerErrors;
+        private final long skippedRenders;
+        private final Stage[] stages;
+
+        Report(final int sampleRate, final boolean realTime, final double seconds, final long framesCaptured, final long framesDisplayed,
+               final long lostFrames, final long markerErrors, final long skippedRenders, final Stage[] stages) {
+            this.sampleRate = sampleRate;
+            this.realTime = realTime;
+            this.seconds = seconds;
+            this.framesCaptured = framesCaptured;
+            this.framesDisplayed = framesDisplayed;
+            this.lostFrames = lostFrames;
+            this.markerErrors = markerErrors;
+            this.skippedRenders = skippedRenders;
+            this.stages = stages;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public long getFramesCaptured() {
+            return framesCaptured;
+        }
+
+        public long getFramesDisplayed() {
+            return framesDisplayed;
+        }
+
+        /**
+         * Dropped by the ring because the viewer fell behind
+         */
+        public long getLostFrames() {
+            return lostFrames;
+        }
+
+        /**
+         * Samples that were not the one after the previous, a drop counts once
+         */
+        public long getMarkerErrors() {
+            return markerErrors;
+        }
+
+        public long getSkippedRenders() {
+            return skippedRenders;
+        }
+
+        public Stage getStage(final String name) {
+            for (Stage stage : stages) {
+                if (stage.name.equals(name)) {
+                    return stage;
+                }
+            }
+            throw new IllegalArgumentException("No stage " + name);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(String.format(
+                "%d Hz %s, %.1f s: %d frames captured, %d displayed, %d lost, %d marker errors, %d skipped renders",
+                sampleRate, realTime ? "real time" : "as fast as possible", seconds, framesCaptured, framesDisplayed, lostFrames,
+                markerErrors, skippedRenders));
+            for (Stage stage : stages) {
+                report.append("\n  ").append(stage);
+            }
+            return report.toString();
+        }
+    }
+
+    /**
+     * Limits for a run: end-to-end p99, skipped renders as a fraction of the viewer's ticks, lost frames, and for runs
+     * that are not paced the frames per second the viewer must take at least
+     */
+    public static final class Budget {
+        private final double endToEndP99Millis;
+        private final double skippedRenderFraction;
+        private final long lostFrames;
+        private final double minFramesPerSecond;
+
+        public Budget(final double endToEndP99Millis, final double skippedRenderFraction, final long lostFrames,
+                      final double minFramesPerSecond) {
+            this.endToEndP99Millis = endToEndP99Millis;
+            this.skippedRenderFraction = skippedRenderFraction;
+            this.lostFrames = lostFrames;
+            this.minFramesPerSecond = minFramesPerSecond;
+        }
+
+        /**
+         * -Dsplviewer.harness.endToEndP99Millis (100), -Dsplviewer.harness.skippedRenders (0.1 of the ticks),
+         * -Dsplviewer.harness.lostFrames (0) and -Dsplviewer.harness.minFramesPerSecond (384000)
+         */
+        public static Budget fromProperties() {
+            return new Budget(
+                Double.parseDouble(System.getProperty("splviewer.harness.endToEndP99Millis", "100")),
+                Double.parseDouble(System.getProperty("splviewer.harness.skippedRenders", "0.1")),
+                Long.getLong("splviewer.harness.lostFrames", 0),
+                Double.parseDouble(System.getProperty("splviewer.harness.minFramesPerSecond", "384000")));
+        }
+
+        /**
+         * @return what is over budget, empty when nothing is
+         */
+        public List<String> check(final Report report) {
+            List<String> overBudget = new ArrayList<>();
+            if (report.getLostFrames() > lostFrames) {
+                overBudget.add(report.getLostFrames() + " frames lost > " + lostFrames);
+            }
+            if (report.getLostFrames() == 0 && report.getMarkerErrors() > 0) { //nothing dropped, so the samples were mixed up
+                overBudget.add(report.getMarkerErrors() + " samples out of order");
+            }
+            if (report.realTime) {
+                double endToEndP99 = report.getStage("endToEnd").getP99Micros() / 1000;
+                if (endToEndP99 > endToEndP99Millis) {
+                    overBudget.add(String.format("end-to-end p99 %.1f ms > %.1f ms", endToEndP99, endToEndP99Millis));
+                }
+                double ticks = report.getStage("viewer").getCount() + report.getSkippedRenders();
+                if (report.getSkippedRenders() > skippedRenderFraction * ticks) {
+                    overBudget.add(report.getSkippedRenders() + " of " + (long) ticks + " renders skipped");
+                }
+            } else if (report.getStage("viewer").getFramesPerSecond() < minFramesPerSecond) {
+                overBudget.add(String.format("viewer took %.0f frames/s < %.0f", report.getStage("viewer").getFramesPerSecond(),
+                    minFramesPerSecond));
+            }
+            return overBudget;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.didi.splviewer;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters, gauges and latency histograms of the capture-to-screen pipeline, one instance per process.
+ * <p>
+ * Recording is a few atomic operations and never allocates, so the sources and viewers update the metrics on their hot
+ * paths. {@link #register()} exposes them as MXBeans under {@code com.didi.splviewer:type=Pipeline}, and
+ * {@link #startLogging(long)} writes a summary to the log periodically.
+ * <p>
+ * End-to-end latency: a source calls {@link #blockCaptured(AudioSource, long)} with its running frame count right after a block has
+ * been read, before handing it on, and each viewer owns an {@link EndToEndProbe} that it tells how many frames are on
+ * screen. The probe records, for every block that made it to the screen, the time since the block was captured.
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+
+    private static final String DOMAIN = "com.didi.splviewer";
+    private static final int MARKS = 1024; //blocks in flight, more than any ring can hold
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(PipelineMetrics.class);
+
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    public static PipelineMetrics get() {
+        return INSTANCE;
+    }
+
+    private final LatencyHistogram captureRead = new LatencyHistogram("captureRead");
+    private final LatencyHistogram decode = new LatencyHistogram("decode");
+    private final LatencyHistogram render = new LatencyHistogram("render");
+    private final LatencyHistogram endToEnd = new LatencyHistogram("endToEnd");
+
+    private final AtomicLong skippedRenders = new AtomicLong();
+    private final Map<AudioSource, LineLevel> lineLevels = new ConcurrentHashMap<>();
+    private final Map<String, SampleReader> queues = new ConcurrentHashMap<>();
+    private final Map<String, CompressedHistory> histories = new ConcurrentHashMap<>();
+
+    private final Map<AudioSource, CaptureMarks> captureMarks = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService logging;
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Registers this bean and the histograms with the platform MBean server, once
+     */
+    public synchronized PipelineMetrics register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Pipeline,name=metrics");
+            if (server.isRegistered(name)) {
+                return this;
+            }
+            server.registerMBean(this, name);
+            for (LatencyHistogram histogram : histograms()) {
+                server.registerMBean(histogram, new ObjectName(DOMAIN + ":type=Pipeline,name=" + histogram.getName()));
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register the pipeline metrics over JMX", e);
+        }
+        return this;
+    }
+
+    /**
+     * Logs a summary every {@code periodSeconds} and resets the histograms, so every line covers one period
+     */
+    public synchronized PipelineMetrics startLogging(final long periodSeconds) {
+        if (logging == null && periodSeconds > 0) {
+            logging = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pipeline-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logging.scheduleAtFixedRate(() -> {
+                logger.info("frames={} overruns={} minHeadroom={} queues={} skippedRenders={} historyPending={} historyUncompressed={}",
+                    getFramesCaptured(), getOverruns(), getMinLineHeadroomBytes(), getQueueDepths(), getSkippedRenders(),
+                    getHistoryPendingBlocks(), getHistoryUncompressedBlocks());
+                for (Map.Entry<String, String> queue : getQueueOverruns().entrySet()) {
+                    logger.info("  {} {}", queue.getKey(), queue.getValue());
+                }
+                for (LatencyHistogram histogram : histograms()) {
+                    logger.info("  {}", histogram);
+                    histogram.reset();
+                }
+                for (LineLevel level : lineLevels.values()) {
+                    level.minHeadroom.set(Integer.MAX_VALUE);
+                }
+            }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        }
+        return this;
+    }
+
+    private LatencyHistogram[] histograms() {
+        return new LatencyHistogram[]{captureRead, decode, render, endToEnd};
+    }
+
+    public void watchQueue(final String name, final SampleReader ring) {
+        queues.put(name, ring);
+    }
+
+    /**
+     * How long a read on the capture line blocked
+     */
+    public LatencyHistogram getCaptureRead() {
+        return captureRead;
+    }
+
+    /**
+     * Decoding time of one block
+     */
+    public LatencyHistogram getDecode() {
+        return decode;
+    }
+
+    /**
+     * Time a viewer spent on one screen update
+     */
+    public LatencyHistogram getRender() {
+        return render;
+    }
+
+    public LatencyHistogram getEndToEnd() {
+        return endToEnd;
+    }
+
+    /**
+     * Called by the capture thread of {@code source} before every read
+     *
+     * @param available    what the line had buffered before a read
+     * @param lineCapacity size of the line's buffer, filling up counts as one overrun since the line drops what comes
+     *                     next, however many reads it takes to drain it again
+     */
+    public void lineLevel(final AudioSource source, final int available, final int lineCapacity) {
+        LineLevel level = lineLevels.computeIfAbsent(source, s -> new LineLevel());
+        int headroom = lineCapacity - available;
+        level.headroom = headroom;
+        boolean full = headroom <= 0;
+        if (full && !level.full) {
+            level.overruns.incrementAndGet();
+        }
+        level.full = full;
+        level.minHeadroom.accumulateAndGet(headroom, Math::min);
+    }
+
+    /**
+     * Screen updates a viewer left out to catch up with the audio, see {@link RenderScheduler}
+     */
+    public void rendersSkipped(final long count) {
+        skippedRenders.addAndGet(count);
+    }
+
+    /**
+     * Called by the source thread before it hands on a block
+     *
+     * @param frames frames produced by the source so far, including this block
+     */
+    public void blockCaptured(final AudioSource source, final long frames) {
+        captureMarks.computeIfAbsent(source, s -> new CaptureMarks()).add(frames);
+    }
+
+    /**
+     * {@link #blockCaptured(AudioSource, long)} for a stage that runs on the source thread and has its own clock, e.g.
+     * {@link ResampledSource}. Its frames do not count as captured.
+     */
+    public void blockDerived(final AudioSource stage, final long frames) {
+        CaptureMarks marks = captureMarks.computeIfAbsent(stage, s -> new CaptureMarks());
+        if (marks.captured) { //the viewers' probes may have come first
+            marks.captured = false;
+        }
+        marks.add(frames);
+    }
+
+    /**
+     * A latency probe for a viewer that shows {@code source}
+     */
+    public EndToEndProbe newProbe(final AudioSource source) {
+        return newProbe(source, endToEnd);
+    }
+
+    /**
+     * A probe for any stage behind {@code source}, recording the time since capture into {@code histogram}
+     */
+    public EndToEndProbe newProbe(final AudioSource source, final LatencyHistogram histogram) {
+        return new EndToEndProbe(captureMarks.computeIfAbsent(source, s -> new CaptureMarks()), histogram);
+    }
+
+    /**
+     * One capture line's buffer, written by its capture thread
+     */
+    private static final class LineLevel {
+        private final AtomicLong overruns = new AtomicLong();
+        private final AtomicInteger minHeadroom = new AtomicInteger(Integer.MAX_VALUE);
+        private volatile int headroom = -1;
+        private boolean full = false; //capture thread only
+    }
+
+    /**
+     * One source's recent blocks, written by the source thread only: frame count at the end of a block and when it was
+     * captured
+     */
+    private static final class CaptureMarks {
+        private final long[] frames = new long[MARKS];
+        private final long[] times = new long[MARKS];
+        private final AtomicLong sequence = new AtomicLong();
+        private volatile boolean captured = true;
+        private volatile long lastFrames = 0;
+
+        void add(final long blockEndFrame) {
+            long next = sequence.get();
+            int slot = (int) (next % MARKS);
+            frames[slot] = blockEndFrame;
+            times[slot] = System.nanoTime();
+            sequence.set(next + 1); //publishes the mark
+            lastFrames = blockEndFrame;
+        }
+    }
+
+    /**
+     * Per-viewer cursor over the capture marks of one source, used by one thread
+     */
+    public final class EndToEndProbe {
+        private final CaptureMarks marks;
+        private final LatencyHistogram histogram;
+        private long next;
+
+        private EndToEndProbe(final CaptureMarks marks, final LatencyHistogram histogram) {
+            this.marks = marks;
+            this.histogram = histogram;
+            this.next = marks.sequence.get();
+        }
+
+        /**
+         * @param frames frames of the source that are on screen now, or that reached the probe's stage
+         */
+        public void displayed(final long frames) {
+            long now = System.nanoTime();
+            long published = marks.sequence.get();
+            next = Math.max(next, published - MARKS + 1); //fell behind, skip what was overwritten
+            while (next < published) {
+                int slot = (int) (next % MARKS);
+                long markFrame = marks.frames[slot];
+                long markTime = marks.times[slot];
+                if (marks.sequence.get() - next >= MARKS) { //overwritten while reading
+                    next = marks.sequence.get() - MARKS + 1;
+                    continue;
+                }
+                if (markFrame > frames) {
+                    break;
+                }
+                histogram.record(now - markTime);
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Removes what was kept for a source that is gone
+     */
+    public void forget(final AudioSource source) {
+        captureMarks.remove(source);
+        lineLevels.remove(source);
+    }
+
+    public void unwatchQueue(final String name) {
+        queues.remove(name);
+    }
+
+    public void watchHistory(final String name, final CompressedHistory history) {
+        histories.put(name, history);
+    }
+
+    public void unwatchHistory(final String name) {
+        histories.remove(name);
+    }
+
+    @Override
+    public long getFramesCaptured() {
+        long frames = 0;
+        for (CaptureMarks marks : captureMarks.values()) {
+            if (marks.captured) {
+                frames += marks.lastFrames;
+            }
+        }
+        return frames;
+    }
+
+    @Override
+    public long getOverruns() {
+        long overruns = 0;
+        for (LineLevel level : lineLevels.values()) {
+            overruns += level.overruns.get();
+        }
+        return overruns;
+    }
+
+    @Override
+    public long getSkippedRenders() {
+        return skippedRenders.get();
+    }
+
+    @Override
+    public Map<String, Integer> getLineHeadroomBytes() {
+        Map<String, Integer> headroom = new LinkedHashMap<>();
+        for (Map.Entry<AudioSource, LineLevel> level : lineLevels.entrySet()) {
+            headroom.put(level.getKey().toString(), level.getValue().headroom);
+        }
+        return headroom;
+    }
+
+    @Override
+    public Map<String, Integer> getMinLineHeadroomBytes() {
+        Map<String, Integer> headroom = new LinkedHashMap<>();
+        for (Map.Entry<AudioSource, LineLevel> level : lineLevels.entrySet()) {
+            int min = level.getValue().minHeadroom.get();
+            headroom.put(level.getKey().toString(), min == Integer.MAX_VALUE ? -1 : min);
+        }
+        return headroom;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (Map.Entry<String, SampleReader> queue : queues.entrySet()) {
+            depths.put(queue.getKey(), queue.getValue().size());
+        }
+        return depths;
+    }
+
+    @Override
+    public Map<String, String> getQueueOverruns() {
+        Map<String, String> overruns = new LinkedHashMap<>();
+        for (Map.Entry<String, SampleReader> queue : queues.entrySet()) {
+            overruns.put(queue.getKey(), queue.getValue().getPolicy() + ": " + queue.getValue().getOverrunStats());
+        }
+        return overruns;
+    }
+
+    @Override
+    public Map<String, Integer> getHistoryPendingBlocks() {
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, CompressedHistory> history : histories.entrySet()) {
+            pending.put(history.getKey(), history.getValue().getPendingBlocks());
+        }
+        return pending;
+    }
+
+    @Override
+    public Map<String, Long> getHistoryUncompressedBlocks() {
+        Map<String, Long> uncompressed = new LinkedHashMap<>();
+        for (Map.Entry<String, CompressedHistory> history : histories.entrySet()) {
+            uncompressed.put(history.getKey(), history.getValue().getUncompressedBlocks());
+        }
+        return uncompressed;
+    }
+
+    @Override
+    public void reset() {
+        skippedRenders.set(0);
+        for (LineLevel level : lineLevels.values()) {
+            level.overruns.set(0);
+            level.minHeadroom.set(Integer.MAX_VALUE);
+        }
+        for (LatencyHistogram histogram : histograms()) {
+            histogram.reset();
+        }
+    }
+}
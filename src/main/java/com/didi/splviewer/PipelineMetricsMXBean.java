@@ -0,0 +1,53 @@
+package com.didi.splviewer;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link PipelineMetrics} counters and gauges. The latency histograms are separate beans.
+ */
+public interface PipelineMetricsMXBean {
+
+    long getFramesCaptured();
+
+    /**
+     * Times a capture line's buffer filled up, over all captures
+     */
+    long getOverruns();
+
+    /**
+     * Screen updates dropped because a viewer fell behind the audio clock
+     */
+    long getSkippedRenders();
+
+    /**
+     * Free bytes in each capture line's buffer before its last read, by mixer
+     */
+    Map<String, Integer> getLineHeadroomBytes();
+
+    /**
+     * Lowest headroom of each capture line since the last reset, 0 means its buffer filled up
+     */
+    Map<String, Integer> getMinLineHeadroomBytes();
+
+    /**
+     * Samples waiting in each watched handoff ring
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Samples each watched ring dropped or decimated, and when, see {@link OverrunStats}
+     */
+    Map<String, String> getQueueOverruns();
+
+    /**
+     * Blocks of each viewer's raw history waiting for the compressor, see {@link CompressedHistory}
+     */
+    Map<String, Integer> getHistoryPendingBlocks();
+
+    /**
+     * Blocks of each viewer's raw history kept uncompressed because the compressor fell behind
+     */
+    Map<String, Long> getHistoryUncompressedBlocks();
+
+    void reset();
+}
@@ -0,0 +1,190 @@
+package com.didi.splviewer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming resampler by a rational factor {@code up/down}, e.g. 1/4 to decimate 48kHz to 12kHz or 160/147 for
+ * 44.1kHz to 48kHz.
+ * <p>
+ * Conceptually the input is upsampled by {@code up} (zeros in between), low-pass filtered and every {@code down}th
+ * sample kept. The polyphase form only computes the samples that are kept, from the input samples that are not zero:
+ * one output costs {@link #getTapsPerPhase()} multiply-adds. The low-pass is a Kaiser windowed sinc with its cutoff at
+ * 90% of the lower Nyquist frequency (input or output) and 80dB stopband, split into {@code up} phases. Filter banks
+ * are computed once per ratio and shared.
+ * <p>
+ * State is carried over between blocks, so the output does not depend on how the input is cut into blocks. Output lags
+ * the input by {@link #getDelay()} output samples. Not thread-safe, one instance per channel.
+ */
+public final class PolyphaseResampler {
+
+    private static final double STOPBAND_ATTENUATION = 80; //dB
+    private static final double CUTOFF = 0.9; //of the lower Nyquist frequency
+    private static final int CHUNK = 4096;
+
+    private static final Map<Long, float[][]> BANKS = new ConcurrentHashMap<>();
+
+    private final int up;
+    private final int down;
+    private final float[][] bank; //[phase][tap], tap 0 goes with the newest input sample
+    private final int taps;
+    private final float[] history;
+    private int count; //valid samples in history
+    private int nextInput; //index in history of the newest input of the next output
+    private int phase;
+
+    public PolyphaseResampler(final int up, final int down) {
+        if (up <= 0 || down <= 0) {
+            throw new IllegalArgumentException("Invalid ratio " + up + "/" + down);
+        }
+        int gcd = gcd(up, down);
+        this.up = up / gcd;
+        this.down = down / gcd;
+        this.bank = BANKS.computeIfAbsent(((long) this.up << 32) | this.down, k -> design(this.up, this.down));
+        this.taps = bank[0].length;
+        this.history = new float[taps - 1 + CHUNK];
+        reset();
+    }
+
+    /**
+     * Parses "up/down" (or a single integer, the decimation factor)
+     */
+    public static PolyphaseResampler parse(final String ratio) {
+        String[] parts = ratio.trim().split("/");
+        if (parts.length == 1) {
+            return new PolyphaseResampler(1, Integer.parseInt(parts[0].trim()));
+        }
+        return new PolyphaseResampler(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    private static int gcd(final int a, final int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static float[][] design(final int up, final int down) {
+        //Transition band of 10% of the lower Nyquist frequency, in cycles per upsampled sample
+        double cutoff = CUTOFF * 0.5 / Math.max(up, down);
+        double transition = 0.1 * 0.5 / Math.max(up, down);
+        int length = (int) Math.ceil((STOPBAND_ATTENUATION - 8) / (2.285 * 2 * Math.PI * transition));
+        int tapsPerPhase = (length + up - 1) / up;
+        length = tapsPerPhase * up;
+        double beta = 0.1102 * (STOPBAND_ATTENUATION - 8.7);
+        double center = (length - 1) / 2.0;
+
+        double[] h = new double[length];
+        for (int n = 0; n < length; n++) {
+            double t = n - center;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double r = t / center;
+            h[n] = sinc * besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / besselI0(beta);
+        }
+
+        //Unity gain at DC for every phase, which also makes up for the zeros of the upsampling
+        float[][] bank = new float[up][tapsPerPhase];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            for (int k = 0; k < tapsPerPhase; k++) {
+                sum += h[p + k * up];
+            }
+            for (int k = 0; k < tapsPerPhase; k++) {
+                bank[p][k] = (float) (h[p + k * up] / sum);
+            }
+        }
+        return bank;
+    }
+
+    //Modified Bessel function of the first kind, order 0
+    private static double besselI0(final double x) {
+        double sum = 1, term = 1;
+        for (int k = 1; term > 1e-12 * sum; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Most output samples {@code inputLength} input samples can produce
+     */
+    public int maxOutputLength(final int inputLength) {
+        return (int) (((long) inputLength * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * @return the number of output samples written
+     */
+    public int process(final int[] input, final int inputOffset, final int inputLength, final int[] output, final int outputOffset) {
+        return process(input, inputOffset, 1, inputLength, output, outputOffset, 1);
+    }
+
+    /**
+     * Resamples one channel of interleaved data in place of a deinterleaved copy: sample {@code i} is at
+     * {@code input[inputOffset + i * inputStride]}, output {@code j} goes to {@code output[outputOffset + j * outputStride]}
+     *
+     * @return the number of output samples written
+     */
+    public int process(final int[] input, final int inputOffset, final int inputStride, final int inputLength, final int[] output,
+                       final int outputOffset, final int outputStride) {
+        int produced = 0;
+        int out = outputOffset;
+        for (int done = 0; done < inputLength; ) {
+            int chunk = Math.min(CHUNK, inputLength - done);
+            for (int i = 0, in = inputOffset + done * inputStride; i < chunk; i++, in += inputStride) {
+                history[count + i] = input[in];
+            }
+            count += chunk;
+            done += chunk;
+
+            while (nextInput < count) {
+                float[] coefficients = bank[phase];
+                float sum = 0;
+                for (int k = 0, i = nextInput; k < taps; k++, i--) {
+                    sum += coefficients[k] * history[i];
+                }
+                output[out] = Math.round(sum);
+                out += outputStride;
+                produced++;
+                phase += down;
+                nextInput += phase / up;
+                phase %= up;
+            }
+
+            //Keep what the next outputs still reach back to
+            int drop = count - (taps - 1);
+            System.arraycopy(history, drop, history, 0, taps - 1);
+            count -= drop;
+            nextInput -= drop;
+        }
+        return produced;
+    }
+
+    /**
+     * Forgets the input so far, as if the signal had been silent
+     */
+    public void reset() {
+        Arrays.fill(history, 0);
+        count = taps - 1;
+        nextInput = taps - 1;
+        phase = 0;
+    }
+
+    public int getUp() {
+        return up;
+    }
+
+    public int getDown() {
+        return down;
+    }
+
+    public int getTapsPerPhase() {
+        return taps;
+    }
+
+    /**
+     * Group delay of the filter in output samples
+     */
+    public double getDelay() {
+        return (bank.length * taps - 1) / 2.0 / down;
+    }
+}
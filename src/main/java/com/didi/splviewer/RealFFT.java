@@ -0,0 +1,99 @@
+package com.didi.splviewer;
+
+/**
+ * FFT of real input of a fixed power-of-two size.
+ * <p>
+ * The n real samples are packed into n/2 complex values (even samples real, odd samples imaginary), transformed with
+ * an iterative radix-2 FFT and then split into the n/2 + 1 bins of the real spectrum. Twiddle and bit-reversal tables
+ * are computed once, and all work buffers belong to the instance, so transforms allocate nothing. Not thread-safe.
+ */
+final class RealFFT {
+
+    private final int size;
+    private final int half;
+    private final int[] bitReversed;
+    private final double[] cosHalf, sinHalf; //twiddles of the n/2 point complex FFT
+    private final double[] cosFull, sinFull; //twiddles of the split step
+    private final double[] re, im;
+
+    RealFFT(final int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+
+        int bits = Integer.numberOfTrailingZeros(half);
+        bitReversed = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cosHalf = new double[half / 2];
+        sinHalf = new double[half / 2];
+        for (int k = 0; k < half / 2; k++) {
+            cosHalf[k] = Math.cos(2 * Math.PI * k / half);
+            sinHalf[k] = Math.sin(2 * Math.PI * k / half);
+        }
+        cosFull = new double[half + 1];
+        sinFull = new double[half + 1];
+        for (int k = 0; k <= half; k++) {
+            cosFull[k] = Math.cos(2 * Math.PI * k / size);
+            sinFull[k] = Math.sin(2 * Math.PI * k / size);
+        }
+        re = new double[half];
+        im = new double[half];
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of output bins, n/2 + 1 (DC up to and including Nyquist)
+     */
+    int getBins() {
+        return half + 1;
+    }
+
+    /**
+     * @param input        {@code size} real samples
+     * @param outReal      {@link #getBins()} real parts
+     * @param outImaginary {@link #getBins()} imaginary parts
+     */
+    void transform(final double[] input, final double[] outReal, final double[] outImaginary) {
+        for (int i = 0; i < half; i++) {
+            int j = bitReversed[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+
+        for (int blockSize = 2; blockSize <= half; blockSize <<= 1) {
+            int halfBlock = blockSize >> 1;
+            int step = half / blockSize;
+            for (int start = 0; start < half; start += blockSize) {
+                for (int j = 0, k = 0; j < halfBlock; j++, k += step) {
+                    double wr = cosHalf[k], wi = -sinHalf[k];
+                    int a = start + j, b = a + halfBlock;
+                    double tr = wr * re[b] - wi * im[b];
+                    double ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+
+        //X[k] = Even[k] + W^k * Odd[k], where Even/Odd are recovered from Z[k] and conj(Z[n/2 - k])
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            double evenRe = (re[a] + re[b]) / 2, evenIm = (im[a] - im[b]) / 2;
+            double oddRe = (im[a] + im[b]) / 2, oddIm = -(re[a] - re[b]) / 2;
+            double c = cosFull[k], s = sinFull[k];
+            outReal[k] = evenRe + c * oddRe + s * oddIm;
+            outImaginary[k] = evenIm + c * oddIm - s * oddRe;
+        }
+    }
+}
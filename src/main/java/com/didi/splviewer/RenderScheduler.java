@@ -0,0 +1,91 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces screen updates on the audio clock instead of the wall clock.
+ * <p>
+ * Tick k is due when the source's frame position reaches {@code origin + k * sampleRate / refreshRate}. Due positions
+ * are computed from k, not by adding up sleeps, so the refresh rate cannot drift from the audio. While waiting the
+ * thread parks for the time the missing frames should take (at most one tick), and if the renderer fell behind by
+ * more than a tick the missed ticks are skipped, so the display never lags the audio by more than one tick plus one
+ * source block.
+ * <p>
+ * Used by a single thread.
+ */
+final class RenderScheduler {
+
+    private final LongSupplier audioClock;
+    private final int sampleRate;
+    private final int refreshRate;
+    private final double framesPerTick;
+    private final long nanosPerTick;
+
+    private long origin = -1;
+    private long tick = 0;
+    private long skippedTicks = 0;
+
+    /**
+     * @param audioClock frames produced by the source so far, see {@link AudioSource#getFramePosition()}
+     */
+    RenderScheduler(final LongSupplier audioClock, final int sampleRate, final int refreshRate) {
+        this.audioClock = audioClock;
+        this.sampleRate = sampleRate;
+        this.refreshRate = refreshRate;
+        this.framesPerTick = sampleRate / (double) refreshRate;
+        this.nanosPerTick = TimeUnit.SECONDS.toNanos(1) / refreshRate;
+    }
+
+    /**
+     * Waits until the next tick is due, for one tick at most so the caller can check for shutdown when the source
+     * stops.
+     *
+     * @return true when it is time to render, false when the audio clock did not get there in time
+     */
+    boolean awaitTick() {
+        long position = audioClock.getAsLong();
+        if (origin < 0 || position < due(tick - 1)) { //first call, or the source started over
+            origin = position;
+            tick = 1;
+        }
+
+        long due = due(tick);
+        long deadline = System.nanoTime() + nanosPerTick;
+        while (position < due) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(remaining, (long) ((due - position) * 1e9 / sampleRate)));
+            position = audioClock.getAsLong();
+        }
+
+        //Behind by more than a tick: drop the ticks that passed, the next render catches up in one go
+        long latest = (long) ((position - origin) / framesPerTick);
+        if (latest > tick) {
+            skippedTicks += latest - tick;
+            PipelineMetrics.get().rendersSkipped(latest - tick);
+            tick = latest;
+        }
+        tick++;
+        return true;
+    }
+
+    private long due(final long tick) {
+        return origin + (long) Math.ceil(tick * framesPerTick);
+    }
+
+    long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    int getRefreshRate() {
+        return refreshRate;
+    }
+}
@@ -0,0 +1,112 @@
+package com.didi.splviewer;
+
+import java.awt.Container;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Pipeline stage that resamples every block of a source by {@code up/down} (see {@link PolyphaseResampler}) before
+ * handing it on, and the source as the consumers behind the stage see it: same channels and sample size, the sample
+ * rate and the audio clock scaled by {@code up/down}.
+ * <p>
+ * The stage runs on the source thread, {@link #write(int[], int, int)} is the source's sink. Starting, stopping, the
+ * options panel and the raw PCM stay with the wrapped source, so a recorder keeps full-rate data while the viewers and
+ * analyzers work at the reduced rate.
+ */
+public final class ResampledSource implements AudioSource, SampleSink {
+
+    private final AudioSource source;
+    private final SampleSink downstream;
+    private final PolyphaseResampler[] resamplers;
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private int[] resampled = new int[0];
+    private long framesResampled;
+
+    /**
+     * @param source     must write its blocks to this stage
+     * @param ratio      "up/down", see {@link PolyphaseResampler#parse(String)}
+     * @param downstream gets the resampled blocks, interleaved like the source's
+     */
+    public ResampledSource(final AudioSource source, final String ratio, final SampleSink downstream) {
+        this.source = source;
+        this.downstream = downstream;
+        this.resamplers = new PolyphaseResampler[source.getFormat().getChannels()];
+        for (int c = 0; c < resamplers.length; c++) {
+            resamplers[c] = PolyphaseResampler.parse(ratio);
+        }
+    }
+
+    @Override
+    public void write(final int[] samples, final int offset, final int length) throws InterruptedException {
+        int channels = resamplers.length;
+        int frames = length / channels;
+        int capacity = resamplers[0].maxOutputLength(frames) * channels;
+        if (resampled.length < capacity) {
+            resampled = new int[capacity];
+        }
+        int produced = 0;
+        for (int c = 0; c < channels; c++) {
+            produced = resamplers[c].process(samples, offset + c, channels, frames, resampled, c, channels); //same for all
+        }
+        if (produced > 0) {
+            framesResampled += produced;
+            metrics.blockDerived(this, framesResampled);
+            downstream.write(resampled, 0, produced * channels);
+        }
+    }
+
+    public AudioSource getSource() {
+        return source;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        AudioFormat format = source.getFormat();
+        float ratio = (float) resamplers[0].getUp() / resamplers[0].getDown();
+        return new AudioFormat(format.getEncoding(), format.getSampleRate() * ratio, format.getSampleSizeInBits(), format.getChannels(),
+            format.getFrameSize(), format.getFrameRate() * ratio, format.isBigEndian());
+    }
+
+    @Override
+    public long getFramePosition() {
+        return source.getFramePosition() * resamplers[0].getUp() / resamplers[0].getDown();
+    }
+
+    @Override
+    public boolean supportsPcm() {
+        return source.supportsPcm();
+    }
+
+    @Override
+    public AudioSource setPcmSink(final PcmSink sink) {
+        source.setPcmSink(sink);
+        return this;
+    }
+
+    @Override
+    public Container getView() {
+        return source.getView();
+    }
+
+    @Override
+    public Container getOptionsPanel() {
+        return source.getOptionsPanel();
+    }
+
+    @Override
+    public SPLModule begin() {
+        source.begin();
+        return this;
+    }
+
+    @Override
+    public void run() {
+        source.run();
+    }
+
+    @Override
+    public ResampledSource shutdown() {
+        source.shutdown();
+        return this;
+    }
+}
@@ -0,0 +1,71 @@
+package com.didi.splviewer;
+
+/**
+ * Mean, variance, min and max of everything added, with Welford's update: no sum of squares that loses the variance
+ * to cancellation when the mean is large. Allocation-free, not thread-safe.
+ */
+public final class RunningMoments {
+
+    private long count = 0;
+    private double mean = 0;
+    private double squaredDeviations = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(final double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (value - mean);
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * @param scale factor applied to every sample, e.g. {@link PcmDecoder#getScale()}
+     */
+    public void add(final int[] samples, final int offset, final int length, final double scale) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            add(samples[i] * scale);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Sample variance, 0 below two values
+     */
+    public double getVariance() {
+        return count > 1 ? squaredDeviations / (count - 1) : 0;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        squaredDeviations = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+}
@@ -0,0 +1,195 @@
+package com.didi.splviewer;
+
+/**
+ * Streaming sound level meter.
+ * <p>
+ * Samples go through the frequency weighting (A, C or Z), are squared and smoothed with the time weighting (Fast,
+ * Slow or Impulse). Every {@code intervalSeconds} the meter closes an interval with its Leq, the max/min of the time
+ * weighted level and the peak of the frequency weighted signal, and notifies the listener.
+ * <p>
+ * Levels are 10*log10 of the mean square relative to digital full scale (a full scale square wave is 0 dB) plus the
+ * calibration offset, i.e. the offset is the SPL that corresponds to full scale. Processing a block allocates nothing.
+ * Not thread-safe, meant to be driven by a single consumer thread.
+ */
+public final class SPLMeter {
+
+    public interface IntervalListener {
+        /**
+         * Called on the processing thread when an interval closes, read the interval values from the meter
+         */
+        void intervalCompleted(SPLMeter meter);
+    }
+
+    private static final double MIN_MEAN_SQUARE = 1e-20; //-200dB, keeps log10 finite on digital silence
+
+    private final FrequencyWeighting frequencyWeighting;
+    private final TimeWeighting timeWeighting;
+    private final double sampleRate;
+    private final Biquad[] filter;
+    private final double riseCoefficient, decayCoefficient;
+    private final long intervalLength;
+    private final long settleLength;
+    private final double calibrationOffset;
+    private IntervalListener listener;
+
+    //Running state
+    private double timeWeightedMeanSquare = 0;
+    private long processedSamples = 0;
+
+    //Interval in progress
+    private long intervalSamples = 0;
+    private double intervalSumOfSquares = 0;
+    private double intervalMax = 0;
+    private double intervalMin = Double.MAX_VALUE;
+    private double intervalPeak = 0;
+
+    //Last completed interval, in dB
+    private double leq = Double.NEGATIVE_INFINITY;
+    private double lmax = Double.NEGATIVE_INFINITY;
+    private double lmin = Double.NEGATIVE_INFINITY;
+    private double lpeak = Double.NEGATIVE_INFINITY;
+
+    public SPLMeter(final double sampleRate, final FrequencyWeighting frequencyWeighting, final TimeWeighting timeWeighting,
+                    final double intervalSeconds, final double calibrationOffset) {
+        this.sampleRate = sampleRate;
+        this.frequencyWeighting = frequencyWeighting;
+        this.timeWeighting = timeWeighting;
+        this.filter = frequencyWeighting.create(sampleRate);
+        this.riseCoefficient = timeWeighting.riseCoefficient(sampleRate);
+        this.decayCoefficient = timeWeighting.decayCoefficient(sampleRate);
+        this.intervalLength = Math.max(1, Math.round(intervalSeconds * sampleRate));
+        this.settleLength = Math.round(5 * timeWeighting.getDecayTimeConstant() * sampleRate); //Lmin is meaningless while the average still rises from 0
+        this.calibrationOffset = calibrationOffset;
+    }
+
+    public SPLMeter setListener(final IntervalListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @param scale factor that maps the samples to [-1, 1), see {@link PcmDecoder#getScale()}
+     */
+    public void process(final int[] samples, final int offset, final int length, final float scale) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            processSample(samples[i] * (double) scale);
+        }
+    }
+
+    /**
+     * @param samples normalized to [-1, 1)
+     */
+    public void process(final float[] samples, final int offset, final int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            processSample(samples[i]);
+        }
+    }
+
+    private void processSample(final double sample) {
+        double x = sample;
+        for (Biquad section : filter) {
+            x = section.process(x);
+        }
+
+        double square = x * x;
+        double y = timeWeightedMeanSquare;
+        y += (square > y ? riseCoefficient : decayCoefficient) * (square - y);
+        timeWeightedMeanSquare = y;
+
+        intervalSumOfSquares += square;
+        if (square > intervalPeak) {
+            intervalPeak = square;
+        }
+        if (y > intervalMax) {
+            intervalMax = y;
+        }
+        if (y < intervalMin && processedSamples >= settleLength) {
+            intervalMin = y;
+        }
+        processedSamples++;
+
+        if (++intervalSamples == intervalLength) {
+            completeInterval();
+        }
+    }
+
+    private void completeInterval() {
+        leq = toDecibels(intervalSumOfSquares / intervalSamples);
+        lmax = toDecibels(intervalMax);
+        lmin = intervalMin == Double.MAX_VALUE ? Double.NEGATIVE_INFINITY : toDecibels(intervalMin);
+        lpeak = toDecibels(intervalPeak);
+
+        intervalSamples = 0;
+        intervalSumOfSquares = 0;
+        intervalMax = 0;
+        intervalMin = Double.MAX_VALUE;
+        intervalPeak = 0;
+
+        if (listener != null) {
+            listener.intervalCompleted(this);
+        }
+    }
+
+    public void reset() {
+        for (Biquad section : filter) {
+            section.reset();
+        }
+        timeWeightedMeanSquare = 0;
+        processedSamples = 0;
+        intervalSamples = 0;
+        intervalSumOfSquares = 0;
+        intervalMax = 0;
+        intervalMin = Double.MAX_VALUE;
+        intervalPeak = 0;
+        leq = lmax = lmin = lpeak = Double.NEGATIVE_INFINITY;
+    }
+
+    private double toDecibels(final double meanSquare) {
+        return 10 * Math.log10(Math.max(meanSquare, MIN_MEAN_SQUARE)) + calibrationOffset;
+    }
+
+    /**
+     * Current time weighted level, e.g. LAF
+     */
+    public double getLevel() {
+        return toDecibels(timeWeightedMeanSquare);
+    }
+
+    /**
+     * Equivalent continuous level of the last completed interval, e.g. LAeq
+     */
+    public double getLeq() {
+        return leq;
+    }
+
+    public double getLmax() {
+        return lmax;
+    }
+
+    public double getLmin() {
+        return lmin;
+    }
+
+    /**
+     * Peak of the frequency weighted signal in the last completed interval, e.g. LCpeak
+     */
+    public double getPeak() {
+        return lpeak;
+    }
+
+    public FrequencyWeighting getFrequencyWeighting() {
+        return frequencyWeighting;
+    }
+
+    public TimeWeighting getTimeWeighting() {
+        return timeWeighting;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public double getCalibrationOffset() {
+        return calibrationOffset;
+    }
+}
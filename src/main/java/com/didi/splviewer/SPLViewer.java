@@ -10,8 +10,11 @@ import java.awt.Panel;
 import java.awt.TextField;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
-import java.util.LinkedList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+import javax.sound.sampled.AudioFormat;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,7 +24,7 @@ import org.slf4j.LoggerFactory;
 
 public final class SPLViewer implements SPLModule {
 
-    private enum DisplayType {Linear, Log}
+    enum DisplayType {Linear, Log}
 
     /**
      * SETTINGS
@@ -30,6 +33,13 @@ public final class SPLViewer implements SPLModule {
     private int X_ZOOM_LEVEL = 40; //horizontal pixels per second (= horizontal pixels per #samples=SAMPLE_RATE)
     private double Y_ZOOM_LEVEL = 1.0;  //multiplier for vertical zoom
     private DisplayType DISPLAY_TYPE = DisplayType.Log;
+    private FrequencyWeighting FREQUENCY_WEIGHTING = FrequencyWeighting.A;
+    private TimeWeighting TIME_WEIGHTING = TimeWeighting.FAST;
+    private static final double LEQ_INTERVAL_SECONDS = 1.0;
+    private static final int HISTORY_MINUTES = Integer.getInteger("splviewer.history.minutes", 60); //kept off-heap, ~16MB per hour at 48kHz
+    private static final int HISTORY_BASE_SHIFT = 8; //finest history resolution, 256 samples per column
+    private static final int RAW_HISTORY_MINUTES = Integer.getInteger("splviewer.history.rawMinutes", 10); //exact samples for zooming in further, compressed, 0 for none
+    private static final double CALIBRATION_OFFSET = Double.parseDouble(System.getProperty("splviewer.calibration", "0")); //dB SPL at digital full scale
 
     private static Logger logger = (Logger) LoggerFactory.getLogger(SPLViewer.class);
 
@@ -38,157 +48,344 @@ public final class SPLViewer implements SPLModule {
     }
 
     private Container viewerContainer;
-    private int width, height;
-    private double cursor_x = -1;
-    private LinkedBlockingQueue<Long> pullBuffer;
-    private boolean EXIT_FLAG = false;
-    private final Average updateProcessingTimeAverage = new Average();
-
-    private int SAMPLES_PER_UPDATE = AudioCapture.getSampleRate() / UPDATES_PER_SECOND;
+    private final WaveformRenderer renderer = new WaveformRenderer(1, 1);
+    private final SampleReader pullBuffer;
+    private final AudioSource source;
+    private final String label;
+    private SPLViewer[] linkedViewers = new SPLViewer[0];
+    private final int[] updateSampleBuffer = new int[4096];
+    private volatile boolean EXIT_FLAG = false;
+    private SPLMeter meter;
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private final PipelineMetrics.EndToEndProbe endToEndProbe;
+    private long framesDisplayed = 0;
+
+    //Render time per tick against the tick budget, and the DC offset of the input, both for the readout
+    private ExponentialMoments renderMillis = new ExponentialMoments(UPDATES_PER_SECOND); //1s
+    private SlidingWindow renderWindow = new SlidingWindow(UPDATES_PER_SECOND); //last second
+    private final StreamingQuantile renderP99 = new StreamingQuantile(0.99);
+    private ExponentialMoments dcOffset = new ExponentialMoments(1);
+
+    //History mode: pan (drag) and zoom (wheel) over everything captured so far, double-click goes back to live
+    private HistoryPyramid history;
+    private CompressedHistory rawHistory; //null when disabled
+    private int[] rawSamples = new int[0];
+    private final SampleKernels.Summary rawColumn = new SampleKernels.Summary();
+    private final SampleKernels kernels = SampleKernels.get();
+    private final WaveformRenderer historyRenderer = new WaveformRenderer(1, 1);
+    private int[] historyMin = new int[0], historyMax = new int[0];
+    private float[] historyMeanSquare = new float[0];
+    private volatile boolean historyMode = false;
+    private volatile long historyEnd = -1; //sample at the right edge, -1 follows the capture
+    private volatile double historySamplesPerColumn;
+
+    private int historySampleRate;
 
     @Override
     public void run() {
-        Graphics g = viewerContainer.getGraphics();
-        g.setColor(Color.LIGHT_GRAY);
+        run(viewerContainer.getGraphics());
+    }
 
+    /**
+     * The viewer loop, drawing to {@code g}, e.g. an off-screen image when there is no display (see {@link PipelineHarness})
+     */
+    void run(final Graphics g) {
         long captureBeginTime = System.currentTimeMillis();  //No we don't restart the runnable every time a capture is stopped and started
+        RenderScheduler scheduler = null;
+        long nextTimelineFrame = 0;
 
         while (!EXIT_FLAG) {
-            try {
-                int updateIndex = 1;
-                updateProcessingTimeAverage.reset();
-                long frameBeginTime = 0;
-                LinkedList<Long> localUpdateSampleBuffer = new LinkedList<>();
-
-                for (int sampleIndex = 1; sampleIndex <= AudioCapture.getSampleRate(); sampleIndex++) {
-                    Long sample = pullBuffer.take();
-
-                    //The take() method is bloking so we only want to start timing the frame after we're unblocked, ie samples started coming in
-                    if (sampleIndex == 1) {
-                        frameBeginTime = System.nanoTime();
-                        SAMPLES_PER_UPDATE = AudioCapture.getSampleRate() / UPDATES_PER_SECOND; //Need to recalculate this when we change audio capture settings
+            AudioFormat format = source.getFormat();
+            int sampleRate = (int) format.getSampleRate();
+            if (scheduler == null || scheduler.getSampleRate() != sampleRate || scheduler.getRefreshRate() != UPDATES_PER_SECOND) {
+                scheduler = new RenderScheduler(source::getFramePosition, sampleRate, UPDATES_PER_SECOND);
+                nextTimelineFrame = framesDisplayed + sampleRate;
+                renderMillis = new ExponentialMoments(UPDATES_PER_SECOND);
+                renderWindow = new SlidingWindow(UPDATES_PER_SECOND);
+                renderP99.reset();
+            }
+            if (!scheduler.awaitTick()) {
+                continue; //source stopped or stalled
+            }
+            long updateBeginTime = System.nanoTime();
+
+            if (meter == null || meter.getSampleRate() != sampleRate
+                || meter.getFrequencyWeighting() != FREQUENCY_WEIGHTING || meter.getTimeWeighting() != TIME_WEIGHTING) {
+                meter = new SPLMeter(sampleRate, FREQUENCY_WEIGHTING, TIME_WEIGHTING, LEQ_INTERVAL_SECONDS, CALIBRATION_OFFSET);
+            }
+            float meterScale = 1f / (1L << (format.getSampleSizeInBits() - 1));
+
+            //Everything that arrived since the last tick goes into one screen update
+            synchronized (renderer) {
+                renderer.setTimeBase(sampleRate, X_ZOOM_LEVEL, format.getSampleSizeInBits());
+                historyRenderer.setTimeBase(sampleRate, X_ZOOM_LEVEL, format.getSampleSizeInBits()); //only for the full scale
+                if (history == null || historySampleRate != sampleRate) {
+                    history = new HistoryPyramid(HISTORY_BASE_SHIFT, (long) HISTORY_MINUTES * 60 * sampleRate);
+                    rawHistory = RAW_HISTORY_MINUTES > 0 ? new CompressedHistory((long) RAW_HISTORY_MINUTES * 60 * sampleRate) : null;
+                    if (rawHistory != null) {
+                        metrics.watchHistory(getHistoryName(), rawHistory);
                     }
+                    historySampleRate = sampleRate;
+                    dcOffset = new ExponentialMoments(sampleRate); //1s
+                    historyMode = false;
+                }
 
-                    if (sample != null) {
-                        localUpdateSampleBuffer.add(sample);
-
-                        if (sampleIndex % SAMPLES_PER_UPDATE == 0) {
-                            long updateBeginTime = System.nanoTime();
-
-                            //Completely empty the sample buffer
-                            for (Long bufferedSample = localUpdateSampleBuffer.poll(); bufferedSample != null; bufferedSample = localUpdateSampleBuffer.poll()) {
-                                synchronized (g) {
-                                    printSample(g, bufferedSample);
-                                }
-                            }
-                            updateSleepIntervalAndSleep(updateIndex, frameBeginTime, updateBeginTime);
-                            updateIndex++;
-                        }
-                    } else {
-                        logger.error("Sample was NULL  - THIS SHOULDN'T HAPPEN, i = {}", sampleIndex);
+                int read;
+                for (int pending = pullBuffer.size(); pending > 0; pending -= read) { //not more, a fast source would keep us here
+                    read = pullBuffer.poll(updateSampleBuffer, 0, Math.min(pending, updateSampleBuffer.length));
+                    meter.process(updateSampleBuffer, 0, read, meterScale);
+                    renderer.add(updateSampleBuffer, 0, read);
+                    history.add(updateSampleBuffer, 0, read);
+                    if (rawHistory != null) {
+                        rawHistory.add(updateSampleBuffer, 0, read);
                     }
+                    for (int i = 0; i < read; i++) {
+                        dcOffset.add(updateSampleBuffer[i] * meterScale);
+                    }
+                    framesDisplayed += read;
                 }
 
                 //Show a timeline of seconds since beginning of capture
-                synchronized (g) {
-                    g.drawString(String.valueOf((System.currentTimeMillis() - captureBeginTime) / 1000), (int) cursor_x, height - 40);
+                if (framesDisplayed >= nextTimelineFrame) {
+                    renderer.drawLabel(String.valueOf((System.currentTimeMillis() - captureBeginTime) / 1000), renderer.getHeight() - 40);
+                    nextTimelineFrame = framesDisplayed + sampleRate;
                 }
 
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                //Put the whole back-buffer on screen at once
+                if (historyMode) {
+                    drawHistory();
+                    historyRenderer.blit(g);
+                } else {
+                    renderer.blit(g);
+                }
             }
+            drawReadout(g, meter);
+            long renderNanos = System.nanoTime() - updateBeginTime;
+            metrics.getRender().record(renderNanos);
+            renderMillis.add(renderNanos / 1e6);
+            renderWindow.add(renderNanos / 1e6);
+            renderP99.add(renderNanos / 1e6);
+            //Dropped samples still moved the capture clock on, without them the latency would stay high after the first overrun
+            endToEndProbe.displayed(framesDisplayed + pullBuffer.getOverrunStats().getDroppedSamples());
         }
     }
 
-    private void updateSleepIntervalAndSleep(final int updateIndex, final long frameBeginTime, final long updateBeginTime) throws InterruptedException {
-        int numberOfRemainingUpdates = UPDATES_PER_SECOND - updateIndex;
-        if (numberOfRemainingUpdates > 0) {
-            long timeNow = System.nanoTime();
-            long updateProcessingTime = timeNow - updateBeginTime;
+    //Into the back-buffer, called with the renderer lock held, the cost depends on the width only
+    private void drawHistory() {
+        int columns = historyRenderer.getWidth();
+        if (historyMin.length < columns) {
+            historyMin = new int[columns];
+            historyMax = new int[columns];
+            historyMeanSquare = new float[columns];
+        }
+        double samplesPerColumn = historySamplesPerColumn;
+        long end = historyEnd < 0 ? history.getSampleCount() : historyEnd;
+        double start = end - columns * samplesPerColumn;
+        if (samplesPerColumn >= 1 << HISTORY_BASE_SHIFT || !queryRaw(start, samplesPerColumn, columns)) {
+            history.query(start, samplesPerColumn, columns, historyMin, historyMax, historyMeanSquare);
+        }
+        historyRenderer.drawColumns(historyMin, historyMax, historyMeanSquare, columns);
+        historyRenderer.drawLabel(String.format("History: %.1fs to %.1fs%s, double-click for live",
+            (start - history.getSampleCount()) / historySampleRate, (end - history.getSampleCount()) / (double) historySampleRate,
+            historyEnd < 0 ? " (following)" : ""), 10, historyRenderer.getHeight() - 20);
+    }
 
-            long averageUpdateProcessingTime = (long) updateProcessingTimeAverage.newAverage(updateProcessingTime);
-            //logger.warn("Average: {}, actual {}", averageUpdateProcessingTime, updateProcessingTime);
+    //Navigation also has to show while the source is stopped and there are no ticks
+    private void redrawHistory() {
+        synchronized (renderer) {
+            if (historyMode) {
+                drawHistory();
+            }
+        }
+        if (viewerContainer != null) {
+            viewerContainer.repaint();
+        }
+    }
 
-            long frameProcessingTime = timeNow - frameBeginTime;
-            long remainingTimeForRestOfFrame = 1000000000L - frameProcessingTime; //Audio source is giving us samples every 1000ms (1 sec)
+    //Below the pyramid's resolution the columns come from the exact samples, as long as they are still kept
+    private boolean queryRaw(final double start, final double samplesPerColumn, final int columns) {
+        long first = (long) Math.floor(start);
+        if (rawHistory == null || first < rawHistory.getOldestSample() && rawHistory.getOldestSample() > 0) {
+            return false;
+        }
+        int length = (int) Math.ceil(columns * samplesPerColumn) + 1;
+        if (rawSamples.length < length) {
+            rawSamples = new int[length];
+        }
+        long from = Math.max(first, 0);
+        int read = rawHistory.read(from, rawSamples, 0, length);
+        for (int c = 0; c < columns; c++) {
+            int begin = (int) Math.max(0, (long) Math.floor(start + c * samplesPerColumn) - from);
+            int end = (int) Math.max(0, Math.min(read, (long) Math.ceil(start + (c + 1) * samplesPerColumn) - from));
+            rawColumn.reset();
+            if (end > begin) {
+                kernels.summarize(rawSamples, begin, end - begin, rawColumn);
+            }
+            historyMin[c] = rawColumn.getMin();
+            historyMax[c] = rawColumn.getMax();
+            historyMeanSquare[c] = end > begin ? (float) (rawColumn.getSumOfSquares() / (end - begin)) : 0f;
+        }
+        return true;
+    }
 
-            if (remainingTimeForRestOfFrame >= 0L) {
-                long newSleeptimePerUpdateInMillis = Math.round(
-                    ((remainingTimeForRestOfFrame / (double) numberOfRemainingUpdates) - averageUpdateProcessingTime)
-                        / 1000000L);
+    private void zoomHistory(final int x, final double factor) {
+        synchronized (renderer) {
+            if (history == null) {
+                return;
+            }
+            int columns = historyRenderer.getWidth();
+            if (!historyMode) {
+                historySamplesPerColumn = renderer.getSamplesPerColumn();
+                historyEnd = -1;
+                historyMode = true;
+            }
+            long count = history.getSampleCount();
+            long end = historyEnd < 0 ? count : historyEnd;
+            double anchor = end - (columns - x) * historySamplesPerColumn; //the sample under the mouse stays put
+            double maxSamplesPerColumn = Math.max(1, (count - history.getOldestSample()) / (double) columns);
+            double minSamplesPerColumn = rawHistory != null ? 1 : 1 << HISTORY_BASE_SHIFT;
+            historySamplesPerColumn = Math.max(minSamplesPerColumn, Math.min(maxSamplesPerColumn, historySamplesPerColumn * factor));
+            historyEnd = historyEnd < 0 ? -1 : Math.min(count, Math.round(anchor + (columns - x) * historySamplesPerColumn));
+        }
+        redrawHistory();
+    }
 
-                if (newSleeptimePerUpdateInMillis > 0 && newSleeptimePerUpdateInMillis >= 1) {
-                    Thread.sleep(newSleeptimePerUpdateInMillis);
-                }
-                if (newSleeptimePerUpdateInMillis < 1) {
-                    logger.warn("Please lower refresh rate"); //Well, if it happened that the processing time took too much, it's not the refresh rate's fault
-                }
-            } else {
-                logger.warn("Out of TIME at sample " + (updateIndex * (AudioCapture.getSampleRate() / UPDATES_PER_SECOND)) + " (loop " + updateIndex + ", time=" + (-remainingTimeForRestOfFrame) + ", frame processing time up to now=" + frameProcessingTime);
+    private void panHistory(final int dx) {
+        synchronized (renderer) {
+            if (!historyMode) {
+                return;
             }
+            long count = history.getSampleCount();
+            long end = (historyEnd < 0 ? count : historyEnd) - Math.round(dx * historySamplesPerColumn);
+            long earliest = history.getOldestSample() + Math.round(historyRenderer.getWidth() * historySamplesPerColumn);
+            historyEnd = end >= count ? -1 : Math.max(Math.min(earliest, count), end); //dragging past the newest sample follows again
+        }
+        redrawHistory();
+    }
+
+    private void drawReadout(final Graphics g, final SPLMeter meter) {
+        String w = meter.getFrequencyWeighting().name();
+        String t = meter.getTimeWeighting().name().substring(0, 1);
+        g.setColor(Color.YELLOW);
+        g.drawString(label + String.format("L%s%s %.1f dB     L%seq,%.0fs %.1f     L%s%smax %.1f     L%s%smin %.1f     L%speak %.1f",
+            w, t, meter.getLevel(), w, LEQ_INTERVAL_SECONDS, meter.getLeq(), w, t, meter.getLmax(), w, t, meter.getLmin(), w, meter.getPeak()),
+            10, 20);
+        if (renderWindow.getCount() > 0) {
+            g.drawString(String.format("DC %+.2f%%     render %.1f \u00b1 %.1f ms, p99 %.1f ms, max %.1f ms of %.0f ms per update",
+                dcOffset.getMean() * 100, renderMillis.getMean(), renderMillis.getStandardDeviation(), renderP99.getQuantile(),
+                renderWindow.getMax(), 1000.0 / renderWindow.getSize()), 10, 36);
+        }
+    }
+
+    void resize(final int width, final int height) {
+        synchronized (renderer) {
+            renderer.resize(width, height);
+            historyRenderer.resize(width, height);
         }
     }
 
     @Override
     public SPLViewer shutdown() {
         EXIT_FLAG = true;
+        metrics.unwatchHistory(getHistoryName());
         return this;
     }
 
+    private String getHistoryName() {
+        return label.isEmpty() ? "history" : "history " + label;
+    }
 
-    private void printSample(Graphics g, long value) {
-        if (cursor_x >= width) {
-            cursor_x = 0;
-            g.clearRect(0, 0, width, height);
-        }
-
-        double ratio = (double) value / (1 << (AudioCapture.getSampleSizeInBits() - (AudioCapture.isSIGNED() ? 1 : 0)));
-        double maxAmplitude = height / 2;
-        int cursorY = (int) maxAmplitude;
-
-        synchronized (DISPLAY_TYPE) {
-            if (DISPLAY_TYPE == DisplayType.Log) {
-                int sign = ratio > 0 ? 1 : -1;
-                double decibelValue9 = Math.pow(10, Math.abs(ratio)) - 1;  //since abs(ratio) is between 0 and 1, we know this power is in [1..10]
-                double decibelValue = 10 * (decibelValue9 / 9); //So this moves in [0..10]
-                cursorY = (int) (maxAmplitude + sign * (decibelValue * (maxAmplitude / 10)) * Y_ZOOM_LEVEL);
-
-            } else if (DISPLAY_TYPE == DisplayType.Linear) {
-                double absoluteAmplitude = ratio * maxAmplitude;
-                cursorY = (int) (maxAmplitude + (Math.abs(absoluteAmplitude) >= 1 ? absoluteAmplitude : 0));
-
-            }
-        }
-        if (cursorY == maxAmplitude) {
-            g.setColor(Color.YELLOW);
-        }
-
-        g.drawLine((int) cursor_x, cursorY, (int) cursor_x, cursorY);
 
-        if (cursorY == maxAmplitude) {
-            g.setColor(Color.LIGHT_GRAY);
-        }
+    public SPLViewer(final SampleReader pullBuffer, final AudioSource source) {
+        this(pullBuffer, source, "");
+    }
 
-        cursor_x += (float) X_ZOOM_LEVEL / AudioCapture.getSampleRate();
+    /**
+     * @param label shown in front of the level readout, e.g. the channel
+     */
+    public SPLViewer(final SampleReader pullBuffer, final AudioSource source, final String label) {
+        this.pullBuffer = pullBuffer;
+        this.source = source;
+        this.label = label.isEmpty() ? "" : label + "     ";
+        this.endToEndProbe = metrics.newProbe(source);
     }
 
+    /**
+     * Settings applied in this viewer's options panel also go to {@code others}, e.g. the viewers of the other channels
+     */
+    public SPLViewer linkOptions(final SPLViewer... others) {
+        linkedViewers = others.clone();
+        return this;
+    }
 
-    public SPLViewer(final LinkedBlockingQueue<Long> pullBuffer) {
-        this.pullBuffer = pullBuffer;
+    private void applySettings(final int updatesPerSecond, final int xZoomLevel, final double yZoomLevel, final DisplayType displayType,
+                               final FrequencyWeighting frequencyWeighting, final TimeWeighting timeWeighting) {
+        synchronized (renderer) {
+            UPDATES_PER_SECOND = updatesPerSecond; //picked up by the next tick
+            X_ZOOM_LEVEL = xZoomLevel;
+            Y_ZOOM_LEVEL = yZoomLevel;
+            DISPLAY_TYPE = displayType;
+            FREQUENCY_WEIGHTING = frequencyWeighting; //New meter at the next tick
+            TIME_WEIGHTING = timeWeighting;
+            renderer.setTimeBase((int) source.getFormat().getSampleRate(), X_ZOOM_LEVEL, source.getFormat().getSampleSizeInBits());
+            renderer.setDisplay(DISPLAY_TYPE, Y_ZOOM_LEVEL);
+            historyRenderer.setTimeBase((int) source.getFormat().getSampleRate(), X_ZOOM_LEVEL, source.getFormat().getSampleSizeInBits());
+            historyRenderer.setDisplay(DISPLAY_TYPE, Y_ZOOM_LEVEL);
+        }
     }
 
     @Override
     public Container getView() {
-        viewerContainer = new Panel();
-        viewerContainer.setBackground(new Color(29, 76, 122));
+        viewerContainer = new Panel() {
+            @Override
+            public void update(final Graphics g) {
+                paint(g); //The back-buffer covers the whole panel, no need to clear it first
+            }
+
+            @Override
+            public void paint(final Graphics g) {
+                synchronized (renderer) {
+                    (historyMode ? historyRenderer : renderer).blit(g);
+                }
+            }
+        };
+        viewerContainer.setBackground(WaveformRenderer.BACKGROUND);
         viewerContainer.addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(final ComponentEvent e) {
-                width = viewerContainer.getWidth();
-                height = viewerContainer.getHeight();
-                cursor_x = 0;
+                resize(viewerContainer.getWidth(), viewerContainer.getHeight());
             }
         });
+        MouseAdapter historyNavigation = new MouseAdapter() {
+            private int lastX;
+
+            @Override
+            public void mouseWheelMoved(final MouseWheelEvent e) {
+                zoomHistory(e.getX(), Math.pow(2, e.getPreciseWheelRotation() / 2));
+            }
+
+            @Override
+            public void mousePressed(final MouseEvent e) {
+                lastX = e.getX();
+            }
+
+            @Override
+            public void mouseDragged(final MouseEvent e) {
+                panHistory(e.getX() - lastX);
+                lastX = e.getX();
+            }
+
+            @Override
+            public void mouseClicked(final MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    historyMode = false;
+                    redrawHistory();
+                }
+            }
+        };
+        viewerContainer.addMouseWheelListener(historyNavigation);
+        viewerContainer.addMouseListener(historyNavigation);
+        viewerContainer.addMouseMotionListener(historyNavigation);
         return viewerContainer;
     }
 
@@ -214,16 +411,32 @@ public final class SPLViewer implements SPLModule {
         menuPanel.add(new Label("  Display:"));
         menuPanel.add(displayTypeChoice);
 
+        Choice frequencyWeightingChoice = new Choice();
+        for (FrequencyWeighting weighting : FrequencyWeighting.values()) {
+            frequencyWeightingChoice.add(weighting.name());
+        }
+        frequencyWeightingChoice.select(FREQUENCY_WEIGHTING.name());
+        Choice timeWeightingChoice = new Choice();
+        for (TimeWeighting weighting : TimeWeighting.values()) {
+            timeWeightingChoice.add(weighting.name());
+        }
+        timeWeightingChoice.select(TIME_WEIGHTING.name());
+        menuPanel.add(new Label("  Weighting:"));
+        menuPanel.add(frequencyWeightingChoice);
+        menuPanel.add(timeWeightingChoice);
+
         Button button = new Button("Yes!");
         button.addActionListener(e -> {
-            synchronized (viewerContainer.getGraphics()) {
-                UPDATES_PER_SECOND = Integer.parseInt(refreshRate.getText().trim());
-                SAMPLES_PER_UPDATE = AudioCapture.getSampleRate() / UPDATES_PER_SECOND;
-                X_ZOOM_LEVEL = Integer.parseInt(horizontalZoom.getText().trim());
-                Y_ZOOM_LEVEL = Double.parseDouble(verticalZoom.getText().trim());
-                DISPLAY_TYPE = DisplayType.valueOf(displayTypeChoice.getItem(displayTypeChoice.getSelectedIndex()));
-                //viewerContainer.getGraphics().clearRect(0, 0, viewerContainer.getWidth(), viewerContainer.getHeight());
-                //cursor_x = 0;
+            int updatesPerSecond = Integer.parseInt(refreshRate.getText().trim());
+            int xZoomLevel = Integer.parseInt(horizontalZoom.getText().trim());
+            double yZoomLevel = Double.parseDouble(verticalZoom.getText().trim());
+            DisplayType displayType = DisplayType.valueOf(displayTypeChoice.getItem(displayTypeChoice.getSelectedIndex()));
+            FrequencyWeighting frequencyWeighting = FrequencyWeighting.valueOf(frequencyWeightingChoice.getSelectedItem());
+            TimeWeighting timeWeighting = TimeWeighting.valueOf(timeWeightingChoice.getSelectedItem());
+
+            applySettings(updatesPerSecond, xZoomLevel, yZoomLevel, displayType, frequencyWeighting, timeWeighting);
+            for (SPLViewer linked : linkedViewers) {
+                linked.applySettings(updatesPerSecond, xZoomLevel, yZoomLevel, displayType, frequencyWeighting, timeWeighting);
             }
         });
         menuPanel.add(button);
@@ -0,0 +1,161 @@
+package com.didi.splviewer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The data-parallel per-sample loops of the pipeline: decoding 16 bit PCM, normalizing it, and the min/max/sum/sum of
+ * squares of a block that the renderers, the history and the analyzers reduce their samples to.
+ * <p>
+ * This class is the scalar implementation. {@link #get()} returns a SIMD one built on {@code jdk.incubator.vector}
+ * instead when it was compiled (the {@code vector} profile, JDK 17 and later), the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and the CPU has vector registers. Both give the same results, except for
+ * the rounding of the sum of squares, which is added up in a different order.
+ * {@code -Dsplviewer.kernels=scalar} turns the SIMD kernels off.
+ */
+public class SampleKernels {
+
+    private static final String VECTOR_KERNELS = "com.didi.splviewer.VectorSampleKernels";
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(SampleKernels.class);
+
+    private static final SampleKernels SCALAR = new SampleKernels();
+    private static final SampleKernels INSTANCE = choose();
+
+    private static final float SCALE_16 = 1f / (1 << 15);
+
+    /**
+     * Min, max, sum and sum of squares of the samples seen so far
+     */
+    public static final class Summary {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long sum;
+        double sumOfSquares;
+
+        public void reset() {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            sum = 0;
+            sumOfSquares = 0;
+        }
+
+        /**
+         * {@link Integer#MAX_VALUE} before the first sample
+         */
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double getSumOfSquares() {
+            return sumOfSquares;
+        }
+
+        /**
+         * Largest magnitude
+         */
+        public long getPeak() {
+            return max < min ? 0 : Math.max(Math.abs((long) min), Math.abs((long) max));
+        }
+    }
+
+    protected SampleKernels() {
+    }
+
+    /**
+     * The fastest kernels this JVM can run, chosen once
+     */
+    public static SampleKernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * The plain Java loops, e.g. to compare against
+     */
+    public static SampleKernels scalar() {
+        return SCALAR;
+    }
+
+    private static SampleKernels choose() {
+        if ("scalar".equals(System.getProperty("splviewer.kernels"))) {
+            return SCALAR;
+        }
+        try {
+            //Compiled separately for JDK 17, so this class must not refer to it
+            SampleKernels vector = (SampleKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            logger.info("Using {} sample kernels", vector.getName());
+            return vector;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.debug("No SIMD sample kernels ({}), using scalar ones", e.toString());
+            return SCALAR;
+        }
+    }
+
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Signed 16 bit samples to ints, as {@link PcmDecoder#SIGNED_16_BIG_ENDIAN} and
+     * {@link PcmDecoder#SIGNED_16_LITTLE_ENDIAN} do
+     */
+    public void decode16(final byte[] src, final int srcOffset, final boolean bigEndian, final int[] dst, final int dstOffset, final int samples) {
+        if (bigEndian) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = (src[i] << 8) | (src[i + 1] & 0xFF);
+            }
+        } else {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = (src[i + 1] << 8) | (src[i] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #decode16(byte[], int, boolean, int[], int, int)} but normalized to [-1, 1)
+     */
+    public void decode16(final byte[] src, final int srcOffset, final boolean bigEndian, final float[] dst, final int dstOffset,
+                         final int samples) {
+        if (bigEndian) {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = ((src[i] << 8) | (src[i + 1] & 0xFF)) * SCALE_16;
+            }
+        } else {
+            for (int s = 0, i = srcOffset; s < samples; s++, i += 2) {
+                dst[dstOffset + s] = ((src[i + 1] << 8) | (src[i] & 0xFF)) * SCALE_16;
+            }
+        }
+    }
+
+    /**
+     * Adds {@code length} samples to {@code summary}
+     */
+    public void summarize(final int[] samples, final int offset, final int length, final Summary summary) {
+        int min = summary.min, max = summary.max;
+        long sum = summary.sum;
+        double sumOfSquares = summary.sumOfSquares;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int value = samples[i];
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            sum += value;
+            sumOfSquares += (double) value * value;
+        }
+        summary.min = min;
+        summary.max = max;
+        summary.sum = sum;
+        summary.sumOfSquares = sumOfSquares;
+    }
+}
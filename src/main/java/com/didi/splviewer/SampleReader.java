@@ -0,0 +1,41 @@
+package com.didi.splviewer;
+
+/**
+ * The consuming end of a sample buffer, e.g. a {@link SampleRingBuffer} or one reader of a {@link MulticastRingBuffer}.
+ * Used by one thread.
+ */
+public interface SampleReader {
+
+    /**
+     * Blocks until at least one sample is available and then reads up to {@code length} samples.
+     *
+     * @return the number of samples read, always &gt; 0
+     */
+    int read(int[] destination, int offset, int length) throws InterruptedException;
+
+    /**
+     * Blocks until exactly {@code length} samples have been read into {@code destination}.
+     */
+    default void readFully(final int[] destination, final int offset, final int length) throws InterruptedException {
+        int read = 0;
+        while (read < length) {
+            read += read(destination, offset + read, length - read);
+        }
+    }
+
+    /**
+     * Non-blocking read of up to {@code length} samples.
+     *
+     * @return the number of samples read, 0 if nothing was available
+     */
+    int poll(int[] destination, int offset, int length);
+
+    /**
+     * Number of samples written but not read yet
+     */
+    int size();
+
+    SampleRingBuffer.OverrunPolicy getPolicy();
+
+    OverrunStats getOverrunStats();
+}
@@ -0,0 +1,287 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer/single-consumer ring of primitive samples.
+ * <p>
+ * Replaces the LinkedBlockingQueue&lt;Long&gt; that used to sit between the capture and the viewer: slots are
+ * preallocated, whole blocks are moved with System.arraycopy and nothing is boxed or locked. A side that has to
+ * wait parks its thread (no spinning) and is unparked by the other side once there is something to do.
+ * <p>
+ * When the reader falls behind and the ring is full, the {@link OverrunPolicy} decides between waiting and losing
+ * samples, and every lost sample is accounted for in the {@link OverrunStats}.
+ * <p>
+ * Exactly one thread may write and exactly one thread may read.
+ */
+public final class SampleRingBuffer implements SampleSink, SampleReader {
+
+    public enum OverrunPolicy {
+        /**
+         * Park the producer until the reader makes room, nothing is lost
+         */
+        BLOCK,
+        /**
+         * Make room by discarding the oldest unread samples, the reader always gets the most recent audio
+         */
+        DROP_OLDEST,
+        /**
+         * Keep what is in the ring and discard the part of the block that does not fit
+         */
+        DROP_NEWEST,
+        /**
+         * Keep every n-th sample of the block so it fits the free space, losing detail instead of time
+         */
+        DECIMATE
+    }
+
+    private final int[] slots;
+    private final int mask;
+    private final OverrunPolicy policy;
+    private final OverrunStats overrunStats = new OverrunStats();
+
+    //Monotonic sequences, slot index = sequence & mask
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    public SampleRingBuffer(final int minimumCapacity) {
+        this(minimumCapacity, OverrunPolicy.BLOCK);
+    }
+
+    public SampleRingBuffer(final int minimumCapacity, final OverrunPolicy policy) {
+        if (minimumCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + minimumCapacity);
+        }
+        int capacity = Integer.highestOneBit(minimumCapacity);
+        if (capacity < minimumCapacity) {
+            capacity <<= 1;
+        }
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.policy = policy;
+    }
+
+    @Override
+    public OverrunPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public OverrunStats getOverrunStats() {
+        return overrunStats;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Number of samples written but not read yet
+     */
+    @Override
+    public int size() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+
+    /**
+     * Writes the block. When it does not fit, the policy decides: park until there is room, or lose samples.
+     */
+    @Override
+    public void write(final int[] samples, final int offset, final int length) throws InterruptedException {
+        switch (policy) {
+            case DROP_OLDEST:
+                writeDroppingOldest(samples, offset, length);
+                return;
+            case DROP_NEWEST:
+                writeDroppingNewest(samples, offset, length);
+                return;
+            case DECIMATE:
+                writeDecimating(samples, offset, length);
+                return;
+            default:
+                writeBlocking(samples, offset, length);
+        }
+    }
+
+    private void writeBlocking(final int[] samples, final int offset, final int length) throws InterruptedException {
+        int written = 0;
+        while (written < length) {
+            long write = writeSequence.get();
+            int free = slots.length - (int) (write - readSequence.get());
+            if (free == 0) {
+                awaitSpace();
+                continue;
+            }
+            int count = Math.min(free, length - written);
+            copyIn(write, samples, offset + written, count);
+            writeSequence.set(write + count);
+            written += count;
+            signal(waitingConsumer);
+        }
+    }
+
+    //Moves the read sequence forward with a CAS, a reader that copied the same samples meanwhile fails its CAS and retries
+    private void writeDroppingOldest(final int[] samples, final int offset, final int length) {
+        int skipped = Math.max(0, length - slots.length); //a block larger than the ring keeps its tail only
+        int count = length - skipped;
+        long write = writeSequence.get();
+        int dropped = skipped;
+        while (true) {
+            long read = readSequence.get();
+            int excess = count - (slots.length - (int) (write - read));
+            if (excess <= 0) {
+                break;
+            }
+            if (readSequence.compareAndSet(read, read + excess)) {
+                dropped += excess;
+                break;
+            }
+        }
+        copyIn(write, samples, offset + skipped, count);
+        writeSequence.set(write + count);
+        if (dropped > 0) {
+            overrunStats.dropped(dropped);
+        }
+        signal(waitingConsumer);
+    }
+
+    private void writeDroppingNewest(final int[] samples, final int offset, final int length) {
+        long write = writeSequence.get();
+        int count = Math.min(length, slots.length - (int) (write - readSequence.get()));
+        if (count > 0) {
+            copyIn(write, samples, offset, count);
+            writeSequence.set(write + count);
+            signal(waitingConsumer);
+        }
+        if (count < length) {
+            overrunStats.dropped(length - count);
+        }
+    }
+
+    private void writeDecimating(final int[] samples, final int offset, final int length) {
+        long write = writeSequence.get();
+        int free = slots.length - (int) (write - readSequence.get());
+        if (free >= length) {
+            copyIn(write, samples, offset, length);
+            writeSequence.set(write + length);
+            signal(waitingConsumer);
+            return;
+        }
+        if (free == 0) {
+            overrunStats.dropped(length);
+            return;
+        }
+        int factor = (length + free - 1) / free; //keep every factor-th sample
+        int count = 0;
+        for (int i = 0; i < length; i += factor) {
+            slots[(int) ((write + count) & mask)] = samples[offset + i];
+            count++;
+        }
+        writeSequence.set(write + count);
+        overrunStats.decimated(length - count);
+        signal(waitingConsumer);
+    }
+
+    /**
+     * Blocks until at least one sample is available and then reads up to {@code length} samples.
+     *
+     * @return the number of samples read, always &gt; 0
+     */
+    @Override
+    public int read(final int[] destination, final int offset, final int length) throws InterruptedException {
+        int read;
+        while ((read = poll(destination, offset, length)) == 0 && length > 0) {
+            awaitSamples();
+        }
+        return read;
+    }
+
+    /**
+     * Blocks until exactly {@code length} samples have been read into {@code destination}.
+     */
+    @Override
+    public void readFully(final int[] destination, final int offset, final int length) throws InterruptedException {
+        int read = 0;
+        while (read < length) {
+            read += read(destination, offset + read, length - read);
+        }
+    }
+
+    /**
+     * Non-blocking read of up to {@code length} samples.
+     *
+     * @return the number of samples read, 0 if the ring was empty
+     */
+    @Override
+    public int poll(final int[] destination, final int offset, final int length) {
+        while (true) {
+            long read = readSequence.get();
+            int available = (int) Math.min(writeSequence.get() - read, slots.length); //stale read sequence after a drop
+            int count = Math.min(available, length);
+            if (count <= 0) {
+                return 0;
+            }
+            copyOut(read, destination, offset, count);
+            if (policy != OverrunPolicy.DROP_OLDEST) {
+                readSequence.set(read + count);
+            } else if (!readSequence.compareAndSet(read, read + count)) {
+                continue; //the producer dropped (and maybe overwrote) these samples while we copied them
+            }
+            signal(waitingProducer);
+            return count;
+        }
+    }
+
+    private void copyIn(final long sequence, final int[] source, final int offset, final int count) {
+        int index = (int) (sequence & mask);
+        int firstPart = Math.min(count, slots.length - index);
+        System.arraycopy(source, offset, slots, index, firstPart);
+        System.arraycopy(source, offset + firstPart, slots, 0, count - firstPart);
+    }
+
+    private void copyOut(final long sequence, final int[] destination, final int offset, final int count) {
+        int index = (int) (sequence & mask);
+        int firstPart = Math.min(count, slots.length - index);
+        System.arraycopy(slots, index, destination, offset, firstPart);
+        System.arraycopy(slots, 0, destination, offset + firstPart, count - firstPart);
+    }
+
+    //Register first and re-check afterwards, so a signal sent in between is never lost (park returns immediately after an unpark)
+    private void awaitSamples() throws InterruptedException {
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (writeSequence.get() == readSequence.get()) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    private void awaitSpace() throws InterruptedException {
+        waitingProducer = Thread.currentThread();
+        try {
+            while (writeSequence.get() - readSequence.get() == slots.length) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingProducer = null;
+        }
+    }
+
+    private static void signal(final Thread waiter) {
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.didi.splviewer;
+
+/**
+ * Anything that accepts blocks of decoded samples from an {@link AudioSource}.
+ */
+public interface SampleSink {
+
+    void write(int[] samples, int offset, int length) throws InterruptedException;
+}
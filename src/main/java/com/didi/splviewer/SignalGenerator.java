@@ -0,0 +1,234 @@
+package com.didi.splviewer;
+
+import java.awt.Panel;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deterministic test signals: every run starts from the same phase and noise seed, so two runs produce exactly the
+ * same samples. In real time mode blocks are paced to the sample rate, otherwise they are produced as fast as the
+ * sink accepts them.
+ */
+public final class SignalGenerator implements AudioSource {
+
+    public enum Waveform {
+        SINE,
+        /**
+         * Exponential sweep from 20 Hz up to 0.9 * Nyquist, restarting every {@link #SWEEP_SECONDS}
+         */
+        SWEEP,
+        WHITE_NOISE,
+        PINK_NOISE,
+        /**
+         * A single full amplitude sample, {@code frequency} times per second
+         */
+        IMPULSE
+    }
+
+    private static final int BLOCKS_PER_SECOND = 100;
+    private static final double SWEEP_SECONDS = 10;
+    private static final long SEED = 0x5DEECE66DL;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(SignalGenerator.class);
+
+    private final SampleSink pushBuffer;
+    private final Waveform waveform;
+    private final AudioFormat format;
+    private final double frequency;
+    private final double amplitude;
+    private final boolean realTime;
+    private final SourceWorker worker;
+    private volatile CaptureSession session; //the one that should be running, null when stopped
+    private long sessionCount;
+    private int[] samples = new int[0]; //generator thread only, kept across runs
+    private int[] frames = new int[0];
+    private volatile long framesGenerated = 0; //not reset with the signal, the viewers count frames across restarts
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    //Generator state, reset at the start of every run
+    private long sampleIndex;
+    private double phase;
+    private long noiseState;
+    private double b0, b1, b2, b3, b4, b5, b6;
+
+    /**
+     * @param format    signed PCM, every channel carries the same signal
+     * @param frequency Hz for {@link Waveform#SINE}, repetitions per second for {@link Waveform#IMPULSE}, ignored otherwise
+     * @param amplitude peak amplitude as a fraction of full scale
+     */
+    public SignalGenerator(final SampleSink pushBuffer, final Waveform waveform, final AudioFormat format,
+                           final double frequency, final double amplitude, final boolean realTime) {
+        PcmDecoder.forFormat(format);
+        this.pushBuffer = pushBuffer;
+        this.waveform = waveform;
+        this.format = format;
+        this.frequency = frequency;
+        this.amplitude = amplitude;
+        this.realTime = realTime;
+        this.worker = new SourceWorker("generator-" + waveform.name().toLowerCase());
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getFramePosition() {
+        return framesGenerated;
+    }
+
+    private synchronized CaptureSession nextSession() {
+        session = new CaptureSession(++sessionCount, format, Math.max(1, (int) format.getSampleRate() / BLOCKS_PER_SECOND));
+        return session;
+    }
+
+    /**
+     * Generates on a thread that is kept across runs, after the previous run has ended
+     */
+    @Override
+    public SignalGenerator begin() {
+        CaptureSession next = nextSession();
+        worker.submit(() -> generate(next));
+        return this;
+    }
+
+    /**
+     * Generates on the calling thread until {@link #shutdown()}
+     */
+    @Override
+    public void run() {
+        generate(nextSession());
+    }
+
+    private void generate(final CaptureSession session) {
+        if (this.session != session) {
+            return; //stopped or replaced before it got to run
+        }
+        reset();
+
+        int sampleRate = (int) format.getSampleRate();
+        int channels = format.getChannels();
+        if (samples.length != session.getBlockFrames()) {
+            samples = new int[session.getBlockFrames()];
+            frames = channels > 1 ? new int[samples.length * channels] : samples;
+        }
+        double fullScale = ((1L << (format.getSampleSizeInBits() - 1)) - 1) * amplitude;
+
+        long startTime = System.nanoTime();
+        try {
+            while (this.session == session) {
+                generate(samples, sampleRate, fullScale);
+                if (channels > 1) {
+                    for (int i = 0, f = 0; i < samples.length; i++) {
+                        for (int c = 0; c < channels; c++) {
+                            frames[f++] = samples[i];
+                        }
+                    }
+                }
+                framesGenerated += samples.length;
+                metrics.blockCaptured(this, framesGenerated);
+                pushBuffer.write(frames, 0, frames.length);
+
+                if (realTime) {
+                    long due = startTime + (long) (sampleIndex * (1000000000L / (double) sampleRate));
+                    LockSupport.parkNanos(due - System.nanoTime());
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Signal generator interrupted", e);
+        }
+    }
+
+    void reset() {
+        sampleIndex = 0;
+        phase = 0;
+        noiseState = SEED;
+        b0 = b1 = b2 = b3 = b4 = b5 = b6 = 0;
+    }
+
+    void generate(final int[] samples, final int sampleRate, final double fullScale) {
+        switch (waveform) {
+            case SINE: {
+                double increment = 2 * Math.PI * frequency / sampleRate;
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = (int) Math.round(Math.sin(phase) * fullScale);
+                    phase += increment;
+                    if (phase >= 2 * Math.PI) {
+                        phase -= 2 * Math.PI;
+                    }
+                }
+                break;
+            }
+            case SWEEP: {
+                double startFrequency = 20, endFrequency = 0.45 * sampleRate;
+                long sweepLength = (long) (SWEEP_SECONDS * sampleRate);
+                double growth = Math.log(endFrequency / startFrequency) / sweepLength;
+                for (int i = 0; i < samples.length; i++) {
+                    long position = (sampleIndex + i) % sweepLength;
+                    if (position == 0) {
+                        phase = 0;
+                    }
+                    samples[i] = (int) Math.round(Math.sin(phase) * fullScale);
+                    phase += 2 * Math.PI * startFrequency * Math.exp(growth * position) / sampleRate;
+                }
+                break;
+            }
+            case WHITE_NOISE:
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = (int) Math.round(nextWhite() * fullScale);
+                }
+                break;
+            case PINK_NOISE:
+                //Paul Kellet's refined filter, roughly -3dB/octave
+                for (int i = 0; i < samples.length; i++) {
+                    double white = nextWhite();
+                    b0 = 0.99886 * b0 + white * 0.0555179;
+                    b1 = 0.99332 * b1 + white * 0.0750759;
+                    b2 = 0.96900 * b2 + white * 0.1538520;
+                    b3 = 0.86650 * b3 + white * 0.3104856;
+                    b4 = 0.55000 * b4 + white * 0.5329522;
+                    b5 = -0.7616 * b5 - white * 0.0168980;
+                    double pink = (b0 + b1 + b2 + b3 + b4 + b5 + b6 + white * 0.5362) * 0.11;
+                    b6 = white * 0.115926;
+                    samples[i] = (int) Math.round(Math.max(-1, Math.min(1, pink)) * fullScale);
+                }
+                break;
+            case IMPULSE: {
+                long period = Math.max(1, Math.round(sampleRate / frequency));
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = (sampleIndex + i) % period == 0 ? (int) Math.round(fullScale) : 0;
+                }
+                break;
+            }
+        }
+        sampleIndex += samples.length;
+    }
+
+    //xorshift64*, uniform in [-1, 1)
+    private double nextWhite() {
+        noiseState ^= noiseState >>> 12;
+        noiseState ^= noiseState << 25;
+        noiseState ^= noiseState >>> 27;
+        return ((noiseState * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-52 - 1;
+    }
+
+    @Override
+    public SignalGenerator shutdown() {
+        synchronized (this) {
+            session = null;
+        }
+        worker.await(SHUTDOWN_TIMEOUT_MILLIS);
+        return this;
+    }
+
+    @Override
+    public Panel getOptionsPanel() {
+        return AudioSources.startStopPanel("Generator: " + waveform.name().toLowerCase() + (realTime ? "" : " (fast)"), this);
+    }
+}
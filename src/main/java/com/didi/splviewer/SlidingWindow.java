@@ -0,0 +1,125 @@
+package com.didi.splviewer;
+
+/**
+ * Sum, mean, min and max of the last {@code size} values, each in O(1) per value: the values are kept in a ring, and
+ * min and max in monotonic deques of ring slots (the classic sliding window minimum), so a value that can no
+ * longer be the min or max is dropped as soon as a better one comes in.
+ * <p>
+ * Adding the newest and subtracting the oldest would let rounding errors pile up forever, so the sum is recomputed
+ * from the ring once per window. Allocation-free after construction, not thread-safe.
+ */
+public final class SlidingWindow {
+
+    private final int size;
+    private final double[] values;
+    private final int[] minQueue, maxQueue; //slots of values, oldest at the head
+    private int minHead, minLength, maxHead, maxLength;
+    private int slot = 0; //next to write
+    private long count = 0;
+    private double sum = 0;
+
+    public SlidingWindow(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Window must hold at least one value: " + size);
+        }
+        this.size = size;
+        this.values = new double[size];
+        this.minQueue = new int[size];
+        this.maxQueue = new int[size];
+    }
+
+    public void add(final double value) {
+        //The value in this slot leaves the window now
+        if (count >= size) {
+            sum -= values[slot];
+            if (minLength > 0 && minQueue[minHead] == slot) {
+                minHead = next(minHead);
+                minLength--;
+            }
+            if (maxLength > 0 && maxQueue[maxHead] == slot) {
+                maxHead = next(maxHead);
+                maxLength--;
+            }
+        }
+        values[slot] = value;
+        sum += value;
+
+        while (minLength > 0 && values[minQueue[wrap(minHead + minLength - 1)]] >= value) {
+            minLength--;
+        }
+        minQueue[wrap(minHead + minLength++)] = slot;
+        while (maxLength > 0 && values[maxQueue[wrap(maxHead + maxLength - 1)]] <= value) {
+            maxLength--;
+        }
+        maxQueue[wrap(maxHead + maxLength++)] = slot;
+
+        count++;
+        slot = next(slot);
+        if (slot == 0) {
+            resum();
+        }
+    }
+
+    private int next(final int i) {
+        return i + 1 == size ? 0 : i + 1;
+    }
+
+    private int wrap(final int i) {
+        return i >= size ? i - size : i;
+    }
+
+    private void resum() {
+        double exact = 0;
+        for (double v : values) {
+            exact += v;
+        }
+        sum = exact;
+    }
+
+    /**
+     * Values in the window, less than the size until it has filled up
+     */
+    public int getCount() {
+        return (int) Math.min(count, size);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return count >= size;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * NaN while empty
+     */
+    public double getMean() {
+        return sum / getCount();
+    }
+
+    /**
+     * NaN while empty
+     */
+    public double getMin() {
+        return minLength > 0 ? values[minQueue[minHead]] : Double.NaN;
+    }
+
+    /**
+     * NaN while empty
+     */
+    public double getMax() {
+        return maxLength > 0 ? values[maxQueue[maxHead]] : Double.NaN;
+    }
+
+    public void reset() {
+        count = 0;
+        sum = 0;
+        slot = 0;
+        minHead = minLength = maxHead = maxLength = 0;
+    }
+}
@@ -0,0 +1,74 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The thread a source runs its sessions on. Sessions run one after another, so a new one only starts once the one
+ * before has handed on its last block, and a restart never has two sessions writing to the same sink. The thread is
+ * kept across sessions and ends on its own when the source has been stopped for a while.
+ */
+final class SourceWorker {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(SourceWorker.class);
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private Future<?> last;
+
+    SourceWorker(final String name) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs {@code session} after the ones submitted before
+     */
+    synchronized void submit(final Runnable session) {
+        last = executor.submit(() -> {
+            try {
+                session.run();
+            } catch (RuntimeException | Error e) {
+                logger.error(name + " failed", e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Waits until the sessions submitted so far have ended, e.g. so a recorder has every block before it is closed
+     */
+    void await(final long timeoutMillis) {
+        Future<?> pending;
+        synchronized (this) {
+            pending = last;
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("{} still running after {} ms", name, timeoutMillis);
+        } catch (ExecutionException e) {
+            //logged where it was thrown
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.didi.splviewer;
+
+/**
+ * Short-time spectrum of a sample stream: overlapping windowed blocks of {@code size} samples, one every {@code hop}
+ * samples, each turned into per-bin levels in dB relative to full scale (a full scale sine peaks at about 0 dB).
+ * <p>
+ * The input history, window table, FFT tables and output arrays are allocated up front, so feeding samples allocates
+ * nothing. Not thread-safe.
+ */
+final class SpectrumAnalyzer {
+
+    interface Listener {
+        /**
+         * @param levels per-bin level in dB, owned by the analyzer and overwritten by the next spectrum
+         */
+        void spectrumReady(float[] levels);
+    }
+
+    private static final double MIN_POWER = 1e-20;
+
+    private final int size;
+    private final int hop;
+    private final double sampleRate;
+    private final WindowFunction windowFunction;
+    private final double[] window;
+    private final RealFFT fft;
+    private final double[] history; //circular, last {@code size} samples
+    private final double[] frame;
+    private final double[] real, imaginary;
+    private final float[] levels;
+    private final double normalization;
+    private final Listener listener;
+
+    private int writeIndex = 0;
+    private long samplesSeen = 0;
+    private int samplesSinceLastFrame = 0;
+
+    SpectrumAnalyzer(final int size, final int hop, final WindowFunction windowFunction, final double sampleRate, final Listener listener) {
+        if (hop <= 0 || hop > size) {
+            throw new IllegalArgumentException("Hop must be in [1, " + size + "]: " + hop);
+        }
+        this.size = size;
+        this.hop = hop;
+        this.sampleRate = sampleRate;
+        this.windowFunction = windowFunction;
+        this.window = windowFunction.table(size);
+        this.fft = new RealFFT(size);
+        this.history = new double[size];
+        this.frame = new double[size];
+        this.real = new double[fft.getBins()];
+        this.imaginary = new double[fft.getBins()];
+        this.levels = new float[fft.getBins()];
+        this.listener = listener;
+
+        double windowSum = 0;
+        for (double w : window) {
+            windowSum += w;
+        }
+        this.normalization = 4 / (windowSum * windowSum); //one-sided amplitude: |X| * 2 / sum(w), squared
+    }
+
+    void process(final int[] samples, final int offset, final int length, final float scale) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            history[writeIndex] = samples[i] * (double) scale;
+            writeIndex = (writeIndex + 1) & (size - 1);
+            samplesSeen++;
+            if (++samplesSinceLastFrame >= hop && samplesSeen >= size) {
+                samplesSinceLastFrame = 0;
+                computeSpectrum();
+            }
+        }
+    }
+
+    private void computeSpectrum() {
+        //Oldest sample is at writeIndex
+        int firstPart = size - writeIndex;
+        for (int n = 0; n < firstPart; n++) {
+            frame[n] = history[writeIndex + n] * window[n];
+        }
+        for (int n = firstPart; n < size; n++) {
+            frame[n] = history[n - firstPart] * window[n];
+        }
+
+        fft.transform(frame, real, imaginary);
+        for (int k = 0; k < levels.length; k++) {
+            double power = (real[k] * real[k] + imaginary[k] * imaginary[k]) * normalization;
+            levels[k] = (float) (10 * Math.log10(Math.max(power, MIN_POWER)));
+        }
+        listener.spectrumReady(levels);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getHop() {
+        return hop;
+    }
+
+    int getBins() {
+        return levels.length;
+    }
+
+    double getSampleRate() {
+        return sampleRate;
+    }
+
+    WindowFunction getWindowFunction() {
+        return windowFunction;
+    }
+
+    double binFrequency(final int bin) {
+        return bin * sampleRate / size;
+    }
+}
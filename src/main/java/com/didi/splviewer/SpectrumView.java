@@ -0,0 +1,295 @@
+package com.didi.splviewer;
+
+import java.awt.Button;
+import java.awt.Choice;
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Graphics;
+import java.awt.Label;
+import java.awt.Panel;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Frequency domain view: a live spectrum or a scrolling spectrogram, on a logarithmic frequency axis.
+ * <p>
+ * Spectra come from a {@link SpectrumAnalyzer} running on this module's thread and are drawn straight into the raster
+ * of an off-screen image, which is put on screen at a fixed refresh rate.
+ */
+public final class SpectrumView implements SPLModule, SpectrumAnalyzer.Listener {
+
+    enum Mode {Spectrum, Spectrogram}
+
+    /**
+     * SETTINGS
+     */
+    private int FFT_SIZE = 4096;
+    private int OVERLAP_PERCENT = 75;
+    private WindowFunction WINDOW = WindowFunction.HANN;
+    private Mode MODE = Mode.Spectrogram;
+    private static final int UPDATES_PER_SECOND = 30;
+    private static final double MIN_FREQUENCY = 20;
+    private static final float MIN_DB = -120, MAX_DB = 0;
+
+    private static final int READ_BLOCK = 1024;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(SpectrumView.class);
+
+    private final SampleReader pullBuffer;
+    private final AudioSource source;
+    private final int[] samples = new int[READ_BLOCK];
+    private final int[] palette = createPalette();
+    private volatile boolean EXIT_FLAG = false;
+    private volatile Thread runner; //blocked in read() while its source is stopped
+
+    private Container viewContainer;
+    private SpectrumAnalyzer analyzer;
+
+    //Guarded by this
+    private BufferedImage image;
+    private int[] pixels;
+    private int width = 1, height = 1;
+    private int spectrogramColumn = 0;
+    private int[] axisLowBin = new int[0], axisHighBin = new int[0]; //bins covered by each column (spectrum) or row (spectrogram)
+
+    public SpectrumView(final SampleReader pullBuffer, final AudioSource source) {
+        this.pullBuffer = pullBuffer;
+        this.source = source;
+        resize(1, 1);
+    }
+
+    @Override
+    public void run() {
+        runner = Thread.currentThread();
+        Graphics g = viewContainer.getGraphics();
+        long updateInterval = 1000000000L / UPDATES_PER_SECOND;
+        long nextUpdate = System.nanoTime();
+
+        while (!EXIT_FLAG) {
+            try {
+                AudioFormat format = source.getFormat();
+                synchronized (this) {
+                    if (analyzer == null || analyzer.getSampleRate() != format.getSampleRate() || analyzer.getSize() != FFT_SIZE
+                        || analyzer.getHop() != hopSize() || analyzer.getWindowFunction() != WINDOW) {
+                        analyzer = new SpectrumAnalyzer(FFT_SIZE, hopSize(), WINDOW, format.getSampleRate(), this);
+                        updateAxis();
+                    }
+                }
+
+                int read = pullBuffer.read(samples, 0, samples.length);
+                analyzer.process(samples, 0, read, 1f / (1L << (format.getSampleSizeInBits() - 1)));
+
+                long now = System.nanoTime();
+                if (now >= nextUpdate) {
+                    synchronized (this) {
+                        blit(g);
+                    }
+                    nextUpdate = Math.max(nextUpdate + updateInterval, now);
+                }
+            } catch (InterruptedException e) {
+                if (!EXIT_FLAG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private int hopSize() {
+        return Math.max(1, FFT_SIZE * (100 - OVERLAP_PERCENT) / 100);
+    }
+
+    @Override
+    public synchronized void spectrumReady(final float[] levels) {
+        if (MODE == Mode.Spectrum) {
+            Arrays.fill(pixels, palette[0]);
+            for (int x = 0; x < width; x++) {
+                int top = toPixels(maxLevel(levels, x), height);
+                int color = palette[Math.min(255, 64 + 192 * (height - top) / height)];
+                for (int y = height - top; y < height; y++) {
+                    pixels[y * width + x] = color;
+                }
+            }
+        } else {
+            if (spectrogramColumn >= width) {
+                spectrogramColumn = 0;
+            }
+            for (int y = 0; y < height; y++) {
+                int level = toPixels(maxLevel(levels, height - 1 - y), 255);
+                pixels[y * width + spectrogramColumn] = palette[level];
+            }
+            spectrogramColumn++;
+        }
+    }
+
+    private float maxLevel(final float[] levels, final int axisIndex) {
+        float max = MIN_DB;
+        for (int bin = axisLowBin[axisIndex]; bin <= axisHighBin[axisIndex]; bin++) {
+            if (levels[bin] > max) {
+                max = levels[bin];
+            }
+        }
+        return max;
+    }
+
+    private static int toPixels(final float level, final int range) {
+        float ratio = (Math.min(MAX_DB, Math.max(MIN_DB, level)) - MIN_DB) / (MAX_DB - MIN_DB);
+        return (int) (ratio * range);
+    }
+
+    //Spectrogram: newest column at the right edge
+    private void blit(final Graphics g) {
+        if (MODE == Mode.Spectrum) {
+            g.drawImage(image, 0, 0, null);
+        } else {
+            int split = spectrogramColumn;
+            g.drawImage(image, 0, 0, width - split, height, split, 0, width, height, null);
+            g.drawImage(image, width - split, 0, width, height, 0, 0, split, height, null);
+        }
+    }
+
+    private void resize(final int width, final int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, palette[0]);
+        spectrogramColumn = 0;
+        updateAxis();
+    }
+
+    //Logarithmic frequency axis from MIN_FREQUENCY to Nyquist
+    private void updateAxis() {
+        if (analyzer == null) {
+            return;
+        }
+        int axisLength = MODE == Mode.Spectrum ? width : height;
+        double binWidth = analyzer.getSampleRate() / analyzer.getSize();
+        double maxFrequency = analyzer.getSampleRate() / 2;
+        int lastBin = analyzer.getBins() - 1;
+
+        axisLowBin = new int[axisLength];
+        axisHighBin = new int[axisLength];
+        for (int i = 0; i < axisLength; i++) {
+            double from = MIN_FREQUENCY * Math.pow(maxFrequency / MIN_FREQUENCY, (double) i / axisLength);
+            double to = MIN_FREQUENCY * Math.pow(maxFrequency / MIN_FREQUENCY, (double) (i + 1) / axisLength);
+            axisLowBin[i] = Math.min(lastBin, (int) Math.round(from / binWidth));
+            axisHighBin[i] = Math.min(lastBin, Math.max(axisLowBin[i], (int) Math.round(to / binWidth) - 1));
+        }
+    }
+
+    //Black, blue, red, yellow, white
+    private static int[] createPalette() {
+        float[][] stops = {{0, 0, 0}, {0, 0, 0.6f}, {0.8f, 0, 0.2f}, {1, 0.8f, 0}, {1, 1, 1}};
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            float position = i / 255f * (stops.length - 1);
+            int stop = Math.min(stops.length - 2, (int) position);
+            float t = position - stop;
+            float r = stops[stop][0] + t * (stops[stop + 1][0] - stops[stop][0]);
+            float gr = stops[stop][1] + t * (stops[stop + 1][1] - stops[stop][1]);
+            float b = stops[stop][2] + t * (stops[stop + 1][2] - stops[stop][2]);
+            palette[i] = new Color(r, gr, b).getRGB();
+        }
+        return palette;
+    }
+
+    @Override
+    public SpectrumView shutdown() {
+        EXIT_FLAG = true;
+        Thread thread = runner;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return this;
+    }
+
+    @Override
+    public Container getView() {
+        viewContainer = new Panel() {
+            @Override
+            public void update(final Graphics g) {
+                paint(g);
+            }
+
+            @Override
+            public void paint(final Graphics g) {
+                synchronized (SpectrumView.this) {
+                    blit(g);
+                }
+            }
+        };
+        viewContainer.setBackground(Color.BLACK);
+        viewContainer.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(final ComponentEvent e) {
+                synchronized (SpectrumView.this) {
+                    resize(viewContainer.getWidth(), viewContainer.getHeight());
+                }
+            }
+        });
+        return viewContainer;
+    }
+
+    @Override
+    public Panel getOptionsPanel() {
+        Panel menuPanel = new Panel();
+
+        Choice modeChoice = new Choice();
+        for (Mode mode : Mode.values()) {
+            modeChoice.add(mode.name());
+        }
+        modeChoice.select(MODE.name());
+
+        Choice sizeChoice = new Choice();
+        for (int size = 512; size <= 16384; size <<= 1) {
+            sizeChoice.add(String.valueOf(size));
+        }
+        sizeChoice.select(String.valueOf(FFT_SIZE));
+
+        Choice overlapChoice = new Choice();
+        overlapChoice.add("0");
+        overlapChoice.add("50");
+        overlapChoice.add("75");
+        overlapChoice.add("87");
+        overlapChoice.select(String.valueOf(OVERLAP_PERCENT));
+
+        Choice windowChoice = new Choice();
+        for (WindowFunction window : WindowFunction.values()) {
+            windowChoice.add(window.name());
+        }
+        windowChoice.select(WINDOW.name());
+
+        menuPanel.add(new Label("Spectrum:"));
+        menuPanel.add(modeChoice);
+        menuPanel.add(new Label("  FFT size:"));
+        menuPanel.add(sizeChoice);
+        menuPanel.add(new Label("  Overlap (%):"));
+        menuPanel.add(overlapChoice);
+        menuPanel.add(new Label("  Window:"));
+        menuPanel.add(windowChoice);
+
+        Button button = new Button("Yes!");
+        button.addActionListener(e -> {
+            synchronized (SpectrumView.this) {
+                MODE = Mode.valueOf(modeChoice.getSelectedItem());
+                FFT_SIZE = Integer.parseInt(sizeChoice.getSelectedItem()); //New analyzer on the next block
+                OVERLAP_PERCENT = Integer.parseInt(overlapChoice.getSelectedItem());
+                WINDOW = WindowFunction.valueOf(windowChoice.getSelectedItem());
+                resize(width, height);
+                logger.info("Spectrum: {} {}-point {} window, hop {}", MODE, FFT_SIZE, WINDOW, hopSize());
+            }
+        });
+        menuPanel.add(button);
+        menuPanel.setBackground(Color.YELLOW);
+
+        return menuPanel;
+    }
+}
@@ -0,0 +1,172 @@
+package com.didi.splviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Turns one channel into the messages of a {@link StreamingServer}: waveform columns (min/max of
+ * {@code sampleRate / COLUMNS_PER_SECOND} samples) and meter values, each several times a second, plus a retained
+ * description of the stream.
+ * <p>
+ * Messages are big-endian, starting with a type byte, the stream id and the sample clock:
+ * <pre>
+ *   INFO    0, byte stream, long frame, float sampleRate, short samplesPerColumn, short length, UTF-8 name
+ *   COLUMNS 1, byte stream, long frame of the first column, short count, count * (short min, short max)
+ *   LEVELS  2, byte stream, long frame, float level, float leq, float lmax, float lmin, float peak (dB, A weighted, Fast)
+ * </pre>
+ * Column values are scaled to 16 bit whatever the sample size. The levels are those of the last completed second
+ * except {@code level}, which is the current time weighted level.
+ */
+public final class StreamPublisher implements SPLModule {
+
+    public static final byte INFO = 0;
+    public static final byte COLUMNS = 1;
+    public static final byte LEVELS = 2;
+
+    private static final int COLUMNS_PER_SECOND = Integer.getInteger("splviewer.server.columnsPerSecond", 200);
+    private static final int MESSAGES_PER_SECOND = Integer.getInteger("splviewer.server.messagesPerSecond", 20);
+    private static final double CALIBRATION_OFFSET = Double.parseDouble(System.getProperty("splviewer.calibration", "0")); //dB SPL at digital full scale
+
+    private final StreamingServer server;
+    private final SampleReader pullBuffer;
+    private final AudioSource source;
+    private final int stream;
+    private final String name;
+    private final int[] samples = new int[4096];
+    private volatile boolean EXIT_FLAG = false;
+    private volatile Thread runner; //blocked in read() while its source is stopped
+
+    //Columns in progress
+    private short[] columnMin = new short[0], columnMax = new short[0];
+    private int columns = 0;
+    private int columnSamples = 0;
+    private int samplesPerColumn = 1;
+    private final SampleKernels.Summary column = new SampleKernels.Summary();
+    private final SampleKernels kernels = SampleKernels.get();
+    private long frame;
+    private long firstColumnFrame;
+
+    /**
+     * @param stream id of this channel in the messages, 0-255
+     */
+    public StreamPublisher(final StreamingServer server, final SampleReader pullBuffer, final AudioSource source, final int stream,
+                           final String name) {
+        this.server = server;
+        this.pullBuffer = pullBuffer;
+        this.source = source;
+        this.stream = stream;
+        this.name = name;
+        this.frame = source.getFramePosition();
+        this.firstColumnFrame = frame;
+    }
+
+    @Override
+    public void run() {
+        runner = Thread.currentThread();
+        SPLMeter meter = null;
+        long dropped = 0;
+
+        while (!EXIT_FLAG) {
+            try {
+                int read = pullBuffer.read(samples, 0, samples.length);
+                AudioFormat format = source.getFormat();
+                int sampleRate = (int) format.getSampleRate();
+                if (meter == null || meter.getSampleRate() != sampleRate) {
+                    meter = new SPLMeter(sampleRate, FrequencyWeighting.A, TimeWeighting.FAST, 1.0, CALIBRATION_OFFSET);
+                    samplesPerColumn = Math.max(1, sampleRate / COLUMNS_PER_SECOND);
+                    int columnsPerMessage = Math.max(1, COLUMNS_PER_SECOND / MESSAGES_PER_SECOND);
+                    columnMin = new short[columnsPerMessage];
+                    columnMax = new short[columnsPerMessage];
+                    restartColumns();
+                    server.publishRetained(stream, info(sampleRate));
+                }
+                long droppedNow = pullBuffer.getOverrunStats().getDroppedSamples();
+                if (droppedNow != dropped) { //columns stay on the sample clock
+                    frame += droppedNow - dropped;
+                    dropped = droppedNow;
+                    restartColumns();
+                }
+                int shift = format.getSampleSizeInBits() - 16;
+                meter.process(samples, 0, read, 1f / (1L << (format.getSampleSizeInBits() - 1)));
+                addColumns(read, shift, meter);
+            } catch (InterruptedException e) {
+                if (!EXIT_FLAG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        server.removeRetained(stream);
+    }
+
+    private void restartColumns() {
+        columns = 0;
+        columnSamples = 0;
+        column.reset();
+        firstColumnFrame = frame;
+    }
+
+    private void addColumns(final int count, final int shift, final SPLMeter meter) {
+        for (int i = 0; i < count; ) {
+            int length = Math.min(count - i, samplesPerColumn - columnSamples);
+            kernels.summarize(samples, i, length, column);
+            i += length;
+            frame += length;
+            columnSamples += length;
+            if (columnSamples == samplesPerColumn) {
+                columnMin[columns] = to16Bits(column.getMin(), shift);
+                columnMax[columns] = to16Bits(column.getMax(), shift);
+                columnSamples = 0;
+                column.reset();
+                if (++columns == columnMin.length) {
+                    server.publish(columns());
+                    server.publish(levels(meter));
+                    columns = 0;
+                    firstColumnFrame = frame;
+                }
+            }
+        }
+    }
+
+    private static short to16Bits(final int sample, final int shift) {
+        return (short) (shift >= 0 ? sample >> shift : sample << -shift);
+    }
+
+    private ByteBuffer info(final int sampleRate) {
+        byte[] utf = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer message = ByteBuffer.allocate(18 + utf.length);
+        message.put(INFO).put((byte) stream).putLong(frame).putFloat(sampleRate).putShort((short) samplesPerColumn)
+            .putShort((short) utf.length).put(utf);
+        message.flip();
+        return message;
+    }
+
+    private ByteBuffer columns() {
+        ByteBuffer message = ByteBuffer.allocate(12 + 4 * columns);
+        message.put(COLUMNS).put((byte) stream).putLong(firstColumnFrame).putShort((short) columns);
+        for (int c = 0; c < columns; c++) {
+            message.putShort(columnMin[c]).putShort(columnMax[c]);
+        }
+        message.flip();
+        return message;
+    }
+
+    private ByteBuffer levels(final SPLMeter meter) {
+        ByteBuffer message = ByteBuffer.allocate(30);
+        message.put(LEVELS).put((byte) stream).putLong(frame).putFloat((float) meter.getLevel()).putFloat((float) meter.getLeq())
+            .putFloat((float) meter.getLmax()).putFloat((float) meter.getLmin()).putFloat((float) meter.getPeak());
+        message.flip();
+        return message;
+    }
+
+    @Override
+    public StreamPublisher shutdown() {
+        EXIT_FLAG = true;
+        Thread thread = runner;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return this;
+    }
+}
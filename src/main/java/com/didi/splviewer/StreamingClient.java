@@ -0,0 +1,95 @@
+package com.didi.splviewer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plain TCP client of a {@link StreamingServer}, to check a server from the command line:
+ * <pre>
+ *   java -cp audiocapture.jar com.didi.splviewer.StreamingClient [host] [port]
+ * </pre>
+ * logs every message it receives.
+ */
+public final class StreamingClient implements Closeable {
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(StreamingClient.class);
+
+    private final Socket socket;
+    private final DataInputStream in;
+
+    public StreamingClient(final InetSocketAddress address) throws IOException {
+        socket = new Socket();
+        socket.connect(address, 5000);
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        out.write(StreamingServer.TCP_HELLO);
+        out.flush();
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Blocks until the next message has arrived
+     */
+    public ByteBuffer readMessage() throws IOException {
+        byte[] message = new byte[in.readInt()];
+        in.readFully(message);
+        return ByteBuffer.wrap(message);
+    }
+
+    /**
+     * One line per message, see {@link StreamPublisher} for the layout
+     */
+    public static String describe(final ByteBuffer message) {
+        ByteBuffer m = message.duplicate();
+        byte type = m.get();
+        int stream = m.get() & 0xFF;
+        long frame = m.getLong();
+        switch (type) {
+            case StreamPublisher.INFO:
+                float sampleRate = m.getFloat();
+                int samplesPerColumn = m.getShort() & 0xFFFF;
+                byte[] name = new byte[m.getShort() & 0xFFFF];
+                m.get(name);
+                return String.format("#%d info @%d: \"%s\", %.0fHz, %d samples per column", stream, frame,
+                    new String(name, StandardCharsets.UTF_8), sampleRate, samplesPerColumn);
+            case StreamPublisher.COLUMNS:
+                int count = m.getShort() & 0xFFFF;
+                int min = Short.MAX_VALUE, max = Short.MIN_VALUE;
+                for (int c = 0; c < count; c++) {
+                    min = Math.min(min, m.getShort());
+                    max = Math.max(max, m.getShort());
+                }
+                return String.format("#%d columns @%d: %d, range %d..%d", stream, frame, count, min, max);
+            case StreamPublisher.LEVELS:
+                return String.format("#%d levels @%d: %.1f dB, Leq %.1f, max %.1f, min %.1f, peak %.1f", stream, frame,
+                    m.getFloat(), m.getFloat(), m.getFloat(), m.getFloat(), m.getFloat());
+            default:
+                return String.format("#%d unknown message type %d", stream, type);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : StreamingServer.DEFAULT_PORT;
+        try (StreamingClient client = new StreamingClient(new InetSocketAddress(host, port))) {
+            while (true) {
+                logger.info(describe(client.readMessage()));
+            }
+        }
+    }
+}
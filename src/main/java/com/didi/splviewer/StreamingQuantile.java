@@ -0,0 +1,112 @@
+package com.didi.splviewer;
+
+/**
+ * One quantile of everything added, estimated with the P-square algorithm of Jain and Chlamtac in constant memory: five
+ * markers track the min, the max, the quantile and the two halfway quantiles, and after every value the middle ones
+ * are moved towards their ideal positions along a parabola through their neighbours. Exact up to five values, then
+ * typically within a few percent of the distribution's spread. Allocation-free, not thread-safe.
+ */
+public final class StreamingQuantile {
+
+    private final double quantile;
+    private final double[] heights = new double[5];
+    private final int[] positions = new int[5];
+    private final double[] desired = new double[5];
+    private final double[] increments;
+    private long count = 0;
+
+    /**
+     * @param quantile in (0, 1), e.g. 0.99
+     */
+    public StreamingQuantile(final double quantile) {
+        if (!(quantile > 0 && quantile < 1)) {
+            throw new IllegalArgumentException("Quantile must be in (0, 1): " + quantile);
+        }
+        this.quantile = quantile;
+        this.increments = new double[]{0, quantile / 2, quantile, (1 + quantile) / 2, 1};
+        reset();
+    }
+
+    public void add(final double value) {
+        if (count < 5) {
+            //The first five, sorted by insertion
+            int i = (int) count++;
+            while (i > 0 && heights[i - 1] > value) {
+                heights[i] = heights[i - 1];
+                i--;
+            }
+            heights[i] = value;
+            return;
+        }
+        count++;
+
+        int cell;
+        if (value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        } else if (value >= heights[4]) {
+            heights[4] = value;
+            cell = 3;
+        } else {
+            cell = 0;
+            while (value >= heights[cell + 1]) {
+                cell++;
+            }
+        }
+        for (int i = cell + 1; i < 5; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desired[i] += increments[i];
+        }
+
+        for (int i = 1; i < 4; i++) {
+            double offset = desired[i] - positions[i];
+            if (offset >= 1 && positions[i + 1] - positions[i] > 1 || offset <= -1 && positions[i - 1] - positions[i] < -1) {
+                int step = offset > 0 ? 1 : -1;
+                double height = parabolic(i, step);
+                heights[i] = heights[i - 1] < height && height < heights[i + 1] ? height : linear(i, step);
+                positions[i] += step;
+            }
+        }
+    }
+
+    private double parabolic(final int i, final int step) {
+        double below = positions[i] - positions[i - 1], above = positions[i + 1] - positions[i];
+        return heights[i] + step / (double) (positions[i + 1] - positions[i - 1])
+            * ((below + step) * (heights[i + 1] - heights[i]) / above + (above - step) * (heights[i] - heights[i - 1]) / below);
+    }
+
+    private double linear(final int i, final int step) {
+        return heights[i] + step * (heights[i + step] - heights[i]) / (positions[i + step] - positions[i]);
+    }
+
+    /**
+     * The estimate, NaN before the first value
+     */
+    public double getQuantile() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count <= 5) {
+            return heights[(int) Math.round(quantile * (count - 1))];
+        }
+        return heights[2];
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+        for (int i = 0; i < 5; i++) {
+            positions[i] = i + 1;
+        }
+        desired[0] = 1;
+        desired[1] = 1 + 2 * quantile;
+        desired[2] = 1 + 4 * quantile;
+        desired[3] = 3 + 2 * quantile;
+        desired[4] = 5;
+    }
+}
@@ -0,0 +1,351 @@
+package com.didi.splviewer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes binary messages (see {@link StreamPublisher}) to any number of TCP and WebSocket clients from a single NIO
+ * selector thread.
+ * <p>
+ * A client says which one it is with its first bytes: a plain TCP client sends {@link #TCP_HELLO} and then receives
+ * every message as a 4 byte big-endian length followed by the message. A browser sends its HTTP upgrade request and
+ * receives every message as one binary WebSocket frame. Anything the clients send afterwards is ignored.
+ * <p>
+ * {@link #publish(ByteBuffer)} never blocks: each client has its own queue of at most {@code queueCapacity} messages,
+ * and when a client cannot keep up its oldest queued message is dropped. A message is framed once per protocol and
+ * shared by all clients. Retained messages (e.g. what a stream is) are sent to every client that connects later, ahead
+ * of its queue and never dropped.
+ */
+public final class StreamingServer implements Runnable, Closeable {
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(StreamingServer.class);
+
+    public static final int DEFAULT_PORT = 7001;
+    public static final byte[] TCP_HELLO = "SPL1".getBytes(StandardCharsets.US_ASCII);
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_REQUEST_BYTES = 8192;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final int queueCapacity;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private final Queue<Client> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, ByteBuffer> retained = new ConcurrentHashMap<>();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final ByteBuffer discard = ByteBuffer.allocate(4096); //selector thread only
+    private final Thread selectorThread;
+    private volatile boolean closed = false;
+
+    /**
+     * Binds and starts the selector thread
+     *
+     * @param address       e.g. 127.0.0.1:port for this machine only, port 0 picks a free one
+     * @param queueCapacity messages kept per client before the oldest is dropped
+     */
+    public StreamingServer(final InetSocketAddress address, final int queueCapacity) throws IOException {
+        this.queueCapacity = queueCapacity;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread = new Thread(this, "StreamingServer");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        logger.info("Streaming on {}", getAddress());
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Messages thrown away over all clients because they were not read fast enough
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * Queues {@code message} (from position to limit) for every connected client. Called by the producers, never blocks.
+     */
+    public void publish(final ByteBuffer message) {
+        ByteBuffer tcpFrame = null, webSocketFrame = null;
+        for (Client client : clients) {
+            ByteBuffer frame;
+            if (client.webSocket) {
+                frame = webSocketFrame != null ? webSocketFrame : (webSocketFrame = webSocketFrame(message));
+            } else {
+                frame = tcpFrame != null ? tcpFrame : (tcpFrame = tcpFrame(message));
+            }
+            client.offer(frame.duplicate());
+        }
+    }
+
+    /**
+     * Publishes {@code message} and also sends it to clients that connect later, replacing what was retained under
+     * {@code key}
+     */
+    public void publishRetained(final int key, final ByteBuffer message) {
+        retained.put(key, message.duplicate());
+        publish(message);
+    }
+
+    public void removeRetained(final int key) {
+        retained.remove(key);
+    }
+
+    static ByteBuffer tcpFrame(final ByteBuffer message) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + message.remaining());
+        frame.putInt(message.remaining()).put(message.duplicate());
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    //Unmasked binary frame, server to client
+    static ByteBuffer webSocketFrame(final ByteBuffer message) {
+        int length = message.remaining();
+        ByteBuffer frame = ByteBuffer.allocate(10 + length);
+        frame.put((byte) 0x82);
+        if (length < 126) {
+            frame.put((byte) length);
+        } else if (length < 65536) {
+            frame.put((byte) 126).putShort((short) length);
+        } else {
+            frame.put((byte) 127).putLong(length);
+        }
+        frame.put(message.duplicate());
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    static String webSocketAccept(final String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Client client;
+                while ((client = pendingWrites.poll()) != null) {
+                    if (client.key.isValid()) {
+                        client.key.interestOps(client.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            client = (Client) key.attachment();
+                            if (key.isReadable()) {
+                                client.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                client.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Client) {
+                            logger.debug("Client gone", e);
+                            ((Client) key.attachment()).close();
+                        } else {
+                            logger.warn("Cannot accept", e);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                logger.error("Streaming server stopped", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Client client : clients) {
+            client.close();
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Closing the streaming server", e);
+        }
+    }
+
+    /**
+     * One connection. The queue is filled by the producers and drained by the selector thread.
+     */
+    private final class Client {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES); //until the client said what it is
+        private volatile boolean webSocket;
+
+        private final ArrayDeque<ByteBuffer> preamble = new ArrayDeque<>(); //handshake and retained messages, sent first
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        private ByteBuffer sending; //partly written, selector thread only
+        private boolean writeScheduled = false;
+        private long dropped = 0;
+
+        Client(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        //Selector thread
+        void read() throws IOException {
+            if (request == null) {
+                discard.clear();
+                if (channel.read(discard) < 0) { //nothing to hear from a client once it is set up
+                    close();
+                }
+                return;
+            }
+            if (channel.read(request) < 0) {
+                close();
+                return;
+            }
+            String received = new String(request.array(), 0, request.position(), StandardCharsets.ISO_8859_1);
+            if (request.position() >= TCP_HELLO.length && received.startsWith(new String(TCP_HELLO, StandardCharsets.ISO_8859_1))) {
+                ready(false, null);
+            } else if (received.startsWith("GET ") && received.contains("\r\n\r\n")) {
+                String key = null;
+                for (String line : received.split("\r\n")) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                        key = line.substring(colon + 1).trim();
+                    }
+                }
+                if (key == null) {
+                    throw new IOException("Not a WebSocket request");
+                }
+                String response = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + webSocketAccept(key) + "\r\n\r\n";
+                ready(true, ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII)));
+            } else if (!request.hasRemaining() || (request.position() >= TCP_HELLO.length && !received.startsWith("GET "))) {
+                throw new IOException("Unknown protocol");
+            }
+        }
+
+        private void ready(final boolean webSocket, final ByteBuffer handshake) {
+            this.webSocket = webSocket;
+            this.request = null;
+            synchronized (this) {
+                clients.add(this); //before the snapshot, so a message retained meanwhile is not missed
+                if (handshake != null) {
+                    preamble.add(handshake);
+                }
+                for (ByteBuffer message : retained.values()) {
+                    preamble.add(webSocket ? webSocketFrame(message) : tcpFrame(message));
+                }
+                writeScheduled = true;
+            }
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            logger.info("{} client {} connected", webSocket ? "WebSocket" : "TCP", channel.socket().getRemoteSocketAddress());
+        }
+
+        //Producer threads
+        void offer(final ByteBuffer frame) {
+            boolean wakeUp = false;
+            synchronized (this) {
+                if (queue.size() >= queueCapacity) {
+                    queue.poll();
+                    dropped++;
+                    droppedMessages.incrementAndGet();
+                }
+                queue.add(frame);
+                if (!writeScheduled) {
+                    writeScheduled = wakeUp = true;
+                }
+            }
+            if (wakeUp) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        //Selector thread
+        void flush() throws IOException {
+            while (true) {
+                if (sending == null || !sending.hasRemaining()) {
+                    synchronized (this) {
+                        sending = !preamble.isEmpty() ? preamble.poll() : queue.poll();
+                        if (sending == null) {
+                            writeScheduled = false;
+                            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                            return;
+                        }
+                    }
+                }
+                channel.write(sending);
+                if (sending.hasRemaining()) {
+                    return; //socket buffer full, OP_WRITE stays on
+                }
+            }
+        }
+
+        void close() {
+            if (clients.remove(this)) {
+                logger.info("Client {} disconnected, {} messages dropped", channel.socket().getRemoteSocketAddress(), dropped);
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Closing client", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.didi.splviewer;
+
+/**
+ * Exponential time weightings of a sound level meter, as rise/decay time constants in seconds.
+ */
+public enum TimeWeighting {
+
+    FAST(0.125, 0.125),
+    SLOW(1.0, 1.0),
+    IMPULSE(0.035, 1.5);
+
+    private final double riseTimeConstant;
+    private final double decayTimeConstant;
+
+    TimeWeighting(final double riseTimeConstant, final double decayTimeConstant) {
+        this.riseTimeConstant = riseTimeConstant;
+        this.decayTimeConstant = decayTimeConstant;
+    }
+
+    /**
+     * Per-sample smoothing coefficient of y += alpha * (x^2 - y) while the level rises
+     */
+    double riseCoefficient(final double sampleRate) {
+        return 1 - Math.exp(-1 / (riseTimeConstant * sampleRate));
+    }
+
+    double decayCoefficient(final double sampleRate) {
+        return 1 - Math.exp(-1 / (decayTimeConstant * sampleRate));
+    }
+
+    double getDecayTimeConstant() {
+        return decayTimeConstant;
+    }
+}
@@ -0,0 +1,191 @@
+package com.didi.splviewer;
+
+import java.awt.Panel;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays a WAV (or any file javax.sound can parse) or a headerless raw PCM file.
+ * <p>
+ * The file is streamed block by block, never loaded whole. In real time mode blocks are paced to the file's sample
+ * rate, otherwise they go out as fast as the sink accepts them, which is what load tests and benchmarks want.
+ */
+public final class WavFileSource implements AudioSource {
+
+    private static final int BLOCKS_PER_SECOND = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(WavFileSource.class);
+
+    private final File file;
+    private final SampleSink pushBuffer;
+    private final AudioFormat format;
+    private final boolean raw;
+    private final boolean realTime;
+    private final boolean loop;
+    private final SourceWorker worker;
+    private volatile CaptureSession session; //the one that should be running, null when stopped
+    private long sessionCount;
+    private byte[] buffer = new byte[0]; //replay thread only, kept across replays
+    private int[] samples = new int[0];
+    private volatile PcmSink pcmSink;
+    private volatile long framesCaptured = 0; //across replays, the viewers count frames the same way
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    /**
+     * Replays a file with a header describing its format
+     */
+    public WavFileSource(final SampleSink pushBuffer, final File file, final boolean realTime, final boolean loop) throws IOException, UnsupportedAudioFileException {
+        this(pushBuffer, file, AudioSystem.getAudioFileFormat(file).getFormat(), false, realTime, loop);
+    }
+
+    /**
+     * Replays headerless PCM in the given format
+     */
+    public WavFileSource(final SampleSink pushBuffer, final File file, final AudioFormat rawFormat, final boolean realTime, final boolean loop) {
+        this(pushBuffer, file, rawFormat, true, realTime, loop);
+    }
+
+    private WavFileSource(final SampleSink pushBuffer, final File file, final AudioFormat format, final boolean raw, final boolean realTime, final boolean loop) {
+        PcmDecoder.forFormat(format); //fail early on formats we cannot decode
+        this.pushBuffer = pushBuffer;
+        this.file = file;
+        this.format = format;
+        this.raw = raw;
+        this.realTime = realTime;
+        this.loop = loop;
+        this.worker = new SourceWorker("replay-" + file.getName());
+    }
+
+    @Override
+    public boolean supportsPcm() {
+        return true;
+    }
+
+    @Override
+    public WavFileSource setPcmSink(final PcmSink sink) {
+        pcmSink = sink;
+        return this;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getFramePosition() {
+        return framesCaptured;
+    }
+
+    private synchronized CaptureSession nextSession() {
+        session = new CaptureSession(++sessionCount, format, Math.max(1, (int) format.getSampleRate() / BLOCKS_PER_SECOND));
+        return session;
+    }
+
+    /**
+     * Replays on a thread that is kept across replays, after the previous replay has ended
+     */
+    @Override
+    public WavFileSource begin() {
+        CaptureSession next = nextSession();
+        worker.submit(() -> replay(next));
+        return this;
+    }
+
+    /**
+     * Replays on the calling thread until the file ends or {@link #shutdown()}
+     */
+    @Override
+    public void run() {
+        replay(nextSession());
+    }
+
+    private void replay(final CaptureSession session) {
+        if (this.session != session) {
+            return; //stopped or replaced before it got to run
+        }
+        PcmDecoder decoder = PcmDecoder.forFormat(format);
+        int frameSize = format.getFrameSize();
+        if (buffer.length != session.getBlockBytes()) {
+            buffer = new byte[session.getBlockBytes()];
+            samples = new int[session.getBlockFrames() * format.getChannels()];
+        }
+
+        long startTime = System.nanoTime();
+        long framesPushed = 0;
+        try {
+            do {
+                try (AudioInputStream in = open()) {
+                    int bytesRead;
+                    while (this.session == session && (bytesRead = readBlock(in, buffer)) > 0) {
+                        PcmSink rawSink = pcmSink;
+                        if (rawSink != null) {
+                            rawSink.write(buffer, 0, bytesRead, format);
+                        }
+                        framesPushed += bytesRead / frameSize;
+                        framesCaptured += bytesRead / frameSize;
+                        metrics.blockCaptured(this, framesCaptured);
+                        int numberOfSamples = bytesRead / decoder.getBytesPerSample();
+                        long decodeBeginTime = System.nanoTime();
+                        decoder.decode(buffer, 0, samples, 0, numberOfSamples);
+                        metrics.getDecode().record(System.nanoTime() - decodeBeginTime);
+                        pushBuffer.write(samples, 0, numberOfSamples);
+
+                        if (realTime) {
+                            long due = startTime + (long) (framesPushed * (1000000000L / (double) format.getSampleRate()));
+                            LockSupport.parkNanos(due - System.nanoTime());
+                        }
+                    }
+                }
+            } while (loop && this.session == session);
+
+            logger.info("Replayed {} frames from {} in {} ms", framesPushed, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (IOException | UnsupportedAudioFileException | InterruptedException e) {
+            logger.error("Replay of " + file + " failed", e);
+        }
+    }
+
+    private AudioInputStream open() throws IOException, UnsupportedAudioFileException {
+        if (raw) {
+            return new AudioInputStream(new BufferedInputStream(new FileInputStream(file)), format, file.length() / format.getFrameSize());
+        }
+        return AudioSystem.getAudioInputStream(file);
+    }
+
+    //Fills the buffer unless the stream ends, and never returns a partial frame
+    private int readBlock(final AudioInputStream in, final byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total - total % format.getFrameSize();
+    }
+
+    @Override
+    public WavFileSource shutdown() {
+        synchronized (this) {
+            session = null;
+        }
+        worker.await(SHUTDOWN_TIMEOUT_MILLIS);
+        return this;
+    }
+
+    @Override
+    public Panel getOptionsPanel() {
+        return AudioSources.startStopPanel("File: " + file.getName() + (realTime ? "" : " (fast)"), this);
+    }
+}
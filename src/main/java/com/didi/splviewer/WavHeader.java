@@ -0,0 +1,98 @@
+package com.didi.splviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Where the samples of a PCM WAV file are and what they look like, found by walking its RIFF chunks. Unlike
+ * {@code AudioSystem} this gives the byte offset of the data, so the data can be mapped in place.
+ */
+final class WavHeader {
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final AudioFormat format;
+    private final long dataOffset;
+    private final long dataLength;
+
+    private WavHeader(final AudioFormat format, final long dataOffset, final long dataLength) {
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    /**
+     * @throws IOException if this is not an integer PCM WAV file
+     */
+    static WavHeader read(final FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0, 12);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) { //"RIFF", "WAVE"
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+        AudioFormat format = null;
+        long position = 12;
+        long size = channel.size();
+        while (position + 8 <= size) {
+            readFully(channel, header, position, 8);
+            int id = header.getInt(0);
+            long chunkLength = header.getInt(4) & 0xFFFFFFFFL;
+            position += 8;
+            if (id == 0x20746D66) { //"fmt "
+                readFully(channel, header, position, (int) Math.min(chunkLength, header.capacity()));
+                int formatTag = header.getShort(0) & 0xFFFF;
+                if (formatTag == WAVE_FORMAT_EXTENSIBLE && chunkLength >= 26) {
+                    formatTag = header.getShort(24) & 0xFFFF; //first bytes of the sub format GUID
+                }
+                if (formatTag != WAVE_FORMAT_PCM) {
+                    throw new IOException("Not integer PCM, format " + formatTag);
+                }
+                int channels = header.getShort(2) & 0xFFFF;
+                int sampleRate = header.getInt(4);
+                int bits = header.getShort(14) & 0xFFFF;
+                format = new AudioFormat(sampleRate, bits, channels, bits > 8, false);
+            } else if (id == 0x61746164) { //"data"
+                if (format == null) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                //Streaming writers leave the length at 0 or -1 until they finish
+                long available = size - position;
+                long length = chunkLength == 0 || chunkLength == 0xFFFFFFFFL ? available : Math.min(chunkLength, available);
+                return new WavHeader(format, position, length - length % format.getFrameSize());
+            }
+            position += chunkLength + (chunkLength & 1);
+        }
+        throw new IOException("No data chunk");
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position, final int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated header");
+            }
+        }
+    }
+
+    AudioFormat getFormat() {
+        return format;
+    }
+
+    long getDataOffset() {
+        return dataOffset;
+    }
+
+    long getDataLength() {
+        return dataLength;
+    }
+
+    long getFrames() {
+        return dataLength / format.getFrameSize();
+    }
+}
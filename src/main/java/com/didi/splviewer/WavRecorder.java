@@ -0,0 +1,448 @@
+package com.didi.splviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records raw PCM into a series of WAV files through memory-mapped windows.
+ * <p>
+ * The capture thread only copies each block into the mapped window of the current segment (byte-swapping big-endian
+ * input, since WAV is little-endian). Everything that can block runs on a background thread: creating the next
+ * segment and mapping the next window ahead of time, forcing dirty pages to disk every {@code flushIntervalMillis} and
+ * patching the RIFF/data sizes in the header in place, so a crash loses at most one flush interval. A segment is
+ * rotated when it reaches {@code maxSegmentBytes} of audio or {@code maxSegmentMillis} of wall time.
+ * <p>
+ * When the background thread is behind, e.g. before the first segment exists, blocks wait in a fixed backlog. What
+ * does not fit is dropped and counted, the capture thread never waits for the disk.
+ */
+public final class WavRecorder implements PcmSink, AutoCloseable {
+
+    private static final int HEADER_SIZE = 44;
+    private static final int WINDOW_SIZE = 8 << 20;
+    private static final int BACKLOG_BYTES = 4 << 20; //seconds of audio while a segment or window is not ready yet
+    private static final long MAX_WAV_DATA_BYTES = 0xFFFFFFFFL - HEADER_SIZE;
+
+    private static Logger logger = (Logger) LoggerFactory.getLogger(WavRecorder.class);
+
+    private final File directory;
+    private final String prefix;
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "wav-recorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String startTimestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+
+    //Written by the capture thread only
+    private volatile Segment segment;
+    private Future<Segment> nextSegment;
+    private int segmentIndex = 0;
+    private volatile boolean closed = false;
+    private final byte[] backlog = new byte[BACKLOG_BYTES];
+    private int backlogLength = 0;
+    private AudioFormat backlogFormat;
+    private volatile long droppedBytes = 0;
+
+    public WavRecorder(final File directory, final String prefix, final long maxSegmentBytes, final long maxSegmentMillis, final long flushIntervalMillis) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create recording directory " + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxSegmentBytes = Math.min(maxSegmentBytes, MAX_WAV_DATA_BYTES);
+        this.maxSegmentMillis = maxSegmentMillis;
+        background.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void write(final byte[] pcm, final int offset, final int length, final AudioFormat format) {
+        if (closed) {
+            return;
+        }
+        try {
+            drainBacklog();
+            int written = backlogLength > 0 ? 0 : append(pcm, offset, length, format); //in order
+            if (written < length) {
+                keep(pcm, offset + written, length - written, format);
+            }
+        } catch (IOException e) {
+            logger.error("Recording failed, stopping the recorder", e);
+            close();
+        }
+    }
+
+    /**
+     * Bytes that were not recorded because the background thread fell behind by more than the backlog
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    //As much as fits without waiting for the background thread
+    private int append(final byte[] pcm, final int offset, final int length, final AudioFormat format) throws IOException {
+        int written = 0;
+        while (written < length) {
+            if (segment == null || (format != segment.sourceFormat && !segment.format.matches(format))
+                || segment.dataBytes >= segment.capacity || System.currentTimeMillis() - segment.startTime >= maxSegmentMillis) {
+                if (!rotate(format)) {
+                    break;
+                }
+            }
+            int count = (int) Math.min(length - written, segment.capacity - segment.dataBytes);
+            count -= count % format.getFrameSize();
+            if (count == 0) {
+                if (!rotate(format)) { //not even one frame left in this segment
+                    break;
+                }
+                continue;
+            }
+            int appended = segment.append(pcm, offset + written, count);
+            written += appended;
+            if (appended < count && !nextWindow()) {
+                break;
+            }
+        }
+        return written;
+    }
+
+    private boolean drainBacklog() throws IOException {
+        if (backlogLength == 0) {
+            return false;
+        }
+        int drained = append(backlog, 0, backlogLength, backlogFormat);
+        System.arraycopy(backlog, drained, backlog, 0, backlogLength - drained); //rare, only while catching up
+        backlogLength -= drained;
+        return drained > 0;
+    }
+
+    private void keep(final byte[] pcm, final int offset, final int length, final AudioFormat format) {
+        if (backlogLength > 0 && format != backlogFormat && !new WavFormat(backlogFormat).matches(format)
+            || backlogLength + length > backlog.length) {
+            if (droppedBytes == 0) {
+                logger.warn("Recording fell behind, dropping blocks");
+            }
+            droppedBytes += length;
+            return;
+        }
+        System.arraycopy(pcm, offset, backlog, backlogLength, length);
+        backlogLength += length;
+        backlogFormat = format;
+    }
+
+    //Switches to the prepared segment, false while it is not ready
+    private boolean rotate(final AudioFormat format) throws IOException {
+        if (nextSegment == null) {
+            prepare(format);
+            return false;
+        }
+        if (!nextSegment.isDone()) {
+            return false;
+        }
+        Segment prepared;
+        try {
+            prepared = nextSegment.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not prepare the next segment", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            nextSegment = null;
+        }
+        if (!prepared.format.matches(format)) {
+            background.execute(() -> discard(prepared));
+            prepare(format);
+            return false;
+        }
+
+        Segment previous = segment;
+        segment = prepared.start();
+        if (previous != null) {
+            background.execute(() -> finish(previous));
+        }
+        prepare(format); //the following one, while this one fills up
+        logger.info("Recording to {}", segment.file);
+        return true;
+    }
+
+    private void prepare(final AudioFormat format) {
+        File file = nextFile();
+        long capacity = segmentCapacity(format);
+        nextSegment = background.submit(() -> new Segment(file, format, capacity));
+    }
+
+    //Moves on to the window mapped ahead and has the one after mapped, false while it is not ready
+    private boolean nextWindow() {
+        Segment current = segment;
+        if (!current.advance()) {
+            return false;
+        }
+        background.execute(() -> {
+            try {
+                current.mapAhead();
+            } catch (IOException e) {
+                logger.error("Could not map the next window of " + current.file, e);
+            }
+        });
+        return true;
+    }
+
+    private long segmentCapacity(final AudioFormat format) {
+        return maxSegmentBytes - maxSegmentBytes % format.getFrameSize();
+    }
+
+    private File nextFile() {
+        return new File(directory, String.format("%s-%s-%04d.wav", prefix, startTimestamp, segmentIndex++));
+    }
+
+    private void flush() {
+        Segment current = segment;
+        if (current != null) {
+            try {
+                current.flush();
+            } catch (IOException e) {
+                logger.warn("Flush of " + current.file + " failed", e);
+            }
+        }
+    }
+
+    private static void finish(final Segment segment) {
+        try {
+            segment.finish();
+        } catch (IOException e) {
+            logger.error("Could not finish " + segment.file, e);
+        }
+    }
+
+    //A prepared segment that never got any audio
+    private static void discard(final Segment segment) {
+        finish(segment);
+        if (!segment.file.delete()) {
+            logger.warn("Could not delete unused segment {}", segment.file);
+        }
+    }
+
+    private void discardWhenReady(final Future<Segment> unused) {
+        background.execute(() -> {
+            try {
+                discard(unused.get());
+            } catch (Exception e) {
+                logger.warn("Could not clean up the prepared segment", e);
+            }
+        });
+    }
+
+    /**
+     * Finishes the current segment and waits for the background work to complete. Call after the source has stopped.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        drainOnClose();
+        if (droppedBytes > 0) {
+            logger.warn("Recording dropped {} bytes while the disk was behind", droppedBytes);
+        }
+        Segment last = segment;
+        segment = null;
+        if (last != null) {
+            background.execute(() -> finish(last));
+        }
+        if (nextSegment != null) {
+            discardWhenReady(nextSegment);
+        }
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //The source has stopped, so what is still in the backlog may wait for the background thread now
+    private void drainOnClose() {
+        try {
+            while (backlogLength > 0) {
+                background.submit(() -> { }).get(); //everything asked for so far is ready
+                if (!drainBacklog()) {
+                    droppedBytes += backlogLength;
+                    backlogLength = 0;
+                }
+            }
+        } catch (IOException | ExecutionException e) {
+            logger.error("Could not record the backlog", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Format of a segment as it is written to disk
+     */
+    private static final class WavFormat {
+        final int sampleRate, channels, bytesPerSample, frameSize;
+        final boolean swapBytes, flipSign;
+
+        WavFormat(final AudioFormat format) {
+            sampleRate = (int) format.getSampleRate();
+            channels = format.getChannels();
+            bytesPerSample = format.getSampleSizeInBits() / 8;
+            frameSize = channels * bytesPerSample;
+            swapBytes = format.isBigEndian() && bytesPerSample > 1;
+            boolean signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+            flipSign = bytesPerSample == 1 ? signed : !signed; //WAV: 8-bit unsigned, everything else signed
+        }
+
+        boolean matches(final AudioFormat format) {
+            WavFormat other = new WavFormat(format);
+            return other.sampleRate == sampleRate && other.channels == channels && other.bytesPerSample == bytesPerSample
+                && other.swapBytes == swapBytes && other.flipSign == flipSign;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        final AudioFormat sourceFormat;
+        final WavFormat format;
+        final long capacity;
+        final int windowSize;
+        final RandomAccessFile randomAccessFile;
+        final FileChannel channel;
+        final MappedByteBuffer header;
+        final ConcurrentLinkedQueue<MappedByteBuffer> retiredWindows = new ConcurrentLinkedQueue<>();
+
+        volatile MappedByteBuffer window;
+        volatile MappedByteBuffer ahead; //mapped by the background thread, taken by the capture thread
+        long mappedEnd; //file position after the last mapped window, background thread
+        volatile long dataBytes = 0;
+        long startTime;
+
+        //Background thread, opening and mapping never happen on the capture thread
+        Segment(final File file, final AudioFormat format, final long capacity) throws IOException {
+            this.file = file;
+            this.sourceFormat = format;
+            this.format = new WavFormat(format);
+            this.capacity = capacity;
+            this.windowSize = WINDOW_SIZE - WINDOW_SIZE % this.format.frameSize; //windows never split a frame
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            writeHeader();
+            window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, Math.min(windowSize, capacity));
+            mappedEnd = HEADER_SIZE + window.capacity();
+            mapAhead();
+        }
+
+        Segment start() {
+            startTime = System.currentTimeMillis();
+            return this;
+        }
+
+        //Background thread
+        void mapAhead() throws IOException {
+            long end = HEADER_SIZE + capacity;
+            if (ahead == null && mappedEnd < end && channel.isOpen()) {
+                MappedByteBuffer next = channel.map(FileChannel.MapMode.READ_WRITE, mappedEnd, Math.min(windowSize, end - mappedEnd));
+                mappedEnd += next.capacity();
+                ahead = next;
+            }
+        }
+
+        /**
+         * Copies up to the end of the current window, returns how much
+         */
+        int append(final byte[] pcm, final int offset, final int length) {
+            int count = Math.min(length, window.remaining());
+            copy(pcm, offset, count);
+            dataBytes += count;
+            return count;
+        }
+
+        boolean advance() {
+            MappedByteBuffer next = ahead;
+            if (next == null) {
+                return false;
+            }
+            retiredWindows.add(window);
+            window = next;
+            ahead = null;
+            return true;
+        }
+
+        private void copy(final byte[] pcm, final int offset, final int length) {
+            MappedByteBuffer target = window;
+            if (!format.swapBytes && !format.flipSign) {
+                target.put(pcm, offset, length);
+                return;
+            }
+            int bytes = format.bytesPerSample;
+            for (int i = offset, end = offset + length; i < end; i += bytes) {
+                for (int b = 0; b < bytes; b++) {
+                    byte value = pcm[format.swapBytes ? i + bytes - 1 - b : i + b];
+                    target.put(b == bytes - 1 && format.flipSign ? (byte) (value ^ 0x80) : value);
+                }
+            }
+        }
+
+        private void writeHeader() {
+            int blockAlign = format.frameSize;
+            header.position(0);
+            header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+            header.putInt(HEADER_SIZE - 8);
+            header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+            header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+            header.putInt(16);
+            header.putShort((short) 1); //PCM
+            header.putShort((short) format.channels);
+            header.putInt(format.sampleRate);
+            header.putInt(format.sampleRate * blockAlign);
+            header.putShort((short) blockAlign);
+            header.putShort((short) (format.bytesPerSample * 8));
+            header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+            header.putInt(0);
+        }
+
+        //Background thread
+        void flush() throws IOException {
+            long size = dataBytes;
+            header.putInt(4, (int) (HEADER_SIZE - 8 + size));
+            header.putInt(40, (int) size);
+            for (MappedByteBuffer retired = retiredWindows.poll(); retired != null; retired = retiredWindows.poll()) {
+                retired.force();
+            }
+            window.force();
+            header.force();
+        }
+
+        //Background thread, after the capture thread moved on to another segment
+        void finish() throws IOException {
+            flush();
+            channel.truncate(HEADER_SIZE + dataBytes);
+            channel.close();
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.didi.splviewer;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Off-screen waveform renderer.
+ * <p>
+ * Every pixel column stands for a fixed number of samples, which are reduced to min/max/RMS as they come in. Only a
+ * completed column touches the back-buffer (direct writes into its int raster), and the screen is updated with a
+ * single drawImage in {@link #blit(Graphics)}. Drawing cost therefore depends on the number of columns and not on the
+ * sample rate.
+ * <p>
+ * Not thread-safe, callers synchronize on the renderer.
+ */
+final class WaveformRenderer {
+
+    static final Color BACKGROUND = new Color(29, 76, 122);
+    private static final int BACKGROUND_RGB = BACKGROUND.getRGB();
+    private static final int PEAK_RGB = Color.LIGHT_GRAY.getRGB();
+    private static final int RMS_RGB = Color.WHITE.getRGB();
+    private static final int SILENCE_RGB = Color.YELLOW.getRGB();
+
+    private BufferedImage image;
+    private int[] pixels;
+    private int width, height;
+    private int column = 0;
+
+    private int samplesPerColumn = 1;
+    private double fullScale = 1 << 15;
+    private SPLViewer.DisplayType displayType = SPLViewer.DisplayType.Log;
+    private double yZoom = 1.0;
+
+    //Reduction of the column in progress
+    private int columnSamples = 0;
+    private final SampleKernels.Summary columnSummary = new SampleKernels.Summary();
+    private final SampleKernels kernels = SampleKernels.get();
+
+    WaveformRenderer(final int width, final int height) {
+        resize(width, height);
+    }
+
+    void resize(final int width, final int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        clear();
+    }
+
+    /**
+     * @param sampleRate       samples per second of the incoming stream
+     * @param columnsPerSecond horizontal zoom, in pixels per second
+     * @param sampleSizeInBits used to map samples to [-1, 1)
+     */
+    void setTimeBase(final int sampleRate, final int columnsPerSecond, final int sampleSizeInBits) {
+        samplesPerColumn = Math.max(1, Math.round((float) sampleRate / columnsPerSecond));
+        fullScale = 1L << (sampleSizeInBits - 1);
+    }
+
+    void setDisplay(final SPLViewer.DisplayType displayType, final double yZoom) {
+        this.displayType = displayType;
+        this.yZoom = yZoom;
+    }
+
+    void add(final int[] samples, final int offset, final int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int count = Math.min(end - i, samplesPerColumn - columnSamples);
+            kernels.summarize(samples, i, count, columnSummary);
+            i += count;
+            columnSamples += count;
+
+            if (columnSamples == samplesPerColumn) {
+                drawColumn();
+            }
+        }
+    }
+
+    /**
+     * Writes a label into the back-buffer at the current column, e.g. the timeline.
+     */
+    void drawLabel(final String label, final int y) {
+        drawLabel(label, column, y);
+    }
+
+    /**
+     * Writes a label into the back-buffer at {@code x}, e.g. over columns from {@link #drawColumns}.
+     */
+    void drawLabel(final String label, final int x, final int y) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawString(label, x, y);
+        g.dispose();
+    }
+
+    int getSamplesPerColumn() {
+        return samplesPerColumn;
+    }
+
+    void blit(final Graphics g) {
+        g.drawImage(image, 0, 0, null);
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Replaces the whole back-buffer with pre-reduced columns, e.g. from a {@link HistoryPyramid}. Columns with
+     * {@code min > max} have no data and stay empty.
+     */
+    void drawColumns(final int[] min, final int[] max, final float[] meanSquare, final int count) {
+        clear();
+        for (int x = 0, end = Math.min(count, width); x < end; x++) {
+            if (min[x] <= max[x]) {
+                plotColumn(x, min[x], max[x], Math.sqrt(meanSquare[x]));
+            }
+        }
+        column = 0;
+    }
+
+    private void drawColumn() {
+        if (column >= width) {
+            column = 0;
+            clear();
+        }
+
+        plotColumn(column, columnSummary.getMin(), columnSummary.getMax(), Math.sqrt(columnSummary.getSumOfSquares() / columnSamples));
+
+        column++;
+        columnSamples = 0;
+        columnSummary.reset();
+    }
+
+    private void plotColumn(final int x, final int min, final int max, final double rms) {
+        int center = height / 2;
+        int yMin = toY(min);
+        int yMax = toY(max);
+        int top = Math.min(yMin, yMax), bottom = Math.max(yMin, yMax);
+        int rmsOffset = Math.abs(toY(rms) - center);
+
+        for (int y = top; y <= bottom; y++) {
+            pixels[y * width + x] = PEAK_RGB;
+        }
+        int rmsTop = Math.max(top, center - rmsOffset), rmsBottom = Math.min(bottom, center + rmsOffset);
+        for (int y = rmsTop; y <= rmsBottom; y++) {
+            pixels[y * width + x] = RMS_RGB;
+        }
+        if (top == bottom && top == center) {
+            pixels[center * width + x] = SILENCE_RGB;
+        }
+    }
+
+    private int toY(final double value) {
+        double ratio = value / fullScale;
+        double maxAmplitude = height / 2;
+        double y = maxAmplitude;
+
+        if (displayType == SPLViewer.DisplayType.Log) {
+            int sign = ratio > 0 ? 1 : -1;
+            double decibelValue9 = Math.pow(10, Math.abs(ratio)) - 1;  //since abs(ratio) is between 0 and 1, we know this power is in [1..10]
+            double decibelValue = 10 * (decibelValue9 / 9); //So this moves in [0..10]
+            y = maxAmplitude + sign * (decibelValue * (maxAmplitude / 10)) * yZoom;
+
+        } else if (displayType == SPLViewer.DisplayType.Linear) {
+            double absoluteAmplitude = ratio * maxAmplitude;
+            y = maxAmplitude + (Math.abs(absoluteAmplitude) >= 1 ? absoluteAmplitude : 0);
+        }
+        return Math.max(0, Math.min(height - 1, (int) y));
+    }
+
+    private void clear() {
+        Arrays.fill(pixels, BACKGROUND_RGB);
+    }
+}
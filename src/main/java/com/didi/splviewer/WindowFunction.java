@@ -0,0 +1,33 @@
+package com.didi.splviewer;
+
+/**
+ * Analysis windows for the spectrum, tabulated once per FFT size.
+ */
+public enum WindowFunction {
+
+    HANN {
+        @Override
+        double value(final int n, final int size) {
+            return 0.5 - 0.5 * Math.cos(2 * Math.PI * n / size);
+        }
+    },
+    BLACKMAN {
+        @Override
+        double value(final int n, final int size) {
+            return 0.42 - 0.5 * Math.cos(2 * Math.PI * n / size) + 0.08 * Math.cos(4 * Math.PI * n / size);
+        }
+    };
+
+    abstract double value(int n, int size);
+
+    /**
+     * Periodic window of the given size
+     */
+    double[] table(final int size) {
+        double[] table = new double[size];
+        for (int n = 0; n < size; n++) {
+            table[n] = value(n, size);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,106 @@
+package com.didi.splviewer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SampleKernels} on the widest vectors the CPU has, loaded by reflection (see {@link SampleKernels#get()}).
+ * Each loop does whole vectors and leaves the tail to the scalar loop.
+ */
+public final class VectorSampleKernels extends SampleKernels {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    //Half as many lanes as INTS, the halves of an int vector widen into these
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    //Lanes are reinterpreted in little-endian order, big-endian samples have their two bytes swapped first
+    private static final VectorShuffle<Byte> SWAP_BYTES = VectorShuffle.fromOp(BYTES, i -> i ^ 1);
+
+    private static final float SCALE_16 = 1f / (1 << 15);
+
+    public VectorSampleKernels() {
+        if (INTS.length() < 4) {
+            throw new UnsupportedOperationException("No vector registers, " + INTS);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + INTS.vectorBitSize() + " bit)";
+    }
+
+    @Override
+    public void decode16(final byte[] src, final int srcOffset, final boolean bigEndian, final int[] dst, final int dstOffset, final int samples) {
+        int samplesPerVector = BYTES.length() / 2;
+        int s = 0;
+        for (int bound = samples - samplesPerVector; s <= bound; s += samplesPerVector) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, src, srcOffset + 2 * s);
+            if (bigEndian) {
+                bytes = bytes.rearrange(SWAP_BYTES);
+            }
+            //Sign-extending widening, the lower half of the shorts and then the upper half
+            bytes.reinterpretAsShorts().convertShape(VectorOperators.S2I, INTS, 0).reinterpretAsInts()
+                .intoArray(dst, dstOffset + s);
+            bytes.reinterpretAsShorts().convertShape(VectorOperators.S2I, INTS, 1).reinterpretAsInts()
+                .intoArray(dst, dstOffset + s + INTS.length());
+        }
+        super.decode16(src, srcOffset + 2 * s, bigEndian, dst, dstOffset + s, samples - s);
+    }
+
+    @Override
+    public void decode16(final byte[] src, final int srcOffset, final boolean bigEndian, final float[] dst, final int dstOffset,
+                         final int samples) {
+        int samplesPerVector = BYTES.length() / 2;
+        int s = 0;
+        for (int bound = samples - samplesPerVector; s <= bound; s += samplesPerVector) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, src, srcOffset + 2 * s);
+            if (bigEndian) {
+                bytes = bytes.rearrange(SWAP_BYTES);
+            }
+            ((FloatVector) bytes.reinterpretAsShorts().convertShape(VectorOperators.S2F, FLOATS, 0)).mul(SCALE_16)
+                .intoArray(dst, dstOffset + s);
+            ((FloatVector) bytes.reinterpretAsShorts().convertShape(VectorOperators.S2F, FLOATS, 1)).mul(SCALE_16)
+                .intoArray(dst, dstOffset + s + FLOATS.length());
+        }
+        super.decode16(src, srcOffset + 2 * s, bigEndian, dst, dstOffset + s, samples - s);
+    }
+
+    @Override
+    public void summarize(final int[] samples, final int offset, final int length, final Summary summary) {
+        int lanes = INTS.length();
+        if (length < lanes) {
+            super.summarize(samples, offset, length, summary);
+            return;
+        }
+        IntVector min = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        IntVector max = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+        LongVector sum = LongVector.zero(LONGS);
+        DoubleVector sumOfSquares = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = length - lanes; i <= bound; i += lanes) {
+            IntVector v = IntVector.fromArray(INTS, samples, offset + i);
+            min = min.min(v);
+            max = max.max(v);
+            LongVector low = (LongVector) v.convertShape(VectorOperators.I2L, LONGS, 0);
+            LongVector high = (LongVector) v.convertShape(VectorOperators.I2L, LONGS, 1);
+            sum = sum.add(low).add(high);
+            DoubleVector lowDouble = (DoubleVector) v.convertShape(VectorOperators.I2D, DOUBLES, 0);
+            DoubleVector highDouble = (DoubleVector) v.convertShape(VectorOperators.I2D, DOUBLES, 1);
+            sumOfSquares = sumOfSquares.add(lowDouble.mul(lowDouble)).add(highDouble.mul(highDouble)); //no fma, rounds like the scalar loop
+        }
+        summary.min = Math.min(summary.min, min.reduceLanes(VectorOperators.MIN));
+        summary.max = Math.max(summary.max, max.reduceLanes(VectorOperators.MAX));
+        summary.sum += sum.reduceLanes(VectorOperators.ADD);
+        summary.sumOfSquares += sumOfSquares.reduceLanes(VectorOperators.ADD);
+        super.summarize(samples, offset + i, length - i, summary);
+    }
+}
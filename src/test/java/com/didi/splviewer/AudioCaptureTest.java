@@ -0,0 +1,180 @@
+package com.didi.splviewer;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.TargetDataLine;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AudioCaptureTest {
+
+    private final AtomicInteger openLines = new AtomicInteger();
+    private final AtomicInteger mostOpenLines = new AtomicInteger();
+    private final AtomicInteger writing = new AtomicInteger();
+    private final AtomicInteger overlaps = new AtomicInteger();
+    private final AtomicLong written = new AtomicLong();
+    private final Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+
+    private final SampleSink sink = (samples, offset, length) -> {
+        if (writing.incrementAndGet() > 1) {
+            overlaps.incrementAndGet();
+        }
+        threads.add(Thread.currentThread());
+        written.addAndGet(length);
+        writing.decrementAndGet();
+    };
+
+    //A line that delivers a silent block every millisecond and has nothing left to drain when stopped
+    private TargetDataLine newLine() {
+        long[] bytesRead = new long[1];
+        return (TargetDataLine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{TargetDataLine.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "open":
+                    mostOpenLines.accumulateAndGet(openLines.incrementAndGet(), Math::max);
+                    return null;
+                case "close":
+                    openLines.decrementAndGet();
+                    return null;
+                case "read":
+                    Thread.sleep(1);
+                    bytesRead[0] += (int) args[2];
+                    return args[2];
+                case "available":
+                    return 0;
+                case "getBufferSize":
+                    return 4096;
+                case "getLongFramePosition":
+                    return bytesRead[0] / 2;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private void awaitWritten() throws InterruptedException {
+        for (long deadline = System.currentTimeMillis() + 5000; written.get() == 0 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(1);
+        }
+    }
+
+    private AudioCapture newCapture() {
+        return new AudioCapture(sink, "test", new AudioFormat(48000, 16, 1, true, true), info -> newLine());
+    }
+
+    @Test
+    public void startAndStopRunOneSessionAtATime() throws Exception {
+        AudioCapture capture = newCapture();
+        for (int i = 0; i < 20; i++) { //every start replaces the one before
+            capture.begin();
+            if (i % 3 == 0) {
+                capture.stop();
+            }
+        }
+        awaitWritten();
+        Assert.assertNotNull(capture.getSession());
+        capture.shutdown();
+        Assert.assertNull(capture.getSession());
+
+        long stopped = written.get();
+        Assert.assertTrue(stopped > 0);
+        Thread.sleep(50);
+        Assert.assertEquals(stopped, written.get());
+        Assert.assertEquals(0, openLines.get());
+        Assert.assertEquals(1, mostOpenLines.get());
+        Assert.assertEquals(0, overlaps.get());
+        Assert.assertEquals(1, threads.size());
+    }
+
+    @Test
+    public void runCapturesOnTheCallingThreadOnly() throws Exception {
+        AudioCapture capture = newCapture();
+        Thread caller = new Thread(capture, "caller");
+        caller.start();
+        awaitWritten();
+        capture.shutdown();
+        caller.join(1000);
+
+        Assert.assertFalse(caller.isAlive());
+        Assert.assertTrue(written.get() > 0);
+        Assert.assertEquals(Collections.singleton(caller), threads);
+        Assert.assertEquals(1, mostOpenLines.get());
+        Assert.assertEquals(0, openLines.get());
+        Assert.assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void drainedBlocksKeepTheFormatTheyWereCapturedIn() throws Exception {
+        AudioCapture[] capture = new AudioCapture[1];
+        AtomicInteger misscaled = new AtomicInteger();
+        AtomicInteger[] blocksByBits = {new AtomicInteger(), new AtomicInteger()};
+        AtomicInteger drainReads = new AtomicInteger();
+
+        //Every sample is at half scale of the format the line was opened with
+        SampleSink scaleChecker = (samples, offset, length) -> {
+            int bits = capture[0].getFormat().getSampleSizeInBits();
+            for (int i = offset; i < offset + length; i++) {
+                if (samples[i] != 1 << (bits - 2)) {
+                    misscaled.incrementAndGet();
+                }
+            }
+            blocksByBits[bits == 16 ? 0 : 1].incrementAndGet();
+        };
+        AudioCapture.LineSource lines = info -> {
+            AudioFormat[] opened = new AudioFormat[1];
+            int[] left = new int[1]; //bytes to drain once stopped
+            return (TargetDataLine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{TargetDataLine.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "open":
+                        opened[0] = (AudioFormat) args[0];
+                        return null;
+                    case "stop":
+                        left[0] = 3 * opened[0].getFrameSize();
+                        return null;
+                    case "read":
+                        byte[] bytes = (byte[]) args[0];
+                        int off = (int) args[1], len = (int) args[2], frameSize = opened[0].getFrameSize();
+                        for (int i = off; i + frameSize <= off + len; i += frameSize) {
+                            bytes[i] = 0x40; //big-endian, the rest stays 0
+                        }
+                        if (left[0] > 0) {
+                            left[0] -= len;
+                            drainReads.incrementAndGet();
+                        } else {
+                            Thread.sleep(1);
+                        }
+                        return len;
+                    case "available":
+                        return left[0];
+                    case "getBufferSize":
+                        return 4096;
+                    default:
+                        return null;
+                }
+            });
+        };
+        capture[0] = new AudioCapture(scaleChecker, "test", new AudioFormat(48000, 16, 1, true, true), lines);
+
+        capture[0].begin();
+        for (long deadline = System.currentTimeMillis() + 5000; blocksByBits[0].get() == 0 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(1);
+        }
+        capture[0].start(new AudioFormat(48000, 24, 1, true, true));
+        for (long deadline = System.currentTimeMillis() + 5000; blocksByBits[1].get() == 0 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(1);
+        }
+        capture[0].shutdown();
+
+        Assert.assertEquals(0, misscaled.get());
+        Assert.assertTrue(blocksByBits[0].get() > 0);
+        Assert.assertTrue(blocksByBits[1].get() > 0);
+        Assert.assertEquals(2, drainReads.get()); //one at the reformat, one at shutdown
+        Assert.assertEquals(24, capture[0].getFormat().getSampleSizeInBits());
+    }
+}
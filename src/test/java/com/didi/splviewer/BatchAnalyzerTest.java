@@ -0,0 +1,113 @@
+package com.didi.splviewer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchAnalyzerTest {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void segmentsAddUpToTheWholeFile() throws Exception {
+        File directory = folder.newFolder("recordings");
+        writeWav(new File(directory, "sine.wav"), 5.5);
+        Files.write(new File(directory, "broken.wav").toPath(), "not audio".getBytes());
+        Files.write(new File(directory, "notes.txt").toPath(), "ignored".getBytes());
+
+        List<Path> files = BatchAnalyzer.findWavFiles(Collections.singletonList(directory.toPath()));
+        Assert.assertEquals(2, files.size());
+
+        List<BatchAnalyzer.FileSummary> whole = new BatchAnalyzer(1, 100, FrequencyWeighting.A, TimeWeighting.FAST, 0).analyze(files);
+        List<BatchAnalyzer.FileSummary> segmented = new BatchAnalyzer(4, 2, FrequencyWeighting.A, TimeWeighting.FAST, 0).analyze(files);
+
+        Assert.assertNotNull(whole.get(0).getError());
+        BatchAnalyzer.FileSummary sine = whole.get(1);
+        Assert.assertNull(sine.getError());
+        Assert.assertEquals(5.5, sine.getDurationSeconds(), 1e-9);
+        Assert.assertEquals(2, sine.getChannels());
+        BatchAnalyzer.ChannelSummary left = sine.getChannel(0);
+        Assert.assertEquals(5, left.getIntervals());
+        Assert.assertEquals(-9.03, left.getLeq(), 0.05);
+        Assert.assertEquals(-9.03, left.getPercentile(90), 0.05);
+        Assert.assertEquals(-6.02, left.getSamplePeak(), 0.01);
+        Assert.assertEquals(0, left.getClipped());
+        Assert.assertEquals(1, sine.getChannel(1).getClipped());
+
+        for (int c = 0; c < 2; c++) {
+            BatchAnalyzer.ChannelSummary expected = sine.getChannel(c);
+            BatchAnalyzer.ChannelSummary actual = segmented.get(1).getChannel(c);
+            Assert.assertEquals(expected.getIntervals(), actual.getIntervals());
+            Assert.assertEquals(expected.getLeq(), actual.getLeq(), 0.01);
+            Assert.assertEquals(expected.getLmax(), actual.getLmax(), 0.01);
+            Assert.assertEquals(expected.getPeak(), actual.getPeak(), 0.01);
+            Assert.assertEquals(expected.getSamplePeak(), actual.getSamplePeak(), 0);
+            Assert.assertEquals(expected.getClipped(), actual.getClipped());
+            Assert.assertEquals(expected.getDcOffset(), actual.getDcOffset(), 1e-12);
+        }
+
+        Path csv = folder.getRoot().toPath().resolve("summary.csv");
+        BatchAnalyzer.writeCsv(segmented, csv);
+        List<String> lines = Files.readAllLines(csv);
+        Assert.assertEquals(BatchAnalyzer.CSV_HEADER, lines.get(0));
+        Assert.assertEquals(4, lines.size());
+        Assert.assertEquals(16, lines.get(3).split(",", -1).length);
+    }
+
+    @Test
+    public void fullScaleOf32BitFiles() throws Exception {
+        //A 1kHz sine at half scale on a DC offset of 1/32, and one sample at the negative full scale
+        int frames = 2 * SAMPLE_RATE;
+        byte[] data = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            int sample = i == frames / 2 ? Integer.MIN_VALUE : (1 << 26) + (int) Math.round((1 << 30) * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+            for (int b = 0; b < 4; b++) {
+                data[4 * i + b] = (byte) (sample >> 8 * b);
+            }
+        }
+        File file = folder.newFile("32bit.wav");
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 32, 1, true, false);
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, frames), AudioFileFormat.Type.WAVE, file);
+
+        BatchAnalyzer.FileSummary summary = new BatchAnalyzer(1, 100, FrequencyWeighting.A, TimeWeighting.FAST, 0)
+            .analyze(Collections.singletonList(file.toPath())).get(0);
+        Assert.assertNull(summary.getError());
+        BatchAnalyzer.ChannelSummary channel = summary.getChannel(0);
+        Assert.assertEquals(-9.03, channel.getLeq(), 0.05);
+        Assert.assertEquals(0, channel.getSamplePeak(), 1e-9);
+        Assert.assertEquals(1, channel.getClipped());
+        Assert.assertEquals(1.0 / 32, channel.getDcOffset(), 1e-4);
+    }
+
+    //16 bit little-endian stereo: a 1kHz sine at half scale left, silence with one clipped sample right
+    private static void writeWav(final File file, final double seconds) throws Exception {
+        int frames = (int) (seconds * SAMPLE_RATE);
+        byte[] data = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            int left = (int) Math.round(16384 * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+            int right = i == frames / 2 ? Short.MAX_VALUE : 0;
+            data[4 * i] = (byte) left;
+            data[4 * i + 1] = (byte) (left >> 8);
+            data[4 * i + 2] = (byte) right;
+            data[4 * i + 3] = (byte) (right >> 8);
+        }
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, frames), AudioFileFormat.Type.WAVE, file);
+    }
+}
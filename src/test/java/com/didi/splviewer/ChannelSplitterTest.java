@@ -0,0 +1,67 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChannelSplitterTest {
+
+    @Test
+    public void deinterleavesIntoOneSinkPerChannel() throws InterruptedException {
+        SampleRingBuffer left = new SampleRingBuffer(16);
+        SampleRingBuffer right = new SampleRingBuffer(16);
+        ChannelSplitter splitter = new ChannelSplitter(left, right);
+
+        splitter.write(new int[]{-1, 1, 2, -2, 3, -3, 99}, 0, 6);
+        splitter.write(new int[]{99, 4, -4}, 1, 2);
+
+        int[] samples = new int[4];
+        left.readFully(samples, 0, 4);
+        Assert.assertArrayEquals(new int[]{-1, 2, 3, 4}, samples);
+        right.readFully(samples, 0, 4);
+        Assert.assertArrayEquals(new int[]{1, -2, -3, -4}, samples);
+    }
+
+    @Test
+    public void oneChannelGoesStraightThrough() throws InterruptedException {
+        SampleRingBuffer mono = new SampleRingBuffer(16);
+        ChannelSplitter splitter = new ChannelSplitter(mono);
+
+        splitter.write(new int[]{99, 1, 2, 3, 99}, 1, 3);
+        splitter.write(new int[]{4}, 0, 1);
+
+        int[] samples = new int[4];
+        mono.readFully(samples, 0, 4);
+        Assert.assertArrayEquals(new int[]{1, 2, 3, 4}, samples);
+        Assert.assertEquals(0, mono.size());
+    }
+
+    @Test
+    public void eightChannelsInBlocksOfOddFrameCounts() throws InterruptedException {
+        SampleRingBuffer[] sinks = new SampleRingBuffer[8];
+        for (int c = 0; c < sinks.length; c++) {
+            sinks[c] = new SampleRingBuffer(64);
+        }
+        ChannelSplitter splitter = new ChannelSplitter(sinks);
+
+        //Frame f of channel c is 100 * c + f, the blocks grow and shrink so the planar buffers are reused and regrown
+        int frame = 0;
+        for (int frames : new int[]{1, 7, 3, 9, 5}) {
+            int[] block = new int[2 + 8 * frames];
+            for (int f = 0; f < frames; f++, frame++) {
+                for (int c = 0; c < 8; c++) {
+                    block[2 + 8 * f + c] = 100 * c + frame;
+                }
+            }
+            splitter.write(block, 2, 8 * frames);
+        }
+
+        int[] samples = new int[frame];
+        for (int c = 0; c < 8; c++) {
+            Assert.assertEquals(frame, sinks[c].size());
+            sinks[c].readFully(samples, 0, frame);
+            for (int f = 0; f < frame; f++) {
+                Assert.assertEquals(100 * c + f, samples[f]);
+            }
+        }
+    }
+}
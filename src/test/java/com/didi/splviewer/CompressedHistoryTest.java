@@ -0,0 +1,108 @@
+package com.didi.splviewer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedHistoryTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void blocksDecodeToExactlyWhatWasEncoded() {
+        LosslessBlockCodec codec = new LosslessBlockCodec();
+        int[][] blocks = {
+            signal(4096, 16), signal(4096, 24), signal(1000, 16), new int[4096], new int[]{7}, new int[0], extremes(4096), noise(4096, 32)
+        };
+        for (int[] block : blocks) {
+            byte[] encoded = codec.encode(block, 0, block.length);
+            int[] decoded = new int[block.length];
+            Assert.assertEquals(block.length, LosslessBlockCodec.decode(encoded, decoded, 0));
+            Assert.assertArrayEquals(block, decoded);
+        }
+        //Noise at -60dB leaves about 7 bits of residual: a third of the int the viewer would keep, well under packed 16 bit
+        int[] block = signal(4096, 16);
+        Assert.assertTrue(codec.encode(block, 0, block.length).length * 8 < 4096 * 32 / 3);
+        Assert.assertTrue(codec.encode(block, 0, block.length).length * 8 < 4096 * 12);
+    }
+
+    @Test
+    public void anyRangeReadsBackWhileTheOldestAreDropped() throws Exception {
+        int[] samples = signal(100_000, 24);
+        CompressedHistory history = new CompressedHistory(60_000);
+        for (int i = 0; i < samples.length; ) {
+            int length = Math.min(samples.length - i, 1 + random.nextInt(3000));
+            history.add(samples, i, length);
+            i += length;
+        }
+        Assert.assertEquals(samples.length, history.getSampleCount());
+        long oldest = history.getOldestSample();
+        Assert.assertTrue(oldest > 0 && samples.length - oldest >= 60_000);
+
+        for (int attempt = 0; attempt < 2; attempt++) { //some blocks may still be raw the first time
+            for (int r = 0; r < 200; r++) {
+                long from = oldest + random.nextInt((int) (samples.length - oldest));
+                int[] dst = new int[random.nextInt(10_000)];
+                int read = history.read(from, dst, 0, dst.length);
+                Assert.assertEquals(Math.min(dst.length, samples.length - from), read);
+                Assert.assertArrayEquals(Arrays.copyOfRange(samples, (int) from, (int) from + read), Arrays.copyOf(dst, read));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (history.getPendingBlocks() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+        Assert.assertEquals(0, history.getPendingBlocks());
+        Assert.assertTrue(history.getBitsPerSample() > 0 && history.getBitsPerSample() < 20);
+
+        //Before the oldest: only what is kept
+        int[] dst = new int[100];
+        Assert.assertEquals(50, history.read(oldest - 50, dst, 0, 100));
+        Assert.assertEquals(samples[(int) oldest], dst[0]);
+    }
+
+    @Test
+    public void keepsBlocksUncompressedWhenTheCompressorIsBehind() {
+        int[] samples = signal(50_000, 16);
+        CompressedHistory history = new CompressedHistory(30_000, 0); //as if the compressor never caught up
+        history.add(samples, 0, samples.length);
+
+        long kept = history.getSampleCount() / CompressedHistory.BLOCK_SAMPLES - history.getOldestSample() / CompressedHistory.BLOCK_SAMPLES;
+        Assert.assertEquals(0, history.getPendingBlocks());
+        Assert.assertEquals(kept, history.getUncompressedBlocks());
+        Assert.assertEquals(0, history.getCompressedBytes());
+        int[] dst = new int[20_000];
+        Assert.assertEquals(dst.length, history.read(samples.length - dst.length, dst, 0, dst.length));
+        Assert.assertArrayEquals(Arrays.copyOfRange(samples, samples.length - dst.length, samples.length), dst);
+    }
+
+    //A few tones and a little noise, at -20dB of full scale
+    private int[] signal(final int length, final int bits) {
+        double fullScale = 1L << (bits - 1);
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            double x = 0.05 * Math.sin(2 * Math.PI * 440 * i / 48000) + 0.03 * Math.sin(2 * Math.PI * 3100 * i / 48000)
+                + 0.001 * random.nextGaussian();
+            samples[i] = (int) Math.round(x * fullScale);
+        }
+        return samples;
+    }
+
+    private int[] noise(final int length, final int bits) {
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = bits == 32 ? random.nextInt() : random.nextInt(1 << bits) - (1 << (bits - 1));
+        }
+        return samples;
+    }
+
+    private static int[] extremes(final int length) {
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = i % 3 == 0 ? Integer.MIN_VALUE : i % 3 == 1 ? Integer.MAX_VALUE : 0;
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,66 @@
+package com.didi.splviewer;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistoryPyramidTest {
+
+    @Test
+    public void everyLevelMatchesBruteForce() {
+        Random random = new Random(7);
+        int[] samples = new int[1 << 16];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(65536) - 32768;
+        }
+        HistoryPyramid history = new HistoryPyramid(4, samples.length);
+        for (int i = 0; i < samples.length; i += 1000) {
+            history.add(samples, i, Math.min(1000, samples.length - i)); //blocks don't line up with entries
+        }
+        Assert.assertEquals(samples.length, history.getSampleCount());
+        Assert.assertEquals(0, history.getOldestSample());
+
+        int columns = 32;
+        int[] min = new int[columns], max = new int[columns];
+        float[] meanSquare = new float[columns];
+        for (int samplesPerColumn = 16; samplesPerColumn * columns <= samples.length; samplesPerColumn <<= 1) {
+            int start = samples.length - samplesPerColumn * columns;
+            history.query(start, samplesPerColumn, columns, min, max, meanSquare);
+            for (int c = 0; c < columns; c++) {
+                int expectedMin = Integer.MAX_VALUE, expectedMax = Integer.MIN_VALUE;
+                double sumOfSquares = 0;
+                for (int i = start + c * samplesPerColumn, end = i + samplesPerColumn; i < end; i++) {
+                    expectedMin = Math.min(expectedMin, samples[i]);
+                    expectedMax = Math.max(expectedMax, samples[i]);
+                    sumOfSquares += (double) samples[i] * samples[i];
+                }
+                Assert.assertEquals(expectedMin, min[c]);
+                Assert.assertEquals(expectedMax, max[c]);
+                Assert.assertEquals(sumOfSquares / samplesPerColumn, meanSquare[c], 1e-4 * sumOfSquares / samplesPerColumn);
+            }
+        }
+    }
+
+    @Test
+    public void forgetsTheOldestChunksOnly() {
+        HistoryPyramid history = new HistoryPyramid(2, 1 << 10);
+        int[] block = new int[100];
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < block.length; j++) {
+                block[j] = i;
+            }
+            history.add(block, 0, block.length);
+        }
+        long count = history.getSampleCount();
+        Assert.assertTrue(count - history.getOldestSample() >= 1 << 10);
+
+        int[] min = new int[2], max = new int[2];
+        float[] meanSquare = new float[2];
+        history.query(history.getOldestSample() - 100, 100, 2, min, max, meanSquare);
+        Assert.assertTrue("before the history", min[0] > max[0]);
+        history.query(count - 100, 100, 1, min, max, meanSquare);
+        Assert.assertEquals(999, min[0]);
+        Assert.assertEquals(999, max[0]);
+    }
+}
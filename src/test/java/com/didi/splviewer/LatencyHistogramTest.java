@@ -0,0 +1,37 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndBounded() {
+        int previous = 0;
+        for (long value = 0; value < 1 << 20; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            Assert.assertTrue(bucket == previous || bucket == previous + 1);
+            Assert.assertTrue(value < LatencyHistogram.bucketUpperBound(bucket));
+            Assert.assertTrue(LatencyHistogram.bucketUpperBound(bucket) <= Math.max(value + 1, value * 1.25 + 1));
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(500.5, histogram.getMeanMicros(), 1e-9);
+        Assert.assertEquals(500, histogram.getP50Micros(), 500 * 0.25);
+        Assert.assertEquals(990, histogram.getP99Micros(), 990 * 0.25);
+        Assert.assertEquals(1000, histogram.getMaxMicros(), 0);
+        Assert.assertTrue(histogram.getP99Micros() <= histogram.getMaxMicros());
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getP99Micros(), 0);
+    }
+}
@@ -0,0 +1,151 @@
+package com.didi.splviewer;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LoudnessEventDetectorTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final float SCALE = 1f / (1 << 15);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<LoudnessEventDetector.Event> events = new ArrayList<>();
+    private final List<Long> starts = new ArrayList<>();
+
+    private LoudnessEventDetector detector(final double hysteresis, final double minimumSeconds) {
+        return new LoudnessEventDetector(SAMPLE_RATE, -20, hysteresis, 0.005, 0.05, minimumSeconds, 0, 1000)
+            .setListener(new LoudnessEventDetector.Listener() {
+                @Override
+                public void eventStarted(final long startFrame) {
+                    starts.add(startFrame);
+                }
+
+                @Override
+                public void eventCompleted(final LoudnessEventDetector.Event event) {
+                    events.add(event);
+                }
+            });
+    }
+
+    //Square wave of the given rms, in 480 sample blocks like a 10ms capture
+    private static void feed(final LoudnessEventDetector detector, final double amplitude, final double seconds) {
+        int[] block = new int[480];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (int) Math.round(((i & 1) == 0 ? amplitude : -amplitude) * (1 << 15));
+        }
+        for (int n = 0; n < seconds * SAMPLE_RATE; n += block.length) {
+            detector.process(block, 0, block.length, SCALE);
+        }
+    }
+
+    @Test
+    public void burstIsOneEventOnTheSampleClock() {
+        LoudnessEventDetector detector = detector(3, 0.3);
+        feed(detector, 0.001, 1);
+        feed(detector, 0.5, 0.5);
+        feed(detector, 0.001, 1);
+
+        Assert.assertEquals(1, events.size());
+        LoudnessEventDetector.Event event = events.get(0);
+        long burstStart = 1000 + SAMPLE_RATE;
+        Assert.assertTrue("start " + event.getStartFrame(), event.getStartFrame() >= burstStart && event.getStartFrame() < burstStart + 48);
+        Assert.assertEquals(Long.valueOf(event.getStartFrame()), starts.get(0));
+        //The level takes a few release time constants to fall 23dB
+        Assert.assertEquals(0.5 + 3.9 * 0.05, event.getDurationSeconds(), 0.02);
+        Assert.assertEquals(0.5, event.getPeak(), 0.001);
+        Assert.assertEquals(0.25 * 0.5, event.getEnergy(), 0.005);
+        Assert.assertEquals(-6.02, event.getPeakLevel(), 0.05);
+        Assert.assertFalse(detector.isEventActive());
+    }
+
+    @Test
+    public void shortBurstIsIgnored() {
+        LoudnessEventDetector detector = detector(3, 0.3);
+        feed(detector, 0.5, 0.02);
+        feed(detector, 0, 1);
+
+        Assert.assertTrue(events.isEmpty());
+        Assert.assertTrue(starts.isEmpty());
+    }
+
+    @Test
+    public void hysteresisKeepsALevelAroundTheThresholdInOneEvent() {
+        LoudnessEventDetector withHysteresis = detector(3, 0.01);
+        LoudnessEventDetector without = detector(0, 0.01);
+        for (int i = 0; i < 10; i++) {
+            feed(withHysteresis, 0.112, 0.1); //-19dB
+            feed(withHysteresis, 0.084, 0.1); //-21.5dB
+        }
+        feed(withHysteresis, 0, 1);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(2.0, events.get(0).getDurationSeconds(), 0.2);
+
+        events.clear();
+        for (int i = 0; i < 10; i++) {
+            feed(without, 0.112, 0.1);
+            feed(without, 0.084, 0.1);
+        }
+        feed(without, 0, 1);
+        Assert.assertEquals(10, events.size());
+    }
+
+    @Test
+    public void quietBlocksStillTrackTheLevel() {
+        LoudnessEventDetector detector = detector(3, 0.3);
+        feed(detector, 0.0316, 1); //-30dB, below the trigger level, so block by block
+        Assert.assertEquals(-30, detector.getLevel(), 0.1);
+        Assert.assertEquals(1000 + SAMPLE_RATE, detector.getFrame());
+
+        detector.skip(SAMPLE_RATE);
+        Assert.assertEquals(1000 + 2 * SAMPLE_RATE, detector.getFrame());
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void eventsAreAppendedToTheLog() throws Exception {
+        LoudnessEventDetector.Event event = new LoudnessEventDetector.Event(48000, 72000, 48000, 0.5, 0.125, 94);
+        File csv = new File(folder.getRoot(), "events.csv");
+        File binary = new File(folder.getRoot(), "events.bin");
+        for (int run = 0; run < 2; run++) {
+            try (LoudnessEventLog log = new LoudnessEventLog(csv)) {
+                log.append("mic", 1, event, 1000);
+            }
+            try (LoudnessEventLog log = new LoudnessEventLog(binary)) {
+                log.append("mic", 2, event, 1000);
+            }
+        }
+
+        List<String> lines = Files.readAllLines(csv.toPath());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals(LoudnessEventLog.CSV_HEADER, lines.get(0));
+        Assert.assertTrue(lines.get(2), lines.get(2).startsWith("\"mic\",1,48000,72000,48000,"));
+        Assert.assertTrue(lines.get(2), lines.get(2).contains(",0.5000,87.98,84.97,"));
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(binary.toPath()))) {
+            byte[] magic = new byte[LoudnessEventLog.BINARY_MAGIC.length];
+            in.readFully(magic);
+            Assert.assertArrayEquals(LoudnessEventLog.BINARY_MAGIC, magic);
+            for (int record = 0; record < 2; record++) {
+                Assert.assertEquals("mic", in.readUTF());
+                Assert.assertEquals(2, in.readInt());
+                Assert.assertEquals(48000, in.readLong());
+                Assert.assertEquals(72000, in.readLong());
+                Assert.assertEquals(48000f, in.readFloat(), 0);
+                Assert.assertEquals(1000, in.readLong());
+                Assert.assertEquals(0.5, in.readDouble(), 0);
+                Assert.assertEquals(0.125, in.readDouble(), 0);
+            }
+            Assert.assertEquals(-1, in.read());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.didi.splviewer;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.Port;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.TargetDataLine;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MixerRegistryTest {
+
+    private static final AudioFormat CD = new AudioFormat(44100, 16, 2, true, false);
+    private static final AudioFormat ANY_RATE = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, -1, 24, 1, 3, -1, true);
+
+    private final Map<Mixer.Info, Line.Info[]> plugged = new LinkedHashMap<>();
+    private int enumerations = 0;
+
+    private final MixerRegistry registry = new MixerRegistry(new MixerRegistry.MixerSource() {
+        @Override
+        public Mixer.Info[] getMixerInfo() {
+            enumerations++;
+            return plugged.keySet().toArray(new Mixer.Info[0]);
+        }
+
+        @Override
+        public Mixer getMixer(final Mixer.Info info) {
+            Line.Info[] lines = plugged.get(info);
+            return (Mixer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Mixer.class},
+                (proxy, method, args) -> method.getName().equals("getTargetLineInfo") ? lines : null);
+        }
+    });
+
+    private void plug(final String name, final Line.Info... lines) {
+        plugged.put(new Mixer.Info(name, "test", "", "1") {
+        }, lines);
+    }
+
+    @Test
+    public void listsCaptureMixersOnceUntilRefreshed() {
+        plug("Microphone", new DataLine.Info(TargetDataLine.class, new AudioFormat[]{CD, ANY_RATE}, 0, 4096));
+        plug("Speakers", new DataLine.Info(SourceDataLine.class, CD)); //playback only
+        plug("Line in port", Port.Info.LINE_IN); //not a data line
+        plug("Interface", new DataLine.Info(TargetDataLine.class, ANY_RATE), new DataLine.Info(SourceDataLine.class, CD));
+
+        Assert.assertEquals(0, enumerations); //nothing until first asked
+        Assert.assertEquals(Arrays.asList("Microphone", "Interface"), names(registry.getCaptureMixers()));
+        Assert.assertEquals(2, registry.find("Microphone").getFormats().size());
+        Assert.assertEquals(1, registry.find("Interface").getFormats().size());
+        Assert.assertNull(registry.find("Speakers"));
+        Assert.assertTrue(registry.find("Interface").supports(new AudioFormat(96000, 24, 1, true, true)));
+        Assert.assertFalse(registry.find("Interface").supports(CD));
+        Assert.assertNotNull(registry.find("Microphone").getMixer());
+        Assert.assertEquals(1, enumerations);
+
+        plug("USB microphone", new DataLine.Info(TargetDataLine.class, CD));
+        Assert.assertNull(registry.find("USB microphone")); //cached
+        Assert.assertEquals(1, enumerations);
+        registry.refresh();
+        Assert.assertEquals(Arrays.asList("Microphone", "Interface", "USB microphone"), names(registry.getCaptureMixers()));
+        Assert.assertEquals(2, enumerations);
+    }
+
+    private static List<String> names(final List<MixerRegistry.Entry> entries) {
+        List<String> list = new ArrayList<>();
+        for (MixerRegistry.Entry entry : entries) {
+            list.add(entry.getName());
+        }
+        return list;
+    }
+}
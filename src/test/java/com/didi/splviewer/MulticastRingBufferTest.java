@@ -0,0 +1,86 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MulticastRingBufferTest {
+
+    @Test
+    public void everyReaderSeesTheWholeStream() throws InterruptedException {
+        MulticastRingBuffer ring = new MulticastRingBuffer(16);
+        MulticastRingBuffer.Reader first = ring.newReader("first", SampleRingBuffer.OverrunPolicy.DROP_OLDEST);
+        MulticastRingBuffer.Reader second = ring.newReader("second", SampleRingBuffer.OverrunPolicy.BLOCK);
+
+        ring.write(new int[]{1, 2, 3, 4, 5}, 1, 3);
+
+        int[] samples = new int[3];
+        first.readFully(samples, 0, 3);
+        Assert.assertArrayEquals(new int[]{2, 3, 4}, samples);
+        second.readFully(samples, 0, 3);
+        Assert.assertArrayEquals(new int[]{2, 3, 4}, samples);
+        Assert.assertEquals(0, first.size());
+    }
+
+    @Test
+    public void lappedReaderLosesTheOldestSamplesOnly() throws InterruptedException {
+        MulticastRingBuffer ring = new MulticastRingBuffer(8);
+        MulticastRingBuffer.Reader slow = ring.newReader("slow", SampleRingBuffer.OverrunPolicy.DROP_OLDEST);
+        MulticastRingBuffer.Reader fast = ring.newReader("fast", SampleRingBuffer.OverrunPolicy.DROP_OLDEST);
+
+        int[] samples = new int[6];
+        for (int block = 0; block < 2; block++) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = block * samples.length + i;
+            }
+            ring.write(samples, 0, samples.length);
+            Assert.assertEquals(6, fast.poll(new int[6], 0, 6));
+        }
+
+        int[] read = new int[8];
+        Assert.assertEquals(8, slow.poll(read, 0, 8));
+        Assert.assertArrayEquals(new int[]{4, 5, 6, 7, 8, 9, 10, 11}, read);
+        Assert.assertEquals(4, slow.getOverrunStats().getDroppedSamples());
+        Assert.assertEquals(0, fast.getOverrunStats().getDroppedSamples());
+    }
+
+    @Test
+    public void slowReaderDoesNotStallTheOthers() throws Exception {
+        MulticastRingBuffer ring = new MulticastRingBuffer(1 << 10);
+        MulticastRingBuffer.Reader lossless = ring.newReader("lossless", SampleRingBuffer.OverrunPolicy.BLOCK);
+        MulticastRingBuffer.Reader stalled = ring.newReader("stalled", SampleRingBuffer.OverrunPolicy.DROP_OLDEST);
+        int total = 1000000;
+
+        Thread producer = new Thread(() -> {
+            int[] block = new int[100];
+            try {
+                for (int value = 0; value < total; ) {
+                    for (int i = 0; i < block.length; i++) {
+                        block[i] = value++;
+                    }
+                    ring.write(block, 0, block.length);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        //The lossless reader gets every sample in order while the stalled one never reads
+        int[] read = new int[300];
+        int expected = 0;
+        while (expected < total) {
+            int count = lossless.read(read, 0, read.length);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(expected++, read[i]);
+            }
+        }
+        producer.join();
+        Assert.assertEquals(total - ring.capacity(), stalled.getOverrunStats().getDroppedSamples());
+
+        //and what is left for the stalled one is the most recent, contiguous data
+        int[] rest = new int[ring.capacity()];
+        stalled.readFully(rest, 0, rest.length);
+        Assert.assertEquals(total - ring.capacity(), rest[0]);
+        Assert.assertEquals(total - 1, rest[rest.length - 1]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.didi.splviewer;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OctaveBandAnalyzerTest {
+
+    private static final double SAMPLE_RATE = 48000;
+
+    @Test
+    public void aSineShowsUpInItsBandOnly() throws Exception {
+        try (OctaveBandAnalyzer analyzer = new OctaveBandAnalyzer(3, SAMPLE_RATE, 1.0, 0, 2)) {
+            Assert.assertEquals(31, analyzer.getBands());
+            Assert.assertEquals("20", analyzer.getName(0));
+            Assert.assertEquals("1k", analyzer.getName(17));
+            Assert.assertEquals("20k", analyzer.getName(30));
+            for (int band : new int[]{0, 17, 30}) {
+                Assert.assertEquals(1, analyzer.magnitude(band, analyzer.getMidband(band)), 1e-3); //the top band is warped a little near Nyquist
+            }
+
+            //A full scale sine is -3dB, the neighbours of its band are the filter skirts (18dB, then about 50dB below)
+            for (int band : new int[]{4, 17, 27}) { //50Hz at 1/64 of the rate, 1kHz, 10kHz at full rate
+                analyzer.process(sine(analyzer.getMidband(band), 2 * (int) SAMPLE_RATE), 0, 2 * (int) SAMPLE_RATE, 1f / 32768);
+                Assert.assertEquals(-3.01, analyzer.getLeq(band), 0.1);
+                Assert.assertEquals(-3.01, analyzer.getLmax(band), 0.2);
+                Assert.assertTrue(analyzer.getLeq(band - 1) < -18 && analyzer.getLeq(band + 1) < -18);
+                Assert.assertTrue(analyzer.getLeq(band - 3) < -45 && analyzer.getLeq(band + 3) < -25);
+            }
+        }
+        try (OctaveBandAnalyzer octaves = new OctaveBandAnalyzer(1, SAMPLE_RATE, 1.0, 0, 1)) {
+            Assert.assertEquals(10, octaves.getBands());
+            Assert.assertEquals("31.5", octaves.getName(0));
+            Assert.assertEquals("16k", octaves.getName(9));
+        }
+    }
+
+    @Test
+    public void threadsChangeNothingButTheSpeed() throws Exception {
+        int[] noise = new int[10 * (int) SAMPLE_RATE];
+        Random random = new Random(42);
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (int) Math.round(3000 * random.nextGaussian());
+        }
+        double[][] leq = new double[2][];
+        int[] threads = {1, 4};
+        for (int t = 0; t < threads.length; t++) {
+            int[] intervals = new int[1];
+            try (OctaveBandAnalyzer analyzer = new OctaveBandAnalyzer(3, SAMPLE_RATE, 1.0, 94, threads[t])) {
+                analyzer.setListener(a -> intervals[0]++);
+                long begin = System.nanoTime();
+                for (int i = 0; i < noise.length; i += 480) { //10ms blocks like a capture
+                    analyzer.process(noise, i, 480, 1f / 32768);
+                }
+                //10 seconds of all 31 bands, with a lot of room for a slow machine
+                Assert.assertTrue(System.nanoTime() - begin < 5_000_000_000L);
+                Assert.assertEquals(10, intervals[0]);
+                leq[t] = new double[analyzer.getBands()];
+                for (int b = 0; b < leq[t].length; b++) {
+                    leq[t][b] = analyzer.getLeq(b);
+                }
+            }
+        }
+        Assert.assertArrayEquals(leq[0], leq[1], 0);
+        //White noise: 1dB more per third-octave, give or take
+        Assert.assertEquals(10, leq[0][27] - leq[0][17], 1);
+    }
+
+    private static int[] sine(final double frequency, final int length) {
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (int) Math.round(32767 * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,103 @@
+package com.didi.splviewer;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PcmDecoderTest {
+
+    @Test
+    public void decodesKnownSigned16BitVectors() {
+        byte[] bigEndian = {0x7F, (byte) 0xFF, (byte) 0x80, 0x00, (byte) 0xFF, (byte) 0xFF, 0x00, 0x01, 0x00, 0x00};
+        byte[] littleEndian = {(byte) 0xFF, 0x7F, 0x00, (byte) 0x80, (byte) 0xFF, (byte) 0xFF, 0x01, 0x00, 0x00, 0x00};
+        int[] expected = {32767, -32768, -1, 1, 0};
+
+        Assert.assertArrayEquals(expected, decode(PcmDecoder.SIGNED_16_BIG_ENDIAN, bigEndian));
+        Assert.assertArrayEquals(expected, decode(PcmDecoder.SIGNED_16_LITTLE_ENDIAN, littleEndian));
+    }
+
+    @Test
+    public void decodesKnownSigned24BitVectors() {
+        byte[] bigEndian = {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0x80, 0x00, 0x00, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00, 0x00, 0x01};
+        byte[] littleEndian = {(byte) 0xFF, (byte) 0xFF, 0x7F, 0x00, 0x00, (byte) 0x80, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01, 0x00, 0x00};
+        int[] expected = {8388607, -8388608, -1, 1};
+
+        Assert.assertArrayEquals(expected, decode(PcmDecoder.SIGNED_24_BIG_ENDIAN, bigEndian));
+        Assert.assertArrayEquals(expected, decode(PcmDecoder.SIGNED_24_LITTLE_ENDIAN, littleEndian));
+    }
+
+    @Test
+    public void centersUnsignedFormats() {
+        Assert.assertArrayEquals(new int[]{-128, 0, 127}, decode(PcmDecoder.UNSIGNED_8, new byte[]{0x00, (byte) 0x80, (byte) 0xFF}));
+        Assert.assertArrayEquals(new int[]{-32768, 0, 32767},
+            decode(PcmDecoder.UNSIGNED_16_BIG_ENDIAN, new byte[]{0x00, 0x00, (byte) 0x80, 0x00, (byte) 0xFF, (byte) 0xFF}));
+        Assert.assertArrayEquals(new int[]{Integer.MIN_VALUE, 0, Integer.MAX_VALUE},
+            decode(PcmDecoder.UNSIGNED_32_LITTLE_ENDIAN, new byte[]{0, 0, 0, 0, 0, 0, 0, (byte) 0x80, -1, -1, -1, -1}));
+    }
+
+    @Test
+    public void normalizesToUnitRange() {
+        float[] normalized = new float[3];
+        PcmDecoder.SIGNED_16_BIG_ENDIAN.decode(new byte[]{(byte) 0x80, 0x00, 0x40, 0x00, 0x00, 0x00}, 0, normalized, 0, 3);
+        Assert.assertArrayEquals(new float[]{-1f, 0.5f, 0f}, normalized, 0f);
+    }
+
+    @Test
+    public void roundTripsEveryFormat() {
+        Random random = new Random(42);
+        for (PcmDecoder decoder : PcmDecoder.values()) {
+            int bits = decoder.getSampleSizeInBits();
+            int[] expected = new int[1000];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = random.nextInt() >> (32 - bits);
+            }
+            expected[0] = (int) -(1L << (bits - 1));
+            expected[1] = (int) ((1L << (bits - 1)) - 1);
+
+            byte[] encoded = encode(decoder, expected);
+            Assert.assertArrayEquals(decoder.name(), expected, decode(decoder, encoded));
+
+            float[] normalized = new float[expected.length];
+            decoder.decode(encoded, 0, normalized, 0, expected.length);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertEquals(decoder.name(), expected[i] * (double) decoder.getScale(), normalized[i], 1e-6);
+            }
+
+            //Heap and direct buffers go through different paths
+            ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+            direct.put(encoded).flip();
+            int[] fromDirect = new int[expected.length];
+            decoder.decode(direct, fromDirect, 0, expected.length);
+            Assert.assertArrayEquals(decoder.name(), expected, fromDirect);
+            Assert.assertEquals(encoded.length, direct.position());
+        }
+    }
+
+    @Test
+    public void picksDecoderFromFormat() {
+        Assert.assertEquals(PcmDecoder.SIGNED_24_LITTLE_ENDIAN, PcmDecoder.forFormat(24, true, false));
+        Assert.assertEquals(PcmDecoder.SIGNED_8, PcmDecoder.forFormat(8, true, true));
+    }
+
+    private static int[] decode(final PcmDecoder decoder, final byte[] bytes) {
+        int[] samples = new int[bytes.length / decoder.getBytesPerSample()];
+        decoder.decode(bytes, 0, samples, 0, samples.length);
+        return samples;
+    }
+
+    //Reference encoder: plain two's complement, unsigned formats offset by 2^(bits-1)
+    private static byte[] encode(final PcmDecoder decoder, final int[] samples) {
+        int bytes = decoder.getBytesPerSample();
+        byte[] encoded = new byte[samples.length * bytes];
+        for (int s = 0; s < samples.length; s++) {
+            long value = decoder.isSigned() ? samples[s] : samples[s] + (1L << (decoder.getSampleSizeInBits() - 1));
+            for (int b = 0; b < bytes; b++) {
+                int shift = decoder.isBigEndian() ? 8 * (bytes - 1 - b) : 8 * b;
+                encoded[s * bytes + b] = (byte) (value >> shift);
+            }
+        }
+        return encoded;
+    }
+}
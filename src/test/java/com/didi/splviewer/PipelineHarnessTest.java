@@ -0,0 +1,46 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * The capture-to-viewer path. The wall-clock budget of {@link PipelineHarness.Budget#fromProperties()} depends on the
+ * machine, so it is only checked on request, e.g.
+ * {@code mvn test -Dtest=PipelineHarnessTest -Dsplviewer.harness.checkBudget=true -Dsplviewer.harness.endToEndP99Millis=50}
+ */
+public class PipelineHarnessTest {
+
+    private static final boolean CHECK_BUDGET = Boolean.getBoolean("splviewer.harness.checkBudget");
+
+    private final PipelineHarness.Budget budget = PipelineHarness.Budget.fromProperties();
+
+    @Test
+    public void realTimeRunGoesThroughTheCapturePath() throws Exception {
+        PipelineHarness.Report report = new PipelineHarness(48000, 480, true, SampleRingBuffer.OverrunPolicy.BLOCK).run(0.2, 0.5);
+        Assert.assertTrue(report.toString(), report.getStage("captureRead").getCount() > 0);
+        Assert.assertTrue(report.toString(), report.getStage("decode").getCount() > 0);
+        Assert.assertTrue(report.toString(), report.getStage("endToEnd").getCount() > 0);
+        Assert.assertEquals(report.toString(), 0, report.getLostFrames());
+        Assert.assertEquals(report.toString(), 0, report.getMarkerErrors());
+    }
+
+    @Test
+    public void realTimeAtTwiceTheUsualRateIsWithinBudget() throws Exception {
+        Assume.assumeTrue(CHECK_BUDGET);
+        PipelineHarness.Report report = new PipelineHarness(192000, 1920, true, SampleRingBuffer.OverrunPolicy.DROP_OLDEST).run(0.5, 2);
+        Assert.assertTrue(report.toString(), budget.check(report).isEmpty());
+        Assert.assertEquals(report.toString(), 192000 * report.getSeconds(), report.getFramesCaptured(), 0.05 * 192000 * report.getSeconds());
+        Assert.assertTrue(report.toString(), report.getStage("endToEnd").getCount() > 0);
+    }
+
+    @Test
+    public void asFastAsPossibleNothingIsLostOrMixedUp() throws Exception {
+        PipelineHarness.Report report = new PipelineHarness(96000, 960, false, SampleRingBuffer.OverrunPolicy.BLOCK).run(0.5, 1);
+        Assert.assertEquals(report.toString(), 0, report.getLostFrames());
+        Assert.assertEquals(report.toString(), 0, report.getMarkerErrors());
+        if (CHECK_BUDGET) {
+            Assert.assertTrue(report.toString(), budget.check(report).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.didi.splviewer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipelineMetricsTest {
+
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private final AudioCapture lineA = new AudioCapture((samples, offset, length) -> { }, "line a");
+    private final AudioCapture lineB = new AudioCapture((samples, offset, length) -> { }, "line b");
+
+    @After
+    public void forgetLines() {
+        metrics.forget(lineA);
+        metrics.forget(lineB);
+    }
+
+    @Test
+    public void aStallIsOneOverrunHoweverLongItTakesToDrain() {
+        metrics.reset();
+        for (int i = 0; i < 5; i++) { //full for five reads in a row
+            metrics.lineLevel(lineA, 4096, 4096);
+        }
+        metrics.lineLevel(lineA, 1000, 4096);
+        metrics.lineLevel(lineA, 4096, 4096);
+        metrics.lineLevel(lineA, 4096, 4096);
+        Assert.assertEquals(2, metrics.getOverruns());
+        Assert.assertEquals(Integer.valueOf(0), metrics.getMinLineHeadroomBytes().get("line a"));
+    }
+
+    @Test
+    public void everyLineHasItsOwnLevel() {
+        metrics.reset();
+        for (int i = 0; i < 5; i++) { //one line stalls while the other keeps up
+            metrics.lineLevel(lineA, 4096, 4096);
+            metrics.lineLevel(lineB, 1000 + i, 4096);
+        }
+        Assert.assertEquals(1, metrics.getOverruns());
+        Assert.assertEquals(Integer.valueOf(0), metrics.getLineHeadroomBytes().get("line a"));
+        Assert.assertEquals(Integer.valueOf(3092), metrics.getLineHeadroomBytes().get("line b"));
+        Assert.assertEquals(Integer.valueOf(3092), metrics.getMinLineHeadroomBytes().get("line b"));
+
+        metrics.lineLevel(lineB, 4096, 4096);
+        Assert.assertEquals(2, metrics.getOverruns());
+        Assert.assertEquals(Integer.valueOf(0), metrics.getMinLineHeadroomBytes().get("line b"));
+
+        metrics.lineLevel(lineB, 1000, 4096);
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getOverruns());
+        Assert.assertEquals(Integer.valueOf(-1), metrics.getMinLineHeadroomBytes().get("line b"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.didi.splviewer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+
+    private static final int AMPLITUDE = 1 << 20;
+
+    @Test
+    public void decimationKeepsThePassbandAndRejectsWhatWouldAlias() {
+        //48kHz to 12kHz: 1kHz passes, 10kHz would fold to 2kHz
+        Assert.assertEquals(AMPLITUDE, amplitude(resample(1, 4, sine(1000, 48000, 48000))), AMPLITUDE * 0.01);
+        Assert.assertTrue(amplitude(resample(1, 4, sine(10000, 48000, 48000))) < AMPLITUDE * 1e-3); //-60dB
+    }
+
+    @Test
+    public void rationalRatioKeepsTheFrequency() {
+        //44.1kHz to 48kHz
+        int[] output = resample(160, 147, sine(1000, 44100, 44100));
+        Assert.assertEquals(48000, output.length, 1);
+        int crossings = 0;
+        for (int i = output.length / 2; i < output.length; i++) { //the filter rings around 0 before the sine comes through
+            if (output[i - 1] < 0 && output[i] >= 0) {
+                crossings++;
+            }
+        }
+        Assert.assertEquals(500, crossings, 1);
+        Assert.assertEquals(AMPLITUDE, amplitude(output), AMPLITUDE * 0.01);
+    }
+
+    @Test
+    public void outputDoesNotDependOnTheBlocks() {
+        int[] input = sine(3000, 48000, 10000);
+        int[] whole = resample(3, 7, input);
+
+        PolyphaseResampler resampler = new PolyphaseResampler(3, 7);
+        int[] output = new int[whole.length + 10];
+        int produced = 0;
+        Random random = new Random(42);
+        for (int offset = 0; offset < input.length; ) {
+            int length = Math.min(1 + random.nextInt(500), input.length - offset);
+            produced += resampler.process(input, offset, length, output, produced);
+            offset += length;
+        }
+        Assert.assertArrayEquals(whole, Arrays.copyOf(output, produced));
+    }
+
+    private static int[] sine(final double frequency, final int sampleRate, final int length) {
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (int) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    private static int[] resample(final int up, final int down, final int[] input) {
+        PolyphaseResampler resampler = new PolyphaseResampler(up, down);
+        int[] output = new int[resampler.maxOutputLength(input.length)];
+        return Arrays.copyOf(output, resampler.process(input, 0, input.length, output, 0));
+    }
+
+    //Peak of the second half, after the filter has settled
+    private static double amplitude(final int[] samples) {
+        int peak = 0;
+        for (int i = samples.length / 2; i < samples.length; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,45 @@
+package com.didi.splviewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RenderSchedulerTest {
+
+    @Test
+    public void ticksFollowTheAudioClockWithoutDrift() {
+        AtomicLong clock = new AtomicLong();
+        //1000 frames per tick, the clock moves in steps that don't divide a tick; a high rate keeps the parks short
+        RenderScheduler scheduler = new RenderScheduler(() -> clock.addAndGet(333), 1000000, 1000);
+
+        int ticks = 0;
+        while (clock.get() < 200000) {
+            if (scheduler.awaitTick()) {
+                ticks++;
+            }
+        }
+        Assert.assertEquals(200, ticks, 1);
+        Assert.assertEquals(0, scheduler.getSkippedTicks());
+    }
+
+    @Test
+    public void skipsTicksInsteadOfFallingBehind() {
+        AtomicLong clock = new AtomicLong();
+        RenderScheduler scheduler = new RenderScheduler(clock::get, 1000, 10);
+
+        clock.set(0);
+        Assert.assertFalse("clock stands still", scheduler.awaitTick());
+        clock.set(100);
+        Assert.assertTrue(scheduler.awaitTick());
+
+        clock.set(1050); //a long stall in the renderer
+        Assert.assertTrue(scheduler.awaitTick());
+        Assert.assertEquals("ticks 200 to 1000 were due, one render covers them", 8, scheduler.getSkippedTicks());
+
+        clock.set(1099);
+        Assert.assertFalse("next tick is due at 1100", scheduler.awaitTick());
+        clock.set(1100);
+        Assert.assertTrue(scheduler.awaitTick());
+    }
+}
@@ -0,0 +1,64 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SPLMeterTest {
+
+    private static final double SAMPLE_RATE = 48000;
+
+    @Test
+    public void aWeightingFollowsTheStandardCurve() {
+        Biquad[] a = FrequencyWeighting.A.create(SAMPLE_RATE);
+        //IEC 61672-1 nominal values, with class 1 style tolerances
+        Assert.assertEquals(-39.4, gainInDecibels(a, 31.5), 0.5);
+        Assert.assertEquals(-19.1, gainInDecibels(a, 100), 0.3);
+        Assert.assertEquals(0.0, gainInDecibels(a, 1000), 0.01);
+        Assert.assertEquals(1.2, gainInDecibels(a, 2000), 0.3);
+        Assert.assertEquals(-2.5, gainInDecibels(a, 10000), 1.0);
+    }
+
+    @Test
+    public void cWeightingFollowsTheStandardCurve() {
+        Biquad[] c = FrequencyWeighting.C.create(SAMPLE_RATE);
+        Assert.assertEquals(-3.0, gainInDecibels(c, 31.5), 0.5);
+        Assert.assertEquals(0.0, gainInDecibels(c, 1000), 0.01);
+        Assert.assertEquals(-4.4, gainInDecibels(c, 10000), 1.0);
+    }
+
+    @Test
+    public void fullScaleSineReadsMinus3Decibels() {
+        double[] leq = new double[1];
+        SPLMeter meter = new SPLMeter(SAMPLE_RATE, FrequencyWeighting.A, TimeWeighting.FAST, 1.0, 0)
+            .setListener(m -> leq[0] = m.getLeq());
+
+        float[] block = new float[480];
+        for (int n = 0; n < 3 * SAMPLE_RATE; n += block.length) {
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (float) Math.sin(2 * Math.PI * 1000 * (n + i) / SAMPLE_RATE);
+            }
+            meter.process(block, 0, block.length);
+        }
+
+        Assert.assertEquals(-3.01, leq[0], 0.05);
+        Assert.assertEquals(-3.01, meter.getLevel(), 0.2);
+        Assert.assertEquals(0.0, meter.getPeak(), 0.05);
+        Assert.assertTrue(meter.getLmin() <= meter.getLeq() && meter.getLeq() <= meter.getLmax());
+    }
+
+    @Test
+    public void calibrationOffsetShiftsAllLevels() {
+        SPLMeter meter = new SPLMeter(SAMPLE_RATE, FrequencyWeighting.Z, TimeWeighting.SLOW, 0.5, 94);
+        int[] block = new int[24000];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (i & 1) == 0 ? 16384 : -16384;
+        }
+        meter.process(block, 0, block.length, 1f / (1 << 15));
+
+        Assert.assertEquals(94 - 6.02, meter.getLeq(), 0.01);
+    }
+
+    private static double gainInDecibels(final Biquad[] cascade, final double frequency) {
+        return 20 * Math.log10(Biquad.magnitude(cascade, frequency, SAMPLE_RATE));
+    }
+}
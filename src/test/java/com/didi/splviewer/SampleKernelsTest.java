@@ -0,0 +1,71 @@
+package com.didi.splviewer;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The kernels {@link SampleKernels#get()} picks against the scalar ones, at every length around the vector sizes and
+ * at odd offsets. Under the vector profile {@code splviewer.kernels.expected} makes sure the SIMD ones are the ones tested.
+ */
+public class SampleKernelsTest {
+
+    private final SampleKernels scalar = SampleKernels.scalar();
+    private final SampleKernels kernels = SampleKernels.get();
+    private final Random random = new Random(42);
+
+    @Test
+    public void theExpectedKernelsAreUsed() {
+        String expected = System.getProperty("splviewer.kernels.expected", "");
+        if (!expected.isEmpty()) {
+            Assert.assertTrue(kernels.getName(), kernels.getName().startsWith(expected));
+        }
+    }
+
+    @Test
+    public void decodingIsBitExact() {
+        byte[] bytes = new byte[2 * 200 + 3];
+        random.nextBytes(bytes);
+        for (int samples = 0; samples <= 200; samples++) {
+            for (boolean bigEndian : new boolean[]{true, false}) {
+                int[] expected = new int[samples + 1], actual = new int[samples + 1];
+                scalar.decode16(bytes, 3, bigEndian, expected, 1, samples);
+                kernels.decode16(bytes, 3, bigEndian, actual, 1, samples);
+                Assert.assertArrayEquals(expected, actual);
+
+                float[] expectedNormalized = new float[samples], actualNormalized = new float[samples];
+                scalar.decode16(bytes, 1, bigEndian, expectedNormalized, 0, samples);
+                kernels.decode16(bytes, 1, bigEndian, actualNormalized, 0, samples);
+                Assert.assertArrayEquals(expectedNormalized, actualNormalized, 0);
+            }
+        }
+        //Against the decoder's own definition of the format
+        int[] expected = new int[100], actual = new int[100];
+        PcmDecoder.SIGNED_16_BIG_ENDIAN.decode(bytes, 0, actual, 0, 100);
+        for (int s = 0; s < 100; s++) {
+            expected[s] = (short) ((bytes[2 * s] << 8) | (bytes[2 * s + 1] & 0xFF));
+        }
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void summariesMatchWithinRounding() {
+        int[] samples = new int[300];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt();
+        }
+        samples[17] = Integer.MIN_VALUE;
+        samples[123] = Integer.MAX_VALUE;
+        for (int length = 0; length <= 290; length++) {
+            SampleKernels.Summary expected = new SampleKernels.Summary(), actual = new SampleKernels.Summary();
+            scalar.summarize(samples, 5, length, expected);
+            kernels.summarize(samples, 5, length, actual);
+            Assert.assertEquals(expected.getMin(), actual.getMin());
+            Assert.assertEquals(expected.getMax(), actual.getMax());
+            Assert.assertEquals(expected.getPeak(), actual.getPeak());
+            Assert.assertEquals(expected.getSum(), actual.getSum());
+            Assert.assertEquals(expected.getSumOfSquares(), actual.getSumOfSquares(), expected.getSumOfSquares() * 1e-12);
+        }
+    }
+}
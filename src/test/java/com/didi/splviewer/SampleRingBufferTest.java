@@ -0,0 +1,192 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void roundsTheCapacityUpToAPowerOfTwo() {
+        Assert.assertEquals(8, new SampleRingBuffer(5).capacity());
+        Assert.assertEquals(8, new SampleRingBuffer(8).capacity());
+        Assert.assertEquals(1, new SampleRingBuffer(1).capacity());
+    }
+
+    @Test
+    public void blocksWrapAroundTheEndOfTheSlots() throws InterruptedException {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        int[] read = new int[6];
+        ring.write(sequence(0, 6), 0, 6);
+        Assert.assertEquals(6, ring.poll(read, 0, 6));
+        ring.write(sequence(6, 6), 0, 6); //slots 6, 7, 0, 1, 2, 3
+        Assert.assertEquals(6, ring.size());
+
+        Assert.assertEquals(6, ring.poll(read, 0, 6));
+        Assert.assertArrayEquals(sequence(6, 6), read);
+        Assert.assertEquals(0, ring.size());
+        Assert.assertEquals(0, ring.poll(read, 0, 6));
+    }
+
+    @Test
+    public void readParksUntilSomethingIsWritten() throws Exception {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        int[] read = new int[8];
+        int[] count = new int[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                count[0] = ring.read(read, 0, 8);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        awaitParked(consumer);
+
+        ring.write(sequence(1, 3), 0, 3);
+        consumer.join(5000);
+        Assert.assertFalse(consumer.isAlive());
+        Assert.assertEquals(3, count[0]);
+        Assert.assertEquals(3, read[2]);
+    }
+
+    @Test
+    public void writeParksWhileTheRingIsFull() throws Exception {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        ring.write(sequence(0, 8), 0, 8);
+        Thread producer = new Thread(() -> {
+            try {
+                ring.write(sequence(8, 4), 0, 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        awaitParked(producer);
+        Assert.assertEquals(8, ring.size());
+
+        int[] read = new int[12];
+        ring.readFully(read, 0, 12);
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertArrayEquals(sequence(0, 12), read);
+    }
+
+    @Test
+    public void readFullyCollectsManySmallWrites() throws Exception {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int value = 0; value < 10000; value += 3) {
+                    ring.write(sequence(value, 3), 0, 3);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        int[] read = new int[10002];
+        ring.readFully(read, 0, read.length);
+        producer.join(5000);
+        Assert.assertArrayEquals(sequence(0, read.length), read);
+        Assert.assertEquals(0, ring.size());
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void aParkedReadCanBeInterrupted() throws InterruptedException {
+        Thread.currentThread().interrupt();
+        new SampleRingBuffer(8).read(new int[1], 0, 1);
+    }
+
+    @Test
+    public void dropOldestKeepsTheMostRecentSamples() throws InterruptedException {
+        SampleRingBuffer ring = new SampleRingBuffer(8, SampleRingBuffer.OverrunPolicy.DROP_OLDEST);
+        ring.write(sequence(0, 6), 0, 6);
+        ring.write(sequence(6, 6), 0, 6);
+
+        int[] read = new int[8];
+        Assert.assertEquals(8, ring.poll(read, 0, 8));
+        Assert.assertArrayEquals(sequence(4, 8), read);
+        Assert.assertEquals(4, ring.getOverrunStats().getDroppedSamples());
+        Assert.assertEquals(1, ring.getOverrunStats().getEvents());
+        Assert.assertTrue(ring.getOverrunStats().getLastEventMillis() > 0);
+    }
+
+    @Test
+    public void dropNewestKeepsWhatIsQueued() throws InterruptedException {
+        SampleRingBuffer ring = new SampleRingBuffer(8, SampleRingBuffer.OverrunPolicy.DROP_NEWEST);
+        ring.write(sequence(0, 6), 0, 6);
+        ring.write(sequence(6, 6), 0, 6);
+
+        int[] read = new int[8];
+        Assert.assertEquals(8, ring.poll(read, 0, 8));
+        Assert.assertArrayEquals(sequence(0, 8), read);
+        Assert.assertEquals(4, ring.getOverrunStats().getDroppedSamples());
+    }
+
+    @Test
+    public void decimateFitsTheBlockIntoTheFreeSpace() throws InterruptedException {
+        SampleRingBuffer ring = new SampleRingBuffer(8, SampleRingBuffer.OverrunPolicy.DECIMATE);
+        ring.write(sequence(0, 4), 0, 4);
+        ring.write(sequence(100, 8), 0, 8); //4 free, every 2nd sample
+
+        int[] read = new int[8];
+        Assert.assertEquals(8, ring.poll(read, 0, 8));
+        Assert.assertArrayEquals(new int[]{0, 1, 2, 3, 100, 102, 104, 106}, read);
+        Assert.assertEquals(4, ring.getOverrunStats().getDecimatedSamples());
+        Assert.assertEquals(0, ring.getOverrunStats().getDroppedSamples());
+    }
+
+    @Test
+    public void dropOldestNeverHandsOutTornBlocks() throws Exception {
+        SampleRingBuffer ring = new SampleRingBuffer(1 << 10, SampleRingBuffer.OverrunPolicy.DROP_OLDEST);
+        int blocks = 20000;
+        Thread producer = new Thread(() -> {
+            int[] block = new int[100];
+            try {
+                for (int value = 0; value < blocks * block.length; ) {
+                    for (int i = 0; i < block.length; i++) {
+                        block[i] = value++;
+                    }
+                    ring.write(block, 0, block.length);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        //Whatever gets dropped, what the reader sees is increasing and contiguous within each read
+        int[] read = new int[300];
+        long received = 0;
+        int last = -1;
+        while (producer.isAlive() || ring.size() > 0) {
+            int count = ring.poll(read, 0, read.length);
+            for (int i = 0; i < count; i++) {
+                Assert.assertTrue(read[i] > last);
+                if (i > 0) {
+                    Assert.assertEquals(read[i - 1] + 1, read[i]);
+                }
+                last = read[i];
+            }
+            received += count;
+        }
+        producer.join();
+        Assert.assertEquals(blocks * 100L, received + ring.getOverrunStats().getDroppedSamples());
+    }
+
+    private static void awaitParked(final Thread thread) throws InterruptedException {
+        for (long deadline = System.currentTimeMillis() + 5000; thread.getState() != Thread.State.WAITING; ) {
+            Assert.assertTrue(thread.getState().toString(), System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static int[] sequence(final int first, final int length) {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = first + i;
+        }
+        return values;
+    }
+}
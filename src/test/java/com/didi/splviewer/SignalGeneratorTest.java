@@ -0,0 +1,50 @@
+package com.didi.splviewer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignalGeneratorTest {
+
+    @Test
+    public void restartsRunOneAfterAnotherOnTheSameThread() throws Exception {
+        AtomicInteger writing = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicLong written = new AtomicLong();
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        SampleSink sink = (samples, offset, length) -> {
+            if (writing.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            threads.add(Thread.currentThread());
+            written.addAndGet(length);
+            writing.decrementAndGet();
+        };
+        SignalGenerator generator = new SignalGenerator(sink, SignalGenerator.Waveform.SINE, new AudioFormat(48000, 16, 1, true, true),
+            1000, 0.5, true);
+
+        for (int i = 0; i < 20; i++) { //faster than a block, every start replaces the one before
+            generator.begin();
+            if (i % 3 == 0) {
+                generator.shutdown();
+            }
+        }
+        Thread.sleep(50);
+        generator.shutdown();
+
+        //Every block that was counted on the clock reached the sink before shutdown returned
+        Assert.assertEquals(generator.getFramePosition(), written.get());
+        long stopped = written.get();
+        Thread.sleep(50);
+        Assert.assertEquals(stopped, written.get());
+        Assert.assertEquals(0, overlaps.get());
+        Assert.assertEquals(1, threads.size());
+    }
+}
@@ -0,0 +1,52 @@
+package com.didi.splviewer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpectrumAnalyzerTest {
+
+    @Test
+    public void realFFTMatchesDirectTransform() {
+        int n = 64;
+        double[] input = new double[n];
+        for (int i = 0; i < n; i++) {
+            input[i] = Math.sin(0.3 * i) + 0.25 * Math.cos(1.7 * i) + (i % 5) * 0.1;
+        }
+        RealFFT fft = new RealFFT(n);
+        double[] re = new double[fft.getBins()], im = new double[fft.getBins()];
+        fft.transform(input, re, im);
+
+        for (int k = 0; k <= n / 2; k++) {
+            double expectedRe = 0, expectedIm = 0;
+            for (int i = 0; i < n; i++) {
+                expectedRe += input[i] * Math.cos(2 * Math.PI * k * i / n);
+                expectedIm -= input[i] * Math.sin(2 * Math.PI * k * i / n);
+            }
+            Assert.assertEquals("re " + k, expectedRe, re[k], 1e-9);
+            Assert.assertEquals("im " + k, expectedIm, im[k], 1e-9);
+        }
+    }
+
+    @Test
+    public void fullScaleSinePeaksAtZeroDecibels() {
+        double sampleRate = 48000;
+        int size = 4096;
+        int bin = 100;
+        float[][] last = new float[1][];
+        int[] spectra = new int[1];
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(size, size / 4, WindowFunction.HANN, sampleRate, levels -> {
+            last[0] = levels.clone();
+            spectra[0]++;
+        });
+
+        int[] samples = new int[3 * size];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (int) Math.round(32767 * Math.sin(2 * Math.PI * analyzer.binFrequency(bin) * i / sampleRate));
+        }
+        analyzer.process(samples, 0, samples.length, 1f / 32768);
+
+        Assert.assertEquals(9, spectra[0]); //first full frame, then one every hop
+        Assert.assertEquals(0.0, last[0][bin], 0.1);
+        Assert.assertTrue(last[0][bin + 10] < -60);
+    }
+}
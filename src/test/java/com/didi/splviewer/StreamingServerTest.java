@@ -0,0 +1,188 @@
+package com.didi.splviewer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingServerTest {
+
+    private StreamingServer server;
+
+    @Before
+    public void start() throws IOException {
+        server = new StreamingServer(new InetSocketAddress("127.0.0.1", 0), 16);
+    }
+
+    @After
+    public void stop() {
+        server.close();
+    }
+
+    @Test
+    public void tcpAndWebSocketClientsGetTheSameMessages() throws Exception {
+        server.publishRetained(7, message(1, 2, 3));
+
+        try (StreamingClient tcp = new StreamingClient(server.getAddress());
+             Socket webSocket = new Socket()) {
+            webSocket.connect(server.getAddress());
+            OutputStream out = webSocket.getOutputStream();
+            out.write(("GET /levels HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            DataInputStream in = new DataInputStream(webSocket.getInputStream());
+            String response = readHttpResponse(in);
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 101"));
+            Assert.assertTrue(response, response.contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+
+            Assert.assertEquals(message(1, 2, 3), tcp.readMessage());
+            Assert.assertEquals(message(1, 2, 3), readWebSocketFrame(in));
+
+            awaitClients(2);
+            ByteBuffer large = ByteBuffer.allocate(1000);
+            large.putInt(0, 42).putInt(996, 43);
+            server.publish(large);
+            Assert.assertEquals(large, tcp.readMessage());
+            Assert.assertEquals(large, readWebSocketFrame(in));
+        }
+    }
+
+    @Test
+    public void slowClientLosesMessagesInsteadOfHoldingUpThePublisher() throws Exception {
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(server.getAddress());
+            stalled.getOutputStream().write(StreamingServer.TCP_HELLO);
+            awaitClients(1);
+
+            long start = System.nanoTime();
+            ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < 1000; i++) { //64MB, far more than the socket buffers hold
+                server.publish(block);
+            }
+            Assert.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+            Assert.assertTrue(server.getDroppedMessages() > 900);
+        }
+    }
+
+    @Test
+    public void handshakeAndRetainedMessagesAreNeverDropped() throws Exception {
+        server.close();
+        server = new StreamingServer(new InetSocketAddress("127.0.0.1", 0), 1);
+        server.publishRetained(1, message(1));
+        server.publishRetained(2, message(2));
+
+        //Live messages all the time, each one pushes the one before out of the queue
+        Thread publisher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                server.publish(message(9));
+            }
+        });
+        publisher.start();
+        try (Socket webSocket = new Socket()) {
+            webSocket.setSoTimeout(5000);
+            webSocket.connect(server.getAddress());
+            OutputStream out = webSocket.getOutputStream();
+            out.write(("GET /levels HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            DataInputStream in = new DataInputStream(webSocket.getInputStream());
+            byte[] status = new byte[12];
+            in.readFully(status);
+            Assert.assertEquals("HTTP/1.1 101", new String(status, StandardCharsets.ISO_8859_1));
+            readHttpResponse(in);
+            Assert.assertEquals(message(1), readWebSocketFrame(in));
+            Assert.assertEquals(message(2), readWebSocketFrame(in));
+            Assert.assertEquals(message(9), readWebSocketFrame(in));
+        } finally {
+            publisher.interrupt();
+            publisher.join();
+        }
+    }
+
+    @Test
+    public void publisherStreamsColumnsAndLevelsOnTheSampleClock() throws Exception {
+        MulticastRingBuffer ring = new MulticastRingBuffer(1 << 16);
+        SignalGenerator generator = new SignalGenerator(ring, SignalGenerator.Waveform.SINE, new AudioFormat(48000, 16, 1, true, true),
+            1000, 0.5, true);
+        StreamPublisher publisher = new StreamPublisher(server, ring.newReader("stream", SampleRingBuffer.OverrunPolicy.DROP_OLDEST),
+            generator, 3, "Ch 1");
+
+        try (StreamingClient client = new StreamingClient(server.getAddress())) {
+            awaitClients(1);
+            publisher.begin();
+            generator.begin();
+
+            ByteBuffer info = client.readMessage();
+            Assert.assertEquals(StreamPublisher.INFO, info.get(0));
+            Assert.assertEquals(3, info.get(1));
+            Assert.assertTrue(StreamingClient.describe(info), StreamingClient.describe(info).contains("\"Ch 1\", 48000Hz, 240 samples"));
+
+            ByteBuffer columns = client.readMessage();
+            Assert.assertEquals(StreamPublisher.COLUMNS, columns.get(0));
+            Assert.assertEquals(0, columns.getLong(2));
+            Assert.assertEquals(10, columns.getShort(10));
+            for (int c = 0; c < 10; c++) {
+                Assert.assertEquals(-16384, columns.getShort(12 + 4 * c), 2);
+                Assert.assertEquals(16384, columns.getShort(14 + 4 * c), 2);
+            }
+            ByteBuffer levels = client.readMessage();
+            Assert.assertEquals(StreamPublisher.LEVELS, levels.get(0));
+            Assert.assertEquals(2400, levels.getLong(2));
+
+            ByteBuffer next = client.readMessage();
+            Assert.assertEquals(2400, next.getLong(2));
+        } finally {
+            generator.shutdown();
+            publisher.shutdown();
+        }
+    }
+
+    private void awaitClients(final int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClientCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, server.getClientCount());
+    }
+
+    private static ByteBuffer message(final int... bytes) {
+        ByteBuffer message = ByteBuffer.allocate(bytes.length);
+        for (int b : bytes) {
+            message.put((byte) b);
+        }
+        message.flip();
+        return message;
+    }
+
+    private static String readHttpResponse(final DataInputStream in) throws IOException {
+        StringBuilder response = new StringBuilder();
+        while (!response.toString().endsWith("\r\n\r\n")) {
+            response.append((char) in.readUnsignedByte());
+        }
+        return response.toString();
+    }
+
+    private static ByteBuffer readWebSocketFrame(final DataInputStream in) throws IOException {
+        Assert.assertEquals(0x82, in.readUnsignedByte());
+        int length = in.readUnsignedByte();
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = (int) in.readLong();
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return ByteBuffer.wrap(payload);
+    }
+}
@@ -0,0 +1,85 @@
+package com.didi.splviewer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingStatisticsTest {
+
+    @Test
+    public void momentsMatchTwoPass() {
+        Random random = new Random(1);
+        double[] values = new double[10000];
+        RunningMoments running = new RunningMoments();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1e9 + random.nextGaussian(); //a large mean breaks the sum of squares
+            running.add(values[i]);
+        }
+        double mean = 0;
+        for (double v : values) {
+            mean += v / values.length;
+        }
+        double variance = 0;
+        for (double v : values) {
+            variance += (v - mean) * (v - mean) / (values.length - 1);
+        }
+        Assert.assertEquals(mean, running.getMean(), 1e-6);
+        Assert.assertEquals(variance, running.getVariance(), 1e-6);
+        Assert.assertEquals(Arrays.stream(values).max().getAsDouble(), running.getMax(), 0);
+
+        //A step is 63% through after one time constant, and the spread of a steady input is found
+        ExponentialMoments exponential = new ExponentialMoments(100);
+        exponential.add(0);
+        for (int i = 0; i < 100; i++) {
+            exponential.add(1);
+        }
+        Assert.assertEquals(1 - Math.exp(-1), exponential.getMean(), 1e-9);
+        exponential.reset();
+        for (int i = 0; i < 100000; i++) {
+            exponential.add(5 + 2 * random.nextGaussian());
+        }
+        Assert.assertEquals(5, exponential.getMean(), 0.5);
+        Assert.assertEquals(2, exponential.getStandardDeviation(), 0.4);
+    }
+
+    @Test
+    public void slidingWindowMatchesBruteForce() {
+        Random random = new Random(2);
+        int size = 37;
+        SlidingWindow window = new SlidingWindow(size);
+        double[] values = new double[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(20) - 10 + (i / 1000) * 1e6; //ties, and a rising mean for the running sum
+            window.add(values[i]);
+            double[] inWindow = Arrays.copyOfRange(values, Math.max(0, i - size + 1), i + 1);
+            Assert.assertEquals(inWindow.length, window.getCount());
+            Assert.assertEquals(Arrays.stream(inWindow).min().getAsDouble(), window.getMin(), 0);
+            Assert.assertEquals(Arrays.stream(inWindow).max().getAsDouble(), window.getMax(), 0);
+            Assert.assertEquals(Arrays.stream(inWindow).sum(), window.getSum(), 1e-6);
+        }
+    }
+
+    @Test
+    public void quantileWithinAFewPercent() {
+        Random random = new Random(3);
+        StreamingQuantile p99 = new StreamingQuantile(0.99), median = new StreamingQuantile(0.5);
+        double[] values = new double[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+            p99.add(values[i]);
+            median.add(values[i]);
+        }
+        Arrays.sort(values);
+        Assert.assertEquals(values[(int) (0.99 * values.length)], p99.getQuantile(), 0.05);
+        Assert.assertEquals(values[values.length / 2], median.getQuantile(), 0.05);
+
+        //Exact while there are five values or less
+        p99.reset();
+        for (int v : new int[]{3, 1, 2}) {
+            p99.add(v);
+        }
+        Assert.assertEquals(3, p99.getQuantile(), 0);
+    }
+}
@@ -0,0 +1,94 @@
+package com.didi.splviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsBigEndianCaptureIntoRotatingSegments() throws Exception {
+        AudioFormat format = new AudioFormat(48000, 24, 1, true, true);
+        File directory = folder.newFolder();
+        int[] expected = new int[30000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (i * 2731) % (1 << 23) - (1 << 22);
+        }
+
+        WavRecorder recorder = new WavRecorder(directory, "test", 30000, 60000, 50);
+        try {
+            byte[] block = new byte[1000 * 3];
+            for (int start = 0; start < expected.length; start += 1000) {
+                for (int i = 0; i < 1000; i++) {
+                    int value = expected[start + i];
+                    block[3 * i] = (byte) (value >> 16);
+                    block[3 * i + 1] = (byte) (value >> 8);
+                    block[3 * i + 2] = (byte) value;
+                }
+                recorder.write(block, 0, block.length, format); //faster than segments are prepared, the backlog catches up on close
+            }
+        } finally {
+            recorder.close();
+        }
+        Assert.assertEquals(0, recorder.getDroppedBytes());
+
+        File[] segments = directory.listFiles();
+        Arrays.sort(segments);
+        Assert.assertEquals(3, segments.length); //90000 bytes in segments of 30000
+
+        int[] recorded = new int[expected.length];
+        int position = 0;
+        for (File segment : segments) {
+            position += readAll(segment, recorded, position);
+        }
+        Assert.assertEquals(expected.length, position);
+        Assert.assertArrayEquals(expected, recorded);
+    }
+
+    @Test
+    public void dropsWhatDoesNotFitTheBacklog() throws Exception {
+        AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
+        File directory = folder.newFolder();
+        byte[] block = new byte[1 << 20];
+        WavRecorder recorder = new WavRecorder(directory, "test", 1L << 30, 60000, 50);
+        try {
+            for (int i = 0; i < 64; i++) { //64MB at once, while the first segment is still being created
+                recorder.write(block, 0, block.length, format);
+            }
+        } finally {
+            recorder.close();
+        }
+        File[] segments = directory.listFiles();
+        Assert.assertEquals(1, segments.length);
+        long recorded = segments[0].length() - 44;
+        Assert.assertTrue(recorded > 0);
+        Assert.assertEquals(64L << 20, recorded + recorder.getDroppedBytes());
+    }
+
+    private static int readAll(final File file, final int[] samples, final int offset) throws IOException, UnsupportedAudioFileException {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file)) {
+            AudioFormat format = in.getFormat();
+            Assert.assertFalse(format.isBigEndian());
+            Assert.assertEquals(24, format.getSampleSizeInBits());
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int frames = (int) in.getFrameLength();
+            Assert.assertEquals(bytes.length - 44, frames * 3);
+            PcmDecoder.forFormat(format).decode(bytes, 44, samples, offset, frames);
+            return frames;
+        }
+    }
+}
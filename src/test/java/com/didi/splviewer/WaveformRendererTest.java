@@ -0,0 +1,115 @@
+package com.didi.splviewer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WaveformRendererTest {
+
+    private static final int WIDTH = 4, HEIGHT = 101; //center row 50
+    private static final int BACKGROUND = WaveformRenderer.BACKGROUND.getRGB();
+    private static final int PEAK = Color.LIGHT_GRAY.getRGB();
+    private static final int RMS = Color.WHITE.getRGB();
+    private static final int SILENCE = Color.YELLOW.getRGB();
+
+    //10 samples per column, linear: a sample of s lands on row 50 + 50 * s / 32768
+    private static WaveformRenderer newRenderer() {
+        WaveformRenderer renderer = new WaveformRenderer(WIDTH, HEIGHT);
+        renderer.setTimeBase(100, 10, 16);
+        renderer.setDisplay(SPLViewer.DisplayType.Linear, 1);
+        return renderer;
+    }
+
+    private static BufferedImage screen(final WaveformRenderer renderer) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        renderer.blit(image.getGraphics());
+        return image;
+    }
+
+    private static int[] column(final BufferedImage image, final int x) {
+        int[] rgb = new int[HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            rgb[y] = image.getRGB(x, y);
+        }
+        return rgb;
+    }
+
+    private static int[] ramp(final int length) {
+        int[] samples = new int[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (i % 10 - 5) * 3000;
+        }
+        return samples;
+    }
+
+    @Test
+    public void columnsAreTheSameWhereverTheBlocksEnd() {
+        int[] samples = ramp(25);
+        WaveformRenderer whole = newRenderer();
+        whole.add(samples, 0, samples.length);
+        WaveformRenderer pieces = newRenderer();
+        for (int i = 0, length = 1; i < samples.length; i += length, length = Math.min(length + 2, samples.length - i)) {
+            pieces.add(samples, i, length);
+        }
+
+        BufferedImage expected = screen(whole), actual = screen(pieces);
+        for (int x = 0; x < WIDTH; x++) {
+            Assert.assertArrayEquals(column(expected, x), column(actual, x));
+        }
+        //Two full columns from -15000 to 12000, the half column is not drawn yet
+        int[] first = column(actual, 0);
+        Assert.assertEquals(BACKGROUND, first[50 - 23 - 1]);
+        Assert.assertEquals(PEAK, first[50 - 22]);
+        Assert.assertEquals(RMS, first[50]);
+        Assert.assertEquals(PEAK, first[50 + 18]);
+        Assert.assertEquals(BACKGROUND, first[50 + 18 + 1]);
+        Assert.assertEquals(BACKGROUND, column(actual, 2)[50]);
+    }
+
+    @Test
+    public void clearsAndStartsOverAtTheRightEdge() {
+        WaveformRenderer renderer = newRenderer();
+        renderer.add(ramp(10 * WIDTH), 0, 10 * WIDTH);
+        for (int x = 0; x < WIDTH; x++) {
+            Assert.assertEquals(RMS, column(screen(renderer), x)[50]);
+        }
+        renderer.add(new int[10], 0, 10); //one more column of silence wraps around
+        BufferedImage image = screen(renderer);
+        Assert.assertEquals(SILENCE, column(image, 0)[50]);
+        Assert.assertEquals(BACKGROUND, column(image, 0)[49]);
+        for (int x = 1; x < WIDTH; x++) {
+            for (int rgb : column(image, x)) {
+                Assert.assertEquals(BACKGROUND, rgb);
+            }
+        }
+    }
+
+    @Test
+    public void emptyColumnsStayEmptyAndRowsAreClamped() {
+        WaveformRenderer renderer = newRenderer();
+        int[] min = {-40000, 1, 0, -100};
+        int[] max = {40000, 0, 0, 100};
+        float[] meanSquare = {0, 0, 0, 0};
+        renderer.drawColumns(min, max, meanSquare, WIDTH);
+        BufferedImage image = screen(renderer);
+
+        //Beyond full scale: the whole height and no further
+        int[] clipped = column(image, 0);
+        Assert.assertEquals(PEAK, clipped[0]);
+        Assert.assertEquals(PEAK, clipped[HEIGHT - 1]);
+        //min > max: no data
+        for (int rgb : column(image, 1)) {
+            Assert.assertEquals(BACKGROUND, rgb);
+        }
+        Assert.assertEquals(SILENCE, column(image, 2)[50]);
+        //Less than a row away from the center is drawn as silence in linear mode
+        Assert.assertEquals(SILENCE, column(image, 3)[50]);
+
+        //Log mode zoomed in far also stays inside the image
+        renderer.setDisplay(SPLViewer.DisplayType.Log, 100);
+        renderer.drawColumns(min, max, meanSquare, WIDTH);
+        Assert.assertEquals(PEAK, column(screen(renderer), 0)[0]);
+    }
+}